@@ -19,6 +19,9 @@ import com.haines.ml.rce.model.EventConsumer;
  * 
  * - This is based on 16KB accumulator lines and then 4096 accumulators in each line.
  * 
+ * The lines are held either on the heap or, for large models, in direct memory as set by 
+ * {@link AccumulatorConfig#getStorageType()}.
+ * 
  * @author haines
  *
  * @param <T>
@@ -27,6 +30,7 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 
 	private static final int DEFAULT_SECOND_LINE_LENGTH = 4096;
 	private static final int DEFAULT_INDEX_LINE_LENGTH = 64;
+	private static final int DEFAULT_SLOT_BUFFER_LENGTH = 16;
 	
 	public static final AccumulatorConfig DEFAULT_CONFIG = new AccumulatorConfig() {
 		
@@ -44,63 +48,34 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 		public int getSecondAccumulatorLineBitDepth() {
 			return (int)(Math.log(DEFAULT_INDEX_LINE_LENGTH) / Math.log(2));
 		}
+
+		@Override
+		public StorageType getStorageType() {
+			return StorageType.HEAP;
+		}
+
+		@Override
+		public int getFeatureHashingBitDepth() {
+			return NO_FEATURE_HASHING;
+		}
+
+		@Override
+		public int getFeatureHashingNumHashes() {
+			return 1;
+		}
 	};
 
 	private static final Logger LOG = LoggerFactory.getLogger(Accumulator.class);
 	
-	private final int[][][] accumulators;
+	private final AccumulatorStore accumulators;
 	protected final AccumulatorLookupStrategy<? super T> lookup;
-	private final int finalAccumulatorLineSize;
-	private final int finalAccumulatorBitSize;
-	private final int finalAccumulatorMask;
-	private final int secondAccumualtorLineSize;
-	private final int firstAccumulatorLineIndexMask;
-	private final int secondAccumulatorLineIndexMask;
-	private final int firstAccumulatorShift;
-	private final int phyisicalLimitOfAccumulator;
-	private final AccumulatorConfig config;
-	private int currentMaxIdx = 0;
+	private int[] slotBuffer;
 	
 	public Accumulator(AccumulatorConfig config, AccumulatorLookupStrategy<? super T> lookup){
 		
-		this.config = config;
-		int firstLineLength = getFirstLineMaxIndex(config);
-		secondAccumualtorLineSize = getSecondLineMaxIndex(config);
-		this.accumulators = newAccumulator(firstLineLength, secondAccumualtorLineSize);
+		this.accumulators = AccumulatorStore.create(config);
 		this.lookup = lookup;
-		
-		this.finalAccumulatorBitSize = config.getFinalAccumulatorLineBitDepth();
-		this.finalAccumulatorLineSize = (int)Math.pow(2, finalAccumulatorBitSize);
-		if (LOG.isDebugEnabled()){
-			printAccumulatorConfig(firstLineLength, secondAccumualtorLineSize, finalAccumulatorLineSize);
-		
-		}
-		this.finalAccumulatorMask = finalAccumulatorLineSize-1;
-		this.firstAccumulatorShift = finalAccumulatorBitSize + config.getSecondAccumulatorLineBitDepth();
-		this.firstAccumulatorLineIndexMask = (firstLineLength-1) << firstAccumulatorShift; // shift 18
-		this.secondAccumulatorLineIndexMask = (secondAccumualtorLineSize-1) << finalAccumulatorBitSize; // shift 12
-		this.phyisicalLimitOfAccumulator = (firstLineLength * secondAccumualtorLineSize * finalAccumulatorLineSize) - 1;
-		
-		this.currentMaxIdx = finalAccumulatorLineSize;
-	}
-	
-	private int[][][] newAccumulator(int firstLineLength, int secondLineLength) {
-		return new int[firstLineLength][secondLineLength][]; // 4096 * 32 bits memory footprint for structure (16KB)
-	}
-
-	private static void printAccumulatorConfig(int firstLineLength, int secondLineLength, int finalAccumulatorLineSize) {
-		
-		int totalLineSize = firstLineLength * secondLineLength;
-		int totalAccumulatorSize = (totalLineSize*finalAccumulatorLineSize);
-		LOG.debug("initalising multi dimensional accumulator with dimensions ["+firstLineLength+"]["+secondLineLength+"]["+finalAccumulatorLineSize+"].\n\tMinimal memory requirements = "+totalLineSize+" * 32bits = "+totalLineSize * 32+"\n\tMaximum memory requirements = "+totalAccumulatorSize+" * 32bits = "+(totalAccumulatorSize * 32));
-	}
-
-	private int getSecondLineMaxIndex(AccumulatorConfig config) {
-		return (int)Math.pow(2, config.getSecondAccumulatorLineBitDepth());
-	}
-
-	private int getFirstLineMaxIndex(AccumulatorConfig config) {
-		return (int)Math.pow(2, config.getFirstAccumulatorLineBitDepth());
+		this.slotBuffer = new int[DEFAULT_SLOT_BUFFER_LENGTH];
 	}
 
 	public Accumulator(AccumulatorLookupStrategy<T> lookup){
@@ -114,7 +89,17 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 	}
 	
 	public void incrementAccumulators(int[] slots){
-		for (int i = 0; i < slots.length; i++){
+		incrementAccumulators(slots, slots.length);
+	}
+	
+	/**
+	 * Increment the first numSlots slots of the provided array by 1. Should any of these slots not be supported by
+	 * this accumulator then none of them are incremented.
+	 * @param slots
+	 * @param numSlots
+	 */
+	public void incrementAccumulators(int[] slots, int numSlots){
+		for (int i = 0; i < numSlots; i++){
 			int slot = slots[i];
 			if (slot > getMaxIndex()){
 				LOG.warn("We are trying to update an accumulator which we dont have an index for. Rolling back event updates. slot {} into {}", slot, getMaxIndex());
@@ -127,19 +112,35 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 		}
 	}
 	
+	/**
+	 * Returns a scratch buffer, owned by this accumulator, that handlers can resolve an event's slots into rather then
+	 * allocating a new array for each event. Like the rest of this accumulator, the buffer must only be used by the
+	 * thread consuming the events and its contents are only valid until it is next requested.
+	 * @return
+	 */
+	public int[] getSlotBuffer(){
+		return slotBuffer;
+	}
+	
+	/**
+	 * Returns the scratch buffer, grown if necessary so that it is at least minLength long.
+	 * @param minLength
+	 * @return
+	 */
+	public int[] getSlotBuffer(int minLength){
+		if (slotBuffer.length < minLength){
+			slotBuffer = new int[Math.max(minLength, slotBuffer.length * 2)];
+		}
+		return slotBuffer;
+	}
+	
 	public void clear(){
 		
-		LOG.debug("clearing accumulator line for thread {}", Thread.currentThread().getName());
-		int secondLineLength = getSecondLineMaxIndex(config);
-		for (int i = 0; i < accumulators.length; i++){
-			accumulators[i] = new int[secondLineLength][];
-		}
+		accumulators.clear();
 		
 		// now clear the indexes
 		
 		lookup.clear();
-		
-		this.currentMaxIdx = finalAccumulatorLineSize;
 	}
 	
 	public void rollbackSlots(int[] slots, int idxToRollbackTo) {
@@ -147,59 +148,16 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 		for (int i = 0; i < idxToRollbackTo; i++){
 			int slot = slots[i];
 			
-			decrementAccumulator(slot);
+			accumulators.decrement(slot);
 		}
 	}
-	
-	private void decrementAccumulator(int slot){
-		int accumulatorIdx = getAccumulatorIdx(slot);
-		
-		getAccumulatorLine(slot)[accumulatorIdx]--;
-	}
-	
-	private final int getFirstAccumulatorLineIdx(int slot){
-		return (slot & firstAccumulatorLineIndexMask) >> firstAccumulatorShift;//use most significant n bits for first index
-	}
-	
-	private int[][] getFirstAccumulatorLine(int slot){
-		int firstAccumulatorLineIdx = getFirstAccumulatorLineIdx(slot);
-		
-		return accumulators[firstAccumulatorLineIdx];
-	}
-	
-	private int getSecondAccumulatorLineIdx(int slot){
-		return (slot & secondAccumulatorLineIndexMask) >> finalAccumulatorBitSize;
-	}
-	
-	private int[] getAccumulatorLine(int slot){
-		
-		int[][] firstAccumulatorLine = getFirstAccumulatorLine(slot);
-		
-		int secondAccumulatorLineId = getSecondAccumulatorLineIdx(slot);
-		if (firstAccumulatorLine[secondAccumulatorLineId] == null){
-			firstAccumulatorLine[secondAccumulatorLineId] = new int[finalAccumulatorLineSize];
-			
-			int potentialNewMaxIdx = getNewMaxId(getFirstAccumulatorLineIdx(slot), secondAccumulatorLineId);
-			if (currentMaxIdx < potentialNewMaxIdx){
-				currentMaxIdx = potentialNewMaxIdx; // add another line to the max idx size
-			}
-		}
-		
-		return firstAccumulatorLine[secondAccumulatorLineId];
-	}
-	
-	private int getNewMaxId(int firstAccumulatorIdx, int secondAccumulatorIdx){
-		return (firstAccumulatorIdx * secondAccumualtorLineSize * finalAccumulatorLineSize) + ((1+secondAccumulatorIdx) * finalAccumulatorLineSize);
-	}
 
 	/**
 	 * Increment the slot at the specified index by 1.
 	 * @param slot
 	 */
 	public void incrementAccumulator(int slot) {
-		int accumulatorIdx = getAccumulatorIdx(slot);
-
-		getAccumulatorLine(slot)[accumulatorIdx]++;
+		accumulators.increment(slot);
 	}
 	
 	/**
@@ -208,9 +166,7 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 	 * @param valueToSum
 	 */
 	public void sumAccumulator(int slot, int valueToSum) {
-		int accumulatorIdx = getAccumulatorIdx(slot);
-		
-		getAccumulatorLine(slot)[accumulatorIdx] =+ valueToSum;
+		accumulators.setValue(slot, accumulators.getValue(slot) + valueToSum);
 	}
 	
 	/**
@@ -219,18 +175,14 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 	 * @param valueToSum
 	 */
 	public void sumAccumulator(int slot, float valueToSum){
-		int accumulatorIdx = getAccumulatorIdx(slot);
-		
-		getAccumulatorLine(slot)[accumulatorIdx] = Float.floatToIntBits(getAccumulatorValueAsFloat(slot) + valueToSum);
+		accumulators.setValue(slot, Float.floatToIntBits(getAccumulatorValueAsFloat(slot) + valueToSum));
 	}
 	
 	/**
 	 * Returns the integrer value at the specified slot.
 	 */
 	public int getAccumulatorValue(int slot) {
-		int accumulatorIdx = getAccumulatorIdx(slot);
-		
-		return getAccumulatorLine(slot)[accumulatorIdx];
+		return accumulators.getValue(slot);
 	}
 	
 	/**
@@ -240,19 +192,98 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 		return Float.intBitsToFloat(getAccumulatorValue(slot));
 	}
 
-	private int getAccumulatorIdx(int slot) {
-		return (slot & finalAccumulatorMask);
+	/**
+	 * Increment the 64 bit counter held across the specified pair of slots by 1. Counters that have to survive long
+	 * windows should use this rather then {@link #incrementAccumulator(int)} as a single slot overflows after 2^31
+	 * increments.
+	 * @param highSlot the slot holding the upper 32 bits of the counter
+	 * @param lowSlot the slot holding the lower 32 bits of the counter
+	 */
+	public void incrementLongAccumulator(int highSlot, int lowSlot) {
+		accumulators.increment(lowSlot);
+		
+		if (accumulators.getValue(lowSlot) == 0){ // the low word has wrapped so carry into the high word
+			accumulators.increment(highSlot);
+		}
+	}
+	
+	/**
+	 * Increment the 64 bit integer value held across the specified pair of slots by the specified valueToSum.
+	 * @param highSlot
+	 * @param lowSlot
+	 * @param valueToSum
+	 */
+	public void sumLongAccumulator(int highSlot, int lowSlot, long valueToSum) {
+		setWideValue(highSlot, lowSlot, getAccumulatorValueAsLong(highSlot, lowSlot) + valueToSum);
+	}
+	
+	/**
+	 * Increment the double value held across the specified pair of slots by the specified valueToSum.
+	 * @param highSlot
+	 * @param lowSlot
+	 * @param valueToSum
+	 */
+	public void sumDoubleAccumulator(int highSlot, int lowSlot, double valueToSum) {
+		setWideValue(highSlot, lowSlot, Double.doubleToLongBits(getAccumulatorValueAsDouble(highSlot, lowSlot) + valueToSum));
+	}
+	
+	@Override
+	public long getAccumulatorValueAsLong(int highSlot, int lowSlot) {
+		return toLong(accumulators.getValue(highSlot), accumulators.getValue(lowSlot));
+	}
+	
+	@Override
+	public double getAccumulatorValueAsDouble(int highSlot, int lowSlot) {
+		return Double.longBitsToDouble(getAccumulatorValueAsLong(highSlot, lowSlot));
+	}
+	
+	private void setWideValue(int highSlot, int lowSlot, long value){
+		accumulators.setValue(highSlot, (int)(value >>> 32));
+		accumulators.setValue(lowSlot, (int)value);
+	}
+	
+	private static long toLong(int highWord, int lowWord){
+		return ((long)highWord << 32) | (lowWord & 0xFFFFFFFFL);
 	}
 
 	/**
-	 * Returns an accumulator provider that represents a copy of the data at the moment this method was invoked.
+	 * Returns an accumulator provider that represents a copy of the data at the moment this method was invoked. Only
+	 * the lines written to since the last {@link #clear()} are included, so the cost of this call is proportional to
+	 * the lines touched rather then the size of the model. The lines are shared with the returned provider rather then
+	 * copied so, once it has been read, it should be {@link AccumulatorProvider#release() released} in order for this
+	 * accumulator to recycle them.
 	 * @return
 	 */
 	public AccumulatorProvider<T> getAccumulatorProvider() {
 		
 		//LOG.debug("current maxId: {}", lookup.getMaxIndex());
 		
-		return new MemorySafeAccumulatorProvider<T>(accumulators, lookup.getMaxIndex(), finalAccumulatorLineSize, lookup);
+		return new MemorySafeAccumulatorProvider<T>(accumulators.snapshot(), lookup.getMaxIndex(), accumulators.finalAccumulatorBitSize, lookup);
+	}
+	
+	/**
+	 * This accumulator is not a snapshot so holds nothing that can be released. Use {@link #clear()} to reset it.
+	 */
+	@Override
+	public void release() {
+		// NoOp
+	}
+	
+	/**
+	 * Returns the number of accumulator lines that have been newly allocated by this accumulator. Once the model has
+	 * reached its working size this should no longer increase between micro batches.
+	 * @return
+	 */
+	public long getNumLinesAllocated() {
+		return accumulators.getNumLinesAllocated();
+	}
+	
+	/**
+	 * Returns the number of accumulator lines that have been reused from previous micro batches.
+	 * @return
+	 */
+	public long getNumLinesRecycled() {
+		return accumulators.getNumLinesRecycled();
 	}
 	
 	/**
@@ -260,69 +291,44 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 	 * @return
 	 */
 	public int getMaxIndex() {
-		return phyisicalLimitOfAccumulator;
+		return accumulators.getMaxIndex();
 	}
 
 	/**
-	 * enforces a memory barrier so that other threads can read the contents
-	 * of this accumulator
+	 * A read only view of the lines of an accumulator at the point it was created. The lines are not written to again
+	 * until the provider is released so, once published to another thread, can be read safely without any further
+	 * copying.
 	 * @author haines
 	 *
 	 */
 	private static class MemorySafeAccumulatorProvider<E extends Event> implements AccumulatorProvider<E>{
 
-		private final int[] accumulators;
+		private final AccumulatorStore.Snapshot snapshot;
 		private final int maxIndex;
-		private final int finalAccumulatorLineSize;
+		private final int finalAccumulatorBitSize;
+		private final int finalAccumulatorMask;
 		private final AccumulatorLookupStrategy<? super E> lookupStrategy;
 		
-		public MemorySafeAccumulatorProvider(int[][][] accumulators, int maxIndex, int finalAccumulatorLineSize, AccumulatorLookupStrategy<? super E> lookupStrategy) {
-			maxIndex = maxIndex+1;
-			
-			int[] accumulatorArray = new int[maxIndex];
-			
-			this.finalAccumulatorLineSize = finalAccumulatorLineSize;
-			deepCopy(accumulators, accumulatorArray, maxIndex);
-			
-			this.accumulators = accumulatorArray; 
-			this.maxIndex = maxIndex;
+		public MemorySafeAccumulatorProvider(AccumulatorStore.Snapshot snapshot, int maxIndex, int finalAccumulatorBitSize, AccumulatorLookupStrategy<? super E> lookupStrategy) {
+			this.snapshot = snapshot;
+			this.maxIndex = maxIndex+1;
+			this.finalAccumulatorBitSize = finalAccumulatorBitSize;
+			this.finalAccumulatorMask = (1 << finalAccumulatorBitSize) - 1;
 			this.lookupStrategy = lookupStrategy.copy();
 		}
 
-		private void deepCopy(int[][][] src, int[] dest, int maxIdx) {
-			
-			int firstIdx = 0;
-			int secondIdx = 0;
-			int[][] firstLine = src[firstIdx++];
-			int[] secondLine = null;
-			
-			for (int i = 0; i < maxIdx; i+=finalAccumulatorLineSize){
-
-				
-				if (secondIdx == firstLine.length){
-					if (firstIdx == src.length){
-						break;
-					}
-					firstLine = src[firstIdx++];
-					secondIdx = 0;
-				}
-				
-				secondLine = firstLine[secondIdx++];
-				
-				if (secondLine != null){	
-					
-					System.arraycopy(secondLine, 0, dest, i, Math.min((dest.length - i), secondLine.length));
-				}
-			}
-		}
-
 		@Override
 		public int getAccumulatorValue(int slot){
 			if (slot < maxIndex){
-				return accumulators[slot];
+				return snapshot.getValue(slot >>> finalAccumulatorBitSize, slot & finalAccumulatorMask);
 			}
 			return 0;
 		}
+		
+		@Override
+		public void release() {
+			snapshot.release();
+		}
 
 		@Override
 		public AccumulatorLookupStrategy<? super E> getLookupStrategy() {
@@ -333,5 +339,15 @@ public abstract class Accumulator<T extends Event> implements EventConsumer<T>,
 		public float getAccumulatorValueAsFloat(int slot) {
 			return Float.intBitsToFloat(getAccumulatorValue(slot));
 		}
+
+		@Override
+		public long getAccumulatorValueAsLong(int highSlot, int lowSlot) {
+			return toLong(getAccumulatorValue(highSlot), getAccumulatorValue(lowSlot));
+		}
+
+		@Override
+		public double getAccumulatorValueAsDouble(int highSlot, int lowSlot) {
+			return Double.longBitsToDouble(getAccumulatorValueAsLong(highSlot, lowSlot));
+		}
 	}
 }
\ No newline at end of file
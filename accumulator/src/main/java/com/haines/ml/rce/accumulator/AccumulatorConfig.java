@@ -2,9 +2,32 @@ package com.haines.ml.rce.accumulator;
 
 public interface AccumulatorConfig {
 
+	public static final int NO_FEATURE_HASHING = 0;
+
+	public static enum StorageType {
+		HEAP, // accumulator lines are int arrays on the java heap
+		OFF_HEAP; // accumulator lines are direct buffers outside of the java heap and recycled between micro batches
+	}
+	
 	int getFirstAccumulatorLineBitDepth();
 	
 	int getSecondAccumulatorLineBitDepth();
 	
 	int getFinalAccumulatorLineBitDepth(); 
+	
+	StorageType getStorageType();
+	
+	/**
+	 * The number of bits of the fixed slot space that discrete features are hashed into, when the lookup strategy hashes
+	 * features straight to slots rather then indexing them. {@link #NO_FEATURE_HASHING} indexes features as usual.
+	 * @return
+	 */
+	int getFeatureHashingBitDepth();
+	
+	/**
+	 * The number of alternative slots, each chosen by a different hash, that a hashed feature can claim before it has to
+	 * share a slot with another feature.
+	 * @return
+	 */
+	int getFeatureHashingNumHashes();
 }
@@ -14,6 +14,13 @@ import com.haines.ml.rce.model.Feature;
  */
 public interface AccumulatorLookupStrategy<T extends Event> extends PosteriorAccumulatorLookupStrategy, ClassificationAccumulatorLookupStrategy{
 
+	/**
+	 * Called before any slots of an event are looked up, allowing strategies to resolve state shared by all of the
+	 * event's lookups, such as the ids of its classifications, once rather then for every feature.
+	 * @param event
+	 */
+	void startEvent(T event);
+
 	/**
 	 * Given a feature and an event that contains this feature, return a number of slots that can be used to represent this feature's
 	 * accumulated value in the model.
@@ -23,6 +30,18 @@ public interface AccumulatorLookupStrategy<T extends Event> extends PosteriorAcc
 	 */
 	int[] getSlots(Feature feature, T event);
 	
+	/**
+	 * Given a feature and an event that contains this feature, write the slots that represent this feature's accumulated
+	 * value in the model into the provided, caller owned, buffer so that no arrays are allocated per event. The number
+	 * of slots is always returned but they are only written if the buffer is long enough to hold them all, allowing
+	 * callers to grow the buffer and try again.
+	 * @param feature
+	 * @param event
+	 * @param slotBuffer
+	 * @return the number of slots for this feature
+	 */
+	int getSlots(Feature feature, T event, int[] slotBuffer);
+	
 	/**
 	 * Given a classification and an event, return the slot that this maps to.
 	 * @param classification
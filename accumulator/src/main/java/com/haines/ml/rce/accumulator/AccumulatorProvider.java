@@ -24,9 +24,32 @@ public interface AccumulatorProvider<E extends Event> {
 	 */
 	float getAccumulatorValueAsFloat(int slot);
 	
+	/**
+	 * Returns the 64 bit integer value held across a pair of slots. Values that would overflow a single slot, such as
+	 * counts over long windows, are split into their upper and lower 32 bits, each held in its own slot.
+	 * @param highSlot the slot holding the upper 32 bits
+	 * @param lowSlot the slot holding the lower 32 bits
+	 * @return
+	 */
+	long getAccumulatorValueAsLong(int highSlot, int lowSlot);
+	
+	/**
+	 * Returns the double precision floating point value held across a pair of slots.
+	 * @param highSlot the slot holding the upper 32 bits
+	 * @param lowSlot the slot holding the lower 32 bits
+	 * @return
+	 */
+	double getAccumulatorValueAsDouble(int highSlot, int lowSlot);
+	
 	/**
 	 * Returns the strategy that links to this accumulator
 	 * @return
 	 */
 	AccumulatorLookupStrategy<? super E> getLookupStrategy();
+	
+	/**
+	 * Indicates that nothing will read from this provider again so that the memory behind it can be reused by the
+	 * accumulator that created it. Only the first call has any effect and it can be made from any thread.
+	 */
+	void release();
 }
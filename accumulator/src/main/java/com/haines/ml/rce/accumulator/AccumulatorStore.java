@@ -0,0 +1,215 @@
+package com.haines.ml.rce.accumulator;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The memory behind an {@link Accumulator}. Slots are split into fixed size accumulator lines that are only
+ * allocated when first written to. The higher bits of a slot index into a two level trie of lines and the lower
+ * bits index into the line itself. Implementations decide where the lines live but are expected to recycle lines
+ * between clears rather then allocate new ones, counting both so that the steady state allocation rate can be
+ * observed. The indexes of the lines in use since the last clear are tracked so that clearing and snapshotting
+ * the store costs in proportion to the lines touched rather then the size of the model. Not thread safe, bar the
+ * counters which can be read from any thread.
+ * @author haines
+ *
+ */
+abstract class AccumulatorStore {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AccumulatorStore.class);
+	
+	protected final int firstAccumulatorLineSize;
+	protected final int secondAccumulatorLineSize;
+	protected final int finalAccumulatorLineSize;
+	protected final int finalAccumulatorBitSize;
+	private final int finalAccumulatorMask;
+	private final int lineIndexMask;
+	private final int phyisicalLimitOfAccumulator;
+	private int[] liveLineIdxs;
+	private int numLiveLines;
+	private int maxLiveLineIdx;
+	private volatile long numLinesAllocated;
+	private volatile long numLinesRecycled;
+	
+	protected AccumulatorStore(AccumulatorConfig config){
+		this.firstAccumulatorLineSize = (int)Math.pow(2, config.getFirstAccumulatorLineBitDepth());
+		this.secondAccumulatorLineSize = (int)Math.pow(2, config.getSecondAccumulatorLineBitDepth());
+		this.finalAccumulatorBitSize = config.getFinalAccumulatorLineBitDepth();
+		this.finalAccumulatorLineSize = (int)Math.pow(2, finalAccumulatorBitSize);
+		
+		if (LOG.isDebugEnabled()){
+			printAccumulatorConfig(firstAccumulatorLineSize, secondAccumulatorLineSize, finalAccumulatorLineSize);
+		}
+		this.finalAccumulatorMask = finalAccumulatorLineSize-1;
+		int firstAccumulatorShift = finalAccumulatorBitSize + config.getSecondAccumulatorLineBitDepth();
+		int firstAccumulatorLineIndexMask = (firstAccumulatorLineSize-1) << firstAccumulatorShift; // shift 18
+		int secondAccumulatorLineIndexMask = (secondAccumulatorLineSize-1) << finalAccumulatorBitSize; // shift 12
+		this.lineIndexMask = firstAccumulatorLineIndexMask | secondAccumulatorLineIndexMask;
+		this.phyisicalLimitOfAccumulator = (firstAccumulatorLineSize * secondAccumulatorLineSize * finalAccumulatorLineSize) - 1;
+		this.liveLineIdxs = new int[Math.min(firstAccumulatorLineSize * secondAccumulatorLineSize, 64)];
+		this.maxLiveLineIdx = -1;
+	}
+	
+	static AccumulatorStore create(AccumulatorConfig config){
+		switch (config.getStorageType()){
+			case HEAP:{
+				return new HeapAccumulatorStore(config);
+			} case OFF_HEAP:{
+				return new DirectAccumulatorStore(config);
+			} default:{
+				throw new IllegalArgumentException("unknown storage type: "+config.getStorageType());
+			}
+		}
+	}
+	
+	private static void printAccumulatorConfig(int firstLineLength, int secondLineLength, int finalAccumulatorLineSize) {
+		
+		int totalLineSize = firstLineLength * secondLineLength;
+		int totalAccumulatorSize = (totalLineSize*finalAccumulatorLineSize);
+		LOG.debug("initalising multi dimensional accumulator with dimensions ["+firstLineLength+"]["+secondLineLength+"]["+finalAccumulatorLineSize+"].\n\tMinimal memory requirements = "+totalLineSize+" * 32bits = "+totalLineSize * 32+"\n\tMaximum memory requirements = "+totalAccumulatorSize+" * 32bits = "+(totalAccumulatorSize * 32));
+	}
+	
+	protected final int getAccumulatorIdx(int slot) {
+		return (slot & finalAccumulatorMask);
+	}
+	
+	/**
+	 * Returns the index of the slot's line were the trie flattened so that line i holds slots
+	 * [i * lineSize, (i+1) * lineSize)
+	 * @param slot
+	 * @return
+	 */
+	protected final int getLineIdx(int slot){
+		return (slot & lineIndexMask) >>> finalAccumulatorBitSize;
+	}
+	
+	/**
+	 * Records that the line at the given flattened index has gone from being empty to holding values.
+	 * @param lineIdx
+	 */
+	protected final void lineLive(int lineIdx){
+		if (numLiveLines == liveLineIdxs.length){
+			liveLineIdxs = Arrays.copyOf(liveLineIdxs, liveLineIdxs.length * 2);
+		}
+		liveLineIdxs[numLiveLines++] = lineIdx;
+		
+		if (lineIdx > maxLiveLineIdx){
+			maxLiveLineIdx = lineIdx;
+		}
+	}
+	
+	protected final int getNumLiveLines(){
+		return numLiveLines;
+	}
+	
+	protected final int getLiveLineIdx(int liveLineNum){
+		return liveLineIdxs[liveLineNum];
+	}
+	
+	protected final int getMaxLiveLineIdx(){
+		return maxLiveLineIdx;
+	}
+	
+	/**
+	 * Returns a copy of the flattened indexes of the lines in use since the last clear.
+	 * @return
+	 */
+	protected final int[] copyLiveLineIdxs(){
+		return Arrays.copyOf(liveLineIdxs, numLiveLines);
+	}
+	
+	protected final void clearLiveLines(){
+		numLiveLines = 0;
+		maxLiveLineIdx = -1;
+	}
+	
+	protected final void lineAllocated(){
+		numLinesAllocated++; // single writer
+	}
+	
+	protected final void lineRecycled(){
+		numLinesRecycled++; // single writer
+	}
+	
+	/**
+	 * Returns the number of lines that have been newly allocated over the lifetime of this store.
+	 * @return
+	 */
+	long getNumLinesAllocated(){
+		return numLinesAllocated;
+	}
+	
+	/**
+	 * Returns the number of times a line has been reused from a previous micro batch instead of being allocated.
+	 * @return
+	 */
+	long getNumLinesRecycled(){
+		return numLinesRecycled;
+	}
+	
+	/**
+	 * Returns the maximum slot number that this store can represent.
+	 * @return
+	 */
+	int getMaxIndex(){
+		return phyisicalLimitOfAccumulator;
+	}
+	
+	abstract int getValue(int slot);
+	
+	abstract void setValue(int slot, int value);
+	
+	abstract void increment(int slot);
+	
+	abstract void decrement(int slot);
+	
+	/**
+	 * Resets every slot back to 0, returning the lines that were written to for reuse.
+	 */
+	abstract void clear();
+	
+	/**
+	 * Returns a view of the current values. The lines behind the snapshot are never written to by this store while
+	 * the snapshot holds them, so that it can be read by other threads once safely published. Once nothing will read
+	 * from the snapshot again it should be {@link Snapshot#release() released} so that its lines can be recycled by
+	 * this store on its next {@link #clear()}.
+	 * @return
+	 */
+	abstract Snapshot snapshot();
+	
+	/**
+	 * A read only view of the lines of a store at the point it was taken. Each line is held by at most one snapshot
+	 * so that, once released, the lines can be handed straight back to the store that created it. Releasing can
+	 * happen on any thread and only the first release has any effect.
+	 * @author haines
+	 *
+	 */
+	abstract static class Snapshot{
+		
+		private final AtomicBoolean released = new AtomicBoolean(false);
+		
+		/**
+		 * Returns the value at the given index of the line at the given flattened line index, or 0 if the line was
+		 * never written to.
+		 * @param lineIdx
+		 * @param accumulatorIdx
+		 * @return
+		 */
+		abstract int getValue(int lineIdx, int accumulatorIdx);
+		
+		/**
+		 * Hands the lines of this snapshot back to the store that created it. The snapshot must not be read from
+		 * once released.
+		 */
+		final void release(){
+			if (released.compareAndSet(false, true)){
+				returnLines();
+			}
+		}
+		
+		protected abstract void returnLines();
+	}
+}
@@ -1,5 +1,7 @@
 package com.haines.ml.rce.accumulator;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -14,6 +16,7 @@ import com.haines.ml.rce.model.Event;
 import com.haines.ml.rce.model.EventConsumer;
 import com.haines.ml.rce.model.PipelinedEventConsumer;
 import com.haines.ml.rce.model.system.Clock;
+import com.haines.ml.rce.model.system.MicroBatchListener;
 import com.haines.ml.rce.model.system.SystemStartedListener;
 
 /**
@@ -30,6 +33,7 @@ public class AsyncPipelineAccumulatorController<E extends Event, T extends Accum
 	private final Iterable<? extends PipelinedEventConsumer<E, ? extends Accumulator<E>>> consumers;
 	private final EventConsumer<AccumulatedEvent<T>> accumulatorConsumer;
 	private final ScheduledExecutorService executorService;
+	private final List<MicroBatchListener> microBatchListeners;
 	private volatile boolean isRunning;
 	
 	@Inject
@@ -39,6 +43,15 @@ public class AsyncPipelineAccumulatorController<E extends Event, T extends Accum
 		this.consumers = consumers;
 		this.accumulatorConsumer = accumulatorConsumer;
 		this.executorService = executorService;
+		this.microBatchListeners = new CopyOnWriteArrayList<MicroBatchListener>();
+	}
+	
+	/**
+	 * Registers a listener that is notified each time all the live accumulators have been switched and pushed downstream.
+	 * @param listener
+	 */
+	public void addMicroBatchListener(MicroBatchListener listener){
+		microBatchListeners.add(listener);
 	}
 
 	@Override
@@ -56,6 +69,10 @@ public class AsyncPipelineAccumulatorController<E extends Event, T extends Accum
 			
 			super.pushToPipe(stagingConsumer, accumulatorConsumer);
 		}
+		
+		for (MicroBatchListener listener: microBatchListeners){
+			listener.microBatchEnded();
+		}
 	}
 
 	@Override
@@ -0,0 +1,205 @@
+package com.haines.ml.rce.accumulator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores accumulator lines in direct buffers, outside of the java heap, so that the size of the model has no bearing
+ * on the size of the heap or the length of garbage collection pauses. Only the line index lives on the heap. As direct
+ * memory is expensive to allocate and is only released when its buffer is collected, lines are never given up once
+ * allocated. Instead {@link #clear()} zeros each line that was written to and returns it to a free list from which the
+ * next line to be written to is taken. The total size of the lines is bounded by <code>-XX:MaxDirectMemorySize</code>.
+ * Snapshots hand out the direct lines themselves rather then copying them onto the heap. As with the
+ * {@link HeapAccumulatorStore}, a snapshotted line is copied into a line of this store's own the next time it is
+ * written to and is zeroed and put back on the free list by the first clear after its snapshot is released.
+ * @author haines
+ *
+ */
+class DirectAccumulatorStore extends AccumulatorStore{
+
+	private static final Logger LOG = LoggerFactory.getLogger(DirectAccumulatorStore.class);
+	
+	private static final int BYTES_PER_ACCUMULATOR = Integer.SIZE / Byte.SIZE;
+	
+	private final IntBuffer[] accumulators; // lines owned, and so writable, by this store, indexed by flattened line index
+	private final IntBuffer[] sharedAccumulators; // lines handed to a snapshot that must be copied before they are written to
+	private final Deque<IntBuffer> freeLines;
+	private final Queue<DirectSnapshot> releasedSnapshots;
+	private final int[] zeroLine;
+	
+	DirectAccumulatorStore(AccumulatorConfig config){
+		super(config);
+		
+		this.accumulators = new IntBuffer[firstAccumulatorLineSize * secondAccumulatorLineSize];
+		this.sharedAccumulators = new IntBuffer[accumulators.length];
+		this.freeLines = new ArrayDeque<IntBuffer>();
+		this.releasedSnapshots = new ConcurrentLinkedQueue<DirectSnapshot>();
+		this.zeroLine = new int[finalAccumulatorLineSize];
+	}
+	
+	private IntBuffer getAccumulatorLine(int slot){
+		int lineIdx = getLineIdx(slot);
+		
+		IntBuffer line = accumulators[lineIdx];
+		if (line == null){
+			line = takeFreeLine();
+			
+			IntBuffer sharedLine = sharedAccumulators[lineIdx];
+			if (sharedLine != null){ // copy on write
+				copyLine(sharedLine, line);
+				
+				sharedAccumulators[lineIdx] = null;
+			} else{
+				lineLive(lineIdx);
+			}
+			accumulators[lineIdx] = line;
+		}
+		return line;
+	}
+	
+	private IntBuffer takeFreeLine(){
+		IntBuffer line = freeLines.poll();
+		
+		if (line == null){
+			line = ByteBuffer.allocateDirect(finalAccumulatorLineSize * BYTES_PER_ACCUMULATOR).order(ByteOrder.nativeOrder()).asIntBuffer();
+			
+			lineAllocated();
+		} else{
+			lineRecycled();
+		}
+		return line;
+	}
+	
+	private static void copyLine(IntBuffer source, IntBuffer destination){
+		IntBuffer sourceView = source.duplicate(); // leave the position of a line that other threads may be reading alone
+		
+		sourceView.clear();
+		destination.clear();
+		destination.put(sourceView);
+	}
+	
+	@Override
+	int getValue(int slot) {
+		int lineIdx = getLineIdx(slot);
+		
+		IntBuffer line = accumulators[lineIdx];
+		if (line == null){
+			line = sharedAccumulators[lineIdx];
+			
+			if (line == null){
+				return 0; // no need to allocate a line just to read it
+			}
+		}
+		return line.get(getAccumulatorIdx(slot));
+	}
+
+	@Override
+	void setValue(int slot, int value) {
+		getAccumulatorLine(slot).put(getAccumulatorIdx(slot), value);
+	}
+
+	@Override
+	void increment(int slot) {
+		IntBuffer line = getAccumulatorLine(slot);
+		int accumulatorIdx = getAccumulatorIdx(slot);
+		
+		line.put(accumulatorIdx, line.get(accumulatorIdx) + 1);
+	}
+
+	@Override
+	void decrement(int slot) {
+		IntBuffer line = getAccumulatorLine(slot);
+		int accumulatorIdx = getAccumulatorIdx(slot);
+		
+		line.put(accumulatorIdx, line.get(accumulatorIdx) - 1);
+	}
+
+	@Override
+	void clear() {
+		LOG.debug("clearing and recycling accumulator lines for thread {}", Thread.currentThread().getName());
+		
+		for (int i = 0; i < getNumLiveLines(); i++){
+			int lineIdx = getLiveLineIdx(i);
+			
+			IntBuffer line = accumulators[lineIdx];
+			if (line != null){
+				recycleLine(line);
+				
+				accumulators[lineIdx] = null;
+			}
+			sharedAccumulators[lineIdx] = null; // now solely owned by the snapshot
+		}
+		clearLiveLines();
+		
+		recycleReleasedSnapshots();
+	}
+	
+	private void recycleReleasedSnapshots(){
+		DirectSnapshot snapshot;
+		while ((snapshot = releasedSnapshots.poll()) != null){
+			for (int lineIdx: snapshot.lineIdxs){
+				recycleLine(snapshot.lines[lineIdx]);
+			}
+		}
+	}
+	
+	private void recycleLine(IntBuffer line){
+		line.clear();
+		line.put(zeroLine); // bulk copy of zeros
+		
+		freeLines.push(line);
+	}
+
+	@Override
+	Snapshot snapshot() {
+		IntBuffer[] lines = new IntBuffer[getMaxLiveLineIdx() + 1];
+		
+		for (int i = 0; i < getNumLiveLines(); i++){
+			int lineIdx = getLiveLineIdx(i);
+			
+			IntBuffer line = accumulators[lineIdx];
+			if (line != null){ // share rather then copy
+				sharedAccumulators[lineIdx] = line;
+				accumulators[lineIdx] = null;
+			} else{ // already held by an earlier snapshot that has not been written to since. Copy so each snapshot owns its lines
+				line = takeFreeLine();
+				
+				copyLine(sharedAccumulators[lineIdx], line);
+			}
+			lines[lineIdx] = line;
+		}
+		return new DirectSnapshot(lines, copyLiveLineIdxs());
+	}
+	
+	private class DirectSnapshot extends Snapshot{
+		
+		private final IntBuffer[] lines;
+		private final int[] lineIdxs;
+		
+		private DirectSnapshot(IntBuffer[] lines, int[] lineIdxs){
+			this.lines = lines;
+			this.lineIdxs = lineIdxs;
+		}
+
+		@Override
+		int getValue(int lineIdx, int accumulatorIdx) {
+			if (lineIdx < lines.length && lines[lineIdx] != null){
+				return lines[lineIdx].get(accumulatorIdx); // absolute reads leave the buffer's state alone
+			}
+			return 0;
+		}
+
+		@Override
+		protected void returnLines() {
+			releasedSnapshots.offer(this);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.haines.ml.rce.accumulator;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores accumulator lines as int arrays on the java heap. Rather then dropping every line when cleared, which makes
+ * each micro batch a burst of garbage the size of the model, lines that were written to are zeroed and kept on a free
+ * list from which the next line to be written to is taken. Once the model reaches its working size no further lines
+ * are allocated. As clearing happens once the accumulator has been switched out of the live pipeline, the zeroing is
+ * kept off the event path.
+ * <p>
+ * Snapshots hand out the lines themselves rather then copies. Once snapshotted a line is shared and is copied into a
+ * line of this store's own the next time it is written to. As the pipeline clears an accumulator straight after taking
+ * its snapshot, shared lines are normally just forgotten and never copied. Shared lines are owned by their snapshot
+ * until it is released, possibly by another thread, after which they are zeroed and put back on the free list by the
+ * next clear.
+ * @author haines
+ *
+ */
+class HeapAccumulatorStore extends AccumulatorStore{
+
+	private static final Logger LOG = LoggerFactory.getLogger(HeapAccumulatorStore.class);
+	
+	private final int[][] accumulators; // lines owned, and so writable, by this store
+	private final int[][] sharedAccumulators; // lines handed to a snapshot that must be copied before they are written to
+	private final Deque<int[]> freeLines;
+	private final Queue<HeapSnapshot> releasedSnapshots;
+	
+	HeapAccumulatorStore(AccumulatorConfig config){
+		super(config);
+		
+		this.accumulators = new int[firstAccumulatorLineSize * secondAccumulatorLineSize][]; // 4096 * 32 bits memory footprint for structure (16KB)
+		this.sharedAccumulators = new int[accumulators.length][];
+		this.freeLines = new ArrayDeque<int[]>();
+		this.releasedSnapshots = new ConcurrentLinkedQueue<HeapSnapshot>();
+	}
+	
+	private int[] getAccumulatorLine(int slot){
+		int lineIdx = getLineIdx(slot);
+		
+		int[] line = accumulators[lineIdx];
+		if (line == null){
+			line = newAccumulatorLine(lineIdx);
+			accumulators[lineIdx] = line;
+		}
+		return line;
+	}
+	
+	private int[] takeFreeLine(){
+		int[] line = freeLines.poll();
+		
+		if (line == null){
+			line = new int[finalAccumulatorLineSize];
+			
+			lineAllocated();
+		} else{
+			lineRecycled();
+		}
+		return line;
+	}
+	
+	private int[] newAccumulatorLine(int lineIdx){
+		int[] line = takeFreeLine();
+		
+		int[] sharedLine = sharedAccumulators[lineIdx];
+		if (sharedLine != null){ // copy on write
+			System.arraycopy(sharedLine, 0, line, 0, finalAccumulatorLineSize);
+			
+			sharedAccumulators[lineIdx] = null;
+		} else{
+			lineLive(lineIdx);
+		}
+		return line;
+	}
+	
+	@Override
+	int getValue(int slot) {
+		int lineIdx = getLineIdx(slot);
+		
+		int[] line = accumulators[lineIdx];
+		if (line == null){
+			line = sharedAccumulators[lineIdx];
+			
+			if (line == null){
+				return 0; // no need to allocate a line just to read it
+			}
+		}
+		return line[getAccumulatorIdx(slot)];
+	}
+
+	@Override
+	void setValue(int slot, int value) {
+		getAccumulatorLine(slot)[getAccumulatorIdx(slot)] = value;
+	}
+
+	@Override
+	void increment(int slot) {
+		getAccumulatorLine(slot)[getAccumulatorIdx(slot)]++;
+	}
+
+	@Override
+	void decrement(int slot) {
+		getAccumulatorLine(slot)[getAccumulatorIdx(slot)]--;
+	}
+
+	@Override
+	void clear() {
+		LOG.debug("clearing and recycling accumulator lines for thread {}", Thread.currentThread().getName());
+		for (int i = 0; i < getNumLiveLines(); i++){
+			int lineIdx = getLiveLineIdx(i);
+			
+			int[] line = accumulators[lineIdx];
+			if (line != null){
+				Arrays.fill(line, 0);
+				
+				freeLines.push(line);
+				accumulators[lineIdx] = null;
+			}
+			sharedAccumulators[lineIdx] = null; // now solely owned by the snapshot
+		}
+		clearLiveLines();
+		
+		recycleReleasedSnapshots();
+	}
+	
+	private void recycleReleasedSnapshots(){
+		HeapSnapshot snapshot;
+		while ((snapshot = releasedSnapshots.poll()) != null){
+			for (int lineIdx: snapshot.lineIdxs){
+				int[] line = snapshot.lines[lineIdx];
+				
+				Arrays.fill(line, 0);
+				
+				freeLines.push(line);
+			}
+		}
+	}
+
+	@Override
+	Snapshot snapshot() {
+		int[][] lines = new int[getMaxLiveLineIdx() + 1][];
+		
+		for (int i = 0; i < getNumLiveLines(); i++){
+			int lineIdx = getLiveLineIdx(i);
+			
+			int[] line = accumulators[lineIdx];
+			if (line != null){ // share rather then copy
+				sharedAccumulators[lineIdx] = line;
+				accumulators[lineIdx] = null;
+			} else{ // already held by an earlier snapshot that has not been written to since. Copy so each snapshot owns its lines
+				line = takeFreeLine();
+				
+				System.arraycopy(sharedAccumulators[lineIdx], 0, line, 0, finalAccumulatorLineSize);
+			}
+			lines[lineIdx] = line;
+		}
+		return new HeapSnapshot(lines, copyLiveLineIdxs());
+	}
+	
+	private class HeapSnapshot extends Snapshot{
+		
+		private final int[][] lines;
+		private final int[] lineIdxs;
+		
+		private HeapSnapshot(int[][] lines, int[] lineIdxs){
+			this.lines = lines;
+			this.lineIdxs = lineIdxs;
+		}
+
+		@Override
+		int getValue(int lineIdx, int accumulatorIdx) {
+			if (lineIdx < lines.length && lines[lineIdx] != null){
+				return lines[lineIdx][accumulatorIdx];
+			}
+			return 0;
+		}
+
+		@Override
+		protected void returnLines() {
+			releasedSnapshots.offer(this);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.haines.ml.rce.accumulator;
 
+import java.util.List;
+
 import javax.inject.Inject;
 
 import org.slf4j.Logger;
@@ -7,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import com.haines.ml.rce.accumulator.model.AccumulatedEvent;
 import com.haines.ml.rce.dispatcher.DisruptorConsumer;
+import com.haines.ml.rce.model.BatchEventConsumer;
 import com.haines.ml.rce.model.Event;
 import com.haines.ml.rce.model.EventConsumer;
 import com.haines.ml.rce.model.system.SystemStoppedListener;
@@ -18,7 +21,7 @@ import com.haines.ml.rce.model.system.SystemStoppedListener;
  * @param <E>
  * @param <T>
  */
-public class SyncPipelineEventConsumer<E extends Event, T extends AccumulatorLookupStrategy<? super E>> implements EventConsumer<E>, SystemStoppedListener  {
+public class SyncPipelineEventConsumer<E extends Event, T extends AccumulatorLookupStrategy<? super E>> implements BatchEventConsumer<E>, SystemStoppedListener  {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SyncPipelineEventConsumer.class);
 	
@@ -44,6 +47,24 @@ public class SyncPipelineEventConsumer<E extends Event, T extends AccumulatorLoo
 		controller.pushIfRequired(eventConsumer, nextStageConsumer);
 	}
 	
+	/**
+	 * Accumulates the whole batch before checking whether the accumulators need to be pushed downstream.
+	 */
+	@Override
+	public void consumeBatch(List<? extends E> events) {
+		for (int i = 0; i < events.size(); i++){
+			E event = events.get(i);
+			
+			if (event != Event.HEARTBEAT){
+				eventConsumer.consume(event);
+			} else{
+				LOG.info("Recieved heart beat.");
+			}
+		}
+		
+		controller.pushIfRequired(eventConsumer, nextStageConsumer);
+	}
+	
 	@Override
 	public void systemStopped() {
 		eventConsumer.clear();
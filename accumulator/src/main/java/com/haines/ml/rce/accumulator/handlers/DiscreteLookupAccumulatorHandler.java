@@ -22,9 +22,16 @@ public class DiscreteLookupAccumulatorHandler<T extends Event> implements Featur
 	@Override
 	public void increment(Feature feature, T event, Accumulator<?> accumulator, AccumulatorLookupStrategy<? super T> lookup) {
 		
-		int[] slots = lookup.getSlots(feature, event);
+		int[] slots = accumulator.getSlotBuffer();
+		int numSlots = lookup.getSlots(feature, event, slots);
 		
-		accumulator.incrementAccumulators(slots);
+		if (numSlots > slots.length){ // only happens until the buffer has grown to fit the feature with the most slots
+			slots = accumulator.getSlotBuffer(numSlots);
+			
+			lookup.getSlots(feature, event, slots);
+		}
+		
+		accumulator.incrementAccumulators(slots, numSlots);
 	}
 
 	@Override
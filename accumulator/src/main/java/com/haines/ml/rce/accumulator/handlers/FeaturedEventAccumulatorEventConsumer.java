@@ -20,6 +20,8 @@ public class FeaturedEventAccumulatorEventConsumer<T extends FeaturedEvent> exte
 	@Override
 	public void consume(T event) {
 		
+		lookup.startEvent(event);
+		
 		for (Feature feature: event.getFeaturesList()){
 			handlers.getFeatureHandler(feature).increment(feature, event, this, lookup);
 		}
@@ -1,5 +1,6 @@
 package com.haines.ml.rce.accumulator.handlers;
 
+import com.google.common.primitives.Ints;
 import com.haines.ml.rce.accumulator.Accumulator;
 import com.haines.ml.rce.accumulator.AccumulatorLookupStrategy;
 import com.haines.ml.rce.accumulator.AccumulatorProvider;
@@ -16,6 +17,9 @@ import com.haines.ml.rce.model.distribution.DistributionParameters;
  * 
  * {@link http://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#Online_algorithm"},
  * 
+ * The number of samples is held as a 64 bit counter and the mean and M2 as doubles, each spread over a pair of slots,
+ * so that the estimates neither overflow nor lose precision over long windows.
+ * 
  * @author haines
  *
  * @param <T>
@@ -23,9 +27,11 @@ import com.haines.ml.rce.model.distribution.DistributionParameters;
 public class SequentialDistributionFeatureHandler<T extends ClassifiedEvent> implements FeatureHandler<T>, ClassificationHandler<T>, DistributionProvider{
 
 	private static final int NUM_GAUSSIAN_PARAMETERS = 3;
+	private static final int NUM_SLOTS_PER_PARAMETER = 2; // each parameter is 64 bits wide so spans 2 slots
+	private static final int NUM_SLOTS_REQUIRED = NUM_GAUSSIAN_PARAMETERS * NUM_SLOTS_PER_PARAMETER;
 	private static final int NUM_SAMPLES_IDX = 0;
-	private static final int MEAN_IDX = 1;
-	private static final int M2_IDX = 2;
+	private static final int MEAN_IDX = 2;
+	private static final int M2_IDX = 4;
 	
 	@Override
 	public void increment(Feature feature, T event, Accumulator<?> accumulator, AccumulatorLookupStrategy<? super T> lookup) {
@@ -36,7 +42,7 @@ public class SequentialDistributionFeatureHandler<T extends ClassifiedEvent> imp
 		
 		for (Classification classification : event.getClassificationsList()){
 			
-			int[] slots = lookup.getPosteriorSlots(feature, classification, NUM_GAUSSIAN_PARAMETERS); 
+			int[] slots = lookup.getPosteriorSlots(feature, classification, NUM_SLOTS_REQUIRED); 
 			
 			increment(x, slots, accumulator);
 		}
@@ -46,40 +52,36 @@ public class SequentialDistributionFeatureHandler<T extends ClassifiedEvent> imp
 
 		// with the slots in the accumulator now defined we now need to update them...
 		
-		accumulator.incrementAccumulator(slots[NUM_SAMPLES_IDX]); // increment n
-		
-		int meanIdx = slots[MEAN_IDX];
-		
-		float mean = getMean(accumulator, slots);
+		accumulator.incrementLongAccumulator(slots[NUM_SAMPLES_IDX], slots[NUM_SAMPLES_IDX+1]); // increment n
 		
-		double delta = x - mean;
+		double delta = x - getMean(accumulator, slots);
 		
-		accumulator.sumAccumulator(meanIdx, (float)(delta / getNumSamples(accumulator, slots))); // slight loss of precision from double to float here...
+		accumulator.sumDoubleAccumulator(slots[MEAN_IDX], slots[MEAN_IDX+1], delta / getNumSamples(accumulator, slots));
 		
-		accumulator.sumAccumulator(slots[M2_IDX], (float)(delta * (x - getMean(accumulator, slots)))); // slight loss of precision from double to float here...
+		accumulator.sumDoubleAccumulator(slots[M2_IDX], slots[M2_IDX+1], delta * (x - getMean(accumulator, slots)));
 	}
 	
 	@Override
 	public void increment(Classification classification, T event, Accumulator<?> accumulator, AccumulatorLookupStrategy<? super T> lookup) {
 		double x = ((Number)classification.getValue()).doubleValue();
 		
-		int slots[] = lookup.getClassificationSlots(classification, NUM_GAUSSIAN_PARAMETERS);
+		int slots[] = lookup.getClassificationSlots(classification, NUM_SLOTS_REQUIRED);
 		
 		increment(x, slots, accumulator);
 		
 	}
 	
-	private final float getMean(AccumulatorProvider<?> accumulator, int[] slots){
-		return accumulator.getAccumulatorValueAsFloat(slots[MEAN_IDX]);
+	private final double getMean(AccumulatorProvider<?> accumulator, int[] slots){
+		return accumulator.getAccumulatorValueAsDouble(slots[MEAN_IDX], slots[MEAN_IDX+1]);
 	}
 
-	private final int getNumSamples(AccumulatorProvider<?> accumulator, int[] slots){
-		return accumulator.getAccumulatorValue(slots[NUM_SAMPLES_IDX]);
+	private final long getNumSamples(AccumulatorProvider<?> accumulator, int[] slots){
+		return accumulator.getAccumulatorValueAsLong(slots[NUM_SAMPLES_IDX], slots[NUM_SAMPLES_IDX+1]);
 	}
 	
-	private final double getVariance(AccumulatorProvider<?> accumulator, int[] slots, int numSamples){
+	private final double getVariance(AccumulatorProvider<?> accumulator, int[] slots, long numSamples){
 		if (numSamples != 0){
-			return accumulator.getAccumulatorValueAsFloat(slots[M2_IDX]) / (numSamples -1);
+			return accumulator.getAccumulatorValueAsDouble(slots[M2_IDX], slots[M2_IDX+1]) / (numSamples -1);
 		} else{
 			return 0;
 		}
@@ -88,14 +90,14 @@ public class SequentialDistributionFeatureHandler<T extends ClassifiedEvent> imp
 	@Override
 	public <E extends Event> DistributionParameters getDistribution(AccumulatorProvider<E> accumulator, int[] slots) {
 		
-		int numSamples = getNumSamples(accumulator, slots);
+		long numSamples = getNumSamples(accumulator, slots);
 		double mean = getMean(accumulator, slots);
 		double variance = getVariance(accumulator, slots, numSamples);
 		
 		if (numSamples > 1 ){
-			return new DistributionParameters(numSamples, mean, variance);
+			return new DistributionParameters(Ints.saturatedCast(numSamples), mean, variance); // the parameters only hold an int count but the mean and variance are exact
 		} else if (numSamples == 1){
-			return new DistributionParameters(numSamples, mean, Double.NaN);
+			return new DistributionParameters(1, mean, Double.NaN);
 		}
 		else{
 			return DistributionParameters.EMPTY_DISTRIBUTION_PARAMETERS;
@@ -113,7 +115,7 @@ public class SequentialDistributionFeatureHandler<T extends ClassifiedEvent> imp
 	}
 	@Override
 	public int getNumSlotsRequired() {
-		return NUM_GAUSSIAN_PARAMETERS;
+		return NUM_SLOTS_REQUIRED;
 	}
 	
 }
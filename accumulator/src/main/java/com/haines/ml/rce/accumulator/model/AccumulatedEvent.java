@@ -3,15 +3,16 @@ package com.haines.ml.rce.accumulator.model;
 import com.haines.ml.rce.accumulator.Accumulator;
 import com.haines.ml.rce.accumulator.AccumulatorLookupStrategy;
 import com.haines.ml.rce.accumulator.AccumulatorProvider;
-import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.RecyclableEvent;
 
 /**
- * An event that represents an accumulation (using the {@link Accumulator} class) of events used for downstream processing
+ * An event that represents an accumulation (using the {@link Accumulator} class) of events used for downstream processing.
+ * Recycling the event releases its accumulator provider so that the lines behind it can be reused by the accumulator.
  * @author haines
  *
  * @param <T>
  */
-public class AccumulatedEvent<T extends AccumulatorLookupStrategy<?>> implements Event {
+public class AccumulatedEvent<T extends AccumulatorLookupStrategy<?>> implements RecyclableEvent {
 
 	private final AccumulatorProvider<?> provider;
 	private final T lookupStrategy;
@@ -28,4 +29,9 @@ public class AccumulatedEvent<T extends AccumulatorLookupStrategy<?>> implements
 	public T getLookupStrategy() {
 		return lookupStrategy;
 	}
+
+	@Override
+	public void recycle() {
+		provider.release();
+	}
 }
@@ -228,6 +228,137 @@ public class AccumulatorUnitTest {
 		assertThat(provider.getAccumulatorValue(0), is(equalTo(0)));
 	}
 	
+	@Test
+	public void givenCandidate_whenClearedBetweenMicroBatches_thenLinesRecycledRatherThenAllocated(){
+		for (int i = 0; i < 3; i++){
+			candidate.consume(createTestEvent(new int[]{1, 4097, 16777215}, 3)); // classification slot kept apart from the feature slots
+			
+			// read directly rather then through a provider so that no lines are held by an unreleased snapshot
+			assertThat(candidate.getAccumulatorValue(1), is(equalTo(1)));
+			assertThat(candidate.getAccumulatorValue(4097), is(equalTo(1)));
+			assertThat(candidate.getAccumulatorValue(16777215), is(equalTo(1)));
+			
+			candidate.clear();
+		}
+		
+		long numLinesAllocated = candidate.getNumLinesAllocated();
+		
+		assertThat(candidate.getNumLinesRecycled() >= numLinesAllocated * 2, is(equalTo(true)));
+		
+		candidate.consume(createTestEvent(new int[]{2}, 3));
+		
+		AccumulatorProvider<TestEvent> provider = candidate.getAccumulatorProvider();
+		
+		assertThat(provider.getAccumulatorValue(1), is(equalTo(0)));
+		assertThat(provider.getAccumulatorValue(2), is(equalTo(1)));
+		assertThat(provider.getAccumulatorValue(4097), is(equalTo(0)));
+		assertThat(candidate.getNumLinesAllocated(), is(equalTo(numLinesAllocated)));
+	}
+	
+	@Test
+	public void givenProvider_whenAccumulatorUpdatedAndCleared_thenProviderRemainsUnchangedAndAccumulatorRetainsCounts(){
+		candidate.consume(createTestEvent(new int[]{1, 4097}, 3)); // classification slot kept apart from the feature slots
+		
+		AccumulatorProvider<TestEvent> provider1 = candidate.getAccumulatorProvider();
+		
+		candidate.consume(createTestEvent(new int[]{1}, 3));
+		
+		assertThat(candidate.getAccumulatorValue(1), is(equalTo(2))); // written lines carry on from the shared values
+		assertThat(candidate.getAccumulatorValue(4097), is(equalTo(1)));
+		
+		AccumulatorProvider<TestEvent> provider2 = candidate.getAccumulatorProvider();
+		
+		candidate.clear();
+		candidate.consume(createTestEvent(new int[]{1, 4097}, 3));
+		
+		assertThat(provider1.getAccumulatorValue(1), is(equalTo(1)));
+		assertThat(provider1.getAccumulatorValue(4097), is(equalTo(1)));
+		assertThat(provider2.getAccumulatorValue(1), is(equalTo(2)));
+		assertThat(provider2.getAccumulatorValue(4097), is(equalTo(1)));
+		assertThat(provider2.getAccumulatorValue(8193), is(equalTo(0)));
+		assertThat(candidate.getAccumulatorValue(1), is(equalTo(1)));
+	}
+	
+	@Test
+	public void givenReleasedProviders_whenPushingMicroBatches_thenSnapshottedLinesRecycledAfterWarmUp(){
+		long numLinesAllocated = 0;
+		
+		for (int i = 0; i < 5; i++){
+			candidate.consume(createTestEvent(new int[]{1, 4097, 16777215}, 3));
+			
+			AccumulatorProvider<TestEvent> provider = candidate.getAccumulatorProvider(); // as the pipeline does on each push
+			candidate.clear();
+			
+			assertThat(provider.getAccumulatorValue(1), is(equalTo(1)));
+			assertThat(provider.getAccumulatorValue(4097), is(equalTo(1)));
+			assertThat(provider.getAccumulatorValue(16777215), is(equalTo(1)));
+			
+			provider.release();
+			
+			if (i == 1){ // one batch of lines is held by the snapshot while the next batch is accumulated
+				numLinesAllocated = candidate.getNumLinesAllocated();
+			}
+		}
+		
+		assertThat(candidate.getNumLinesAllocated(), is(equalTo(numLinesAllocated)));
+		assertThat(candidate.getAccumulatorValue(1), is(equalTo(0)));
+	}
+	
+	@Test
+	public void givenTwoProvidersOfUnchangedLines_whenFirstReleasedTwiceAndLinesReused_thenSecondProviderUnchanged(){
+		candidate.consume(createTestEvent(new int[]{1, 4097}, 3));
+		
+		AccumulatorProvider<TestEvent> provider1 = candidate.getAccumulatorProvider();
+		AccumulatorProvider<TestEvent> provider2 = candidate.getAccumulatorProvider(); // nothing written in between
+		
+		provider1.release();
+		provider1.release(); // must not put its lines back twice
+		candidate.clear();
+		
+		candidate.consume(createTestEvent(new int[]{1}, 3));
+		candidate.consume(createTestEvent(new int[]{4097, 4097}, 3));
+		
+		assertThat(provider2.getAccumulatorValue(1), is(equalTo(1)));
+		assertThat(provider2.getAccumulatorValue(4097), is(equalTo(1)));
+		assertThat(candidate.getAccumulatorValue(1), is(equalTo(1)));
+		assertThat(candidate.getAccumulatorValue(4097), is(equalTo(2)));
+	}
+	
+	@Test
+	public void givenCandidate_whenIncrementingLongAccumulatorPast32Bits_thenCountCarriedIntoHighSlot(){
+		candidate.sumLongAccumulator(4095, 4096, 0xFFFFFFFFL); // the pair straddles 2 accumulator lines
+		candidate.incrementLongAccumulator(4095, 4096);
+		
+		AccumulatorProvider<TestEvent> provider = candidate.getAccumulatorProvider();
+		
+		candidate.incrementLongAccumulator(4095, 4096);
+		
+		assertThat(provider.getAccumulatorValueAsLong(4095, 4096), is(equalTo(0x100000000L)));
+		assertThat(candidate.getAccumulatorValueAsLong(4095, 4096), is(equalTo(0x100000001L)));
+		assertThat(candidate.getAccumulatorValue(4095), is(equalTo(1)));
+		assertThat(candidate.getAccumulatorValue(4096), is(equalTo(1)));
+	}
+	
+	@Test
+	public void givenCandidate_whenSummingDoubleAccumulator_thenFullPrecisionRetained(){
+		for (int i = 0; i < 10; i++){
+			candidate.sumDoubleAccumulator(10, 11, 0.1);
+		}
+		candidate.sumLongAccumulator(12, 13, Long.MAX_VALUE - 1);
+		candidate.sumLongAccumulator(12, 13, -3);
+		
+		AccumulatorProvider<TestEvent> provider = candidate.getAccumulatorProvider();
+		
+		double expectedSum = 0;
+		for (int i = 0; i < 10; i++){
+			expectedSum += 0.1;
+		}
+		
+		assertThat(provider.getAccumulatorValueAsDouble(10, 11), is(equalTo(expectedSum)));
+		assertThat(provider.getAccumulatorValueAsLong(12, 13), is(equalTo(Long.MAX_VALUE - 4)));
+		assertThat(provider.getAccumulatorValueAsDouble(14, 15), is(equalTo(0.0))); // unwritten pairs read as 0
+	}
+	
 	protected static class TestEvent implements Event{
 		
 		private final int[] slotsToIncrement;
@@ -254,10 +385,25 @@ public class AccumulatorUnitTest {
 	
 	public static class TestEventAccumulatorLookupStrategy implements AccumulatorLookupStrategy<TestEvent>{
 
+		@Override
+		public void startEvent(TestEvent event) {
+			// NO OP
+		}
+
 		@Override
 		public int[] getSlots(Feature feature, TestEvent event) {
 			return event.getSlotsToIncrement();
 		}
+		
+		@Override
+		public int getSlots(Feature feature, TestEvent event, int[] slotBuffer) {
+			int[] slots = event.getSlotsToIncrement();
+			
+			if (slots.length <= slotBuffer.length){
+				System.arraycopy(slots, 0, slotBuffer, 0, slots.length);
+			}
+			return slots.length;
+		}
 
 		@Override
 		public int getMaxIndex() {
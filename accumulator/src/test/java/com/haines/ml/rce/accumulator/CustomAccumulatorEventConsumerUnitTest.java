@@ -27,6 +27,21 @@ public class CustomAccumulatorEventConsumerUnitTest {
 		public int getFinalAccumulatorLineBitDepth() {
 			return 4;
 		}
+		
+		@Override
+		public StorageType getStorageType() {
+			return StorageType.HEAP;
+		}
+
+		@Override
+		public int getFeatureHashingBitDepth() {
+			return NO_FEATURE_HASHING;
+		}
+
+		@Override
+		public int getFeatureHashingNumHashes() {
+			return 1;
+		}
 	};
 	
 	private static final AccumulatorConfig LARGE_TEST_CONFIG = new AccumulatorConfig() {
@@ -45,6 +60,21 @@ public class CustomAccumulatorEventConsumerUnitTest {
 		public int getFinalAccumulatorLineBitDepth() {
 			return 12;
 		}
+		
+		@Override
+		public StorageType getStorageType() {
+			return StorageType.HEAP;
+		}
+
+		@Override
+		public int getFeatureHashingBitDepth() {
+			return NO_FEATURE_HASHING;
+		}
+
+		@Override
+		public int getFeatureHashingNumHashes() {
+			return 1;
+		}
 	};
 	
 	private Accumulator<AccumulatorUnitTest.TestEvent> candidate;
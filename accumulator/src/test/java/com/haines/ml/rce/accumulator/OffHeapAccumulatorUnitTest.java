@@ -0,0 +1,84 @@
+package com.haines.ml.rce.accumulator;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+public class OffHeapAccumulatorUnitTest extends AccumulatorUnitTest{
+
+	public static final AccumulatorConfig OFF_HEAP_CONFIG = new AccumulatorConfig() {
+		
+		@Override
+		public int getSecondAccumulatorLineBitDepth() {
+			return Accumulator.DEFAULT_CONFIG.getSecondAccumulatorLineBitDepth();
+		}
+		
+		@Override
+		public int getFirstAccumulatorLineBitDepth() {
+			return Accumulator.DEFAULT_CONFIG.getFirstAccumulatorLineBitDepth();
+		}
+		
+		@Override
+		public int getFinalAccumulatorLineBitDepth() {
+			return Accumulator.DEFAULT_CONFIG.getFinalAccumulatorLineBitDepth();
+		}
+		
+		@Override
+		public StorageType getStorageType() {
+			return StorageType.OFF_HEAP;
+		}
+
+		@Override
+		public int getFeatureHashingBitDepth() {
+			return NO_FEATURE_HASHING;
+		}
+
+		@Override
+		public int getFeatureHashingNumHashes() {
+			return 1;
+		}
+	};
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	protected Accumulator<? extends TestEvent> getNewAccumulator(AccumulatorLookupStrategy<? extends TestEvent> lookupStrategy) {
+		return AccumulatorUnitTest.createNewAccumulator(OFF_HEAP_CONFIG, (AccumulatorLookupStrategy<TestEvent>)lookupStrategy);
+	}
+	
+	@Test
+	public void givenCandidate_whenClearingAndReusingLines_thenAccumulatorsStartFromZero(){
+		for (int i = 0; i < 10; i++){
+			candidate.consume(createTestEvent(new int[]{1, 4097, 16777215}, getClassificationSlot(new int[]{1})));
+		}
+		
+		candidate.clear();
+		
+		AccumulatorProvider<TestEvent> provider = candidate.getAccumulatorProvider();
+		
+		assertThat(provider.getAccumulatorValue(1), is(equalTo(0)));
+		assertThat(provider.getAccumulatorValue(4097), is(equalTo(0)));
+		assertThat(provider.getAccumulatorValue(16777215), is(equalTo(0)));
+		
+		candidate.consume(createTestEvent(new int[]{2, 8193}, getClassificationSlot(new int[]{2})));
+		
+		provider = candidate.getAccumulatorProvider();
+		
+		assertThat(provider.getAccumulatorValue(1), is(equalTo(0)));
+		assertThat(provider.getAccumulatorValue(2), is(equalTo(1)));
+		assertThat(provider.getAccumulatorValue(8193), is(equalTo(1)));
+		assertThat(provider.getAccumulatorValue(16777215), is(equalTo(0)));
+	}
+	
+	@Test
+	public void givenCandidate_whenSummingFloats_thenValueAccumulated(){
+		candidate.sumAccumulator(5, 1.5f);
+		candidate.sumAccumulator(5, 2.25f);
+		candidate.sumAccumulator(6, 3);
+		candidate.sumAccumulator(6, 4);
+		
+		assertThat(candidate.getAccumulatorValueAsFloat(5), is(equalTo(3.75f)));
+		assertThat(candidate.getAccumulatorValue(6), is(equalTo(7)));
+	}
+}
@@ -45,11 +45,26 @@ public class PipelineAccumulatorControllerUnitTest {
 	
 	private static class TestAccumulatorLookupStrategy implements AccumulatorLookupStrategy<TestEvent>{
 
+		@Override
+		public void startEvent(TestEvent event) {
+			// NO OP
+		}
+
 		@Override
 		public int[] getSlots(Feature feature, TestEvent event) {
 			return event.getSlots();
 		}
 		
+		@Override
+		public int getSlots(Feature feature, TestEvent event, int[] slotBuffer) {
+			int[] slots = event.getSlots();
+			
+			if (slots.length <= slotBuffer.length){
+				System.arraycopy(slots, 0, slotBuffer, 0, slots.length);
+			}
+			return slots.length;
+		}
+		
 		@Override
 		public int getSlot(Classification classification, TestEvent event) {
 			return -1;
@@ -41,8 +41,8 @@ public class SequentialDistributionFeatureHandlerUnitTest {
 	private static final TestEvent TEST_EVENT_7 = new TestEvent(Lists.newArrayList(TEST_FEATURE3), Lists.newArrayList(TEST_CLASSIFICATION1, TEST_CLASSIFICATION2));
 	private static final TestEvent TEST_EVENT_8 = new TestEvent(Lists.newArrayList(TEST_FEATURE5), Lists.newArrayList(TEST_CLASSIFICATION1, TEST_CLASSIFICATION2));
 	
-	private static final int[] CLASS_1_SLOTS = new int[]{0, 1, 2};
-	private static final int[] CLASS_2_SLOTS = new int[]{3, 4, 5};
+	private static final int[] CLASS_1_SLOTS = new int[]{0, 1, 2, 3, 4, 5};
+	private static final int[] CLASS_2_SLOTS = new int[]{6, 7, 8, 9, 10, 11};
 	
 
 	private SequentialDistributionFeatureHandler<TestEvent> candidate;
@@ -56,17 +56,17 @@ public class SequentialDistributionFeatureHandlerUnitTest {
 		
 		lookup = mock(AccumulatorLookupStrategy.class);
 		
-		when(lookup.getPosteriorSlots(TEST_FEATURE1, TEST_CLASSIFICATION1, 3)).thenReturn(CLASS_1_SLOTS);
-		when(lookup.getPosteriorSlots(TEST_FEATURE2, TEST_CLASSIFICATION1, 3)).thenReturn(CLASS_1_SLOTS);
-		when(lookup.getPosteriorSlots(TEST_FEATURE3, TEST_CLASSIFICATION1, 3)).thenReturn(CLASS_1_SLOTS);
-		when(lookup.getPosteriorSlots(TEST_FEATURE4, TEST_CLASSIFICATION1, 3)).thenReturn(CLASS_1_SLOTS);
-		when(lookup.getPosteriorSlots(TEST_FEATURE5, TEST_CLASSIFICATION1, 3)).thenReturn(CLASS_1_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE1, TEST_CLASSIFICATION1, 6)).thenReturn(CLASS_1_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE2, TEST_CLASSIFICATION1, 6)).thenReturn(CLASS_1_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE3, TEST_CLASSIFICATION1, 6)).thenReturn(CLASS_1_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE4, TEST_CLASSIFICATION1, 6)).thenReturn(CLASS_1_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE5, TEST_CLASSIFICATION1, 6)).thenReturn(CLASS_1_SLOTS);
 		
-		when(lookup.getPosteriorSlots(TEST_FEATURE1, TEST_CLASSIFICATION2, 3)).thenReturn(CLASS_2_SLOTS);
-		when(lookup.getPosteriorSlots(TEST_FEATURE2, TEST_CLASSIFICATION2, 3)).thenReturn(CLASS_2_SLOTS);
-		when(lookup.getPosteriorSlots(TEST_FEATURE3, TEST_CLASSIFICATION2, 3)).thenReturn(CLASS_2_SLOTS);
-		when(lookup.getPosteriorSlots(TEST_FEATURE4, TEST_CLASSIFICATION2, 3)).thenReturn(CLASS_2_SLOTS);
-		when(lookup.getPosteriorSlots(TEST_FEATURE5, TEST_CLASSIFICATION2, 3)).thenReturn(CLASS_2_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE1, TEST_CLASSIFICATION2, 6)).thenReturn(CLASS_2_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE2, TEST_CLASSIFICATION2, 6)).thenReturn(CLASS_2_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE3, TEST_CLASSIFICATION2, 6)).thenReturn(CLASS_2_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE4, TEST_CLASSIFICATION2, 6)).thenReturn(CLASS_2_SLOTS);
+		when(lookup.getPosteriorSlots(TEST_FEATURE5, TEST_CLASSIFICATION2, 6)).thenReturn(CLASS_2_SLOTS);
 		
 		accumulator = new ClassifiedEventAccumulatorConsumer<TestEvent>(Accumulator.DEFAULT_CONFIG, lookup, HandlerRepository.<TestEvent>create(ImmutableMap.<Integer, FeatureHandler<TestEvent>>builder().put(1, new SequentialDistributionFeatureHandler()).build(), Collections.<Integer, ClassificationHandler<TestEvent>>emptyMap()));
 	}
@@ -111,8 +111,8 @@ public class SequentialDistributionFeatureHandlerUnitTest {
 		
 		DistributionParameters params = candidate.getDistribution(accumulator, CLASS_1_SLOTS);
 		
-		assertThat(params.getMean(), is(equalTo(5.333333492279053)));
-		assertThat(params.getVariance(), is(equalTo(6.333333492279053)));
+		assertThat(params.getMean(), is(equalTo(5.333333333333333)));
+		assertThat(params.getVariance(), is(equalTo(6.333333333333333)));
 		assertThat(params.getNumSamples(), is(equalTo(3)));
 	}
 	
@@ -127,7 +127,7 @@ public class SequentialDistributionFeatureHandlerUnitTest {
 		DistributionParameters params = candidate.getDistribution(accumulator, CLASS_1_SLOTS);
 		
 		assertThat(params.getMean(), is(equalTo(87.25)));
-		assertThat(params.getVariance(), is(equalTo(26845.583984375)));
+		assertThat(params.getVariance(), is(equalTo(26845.58333333334)));
 		assertThat(params.getNumSamples(), is(equalTo(4)));
 	}
 	
@@ -155,13 +155,13 @@ public class SequentialDistributionFeatureHandlerUnitTest {
 		DistributionParameters params = candidate.getDistribution(accumulator, CLASS_1_SLOTS);
 		
 		assertThat(params.getMean(), is(equalTo(94.5)));
-		assertThat(params.getVariance(), is(equalTo(25465.669921875)));
+		assertThat(params.getVariance(), is(equalTo(25465.66666666666)));
 		assertThat(params.getNumSamples(), is(equalTo(4)));
 		
 		params = candidate.getDistribution(accumulator, CLASS_2_SLOTS);
 		
 		assertThat(params.getMean(), is(equalTo(12.5)));
-		assertThat(params.getVariance(), is(equalTo(209.6666717529297)));
+		assertThat(params.getVariance(), is(equalTo(209.66666666666666)));
 		assertThat(params.getNumSamples(), is(equalTo(4)));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.system.MicroBatchListener;
+
+/**
+ * A keyed dispatch strategy that moves the hottest keys away from overloaded consumers. Like the
+ * {@link ConsistentHashDispatchStrategy} every key has a home consumer but, as a single heavy key can swamp its home
+ * consumer, this strategy also counts the events sent to each consumer and estimates the frequency of each key using a
+ * {@link CountMinSketch}. Whenever a micro batch ends, keys that make up more then a given fraction of the events are
+ * reassigned, heaviest first, from consumers carrying more then their fair share of the load to the least loaded
+ * consumer. Hot keys that cool down return to their home consumer.
+ * <p>
+ * Assignments only change at micro batch boundaries so that, bar the few events dispatched whilst the boundary is being
+ * signalled, all the events of a key within a micro batch are accumulated by the same consumer. The boundary is
+ * signalled from the coordinator thread but acted on by the dispatching thread when it routes its next event so all
+ * routing state remains owned by the dispatching thread.
+ * @author haines
+ *
+ * @param <E>
+ */
+public class AdaptiveDispatchStrategy<E extends Event> implements DispatchStrategy<E>, MicroBatchListener{
+
+	private static final Logger LOG = LoggerFactory.getLogger(AdaptiveDispatchStrategy.class);
+
+	public static final int DEFAULT_MAX_HOT_KEYS = 64;
+	public static final double DEFAULT_HOT_KEY_FRACTION = 0.01;
+	public static final double DEFAULT_IMBALANCE_TOLERANCE = 0.1;
+
+	private static final int SKETCH_DEPTH = 4;
+	private static final int SKETCH_WIDTH = 2048;
+	private static final int MIN_HOT_KEY_COUNT = 16;
+
+	private final DispatchKeyExtractor<? super E> keyExtractor;
+	private final DispatchStrategy<E> keylessStrategy;
+	private final CountMinSketch sketch;
+	private final Set<Object> hotKeyCandidates;
+	private final int maxHotKeys;
+	private final double hotKeyFraction;
+	private final double imbalanceTolerance;
+	private Map<Object, Integer> hotKeyAssignments;
+	private long[] consumerCounts;
+	private long numEvents;
+	private volatile boolean microBatchEnded;
+	private volatile int numHotKeys;
+	private volatile long numMigrations;
+
+	public AdaptiveDispatchStrategy(DispatchKeyExtractor<? super E> keyExtractor){
+		this(keyExtractor, DEFAULT_MAX_HOT_KEYS, DEFAULT_HOT_KEY_FRACTION, DEFAULT_IMBALANCE_TOLERANCE);
+	}
+
+	/**
+	 * @param keyExtractor
+	 * @param maxHotKeys the maximum number of keys that can be away from their home consumer at any one time
+	 * @param hotKeyFraction the fraction of a micro batch's events that a key must make up to be considered for moving
+	 * @param imbalanceTolerance how far, as a fraction of the mean, a consumer's load can be above the mean before its
+	 * hot keys are moved
+	 */
+	public AdaptiveDispatchStrategy(DispatchKeyExtractor<? super E> keyExtractor, int maxHotKeys, double hotKeyFraction, double imbalanceTolerance){
+		this.keyExtractor = keyExtractor;
+		this.keylessStrategy = new RandomDispatchStrategy<E>();
+		this.sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+		this.hotKeyCandidates = new HashSet<Object>();
+		this.maxHotKeys = maxHotKeys;
+		this.hotKeyFraction = hotKeyFraction;
+		this.imbalanceTolerance = imbalanceTolerance;
+		this.hotKeyAssignments = Collections.emptyMap();
+		this.consumerCounts = new long[0];
+	}
+
+	@Override
+	public int getConsumerIdx(E event, List<DispatcherConsumer<E>> consumers) {
+		int numConsumers = consumers.size();
+
+		if (consumerCounts.length != numConsumers){
+			consumerCounts = new long[numConsumers];
+		}
+
+		if (microBatchEnded){
+			microBatchEnded = false;
+
+			rebalance(numConsumers);
+		}
+
+		Object key = keyExtractor.getKey(event);
+
+		int consumerIdx;
+		if (key == null){
+			consumerIdx = keylessStrategy.getConsumerIdx(event, consumers);
+		} else{
+			consumerIdx = getAssignedConsumerIdx(key, numConsumers);
+
+			long estimate = sketch.add(key.hashCode());
+
+			if (estimate >= MIN_HOT_KEY_COUNT && estimate >= numEvents * hotKeyFraction && hotKeyCandidates.size() < maxHotKeys * 4){
+				hotKeyCandidates.add(key);
+			}
+		}
+
+		consumerCounts[consumerIdx]++;
+		numEvents++;
+
+		return consumerIdx;
+	}
+
+	@Override
+	public int getConsumerIdx(List<E> events, List<DispatcherConsumer<E>> consumers) {
+		return ROUTE_EACH_EVENT;
+	}
+
+	@Override
+	public void microBatchEnded() {
+		microBatchEnded = true;
+	}
+
+	/**
+	 * Returns the number of keys currently routed away from their home consumer.
+	 * @return
+	 */
+	public int getNumHotKeys(){
+		return numHotKeys;
+	}
+
+	/**
+	 * Returns the total number of times that a key has been moved to a different consumer.
+	 * @return
+	 */
+	public long getNumMigrations(){
+		return numMigrations;
+	}
+
+	private int getAssignedConsumerIdx(Object key, int numConsumers){
+		Integer assignedConsumerIdx = hotKeyAssignments.get(key);
+
+		if (assignedConsumerIdx != null){
+			return assignedConsumerIdx;
+		}
+		return ConsistentHashDispatchStrategy.getConsumerIdx(key, numConsumers);
+	}
+
+	private void rebalance(int numConsumers){
+		long[] loads = consumerCounts.clone();
+		double maxLoad = ((double)numEvents / numConsumers) * (1 + imbalanceTolerance);
+
+		List<Object> hotKeys = new ArrayList<Object>(hotKeyCandidates);
+		Collections.sort(hotKeys, new Comparator<Object>(){
+
+			@Override
+			public int compare(Object key1, Object key2) {
+				return Long.compare(sketch.estimate(key2.hashCode()), sketch.estimate(key1.hashCode())); // heaviest first
+			}
+		});
+
+		Map<Object, Integer> newAssignments = new HashMap<Object, Integer>();
+		long migrations = 0;
+		for (Object key: hotKeys){
+			if (newAssignments.size() == maxHotKeys){
+				break;
+			}
+
+			int homeConsumerIdx = ConsistentHashDispatchStrategy.getConsumerIdx(key, numConsumers);
+			int currentConsumerIdx = getAssignedConsumerIdx(key, numConsumers);
+			int newConsumerIdx = currentConsumerIdx;
+
+			if (loads[currentConsumerIdx] > maxLoad){
+				int leastLoadedConsumerIdx = getLeastLoadedConsumerIdx(loads);
+				long keyLoad = Math.min(sketch.estimate(key.hashCode()), loads[currentConsumerIdx]);
+
+				if (loads[leastLoadedConsumerIdx] + keyLoad < loads[currentConsumerIdx]){ // only move if the busiest consumer gets less busy
+					newConsumerIdx = leastLoadedConsumerIdx;
+
+					loads[currentConsumerIdx] -= keyLoad;
+					loads[newConsumerIdx] += keyLoad;
+					migrations++;
+				}
+			}
+
+			if (newConsumerIdx != homeConsumerIdx){
+				newAssignments.put(key, newConsumerIdx);
+			}
+		}
+
+		for (Map.Entry<Object, Integer> previousAssignment: hotKeyAssignments.entrySet()){
+			if (!newAssignments.containsKey(previousAssignment.getKey()) && !hotKeyCandidates.contains(previousAssignment.getKey())){
+				migrations++; // the key has cooled down so goes back home
+			}
+		}
+
+		if (LOG.isDebugEnabled()){
+			LOG.debug("Rebalanced "+numEvents+" events over "+numConsumers+" consumers. "+migrations+" keys moved, "+newAssignments.size()+" keys away from home");
+		}
+
+		hotKeyAssignments = newAssignments;
+		numHotKeys = newAssignments.size();
+		numMigrations += migrations;
+
+		sketch.clear();
+		hotKeyCandidates.clear();
+		consumerCounts = new long[numConsumers];
+		numEvents = 0;
+	}
+
+	private static int getLeastLoadedConsumerIdx(long[] loads){
+		int leastLoadedConsumerIdx = 0;
+		for (int i = 1; i < loads.length; i++){
+			if (loads[i] < loads[leastLoadedConsumerIdx]){
+				leastLoadedConsumerIdx = i;
+			}
+		}
+		return leastLoadedConsumerIdx;
+	}
+}
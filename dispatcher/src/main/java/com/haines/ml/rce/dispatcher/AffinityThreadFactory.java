@@ -0,0 +1,80 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A thread factory that pins each thread it creates to the next core in a list, wrapping back to the start of the list
+ * should there be more threads then cores. The JVM offers no way to set a thread's affinity so the thread pins itself
+ * when it starts by resolving its native Linux thread id and invoking <code>taskset</code>. Should this not be possible,
+ * for instance on another operating system, a warning is logged and the thread runs unpinned. If no cores are provided
+ * then threads are simply created with the given name prefix.
+ * @author haines
+ *
+ */
+public class AffinityThreadFactory implements ThreadFactory{
+
+	private static final Logger LOG = LoggerFactory.getLogger(AffinityThreadFactory.class);
+
+	private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+
+	private final String threadNamePrefix;
+	private final List<Integer> cpus;
+	private final AtomicInteger threadNum;
+
+	public AffinityThreadFactory(String threadNamePrefix, List<Integer> cpus){
+		this.threadNamePrefix = threadNamePrefix;
+		this.cpus = ImmutableList.copyOf(cpus);
+		this.threadNum = new AtomicInteger(0);
+	}
+
+	@Override
+	public Thread newThread(final Runnable r) {
+		int threadIdx = threadNum.getAndIncrement();
+
+		if (cpus.isEmpty()){
+			return new Thread(r, threadNamePrefix+threadIdx);
+		}
+
+		final int cpu = cpus.get(threadIdx % cpus.size());
+
+		return new Thread(new Runnable(){
+
+			@Override
+			public void run() {
+				pinCurrentThread(cpu);
+
+				r.run();
+			}
+		}, threadNamePrefix+threadIdx+"_cpu"+cpu);
+	}
+
+	private static void pinCurrentThread(int cpu){
+		try{
+			// the link resolves to <pid>/task/<tid> for the calling thread
+			String threadId = Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+
+			Process taskset = new ProcessBuilder("taskset", "-p", "-c", Integer.toString(cpu), threadId).redirectErrorStream(true).start();
+
+			if (taskset.waitFor() != 0){
+				LOG.warn("Unable to pin thread "+Thread.currentThread().getName()+" to cpu "+cpu+". taskset exited with "+taskset.exitValue());
+			} else{
+				LOG.debug("Pinned thread "+Thread.currentThread().getName()+" to cpu "+cpu);
+			}
+		} catch (IOException | UnsupportedOperationException e){
+			LOG.warn("Unable to pin thread "+Thread.currentThread().getName()+" to cpu "+cpu+". Running unpinned", e);
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+}
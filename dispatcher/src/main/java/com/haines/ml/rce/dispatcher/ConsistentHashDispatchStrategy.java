@@ -0,0 +1,56 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.List;
+
+import com.google.common.hash.Hashing;
+import com.haines.ml.rce.model.Event;
+
+/**
+ * Dispatches events with the same key to the same consumer so that each consumer only sees, and therefore only
+ * indexes and accumulates, a slice of the key space rather then all of it. Keys are mapped to consumers using a jump
+ * consistent hash so that only 1/n of the keys move should the number of consumers change. Events without a key are
+ * sent to a random consumer.
+ * <p>
+ * Note that an {@link DispatcherConfig.OverloadPolicy} other then {@link DispatcherConfig.OverloadPolicy#BLOCK} may
+ * still send an event to another consumer when its own consumer is overloaded.
+ * @author haines
+ *
+ * @param <E>
+ */
+public class ConsistentHashDispatchStrategy<E extends Event> implements DispatchStrategy<E>{
+
+	private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+	private final DispatchKeyExtractor<? super E> keyExtractor;
+	private final DispatchStrategy<E> keylessStrategy;
+
+	public ConsistentHashDispatchStrategy(DispatchKeyExtractor<? super E> keyExtractor){
+		this(keyExtractor, new RandomDispatchStrategy<E>());
+	}
+
+	public ConsistentHashDispatchStrategy(DispatchKeyExtractor<? super E> keyExtractor, DispatchStrategy<E> keylessStrategy){
+		this.keyExtractor = keyExtractor;
+		this.keylessStrategy = keylessStrategy;
+	}
+
+	@Override
+	public int getConsumerIdx(E event, List<DispatcherConsumer<E>> consumers) {
+		Object key = keyExtractor.getKey(event);
+
+		if (key == null){
+			return keylessStrategy.getConsumerIdx(event, consumers);
+		}
+
+		return getConsumerIdx(key, consumers.size());
+	}
+	
+	static int getConsumerIdx(Object key, int numConsumers){
+		// spread the bits of small or sequential hash codes before they go through the hash's generator
+		return Hashing.consistentHash(key.hashCode() * GOLDEN_RATIO, numConsumers);
+	}
+
+	@Override
+	public int getConsumerIdx(List<E> events, List<DispatcherConsumer<E>> consumers) {
+		return ROUTE_EACH_EVENT;
+	}
+}
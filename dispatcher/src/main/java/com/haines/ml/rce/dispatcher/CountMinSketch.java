@@ -0,0 +1,81 @@
+package com.haines.ml.rce.dispatcher;
+
+import com.google.common.math.IntMath;
+
+/**
+ * A fixed size, approximate frequency counter. Each count is recorded in one cell of every row, chosen by a different
+ * hash per row, and the estimate of a count is the smallest of its cells. Estimates can therefore only ever be over
+ * counts of the true frequency, by an amount bounded by the total count divided by the width. Not thread safe.
+ * @author haines
+ *
+ */
+public class CountMinSketch {
+
+	private static final int MURMUR_MIX_1 = 0x85ebca6b;
+	private static final int MURMUR_MIX_2 = 0xc2b2ae35;
+
+	private final long[] counts;
+	private final int depth;
+	private final int widthMask;
+	private final int widthBits;
+
+	public CountMinSketch(int depth, int width){
+		if (!IntMath.isPowerOfTwo(width) || depth < 1){
+			throw new IllegalArgumentException("The width ("+width+") must be a power of 2 and the depth ("+depth+") at least 1");
+		}
+		this.counts = new long[depth * width];
+		this.depth = depth;
+		this.widthMask = width - 1;
+		this.widthBits = Integer.numberOfTrailingZeros(width);
+	}
+
+	/**
+	 * Increments the count of the value with the provided hash code and returns its new estimated count.
+	 * @param hashCode
+	 * @return
+	 */
+	public long add(int hashCode){
+		int hash1 = mix(hashCode);
+		int hash2 = mix(hash1) | 1; // odd so that every row picks a different cell
+
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++){
+			int cell = (row << widthBits) + ((hash1 + row * hash2) & widthMask);
+
+			estimate = Math.min(estimate, ++counts[cell]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Returns the estimated count of the value with the provided hash code.
+	 * @param hashCode
+	 * @return
+	 */
+	public long estimate(int hashCode){
+		int hash1 = mix(hashCode);
+		int hash2 = mix(hash1) | 1;
+
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++){
+			estimate = Math.min(estimate, counts[(row << widthBits) + ((hash1 + row * hash2) & widthMask)]);
+		}
+		return estimate;
+	}
+
+	public void clear(){
+		for (int i = 0; i < counts.length; i++){
+			counts[i] = 0;
+		}
+	}
+
+	private static int mix(int hash){ // murmur3 finaliser
+		hash ^= hash >>> 16;
+		hash *= MURMUR_MIX_1;
+		hash ^= hash >>> 13;
+		hash *= MURMUR_MIX_2;
+		hash ^= hash >>> 16;
+
+		return hash;
+	}
+}
@@ -0,0 +1,81 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.Iterator;
+
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.ClassifiedEvent;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.Feature;
+import com.haines.ml.rce.model.FeaturedEvent;
+
+/**
+ * Extracts the key that a {@link ConsistentHashDispatchStrategy} routes an event on. Events with equal keys are always
+ * dispatched to the same consumer.
+ * @author haines
+ *
+ * @param <E>
+ */
+public interface DispatchKeyExtractor<E extends Event> {
+
+	public static final Util UTIL = new Util();
+
+	/**
+	 * Returns the key of the event or null if the event has no key, in which case it is dispatched to a random
+	 * consumer. The key's {@link Object#hashCode()} must be consistent with its {@link Object#equals(Object)}.
+	 * @param event
+	 * @return
+	 */
+	Object getKey(E event);
+
+	public static final class Util{
+
+		private static final DispatchKeyExtractor<Event> CLASSIFICATION_EXTRACTOR = new DispatchKeyExtractor<Event>(){
+
+			@Override
+			public Object getKey(Event event) {
+				if (event instanceof ClassifiedEvent){
+					Iterator<? extends Classification> classifications = ((ClassifiedEvent)event).getClassificationsList().iterator();
+
+					if (classifications.hasNext()){
+						return classifications.next().getValue();
+					}
+				}
+				return null;
+			}
+		};
+
+		private Util(){}
+
+		/**
+		 * Returns an extractor that keys events on the value of their first classification so that each consumer only
+		 * accumulates a subset of the classes.
+		 * @return
+		 */
+		public DispatchKeyExtractor<Event> getClassificationKeyExtractor(){
+			return CLASSIFICATION_EXTRACTOR;
+		}
+
+		/**
+		 * Returns an extractor that keys events on the value of the first feature of the given type so that each
+		 * consumer only sees a slice of that feature's vocabulary.
+		 * @param featureType
+		 * @return
+		 */
+		public DispatchKeyExtractor<Event> getFeatureKeyExtractor(final int featureType){
+			return new DispatchKeyExtractor<Event>(){
+
+				@Override
+				public Object getKey(Event event) {
+					if (event instanceof FeaturedEvent){
+						for (Feature feature: ((FeaturedEvent)event).getFeaturesList()){
+							if (feature.getType() == featureType){
+								return feature.getValue();
+							}
+						}
+					}
+					return null;
+				}
+			};
+		}
+	}
+}
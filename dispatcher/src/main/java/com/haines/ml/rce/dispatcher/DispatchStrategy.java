@@ -0,0 +1,38 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.List;
+
+import com.haines.ml.rce.model.Event;
+
+/**
+ * Chooses which of a {@link Dispatcher}'s consumers an event is sent to. A strategy is only ever invoked by the single
+ * thread that owns the dispatcher.
+ * @author haines
+ *
+ * @param <E>
+ */
+public interface DispatchStrategy<E extends Event> {
+
+	/**
+	 * Returned by {@link #getConsumerIdx(List, List)} when the events of a batch can not all be sent to the same
+	 * consumer and so have to be routed individually.
+	 */
+	public static final int ROUTE_EACH_EVENT = -1;
+
+	/**
+	 * Returns the index in <code>consumers</code> of the consumer that the event should be dispatched to.
+	 * @param event
+	 * @param consumers
+	 * @return
+	 */
+	int getConsumerIdx(E event, List<DispatcherConsumer<E>> consumers);
+
+	/**
+	 * Returns the index of the consumer that the whole batch should be dispatched to or {@link #ROUTE_EACH_EVENT} if
+	 * each event should be routed using {@link #getConsumerIdx(Event, List)}.
+	 * @param events
+	 * @param consumers
+	 * @return
+	 */
+	int getConsumerIdx(List<E> events, List<DispatcherConsumer<E>> consumers);
+}
@@ -1,33 +1,227 @@
 package com.haines.ml.rce.dispatcher;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 import javax.inject.Inject;
 
 import com.google.common.collect.Iterables;
+import com.haines.ml.rce.dispatcher.DispatcherConfig.OverloadPolicy;
 import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.RecyclableEvent;
 
 /**
- * This class dispatches events uniformly amongst an array of event consumders
+ * This class dispatches events amongst an array of event consumders. The consumer that each event is sent to is chosen
+ * by a {@link DispatchStrategy}, uniformly at random by default. What happens when the chosen consumer's queue is full
+ * is determined by the {@link OverloadPolicy} of the {@link DispatcherConfig}. A dispatcher must only be
+ * used by a single thread but its gauges can be read from any thread.
  * @author haines
  *
  * @param <E>
  */
 public class Dispatcher<E extends Event> {
-
+	
 	private final DispatcherConsumer<E>[] consumers;
+	private final List<DispatcherConsumer<E>> consumerList;
 	private final Random randomGenerator;
+	private final DispatcherConfig config;
+	private final DispatchStrategy<E> strategy;
+	private final List<List<E>> consumerBatches;
+	private volatile long numDropped;
+	private volatile long numSampledOut;
+	private volatile long numRedirected;
 	
-	@SuppressWarnings("unchecked")
 	@Inject
 	public Dispatcher(Iterable<DispatcherConsumer<E>> consumers){
-		
+		this(consumers, DispatcherConfig.DEFAULT_CONFIG);
+	}
+	
+	public Dispatcher(Iterable<DispatcherConsumer<E>> consumers, DispatcherConfig config){
+		this(consumers, config, new RandomDispatchStrategy<E>());
+	}
+	
+	@SuppressWarnings("unchecked")
+	public Dispatcher(Iterable<DispatcherConsumer<E>> consumers, DispatcherConfig config, DispatchStrategy<E> strategy){
+	
 		this.consumers = Iterables.toArray(consumers, DispatcherConsumer.class);
+		this.consumerList = Collections.unmodifiableList(Arrays.asList(this.consumers));
 		this.randomGenerator = new Random();
+		this.config = config;
+		this.strategy = strategy;
+		this.consumerBatches = new ArrayList<List<E>>(this.consumers.length);
+		
+		for (int i = 0; i < this.consumers.length; i++){
+			consumerBatches.add(new ArrayList<E>());
+		}
 	}
-
+	
 	public void dispatchEvent(E event) {
-		consumers[randomGenerator.nextInt(consumers.length)].consumeEvent(event);
+		dispatchEvent(strategy.getConsumerIdx(event, consumerList), event);
+	}
+	
+	/**
+	 * Dispatches a batch of events so that each consumer's share of the batch can be handed to its queue in one call
+	 * rather then one event at a time. If a consumer can not take its share without overloading then the events are
+	 * dispatched individually according to the overload policy.
+	 * @param events
+	 */
+	public void dispatchEvents(List<E> events) {
+		if (!events.isEmpty()){
+			int consumerIdx = strategy.getConsumerIdx(events, consumerList);
+	
+			if (consumerIdx != DispatchStrategy.ROUTE_EACH_EVENT){
+				dispatchBatch(consumerIdx, events);
+			} else{
+				for (E event: events){
+					consumerBatches.get(strategy.getConsumerIdx(event, consumerList)).add(event);
+				}
+				
+				for (int i = 0; i < consumers.length; i++){
+					List<E> consumerBatch = consumerBatches.get(i);
+	
+					if (!consumerBatch.isEmpty()){
+						dispatchBatch(i, consumerBatch);
+						consumerBatch.clear();
+					}
+				}
+			}
+		}
+	}
+	
+	private void dispatchBatch(int consumerIdx, List<E> events){
+		DispatcherConsumer<E> consumer = consumers[consumerIdx];
+	
+		if (config.getOverloadPolicy() == OverloadPolicy.BLOCK || canTakeBatch(consumer, events.size())){
+			consumer.consumeEvents(events);
+		} else{
+			for (E event: events){
+				dispatchEvent(consumerIdx, event);
+			}
+		}
+	}
+	
+	private void dispatchEvent(int consumerIdx, E event){
+		DispatcherConsumer<E> consumer = consumers[consumerIdx];
+	
+		switch (config.getOverloadPolicy()){
+			case BLOCK:{
+				consumer.consumeEvent(event);
+				break;
+			} case FALLBACK:{
+				if (!consumer.tryConsumeEvent(event)){
+					fallback(consumerIdx, event);
+				}
+				break;
+			} case DROP:{
+				if (!consumer.tryConsumeEvent(event)){
+					drop(event);
+				}
+				break;
+			} case SAMPLE:{
+				if (isAboveHighWaterMark(consumer, 1) && randomGenerator.nextDouble() >= config.getSampleRate()){
+					numSampledOut++;
+					discard(event);
+				} else if (!consumer.tryConsumeEvent(event)){
+					drop(event);
+				}
+				break;
+			} default:{
+				throw new IllegalStateException("Unknown overload policy: "+config.getOverloadPolicy());
+			}
+		}
+	}
+	
+	/**
+	 * Tries every other consumer in turn before finally waiting on the original consumer.
+	 */
+	private void fallback(int consumerIdx, E event){
+		for (int i = 1; i < consumers.length; i++){
+			if (consumers[(consumerIdx + i) % consumers.length].tryConsumeEvent(event)){
+				numRedirected++;
+	
+				return;
+			}
+		}
+		consumers[consumerIdx].consumeEvent(event);
+	}
+	
+	private boolean canTakeBatch(DispatcherConsumer<E> consumer, int batchSize){
+		if (config.getOverloadPolicy() == OverloadPolicy.SAMPLE){
+			return !isAboveHighWaterMark(consumer, batchSize);
+		}
+	
+		// as this is the only thread publishing to the consumer, the remaining capacity can only grow once checked
+		return consumer.getQueueCapacity() - consumer.getQueueSize() >= batchSize;
+	}
+	
+	private boolean isAboveHighWaterMark(DispatcherConsumer<E> consumer, int numNewEvents){
+		return consumer.getQueueSize() + numNewEvents > consumer.getQueueCapacity() * config.getSampleHighWaterMark();
+	}
+	
+	private void drop(E event){
+		numDropped++;
+		discard(event);
+	}
+	
+	private void discard(E event){
+		if (event instanceof RecyclableEvent){ // the event will never reach the ring so hand it straight back
+			((RecyclableEvent)event).recycle();
+		}
+	}
+	
+	/**
+	 * Returns the number of events dropped as the queue of the consumer they were dispatched to was full.
+	 * @return
+	 */
+	public long getNumDropped(){
+		return numDropped;
+	}
+	
+	/**
+	 * Returns the number of events dropped by {@link OverloadPolicy#SAMPLE} whilst a consumer was above the high water
+	 * mark.
+	 * @return
+	 */
+	public long getNumSampledOut(){
+		return numSampledOut;
+	}
+	
+	/**
+	 * Returns the number of events sent to another consumer by {@link OverloadPolicy#FALLBACK}.
+	 * @return
+	 */
+	public long getNumRedirected(){
+		return numRedirected;
+	}
+	
+	public int getNumConsumers(){
+		return consumers.length;
+	}
+	
+	/**
+	 * Returns the fraction, between 0 and 1, of the queue of the consumer at the provided index that is full.
+	 * @param consumerIdx
+	 * @return
+	 */
+	public double getQueueOccupancy(int consumerIdx){
+		DispatcherConsumer<E> consumer = consumers[consumerIdx];
+	
+		return (double)consumer.getQueueSize() / consumer.getQueueCapacity();
+	}
+	
+	/**
+	 * Returns the occupancy of the fullest consumer queue.
+	 * @return
+	 */
+	public double getMaxQueueOccupancy(){
+		double maxOccupancy = 0;
+		for (int i = 0; i < consumers.length; i++){
+			maxOccupancy = Math.max(maxOccupancy, getQueueOccupancy(i));
+		}
+		return maxOccupancy;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -36,7 +230,7 @@ public class Dispatcher<E extends Event> {
 			consumer.consumeEvent((E)Event.HEARTBEAT);
 		}
 	}
-
+	
 	public void close() {
 		for (DispatcherConsumer<E> consumer: consumers){
 			consumer.shutdown();
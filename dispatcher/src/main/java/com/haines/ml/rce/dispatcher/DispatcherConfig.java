@@ -0,0 +1,103 @@
+package com.haines.ml.rce.dispatcher;
+
+public class DispatcherConfig {
+
+	/**
+	 * What a {@link Dispatcher} does when the queue of the consumer that an event is dispatched to is full.
+	 * @author haines
+	 *
+	 */
+	public static enum OverloadPolicy{
+		/**
+		 * Wait for the consumer to make room. No events are lost but one slow consumer stalls the dispatching thread,
+		 * and therefore every other consumer.
+		 */
+		BLOCK,
+		/**
+		 * Try each of the other consumers in turn and only wait for the original consumer if every queue is full. No
+		 * events are lost.
+		 */
+		FALLBACK,
+		/**
+		 * Drop the event, counting the loss.
+		 */
+		DROP,
+		/**
+		 * Once a consumer's queue is fuller then the high water mark, only dispatch a sample of the events to it and
+		 * drop the rest. Events are also dropped if the queue is full.
+		 */
+		SAMPLE;
+	}
+
+	public static final DispatcherConfig DEFAULT_CONFIG = new Builder().build();
+
+	private final OverloadPolicy overloadPolicy;
+	private final double sampleRate;
+	private final double sampleHighWaterMark;
+
+	private DispatcherConfig(OverloadPolicy overloadPolicy, double sampleRate, double sampleHighWaterMark){
+		this.overloadPolicy = overloadPolicy;
+		this.sampleRate = sampleRate;
+		this.sampleHighWaterMark = sampleHighWaterMark;
+	}
+
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	/**
+	 * The fraction of events that are dispatched to a consumer whose queue is above the high water mark when using
+	 * {@link OverloadPolicy#SAMPLE}.
+	 * @return
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * The fraction of a consumer's queue that has to be full before {@link OverloadPolicy#SAMPLE} starts sampling
+	 * events.
+	 * @return
+	 */
+	public double getSampleHighWaterMark() {
+		return sampleHighWaterMark;
+	}
+
+	public static class Builder {
+
+		private OverloadPolicy overloadPolicy = OverloadPolicy.BLOCK;
+		private double sampleRate = 0.5;
+		private double sampleHighWaterMark = 0.9;
+
+		public Builder overloadPolicy(OverloadPolicy overloadPolicy){
+
+			this.overloadPolicy = overloadPolicy;
+
+			return this;
+		}
+
+		public Builder sampleRate(double sampleRate){
+
+			this.sampleRate = sampleRate;
+
+			return this;
+		}
+
+		public Builder sampleHighWaterMark(double sampleHighWaterMark){
+
+			this.sampleHighWaterMark = sampleHighWaterMark;
+
+			return this;
+		}
+
+		public DispatcherConfig build(){
+			if (overloadPolicy == null){
+				throw new IllegalArgumentException("An overload policy is required");
+			}
+			if (sampleRate < 0 || sampleRate > 1 || sampleHighWaterMark < 0 || sampleHighWaterMark > 1){
+				throw new IllegalArgumentException("The sample rate ("+sampleRate+") and high water mark ("+sampleHighWaterMark+") must be between 0 and 1");
+			}
+			return new DispatcherConfig(overloadPolicy, sampleRate, sampleHighWaterMark);
+		}
+	}
+}
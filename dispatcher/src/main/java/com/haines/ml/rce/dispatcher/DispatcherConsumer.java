@@ -1,10 +1,37 @@
 package com.haines.ml.rce.dispatcher;
 
+import java.util.List;
+
 import com.haines.ml.rce.model.Event;
 
 public interface DispatcherConsumer<T extends Event> {
 
 	void consumeEvent(T event);
+	
+	/**
+	 * Consumes the event only if it can be done without waiting for space in this consumer's queue.
+	 * @param event
+	 * @return false if the queue is full and the event was not consumed
+	 */
+	boolean tryConsumeEvent(T event);
+
+	/**
+	 * Consumes all the events in the supplied list. The list may be reused by the caller once this method returns.
+	 * @param events
+	 */
+	void consumeEvents(List<T> events);
+
+	/**
+	 * Returns the number of events waiting in this consumer's queue.
+	 * @return
+	 */
+	int getQueueSize();
+
+	/**
+	 * Returns the maximum number of events that can wait in this consumer's queue.
+	 * @return
+	 */
+	int getQueueCapacity();
 
 	void shutdown();
 }
@@ -1,29 +1,154 @@
 package com.haines.ml.rce.dispatcher;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.math.IntMath;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
 
 public class DisruptorConfig {
 	
+	/**
+	 * How a worker thread waits for events to arrive on its ring. The strategies trade the latency of picking up a new
+	 * event against the CPU burnt whilst the ring is empty.
+	 * @author haines
+	 *
+	 */
+	public static enum WaitStrategyType {
+		/**
+		 * Spins, then yields, then sleeps. A compromise between latency and CPU usage.
+		 */
+		SLEEPING {
+			@Override
+			public WaitStrategy newWaitStrategy() {
+				return new SleepingWaitStrategy();
+			}
+		},
+		/**
+		 * Spins continuously. The lowest latency but each worker consumes a whole core even when idle so should only be
+		 * used when the workers are pinned to their own isolated cores.
+		 */
+		BUSY_SPIN {
+			@Override
+			public WaitStrategy newWaitStrategy() {
+				return new BusySpinWaitStrategy();
+			}
+		},
+		/**
+		 * Spins and then yields to other threads. Low latency without starving the rest of the system of CPU.
+		 */
+		YIELDING {
+			@Override
+			public WaitStrategy newWaitStrategy() {
+				return new YieldingWaitStrategy();
+			}
+		},
+		/**
+		 * Parks on a lock until an event is published. Uses the least CPU at the cost of latency.
+		 */
+		BLOCKING {
+			@Override
+			public WaitStrategy newWaitStrategy() {
+				return new BlockingWaitStrategy();
+			}
+		},
+		/**
+		 * Spins for a short while, then yields, then falls back to blocking.
+		 */
+		PHASED_BACKOFF {
+			@Override
+			public WaitStrategy newWaitStrategy() {
+				return PhasedBackoffWaitStrategy.withLock(1, 1, TimeUnit.MILLISECONDS);
+			}
+		};
+		
+		public abstract WaitStrategy newWaitStrategy();
+	}
+	
 	private final int ringSize;
+	private final int eventFeatureCapacity;
+	private final int eventClassificationCapacity;
+	private final WaitStrategyType waitStrategyType;
+	private final ProducerType producerType;
+	private final List<Integer> cpuAffinity;
 	
-	private DisruptorConfig(int ringSize){
+	private DisruptorConfig(int ringSize, int eventFeatureCapacity, int eventClassificationCapacity, WaitStrategyType waitStrategyType, ProducerType producerType, List<Integer> cpuAffinity){
 		this.ringSize = ringSize;
+		this.eventFeatureCapacity = eventFeatureCapacity;
+		this.eventClassificationCapacity = eventClassificationCapacity;
+		this.waitStrategyType = waitStrategyType;
+		this.producerType = producerType;
+		this.cpuAffinity = cpuAffinity;
 	}
 
 	public int getRingSize() {
 		return ringSize;
 	}
 
+	/**
+	 * The number of features each pre-allocated ring entry is sized for. Only used when the ring pre-allocates its events.
+	 * @return
+	 */
+	public int getEventFeatureCapacity() {
+		return eventFeatureCapacity;
+	}
+
+	/**
+	 * The number of classifications each pre-allocated ring entry is sized for. Only used when the ring pre-allocates its
+	 * events.
+	 * @return
+	 */
+	public int getEventClassificationCapacity() {
+		return eventClassificationCapacity;
+	}
+
+	public WaitStrategyType getWaitStrategyType() {
+		return waitStrategyType;
+	}
+
+	/**
+	 * Whether the ring can be published to by a single thread or by many. {@link ProducerType#SINGLE} avoids a CAS on
+	 * every publish but is only safe when exactly one thread ever publishes to the ring.
+	 * @return
+	 */
+	public ProducerType getProducerType() {
+		return producerType;
+	}
+
+	/**
+	 * The CPU cores that worker threads are pinned to, one core per thread in the order that the threads are created.
+	 * Empty if the threads should not be pinned.
+	 * @return
+	 */
+	public List<Integer> getCpuAffinity() {
+		return cpuAffinity;
+	}
+
 	public static class Builder {
 		
 		private static final Logger LOG = LoggerFactory.getLogger(Builder.class);
 		
 		private static final int DEFAULT_RING_SIZE = 1*1024;
+		private static final int DEFAULT_EVENT_FEATURE_CAPACITY = 16;
+		private static final int DEFAULT_EVENT_CLASSIFICATION_CAPACITY = 1;
 		
 		private int ringSize = DEFAULT_RING_SIZE;
+		private int eventFeatureCapacity = DEFAULT_EVENT_FEATURE_CAPACITY;
+		private int eventClassificationCapacity = DEFAULT_EVENT_CLASSIFICATION_CAPACITY;
+		private WaitStrategyType waitStrategyType = WaitStrategyType.SLEEPING;
+		private ProducerType producerType = ProducerType.SINGLE;
+		private List<Integer> cpuAffinity = Collections.emptyList();
 		
 		public Builder ringSize(int ringSize){
 			
@@ -32,13 +157,52 @@ public class DisruptorConfig {
 			return this;
 		}
 		
+		public Builder eventFeatureCapacity(int eventFeatureCapacity){
+			
+			this.eventFeatureCapacity = eventFeatureCapacity;
+			
+			return this;
+		}
+		
+		public Builder eventClassificationCapacity(int eventClassificationCapacity){
+			
+			this.eventClassificationCapacity = eventClassificationCapacity;
+			
+			return this;
+		}
+		
+		public Builder waitStrategyType(WaitStrategyType waitStrategyType){
+			
+			this.waitStrategyType = waitStrategyType;
+			
+			return this;
+		}
+		
+		public Builder producerType(ProducerType producerType){
+			
+			this.producerType = producerType;
+			
+			return this;
+		}
+		
+		public Builder cpuAffinity(List<Integer> cpuAffinity){
+			
+			this.cpuAffinity = ImmutableList.copyOf(cpuAffinity);
+			
+			return this;
+		}
+		
 		public DisruptorConfig build(){
 			
 			if (!IntMath.isPowerOfTwo(ringSize)){
 				LOG.warn("The disruptor ring size is not a power of 2. This is a sub optimal buffer size. Consider using a power of 2");
 			}
 			
-			return new DisruptorConfig(ringSize);
+			if (waitStrategyType == WaitStrategyType.BUSY_SPIN && cpuAffinity.isEmpty()){
+				LOG.warn("Busy spinning workers that are not pinned to their own cores will compete with each other and the selectors for CPU");
+			}
+			
+			return new DisruptorConfig(ringSize, eventFeatureCapacity, eventClassificationCapacity, waitStrategyType, producerType, cpuAffinity);
 		}
 	}
 	
@@ -9,15 +9,17 @@ import java.util.concurrent.TimeUnit;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.haines.ml.rce.model.BatchEventConsumer;
 import com.haines.ml.rce.model.Event;
 import com.haines.ml.rce.model.EventConsumer;
+import com.haines.ml.rce.model.RecyclableEvent;
+import com.haines.ml.rce.model.TransferableEvent;
 import com.lmax.disruptor.EventFactory;
 import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.EventTranslatorOneArg;
-import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.TimeoutException;
 import com.lmax.disruptor.dsl.Disruptor;
-import com.lmax.disruptor.dsl.ProducerType;
 
 /**
  * A {@link DispatcherConsumer} that uses the imax disruptor structure to queue events off to downstream worker
@@ -31,9 +33,9 @@ public class DisruptorConsumer<T extends Event> implements DispatcherConsumer<T>
 	private final Disruptor<DisruptorEvent<T>> queue;
 	private final EventTranslatorOneArg<DisruptorEvent<T>, T> translator;
 	
-	private DisruptorConsumer(Disruptor<DisruptorEvent<T>> queue){
+	private DisruptorConsumer(Disruptor<DisruptorEvent<T>> queue, EventTranslatorOneArg<DisruptorEvent<T>, T> translator){
 		this.queue = queue;
-		this.translator = new DisruptorConsumerTranslator<T>();
+		this.translator = translator;
 	}
 	
 	@Override
@@ -42,16 +44,76 @@ public class DisruptorConsumer<T extends Event> implements DispatcherConsumer<T>
 		queue.publishEvent(translator, event);
 	}
 	
+	@Override
+	public boolean tryConsumeEvent(T event) {
+		
+		return queue.getRingBuffer().tryPublishEvent(translator, event);
+	}
+	
+	@Override
+	public int getQueueSize() {
+		RingBuffer<DisruptorEvent<T>> ringBuffer = queue.getRingBuffer();
+		
+		return ringBuffer.getBufferSize() - (int)ringBuffer.remainingCapacity();
+	}
+	
+	@Override
+	public int getQueueCapacity() {
+		return queue.getRingBuffer().getBufferSize();
+	}
+	
+	/**
+	 * Claims a contiguous range of slots on the ring for the batch (or as many ring sized chunks as needed) so that the
+	 * producer sequence is only updated once per chunk rather then once per event.
+	 */
+	@Override
+	public void consumeEvents(List<T> events) {
+		RingBuffer<DisruptorEvent<T>> ringBuffer = queue.getRingBuffer();
+		
+		int eventIdx = 0;
+		int remaining = events.size();
+		while (remaining > 0){
+			int batchSize = Math.min(remaining, ringBuffer.getBufferSize());
+			
+			long hi = ringBuffer.next(batchSize);
+			long lo = hi - (batchSize - 1);
+			try{
+				for (long sequence = lo; sequence <= hi; sequence++){
+					translator.translateTo(ringBuffer.get(sequence), sequence, events.get(eventIdx++));
+				}
+			} finally{
+				ringBuffer.publish(lo, hi);
+			}
+			remaining -= batchSize;
+		}
+	}
+	
 	public static class Builder<T extends Event>{
 		
 		private final ExecutorService executor;
 		private final DisruptorConfig config;
 		private final Collection<EventConsumer<T>> consumers;
+		private PreallocatedEventFactory<T> preallocatedEventFactory;
 		
 		public Builder(ExecutorService executor, DisruptorConfig config){
 			this.executor = executor;
 			this.config = config;
 			this.consumers = new ArrayList<EventConsumer<T>>();
+			this.preallocatedEventFactory = null;
+		}
+		
+		/**
+		 * Pre-allocates a mutable event, sized using the {@link DisruptorConfig}, for every entry in the ring. Published
+		 * events that implement {@link TransferableEvent} are then transferred into the claimed entry rather then the ring
+		 * holding a reference to them, so that consumers are only ever handed the ring's own events.
+		 * @param preallocatedEventFactory
+		 * @return
+		 */
+		public Builder<T> preallocateEvents(PreallocatedEventFactory<T> preallocatedEventFactory){
+			
+			this.preallocatedEventFactory = preallocatedEventFactory;
+			
+			return this;
 		}
 		
 		public Builder<T> addConsumer(EventConsumer<T> consumer){
@@ -63,7 +125,7 @@ public class DisruptorConsumer<T extends Event> implements DispatcherConsumer<T>
 		
 		@SuppressWarnings("unchecked")
 		public DisruptorConsumer<T> build(){
-			Disruptor<DisruptorEvent<T>> queue = new Disruptor<DisruptorEvent<T>>(new DisruptorEventFactory<T>(), config.getRingSize(), executor, ProducerType.SINGLE, new SleepingWaitStrategy()){
+			Disruptor<DisruptorEvent<T>> queue = new Disruptor<DisruptorEvent<T>>(new DisruptorEventFactory<T>(preallocatedEventFactory, config), config.getRingSize(), executor, config.getProducerType(), config.getWaitStrategyType().newWaitStrategy()){
 
 				@Override
 				public void shutdown(long timeout, TimeUnit timeUnit) throws TimeoutException { // overload so that disruptor will shutdown the executor
@@ -78,6 +140,9 @@ public class DisruptorConsumer<T extends Event> implements DispatcherConsumer<T>
 
 				@Override
 				public EventHandler<DisruptorEvent<T>> apply(final EventConsumer<T> input) {
+					if (input instanceof BatchEventConsumer){
+						return new BatchEventHandler<T>((BatchEventConsumer<T>)input);
+					}
 					return new EventHandler<DisruptorEvent<T>>(){
 
 						@Override
@@ -93,13 +158,61 @@ public class DisruptorConsumer<T extends Event> implements DispatcherConsumer<T>
 			queue.handleEventsWith(eventHandlers.toArray((EventHandler<DisruptorEvent<T>>[])new EventHandler[consumers.size()]));
 
 			queue.start();
-			return new DisruptorConsumer<T>(queue);
+			
+			EventTranslatorOneArg<DisruptorEvent<T>, T> translator;
+			if (preallocatedEventFactory != null){
+				translator = new PreallocatedEventTranslator<T>();
+			} else{
+				translator = new DisruptorConsumerTranslator<T>();
+			}
+			return new DisruptorConsumer<T>(queue, translator);
+		}
+	}
+
+	/**
+	 * Collects the events that the disruptor hands over between wake ups and passes them to a {@link BatchEventConsumer}
+	 * in one go when the end of the batch is reached. The ring entries can not be claimed by the producer until the
+	 * handler has returned from the last event of the batch so the collected events are safe to read until then.
+	 * @author haines
+	 *
+	 * @param <T>
+	 */
+	private static class BatchEventHandler<T extends Event> implements EventHandler<DisruptorEvent<T>>{
+		
+		private final BatchEventConsumer<T> consumer;
+		private final List<T> batch;
+		
+		private BatchEventHandler(BatchEventConsumer<T> consumer){
+			this.consumer = consumer;
+			this.batch = new ArrayList<T>();
+		}
+		
+		@Override
+		public void onEvent(DisruptorEvent<T> event, long sequence, boolean endOfBatch) throws Exception {
+			batch.add(event.getEvent());
+			
+			if (endOfBatch){
+				try{
+					consumer.consumeBatch(batch);
+				} finally{
+					batch.clear();
+				}
+			}
 		}
 	}
 
 	private static class DisruptorEvent<T extends Event>{
 		
+		private final T preallocatedEvent;
 		private T event;
+		
+		private DisruptorEvent(T preallocatedEvent){
+			this.preallocatedEvent = preallocatedEvent;
+		}
+		
+		public T getPreallocatedEvent() {
+			return preallocatedEvent;
+		}
 
 		public T getEvent() {
 			return event;
@@ -112,11 +225,21 @@ public class DisruptorConsumer<T extends Event> implements DispatcherConsumer<T>
 	
 	private static class DisruptorEventFactory<E extends Event> implements EventFactory<DisruptorEvent<E>>{
 
-		private DisruptorEventFactory(){}
+		private final PreallocatedEventFactory<E> preallocatedEventFactory;
+		private final DisruptorConfig config;
+		
+		private DisruptorEventFactory(PreallocatedEventFactory<E> preallocatedEventFactory, DisruptorConfig config){
+			this.preallocatedEventFactory = preallocatedEventFactory;
+			this.config = config;
+		}
 		
 		@Override
 		public DisruptorEvent<E> newInstance() {
-			return new DisruptorEvent<E>();
+			E preallocatedEvent = null;
+			if (preallocatedEventFactory != null){
+				preallocatedEvent = preallocatedEventFactory.newEvent(config.getEventFeatureCapacity(), config.getEventClassificationCapacity());
+			}
+			return new DisruptorEvent<E>(preallocatedEvent);
 		}
 	}
 	
@@ -124,10 +247,42 @@ public class DisruptorConsumer<T extends Event> implements DispatcherConsumer<T>
 
 		@Override
 		public void translateTo(DisruptorEvent<T> eventHolder, long sequence, T event) {
+			T previousEvent = eventHolder.getEvent();
+			
+			if (previousEvent instanceof RecyclableEvent){ // the slot has been claimed so every handler has finished with the previous event
+				((RecyclableEvent)previousEvent).recycle();
+			}
 			eventHolder.setEvent(event);
 		}
 		
 	}
+	
+	/**
+	 * Transfers each published event into the entry's pre-allocated event. Events that can not be transferred, such as
+	 * heart beats, are referenced as normal.
+	 * @author haines
+	 *
+	 * @param <T>
+	 */
+	private static class PreallocatedEventTranslator<T extends Event> implements EventTranslatorOneArg<DisruptorEvent<T>, T>{
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void translateTo(DisruptorEvent<T> eventHolder, long sequence, T event) {
+			if (event instanceof TransferableEvent){
+				T preallocatedEvent = eventHolder.getPreallocatedEvent();
+				
+				((TransferableEvent<T>)event).transferTo(preallocatedEvent);
+				eventHolder.setEvent(preallocatedEvent);
+				
+				if (event instanceof RecyclableEvent){ // the event's contents now live in the ring so it can be reused straight away
+					((RecyclableEvent)event).recycle();
+				}
+			} else{
+				eventHolder.setEvent(event);
+			}
+		}
+	}
 
 	@Override
 	public void shutdown() {
@@ -0,0 +1,59 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.List;
+import java.util.Random;
+
+import com.haines.ml.rce.model.Event;
+
+/**
+ * Dispatches each event to the less occupied of two randomly chosen consumers. Sampling two consumers rather then
+ * scanning them all keeps the cost of each dispatch constant whilst still steering events away from a consumer that
+ * has stalled, for instance whilst it is garbage collected or pushes its accumulators down the pipe, so that the
+ * dispatching thread is not left waiting on its full queue. Batches are kept together and sent to a single consumer.
+ * @author haines
+ *
+ * @param <E>
+ */
+public class LeastOccupancyDispatchStrategy<E extends Event> implements DispatchStrategy<E>{
+
+	private final Random randomGenerator;
+
+	public LeastOccupancyDispatchStrategy(){
+		this(new Random());
+	}
+
+	public LeastOccupancyDispatchStrategy(Random randomGenerator){
+		this.randomGenerator = randomGenerator;
+	}
+
+	@Override
+	public int getConsumerIdx(E event, List<DispatcherConsumer<E>> consumers) {
+		return getLeastOccupiedConsumerIdx(consumers);
+	}
+
+	@Override
+	public int getConsumerIdx(List<E> events, List<DispatcherConsumer<E>> consumers) {
+		return getLeastOccupiedConsumerIdx(consumers);
+	}
+
+	private int getLeastOccupiedConsumerIdx(List<DispatcherConsumer<E>> consumers){
+		int numConsumers = consumers.size();
+
+		if (numConsumers == 1){
+			return 0;
+		}
+
+		int firstIdx = randomGenerator.nextInt(numConsumers);
+		int secondIdx = randomGenerator.nextInt(numConsumers - 1);
+
+		if (secondIdx >= firstIdx){ // skip over the first choice so that two distinct consumers are always compared
+			secondIdx++;
+		}
+
+		return getRemainingCapacity(consumers.get(firstIdx)) >= getRemainingCapacity(consumers.get(secondIdx)) ? firstIdx : secondIdx;
+	}
+
+	private static int getRemainingCapacity(DispatcherConsumer<?> consumer){
+		return consumer.getQueueCapacity() - consumer.getQueueSize();
+	}
+}
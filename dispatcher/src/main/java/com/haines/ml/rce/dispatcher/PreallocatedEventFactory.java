@@ -0,0 +1,21 @@
+package com.haines.ml.rce.dispatcher;
+
+import com.haines.ml.rce.model.Event;
+
+/**
+ * Creates the mutable events that are allocated up front for each entry of a {@link DisruptorConsumer}'s ring. Events
+ * published to the ring are transferred into these entries rather then the ring holding a reference to them.
+ * @author haines
+ *
+ * @param <E>
+ */
+public interface PreallocatedEventFactory<E extends Event> {
+
+	/**
+	 * Creates a new, empty event with enough capacity for the given number of features and classifications.
+	 * @param featureCapacity
+	 * @param classificationCapacity
+	 * @return
+	 */
+	E newEvent(int featureCapacity, int classificationCapacity);
+}
@@ -0,0 +1,36 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.List;
+import java.util.Random;
+
+import com.haines.ml.rce.model.Event;
+
+/**
+ * Dispatches events uniformly at random. Every consumer will therefore eventually see every feature of the event
+ * stream. Batches are kept together and sent to a single random consumer.
+ * @author haines
+ *
+ * @param <E>
+ */
+public class RandomDispatchStrategy<E extends Event> implements DispatchStrategy<E>{
+
+	private final Random randomGenerator;
+
+	public RandomDispatchStrategy(){
+		this(new Random());
+	}
+
+	public RandomDispatchStrategy(Random randomGenerator){
+		this.randomGenerator = randomGenerator;
+	}
+
+	@Override
+	public int getConsumerIdx(E event, List<DispatcherConsumer<E>> consumers) {
+		return randomGenerator.nextInt(consumers.size());
+	}
+
+	@Override
+	public int getConsumerIdx(List<E> events, List<DispatcherConsumer<E>> consumers) {
+		return randomGenerator.nextInt(consumers.size());
+	}
+}
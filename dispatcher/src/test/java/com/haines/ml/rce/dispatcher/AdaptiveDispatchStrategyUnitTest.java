@@ -0,0 +1,217 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.ClassifiedEvent;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.Feature;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class AdaptiveDispatchStrategyUnitTest {
+
+	private static final int NUM_CONSUMERS = 4;
+	private static final int NUM_EVENTS = 20000;
+	private static final int NUM_COLD_KEYS = 1000;
+	private static final int NUM_HOT_KEYS = 3;
+	private static final double HOT_KEY_FRACTION = 0.15;
+	private static final int HOT_CONSUMER_IDX = 0;
+
+	private AdaptiveDispatchStrategy<Event> candidate;
+	private List<DispatcherConsumer<Event>> consumers;
+	private List<String> hotKeys;
+	private Random random;
+
+	@Before
+	public void before(){
+		candidate = new AdaptiveDispatchStrategy<Event>(DispatchKeyExtractor.UTIL.getClassificationKeyExtractor());
+		consumers = Collections.nCopies(NUM_CONSUMERS, null);
+		random = new Random(42);
+
+		hotKeys = new ArrayList<String>();
+		for (int i = 0; hotKeys.size() < NUM_HOT_KEYS; i++){ // find keys that all hash to the same consumer
+			String key = "hot"+i;
+			if (ConsistentHashDispatchStrategy.getConsumerIdx(key, NUM_CONSUMERS) == HOT_CONSUMER_IDX){
+				hotKeys.add(key);
+			}
+		}
+	}
+
+	@Test
+	public void givenSkewedKeys_whenMicroBatchEnds_thenHotKeysMovedAndLoadBalanced(){
+		long[] loads = dispatchSkewedEvents(true);
+
+		assertThat(getMaxLoad(loads) > getMeanLoad(loads) * 2, is(equalTo(true)));
+		assertThat(candidate.getNumHotKeys(), is(equalTo(0)));
+
+		candidate.microBatchEnded();
+
+		loads = dispatchSkewedEvents(true);
+
+		assertThat(getMaxLoad(loads) < getMeanLoad(loads) * 1.3, is(equalTo(true)));
+		assertThat(candidate.getNumHotKeys(), is(equalTo(NUM_HOT_KEYS)));
+		assertThat(candidate.getNumMigrations(), is(equalTo((long)NUM_HOT_KEYS)));
+
+		for (String hotKey: hotKeys){
+			assertThat(candidate.getConsumerIdx(new TestEvent(hotKey), consumers), is(not(equalTo(HOT_CONSUMER_IDX))));
+		}
+	}
+
+	@Test
+	public void givenMovedHotKeys_whenKeysCoolDown_thenKeysReturnHome(){
+		dispatchSkewedEvents(true);
+		candidate.microBatchEnded();
+		dispatchSkewedEvents(true);
+
+		assertThat(candidate.getNumHotKeys(), is(equalTo(NUM_HOT_KEYS)));
+
+		candidate.microBatchEnded();
+		dispatchSkewedEvents(false);
+		candidate.microBatchEnded();
+		dispatchSkewedEvents(false);
+
+		assertThat(candidate.getNumHotKeys(), is(equalTo(0)));
+		assertThat(candidate.getNumMigrations(), is(equalTo((long)NUM_HOT_KEYS * 2)));
+
+		for (String hotKey: hotKeys){
+			assertThat(candidate.getConsumerIdx(new TestEvent(hotKey), consumers), is(equalTo(HOT_CONSUMER_IDX)));
+		}
+	}
+
+	@Test
+	public void givenUniformKeys_whenMicroBatchEnds_thenNoKeysMoved(){
+		for (int batch = 0; batch < 3; batch++){
+			for (int i = 0; i < NUM_EVENTS; i++){
+				candidate.getConsumerIdx(new TestEvent("cold"+random.nextInt(NUM_COLD_KEYS)), consumers);
+			}
+			candidate.microBatchEnded();
+		}
+
+		assertThat(candidate.getNumHotKeys(), is(equalTo(0)));
+		assertThat(candidate.getNumMigrations(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void givenKeylessEvents_whenRouting_thenEventsStillRouted(){
+		for (int i = 0; i < NUM_EVENTS; i++){
+			int consumerIdx = candidate.getConsumerIdx(Event.HEARTBEAT, consumers);
+
+			assertThat(consumerIdx >= 0 && consumerIdx < NUM_CONSUMERS, is(equalTo(true)));
+		}
+	}
+
+	@Test
+	public void givenSketch_whenAddingSkewedCounts_thenEstimatesNeverUnderCount(){
+		CountMinSketch sketch = new CountMinSketch(4, 256);
+		Map<Integer, Long> trueCounts = new HashMap<Integer, Long>();
+
+		for (int i = 0; i < NUM_EVENTS; i++){
+			int value = (int)Math.abs(random.nextGaussian() * 200); // many values, few of which are heavy
+
+			Long trueCount = trueCounts.get(value);
+			trueCount = trueCount == null ? 1 : trueCount + 1;
+			trueCounts.put(value, trueCount);
+
+			assertThat(sketch.add(value) >= trueCount, is(equalTo(true)));
+		}
+
+		long maxError = NUM_EVENTS / 256 * 4;
+		for (Map.Entry<Integer, Long> trueCount: trueCounts.entrySet()){
+			long estimate = sketch.estimate(trueCount.getKey());
+
+			assertThat(estimate >= trueCount.getValue(), is(equalTo(true)));
+			assertThat(estimate - trueCount.getValue() <= maxError, is(equalTo(true)));
+		}
+
+		sketch.clear();
+
+		assertThat(sketch.estimate(0), is(equalTo(0L)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void givenNonPowerOfTwoWidth_whenCreatingSketch_thenExceptionThrown(){
+		new CountMinSketch(4, 100);
+	}
+
+	private long[] dispatchSkewedEvents(boolean includeHotKeys){
+		long[] loads = new long[NUM_CONSUMERS];
+		for (int i = 0; i < NUM_EVENTS; i++){
+			String key;
+			if (includeHotKeys && random.nextDouble() < HOT_KEY_FRACTION * NUM_HOT_KEYS){
+				key = hotKeys.get(random.nextInt(NUM_HOT_KEYS));
+			} else{
+				key = "cold"+random.nextInt(NUM_COLD_KEYS);
+			}
+			loads[candidate.getConsumerIdx(new TestEvent(key), consumers)]++;
+		}
+		return loads;
+	}
+
+	private static long getMaxLoad(long[] loads){
+		long maxLoad = 0;
+		for (long load: loads){
+			maxLoad = Math.max(maxLoad, load);
+		}
+		return maxLoad;
+	}
+
+	private static double getMeanLoad(long[] loads){
+		long totalLoad = 0;
+		for (long load: loads){
+			totalLoad += load;
+		}
+		return (double)totalLoad / loads.length;
+	}
+
+	private static class TestEvent implements ClassifiedEvent{
+
+		private final Collection<TestClassification> classifications;
+
+		private TestEvent(String classification){
+			this.classifications = Arrays.asList(new TestClassification(classification));
+		}
+
+		@Override
+		public Collection<? extends Feature> getFeaturesList() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Collection<? extends Classification> getClassificationsList() {
+			return classifications;
+		}
+	}
+
+	private static class TestClassification implements Classification{
+
+		private final String value;
+
+		private TestClassification(String value){
+			this.value = value;
+		}
+
+		@Override
+		public int getType() {
+			return 1;
+		}
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class AffinityThreadFactoryITest {
+
+	private static final Path THREAD_STATUS = Paths.get("/proc/thread-self/status");
+	private static final String CPUS_ALLOWED_KEY = "Cpus_allowed_list:";
+
+	@Test
+	public void givenCpuList_whenCreatingThread_thenThreadPinnedToFirstCpu() throws InterruptedException{
+		assumeTrue(Files.exists(THREAD_STATUS));
+		assumeTrue(isTasksetInstalled());
+
+		List<Integer> allowedCpus = parseCpuList(getCpusAllowed());
+
+		assumeTrue(!allowedCpus.isEmpty());
+
+		int cpu = allowedCpus.get(allowedCpus.size() - 1); // a cpu in this container's cpuset, so we are allowed to pin to it
+
+		final AtomicReference<String> cpusAllowed = new AtomicReference<String>();
+
+		Thread thread = new AffinityThreadFactory("testThread_", Arrays.asList(cpu)).newThread(new Runnable(){
+
+			@Override
+			public void run() {
+				cpusAllowed.set(getCpusAllowed());
+			}
+		});
+
+		thread.start();
+		thread.join();
+
+		assertThat(thread.getName(), is(equalTo("testThread_0_cpu"+cpu)));
+		assertThat(cpusAllowed.get(), is(equalTo(Integer.toString(cpu))));
+	}
+
+	@Test
+	public void givenCpuListFromStatus_whenParsing_thenRangesExpanded(){
+		assertThat(parseCpuList("0-2,5,7-8"), is(equalTo(Arrays.asList(0, 1, 2, 5, 7, 8))));
+		assertThat(parseCpuList("3"), is(equalTo(Arrays.asList(3))));
+	}
+
+	@Test
+	public void givenNoCpus_whenCreatingThreads_thenThreadsAreNamedInOrder(){
+		AffinityThreadFactory candidate = new AffinityThreadFactory("testThread_", Collections.<Integer>emptyList());
+
+		assertThat(candidate.newThread(null).getName(), is(equalTo("testThread_0")));
+		assertThat(candidate.newThread(null).getName(), is(equalTo("testThread_1")));
+	}
+
+	private static boolean isTasksetInstalled(){
+		String path = System.getenv("PATH");
+
+		if (path != null){
+			for (String directory: path.split(File.pathSeparator)){
+				if (Files.isExecutable(Paths.get(directory, "taskset"))){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a cpu list in the format of /proc, such as <code>0-3,8</code>.
+	 */
+	private static List<Integer> parseCpuList(String cpuList){
+		List<Integer> cpus = new ArrayList<Integer>();
+
+		if (cpuList != null && !cpuList.isEmpty()){
+			for (String range: cpuList.split(",")){
+				String[] bounds = range.split("-");
+
+				int first = Integer.parseInt(bounds[0].trim());
+				int last = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : first;
+
+				for (int cpu = first; cpu <= last; cpu++){
+					cpus.add(cpu);
+				}
+			}
+		}
+		return cpus;
+	}
+
+	private static String getCpusAllowed(){
+		try{
+			for (String line: Files.readAllLines(THREAD_STATUS, StandardCharsets.UTF_8)){
+				if (line.startsWith(CPUS_ALLOWED_KEY)){
+					return line.substring(CPUS_ALLOWED_KEY.length()).trim();
+				}
+			}
+			return null;
+		} catch (IOException e){
+			throw new RuntimeException("Unable to read thread status", e);
+		}
+	}
+}
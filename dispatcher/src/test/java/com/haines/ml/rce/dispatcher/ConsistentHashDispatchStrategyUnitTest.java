@@ -0,0 +1,200 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.ClassifiedEvent;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.Feature;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ConsistentHashDispatchStrategyUnitTest {
+
+	private static final int NUM_CONSUMERS = 7;
+	private static final int NUM_KEYS = 1000;
+	private static final int FEATURE_TYPE = 2;
+
+	@Test
+	public void givenFeatureStrategy_whenRoutingEvents_thenEventsWithSameFeatureValueRoutedToSameConsumer(){
+		DispatchStrategy<Event> candidate = new ConsistentHashDispatchStrategy<Event>(DispatchKeyExtractor.UTIL.getFeatureKeyExtractor(FEATURE_TYPE));
+		List<DispatcherConsumer<Event>> consumers = createConsumers(NUM_CONSUMERS);
+
+		Map<String, Integer> consumerIdxs = new HashMap<String, Integer>();
+		Set<Integer> consumersUsed = new HashSet<Integer>();
+		for (int i = 0; i < NUM_KEYS; i++){
+			int consumerIdx = candidate.getConsumerIdx(new TestEvent("class", "value"+i), consumers);
+
+			assertThat(consumerIdx >= 0 && consumerIdx < NUM_CONSUMERS, is(equalTo(true)));
+
+			consumerIdxs.put("value"+i, consumerIdx);
+			consumersUsed.add(consumerIdx);
+		}
+
+		for (int i = 0; i < NUM_KEYS; i++){
+			assertThat(candidate.getConsumerIdx(new TestEvent("otherClass", "value"+i), consumers), is(equalTo(consumerIdxs.get("value"+i))));
+		}
+
+		assertThat(consumersUsed.size(), is(equalTo(NUM_CONSUMERS)));
+	}
+
+	@Test
+	public void givenFeatureStrategy_whenAddingAConsumer_thenOnlyAFractionOfKeysMove(){
+		DispatchStrategy<Event> candidate = new ConsistentHashDispatchStrategy<Event>(DispatchKeyExtractor.UTIL.getFeatureKeyExtractor(FEATURE_TYPE));
+		List<DispatcherConsumer<Event>> consumers = createConsumers(NUM_CONSUMERS);
+		List<DispatcherConsumer<Event>> expandedConsumers = createConsumers(NUM_CONSUMERS + 1);
+
+		int numMoved = 0;
+		for (int i = 0; i < NUM_KEYS; i++){
+			TestEvent event = new TestEvent("class", "value"+i);
+
+			if (candidate.getConsumerIdx(event, consumers) != candidate.getConsumerIdx(event, expandedConsumers)){
+				numMoved++;
+			}
+		}
+
+		assertThat(numMoved > 0 && numMoved < NUM_KEYS / 4, is(equalTo(true))); // expect around 1/8 of keys to move
+	}
+
+	@Test
+	public void givenClassificationExtractor_whenExtractingKeys_thenFirstClassificationValueReturned(){
+		DispatchKeyExtractor<Event> candidate = DispatchKeyExtractor.UTIL.getClassificationKeyExtractor();
+
+		assertThat(candidate.getKey(new TestEvent("class1", "value")), is(equalTo((Object)"class1")));
+		assertThat(candidate.getKey(Event.HEARTBEAT), is(nullValue()));
+	}
+
+	@Test
+	public void givenFeatureExtractor_whenEventDoesNotHaveFeatureType_thenNullKeyReturned(){
+		DispatchKeyExtractor<Event> candidate = DispatchKeyExtractor.UTIL.getFeatureKeyExtractor(FEATURE_TYPE + 1);
+
+		assertThat(candidate.getKey(new TestEvent("class1", "value")), is(nullValue()));
+	}
+
+	@Test
+	public void givenDispatcherWithFeatureStrategy_whenDispatchingBatch_thenEachConsumerOnlyRecievesItsOwnKeys(){
+		List<DispatcherConsumer<Event>> consumers = createConsumers(NUM_CONSUMERS);
+
+		DispatchStrategy<Event> strategy = new ConsistentHashDispatchStrategy<Event>(DispatchKeyExtractor.UTIL.getFeatureKeyExtractor(FEATURE_TYPE));
+
+		Dispatcher<Event> candidate = new Dispatcher<Event>(consumers, DispatcherConfig.DEFAULT_CONFIG, strategy);
+
+		List<Event> batch = new ArrayList<Event>();
+		for (int i = 0; i < NUM_KEYS; i++){
+			batch.add(new TestEvent("class", "value"+(i % 50)));
+		}
+
+		candidate.dispatchEvents(batch);
+		candidate.dispatchEvents(batch);
+
+		int totalEvents = 0;
+		for (int i = 0; i < NUM_CONSUMERS; i++){
+			RecordingConsumer consumer = (RecordingConsumer)consumers.get(i);
+
+			for (Event event: consumer.eventsRecieved){
+				assertThat(strategy.getConsumerIdx(event, consumers), is(equalTo(i)));
+			}
+			totalEvents += consumer.eventsRecieved.size();
+		}
+
+		assertThat(totalEvents, is(equalTo(NUM_KEYS * 2)));
+	}
+
+	private static List<DispatcherConsumer<Event>> createConsumers(int numConsumers){
+		List<DispatcherConsumer<Event>> consumers = new ArrayList<DispatcherConsumer<Event>>(numConsumers);
+		for (int i = 0; i < numConsumers; i++){
+			consumers.add(new RecordingConsumer());
+		}
+		return consumers;
+	}
+
+	private static class TestEvent implements ClassifiedEvent{
+
+		private final Collection<TestFeature> classifications;
+		private final Collection<TestFeature> features;
+
+		private TestEvent(String classification, String featureValue){
+			this.classifications = Arrays.asList(new TestFeature(1, classification));
+			this.features = Arrays.asList(new TestFeature(1, "constant"), new TestFeature(FEATURE_TYPE, featureValue));
+		}
+
+		@Override
+		public Collection<? extends Feature> getFeaturesList() {
+			return features;
+		}
+
+		@Override
+		public Collection<? extends Classification> getClassificationsList() {
+			return classifications;
+		}
+	}
+
+	private static class TestFeature implements Feature, Classification{
+
+		private final int type;
+		private final String value;
+
+		private TestFeature(int type, String value){
+			this.type = type;
+			this.value = value;
+		}
+
+		@Override
+		public int getType() {
+			return type;
+		}
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+	}
+
+	private static class RecordingConsumer implements DispatcherConsumer<Event>{
+
+		private final List<Event> eventsRecieved = new ArrayList<Event>();
+
+		@Override
+		public void consumeEvent(Event event) {
+			eventsRecieved.add(event);
+		}
+
+		@Override
+		public boolean tryConsumeEvent(Event event) {
+			consumeEvent(event);
+
+			return true;
+		}
+
+		@Override
+		public void consumeEvents(List<Event> events) {
+			eventsRecieved.addAll(events);
+		}
+
+		@Override
+		public int getQueueSize() {
+			return 0;
+		}
+
+		@Override
+		public int getQueueCapacity() {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+}
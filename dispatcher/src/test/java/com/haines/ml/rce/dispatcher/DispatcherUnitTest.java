@@ -0,0 +1,166 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.haines.ml.rce.dispatcher.DispatcherConfig.OverloadPolicy;
+import com.haines.ml.rce.model.RecyclableEvent;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DispatcherUnitTest {
+
+	private static final int QUEUE_CAPACITY = 10;
+
+	@Test
+	public void givenDropPolicyAndFullConsumer_whenDispatchingEvents_thenOverflowIsDroppedAndCounted(){
+		BoundedTestConsumer consumer = new BoundedTestConsumer(QUEUE_CAPACITY);
+
+		Dispatcher<TestEvent> candidate = createDispatcher(OverloadPolicy.DROP, 0.5, 0.9, consumer);
+
+		List<TestEvent> events = dispatchEvents(candidate, QUEUE_CAPACITY + 5);
+
+		assertThat(consumer.eventsRecieved.size(), is(equalTo(QUEUE_CAPACITY)));
+		assertThat(candidate.getNumDropped(), is(equalTo(5L)));
+		assertThat(candidate.getQueueOccupancy(0), is(equalTo(1.0)));
+		assertThat(candidate.getMaxQueueOccupancy(), is(equalTo(1.0)));
+
+		for (int i = 0; i < events.size(); i++){
+			assertThat(events.get(i).recycled, is(equalTo(i >= QUEUE_CAPACITY)));
+		}
+	}
+
+	@Test
+	public void givenFallbackPolicyAndFullConsumer_whenDispatchingEvents_thenEventsRedirectedToOtherConsumers(){
+		BoundedTestConsumer consumer1 = new BoundedTestConsumer(QUEUE_CAPACITY);
+		BoundedTestConsumer consumer2 = new BoundedTestConsumer(QUEUE_CAPACITY);
+
+		Dispatcher<TestEvent> candidate = createDispatcher(OverloadPolicy.FALLBACK, 0.5, 0.9, consumer1, consumer2);
+
+		dispatchEvents(candidate, QUEUE_CAPACITY * 2);
+
+		assertThat(consumer1.eventsRecieved.size(), is(equalTo(QUEUE_CAPACITY)));
+		assertThat(consumer2.eventsRecieved.size(), is(equalTo(QUEUE_CAPACITY)));
+		assertThat(candidate.getNumDropped(), is(equalTo(0L)));
+		assertThat(candidate.getNumRedirected() > 0, is(equalTo(true)));
+	}
+
+	@Test
+	public void givenSamplePolicy_whenDispatchingEventsAboveHighWaterMark_thenEventsAreSampledOut(){
+		BoundedTestConsumer consumer = new BoundedTestConsumer(QUEUE_CAPACITY);
+
+		Dispatcher<TestEvent> candidate = createDispatcher(OverloadPolicy.SAMPLE, 0, 0.5, consumer);
+
+		dispatchEvents(candidate, QUEUE_CAPACITY);
+
+		assertThat(consumer.eventsRecieved.size(), is(equalTo(QUEUE_CAPACITY / 2)));
+		assertThat(candidate.getNumSampledOut(), is(equalTo((long)QUEUE_CAPACITY / 2)));
+		assertThat(candidate.getNumDropped(), is(equalTo(0L)));
+		assertThat(candidate.getQueueOccupancy(0), is(equalTo(0.5)));
+	}
+
+	@Test
+	public void givenSamplePolicy_whenDispatchingBatchAboveHighWaterMark_thenBatchIsSampledPerEvent(){
+		BoundedTestConsumer consumer = new BoundedTestConsumer(QUEUE_CAPACITY);
+
+		Dispatcher<TestEvent> candidate = createDispatcher(OverloadPolicy.SAMPLE, 0, 0.5, consumer);
+
+		List<TestEvent> batch = new ArrayList<TestEvent>();
+		for (int i = 0; i < QUEUE_CAPACITY; i++){
+			batch.add(new TestEvent());
+		}
+		candidate.dispatchEvents(batch);
+
+		assertThat(consumer.eventsRecieved.size(), is(equalTo(QUEUE_CAPACITY / 2)));
+		assertThat(candidate.getNumSampledOut(), is(equalTo((long)QUEUE_CAPACITY / 2)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void givenSampleRateOutOfRange_whenBuildingConfig_thenExceptionThrown(){
+		new DispatcherConfig.Builder().sampleRate(1.5).build();
+	}
+
+	private static List<TestEvent> dispatchEvents(Dispatcher<TestEvent> candidate, int numEvents){
+		List<TestEvent> events = new ArrayList<TestEvent>(numEvents);
+		for (int i = 0; i < numEvents; i++){
+			TestEvent event = new TestEvent();
+			events.add(event);
+			candidate.dispatchEvent(event);
+		}
+		return events;
+	}
+
+	private static Dispatcher<TestEvent> createDispatcher(OverloadPolicy policy, double sampleRate, double sampleHighWaterMark, BoundedTestConsumer... consumers){
+		return new Dispatcher<TestEvent>(Arrays.<DispatcherConsumer<TestEvent>>asList(consumers), new DispatcherConfig.Builder()
+																										.overloadPolicy(policy)
+																										.sampleRate(sampleRate)
+																										.sampleHighWaterMark(sampleHighWaterMark)
+																										.build());
+	}
+
+	private static class TestEvent implements RecyclableEvent{
+
+		private boolean recycled = false;
+
+		@Override
+		public void recycle() {
+			recycled = true;
+		}
+	}
+
+	/**
+	 * A consumer whose queue is never drained so that it fills up deterministically
+	 */
+	private static class BoundedTestConsumer implements DispatcherConsumer<TestEvent>{
+
+		private final List<TestEvent> eventsRecieved = new ArrayList<TestEvent>();
+		private final int capacity;
+
+		private BoundedTestConsumer(int capacity){
+			this.capacity = capacity;
+		}
+
+		@Override
+		public void consumeEvent(TestEvent event) {
+			if (!tryConsumeEvent(event)){
+				throw new IllegalStateException("test consumer would block forever");
+			}
+		}
+
+		@Override
+		public boolean tryConsumeEvent(TestEvent event) {
+			if (eventsRecieved.size() < capacity){
+				eventsRecieved.add(event);
+
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void consumeEvents(List<TestEvent> events) {
+			for (TestEvent event: events){
+				consumeEvent(event);
+			}
+		}
+
+		@Override
+		public int getQueueSize() {
+			return eventsRecieved.size();
+		}
+
+		@Override
+		public int getQueueCapacity() {
+			return capacity;
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+}
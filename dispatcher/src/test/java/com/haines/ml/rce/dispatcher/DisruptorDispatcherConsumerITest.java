@@ -3,8 +3,13 @@ package com.haines.ml.rce.dispatcher;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -13,8 +18,12 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
+import com.haines.ml.rce.dispatcher.DisruptorConfig.WaitStrategyType;
+import com.haines.ml.rce.model.BatchEventConsumer;
 import com.haines.ml.rce.model.Event;
 import com.haines.ml.rce.model.EventConsumer;
+import com.haines.ml.rce.model.TransferableEvent;
+import com.lmax.disruptor.dsl.ProducerType;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -101,6 +110,187 @@ public class DisruptorDispatcherConsumerITest {
 		}
 	}
 	
+	@Test
+	public void givenSingleConsumerCandidate_whenDispatchingBatchLargerThanRing_thenAllEventsConsumedInOrder() throws InterruptedException{
+		
+		int numEvents = 2500; // ring size is 1024 so the batch has to be published in chunks
+		
+		before(numEvents);
+		
+		List<Event> batch = new ArrayList<Event>(numEvents);
+		for (int i = 0; i < numEvents; i++){
+			batch.add(new TestEvent(TEST_EVENT_STRING+i, i));
+		}
+		
+		candidate.dispatchEvents(batch);
+		
+		consumerLatch.await();
+		
+		TestEventConsumer consumer = Iterables.get(consumers, 0);
+		
+		assertThat(consumer.getEventsRecieved().size(), is(equalTo(numEvents)));
+		
+		int i = 0;
+		for (TestEvent event: consumer.getEventsRecieved()){
+			assertThat(event.testString, is(equalTo(TEST_EVENT_STRING+i)));
+			assertThat(event.testNum, is(equalTo(i)));
+			i++;
+		}
+		assertThat(consumer.getNumHeartBeatsRecieved(), is(equalTo(0)));
+	}
+
+	@Test
+	public void givenPreallocatingConsumerCandidate_whenDispatchingEvents_thenRingEventsAreReusedWithTransferredState() throws InterruptedException{
+		
+		int ringSize = 16;
+		int numEvents = ringSize * 10;
+		
+		final CountDownLatch latch = new CountDownLatch(numEvents);
+		final List<Integer> valuesRecieved = new ArrayList<Integer>();
+		final Map<MutableTestEvent, Boolean> distinctEventsRecieved = new IdentityHashMap<MutableTestEvent, Boolean>();
+		
+		DispatcherConsumer<MutableTestEvent> consumer = new DisruptorConsumer.Builder<MutableTestEvent>(Executors.newSingleThreadExecutor(), 
+				new DisruptorConfig.Builder()
+					.ringSize(ringSize)
+					.build()
+		).addConsumer(new EventConsumer<MutableTestEvent>(){
+
+			@Override
+			public void consume(MutableTestEvent event) {
+				valuesRecieved.add(event.value);
+				distinctEventsRecieved.put(event, Boolean.TRUE);
+				latch.countDown();
+			}
+		}).preallocateEvents(new PreallocatedEventFactory<MutableTestEvent>(){
+
+			@Override
+			public MutableTestEvent newEvent(int featureCapacity, int classificationCapacity) {
+				return new MutableTestEvent(-1);
+			}
+		}).build();
+		
+		MutableTestEvent scratchEvent = new MutableTestEvent(0);
+		for (int i = 0; i < numEvents; i++){
+			scratchEvent.value = i;
+			consumer.consumeEvent(scratchEvent); // the same instance is reused as the ring holds its own copy
+		}
+		
+		latch.await();
+		consumer.shutdown();
+		
+		assertThat(valuesRecieved.size(), is(equalTo(numEvents)));
+		for (int i = 0; i < numEvents; i++){
+			assertThat(valuesRecieved.get(i), is(equalTo(i)));
+		}
+		assertThat(distinctEventsRecieved.size(), is(equalTo(ringSize)));
+		assertThat(distinctEventsRecieved.containsKey(scratchEvent), is(equalTo(false)));
+	}
+
+	@Test
+	public void givenEachWaitStrategy_whenDispatchingEvents_thenAllEventsConsumed() throws InterruptedException{
+		
+		int numEvents = 10000;
+		
+		for (WaitStrategyType waitStrategyType: WaitStrategyType.values()){
+			CountDownLatch latch = new CountDownLatch(numEvents);
+			
+			DispatcherConsumer<Event> consumer = new DisruptorConsumer.Builder<Event>(Executors.newSingleThreadExecutor(), 
+					new DisruptorConfig.Builder()
+						.ringSize(1024)
+						.waitStrategyType(waitStrategyType)
+						.build()
+			).addConsumer(new TestEventConsumer(latch))
+			.build();
+			
+			for (int i = 0; i < numEvents; i++){
+				consumer.consumeEvent(new TestEvent(TEST_EVENT_STRING+i, i));
+			}
+			
+			assertThat(latch.await(10, TimeUnit.SECONDS), is(equalTo(true)));
+			
+			consumer.shutdown();
+		}
+	}
+	
+	@Test
+	public void givenMultiProducerConsumer_whenPublishingFromManyThreads_thenAllEventsConsumed() throws InterruptedException{
+		
+		final int numThreads = 4;
+		final int numEventsPerThread = 100000;
+		
+		CountDownLatch latch = new CountDownLatch(numThreads * numEventsPerThread);
+		TestEventConsumer eventConsumer = new TestEventConsumer(latch);
+		
+		final DispatcherConsumer<Event> consumer = new DisruptorConsumer.Builder<Event>(Executors.newSingleThreadExecutor(), 
+				new DisruptorConfig.Builder()
+					.ringSize(1024)
+					.producerType(ProducerType.MULTI)
+					.build()
+		).addConsumer(eventConsumer)
+		.build();
+		
+		for (int i = 0; i < numThreads; i++){
+			final int threadNum = i;
+			new Thread(new Runnable(){
+
+				@Override
+				public void run() {
+					for (int j = 0; j < numEventsPerThread; j++){
+						consumer.consumeEvent(new TestEvent(TEST_EVENT_STRING, threadNum));
+					}
+				}
+			}).start();
+		}
+		
+		latch.await();
+		consumer.shutdown();
+		
+		assertThat(eventConsumer.getEventsRecieved().size(), is(equalTo(numThreads * numEventsPerThread)));
+	}
+	
+	@Test
+	public void givenBatchEventConsumer_whenDispatchingEvents_thenEventsConsumedInOrderAsBatches() throws InterruptedException{
+		
+		int numEvents = 100000;
+		final CountDownLatch latch = new CountDownLatch(numEvents);
+		final List<Integer> valuesRecieved = new ArrayList<Integer>(numEvents);
+		final AtomicInteger numBatches = new AtomicInteger(0);
+		
+		DispatcherConsumer<Event> consumer = new DisruptorConsumer.Builder<Event>(Executors.newSingleThreadExecutor(), 
+				new DisruptorConfig.Builder()
+					.ringSize(1024)
+					.build()
+		).addConsumer(new BatchEventConsumer<Event>(){
+
+			@Override
+			public void consume(Event event) {
+				throw new IllegalStateException("events should only be consumed in batches");
+			}
+
+			@Override
+			public void consumeBatch(List<? extends Event> events) {
+				numBatches.incrementAndGet();
+				for (Event event: events){
+					valuesRecieved.add(((TestEvent)event).testNum);
+					latch.countDown();
+				}
+			}
+		}).build();
+		
+		for (int i = 0; i < numEvents; i++){
+			consumer.consumeEvent(new TestEvent(TEST_EVENT_STRING, i));
+		}
+		
+		latch.await();
+		consumer.shutdown();
+		
+		assertThat(valuesRecieved.size(), is(equalTo(numEvents)));
+		for (int i = 0; i < numEvents; i++){
+			assertThat(valuesRecieved.get(i), is(equalTo(i)));
+		}
+		assertThat(numBatches.get() <= numEvents, is(equalTo(true)));
+	}
+	
 	@Test
 	public void givenMultipleConsumerCandidate_whenAddingMultipleEvents_thenEventsConsumedOverAllConsumers() throws InterruptedException{
 		
@@ -206,6 +396,20 @@ public class DisruptorDispatcherConsumerITest {
 		}
 	}
 	
+	private static class MutableTestEvent implements TransferableEvent<MutableTestEvent>{
+		
+		private int value;
+		
+		private MutableTestEvent(int value){
+			this.value = value;
+		}
+
+		@Override
+		public void transferTo(MutableTestEvent target) {
+			target.value = value;
+		}
+	}
+	
 	private static class TestEventConsumer implements EventConsumer<Event>{
 
 		private final Collection<TestEvent> eventsRecieved = new ArrayList<TestEvent>();
@@ -0,0 +1,150 @@
+package com.haines.ml.rce.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.haines.ml.rce.model.Event;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LeastOccupancyDispatchStrategyUnitTest {
+
+	private static final int QUEUE_CAPACITY = 16;
+	private static final int NUM_TEST_EVENTS = 10000;
+
+	@Test
+	public void givenTwoConsumers_whenRoutingEvents_thenEmptierConsumerAlwaysChosen(){
+		LeastOccupancyDispatchStrategy<Event> candidate = new LeastOccupancyDispatchStrategy<Event>();
+
+		List<DispatcherConsumer<Event>> consumers = Arrays.<DispatcherConsumer<Event>>asList(new FixedSizeConsumer(10), new FixedSizeConsumer(3));
+
+		for (int i = 0; i < 100; i++){
+			assertThat(candidate.getConsumerIdx(Event.HEARTBEAT, consumers), is(equalTo(1)));
+			assertThat(candidate.getConsumerIdx(Arrays.asList(Event.HEARTBEAT), consumers), is(equalTo(1)));
+		}
+	}
+
+	@Test
+	public void givenSingleConsumer_whenRoutingEvents_thenOnlyConsumerChosen(){
+		LeastOccupancyDispatchStrategy<Event> candidate = new LeastOccupancyDispatchStrategy<Event>();
+
+		assertThat(candidate.getConsumerIdx(Event.HEARTBEAT, Arrays.<DispatcherConsumer<Event>>asList(new FixedSizeConsumer(10))), is(equalTo(0)));
+	}
+
+	@Test
+	public void givenSameRandomChoiceTwice_whenRoutingEvents_thenNextConsumerComparedInstead(){
+		List<DispatcherConsumer<Event>> consumers = Arrays.<DispatcherConsumer<Event>>asList(new FixedSizeConsumer(1), new FixedSizeConsumer(5), new FixedSizeConsumer(2), new FixedSizeConsumer(8));
+
+		// 2 then 2 would compare consumer 2 with itself so consumer 3 is compared instead
+		assertThat(new LeastOccupancyDispatchStrategy<Event>(new ScriptedRandom(2, 2)).getConsumerIdx(Event.HEARTBEAT, consumers), is(equalTo(2)));
+		assertThat(new LeastOccupancyDispatchStrategy<Event>(new ScriptedRandom(3, 1)).getConsumerIdx(Event.HEARTBEAT, consumers), is(equalTo(1)));
+		assertThat(new LeastOccupancyDispatchStrategy<Event>(new ScriptedRandom(1, 0)).getConsumerIdx(Event.HEARTBEAT, consumers), is(equalTo(0)));
+	}
+
+	@Test
+	public void givenConsumersWithEqualOccupancy_whenRoutingEvents_thenFirstChoiceKept(){
+		List<DispatcherConsumer<Event>> consumers = Arrays.<DispatcherConsumer<Event>>asList(new FixedSizeConsumer(4), new FixedSizeConsumer(4), new FixedSizeConsumer(4));
+
+		assertThat(new LeastOccupancyDispatchStrategy<Event>(new ScriptedRandom(2, 0)).getConsumerIdx(Event.HEARTBEAT, consumers), is(equalTo(2)));
+	}
+
+	@Test
+	public void givenOneStalledConsumer_whenDispatchingEvents_thenStalledConsumerNeverChosenAndOthersShareEvents(){
+		List<FixedSizeConsumer> consumers = new ArrayList<FixedSizeConsumer>();
+
+		consumers.add(new FixedSizeConsumer(QUEUE_CAPACITY)); // a full queue, as if the worker has stalled
+		for (int i = 1; i < 4; i++){
+			consumers.add(new FixedSizeConsumer(0));
+		}
+
+		Dispatcher<Event> dispatcher = new Dispatcher<Event>(new ArrayList<DispatcherConsumer<Event>>(consumers), DispatcherConfig.DEFAULT_CONFIG, new LeastOccupancyDispatchStrategy<Event>(new Random(0)));
+
+		for (int i = 0; i < NUM_TEST_EVENTS; i++){
+			dispatcher.dispatchEvent(Event.HEARTBEAT);
+		}
+
+		assertThat(consumers.get(0).numConsumed, is(equalTo(0)));
+
+		int numConsumed = 0;
+		for (int i = 1; i < consumers.size(); i++){
+			assertThat(consumers.get(i).numConsumed > 0, is(equalTo(true)));
+
+			numConsumed += consumers.get(i).numConsumed;
+		}
+		assertThat(numConsumed, is(equalTo(NUM_TEST_EVENTS)));
+	}
+
+	/**
+	 * Returns a fixed sequence of choices so that the consumers compared by the strategy are known.
+	 */
+	private static class ScriptedRandom extends Random{
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] choices;
+		private int nextChoice;
+
+		private ScriptedRandom(int... choices){
+			this.choices = choices;
+			this.nextChoice = 0;
+		}
+
+		@Override
+		public int nextInt(int bound) {
+			int choice = choices[nextChoice++];
+
+			if (choice >= bound){
+				throw new IllegalArgumentException("Scripted choice "+choice+" is not less then "+bound);
+			}
+			return choice;
+		}
+	}
+
+	private static class FixedSizeConsumer implements DispatcherConsumer<Event>{
+
+		private final int queueSize;
+		private int numConsumed;
+
+		private FixedSizeConsumer(int queueSize){
+			this.queueSize = queueSize;
+			this.numConsumed = 0;
+		}
+
+		@Override
+		public void consumeEvent(Event event) {
+			numConsumed++;
+		}
+
+		@Override
+		public boolean tryConsumeEvent(Event event) {
+			numConsumed++;
+
+			return true;
+		}
+
+		@Override
+		public void consumeEvents(List<Event> events) {
+			numConsumed += events.size();
+		}
+
+		@Override
+		public int getQueueSize() {
+			return queueSize;
+		}
+
+		@Override
+		public int getQueueCapacity() {
+			return QUEUE_CAPACITY;
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package com.haines.ml.rce.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haines.ml.rce.eventstream.FrameDecoder;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+/**
+ * A high throughput, thread safe client for the framed TCP transport. Rather then writing each event to the network
+ * from the calling thread, events are copied into a ring buffer of pending events and the calling thread returns
+ * immediately. A small pool of connections, each owned by its own I/O thread, then drains the ring, coalescing
+ * all the pending events it owns into a single large write. Acks from the server are read asynchronously and
+ * each connection only stops writing once it has {@link AsyncEventSenderConfig#getMaxUnacknowledgedEvents()} events
+ * in flight, so that a slow server pushes back on the ring rather then on every write.
+ * <p>
+ * {@link #write(ByteBuffer)} only blocks when the ring is full whereas {@link #offer(ByteBuffer)} never blocks and
+ * drops the event instead. Any error on a connection, including the server making no progress within
+ * {@link AsyncEventSenderConfig#getAckTimeoutMs()}, fails the sender, after which all writes throw an exception.
+ * {@link #close()} waits for pending events to be written and acknowledged.
+ * @author haines
+ *
+ */
+public class AsyncEventSender implements IOSender, Closeable{
+
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncEventSender.class);
+
+	private static final int MAX_LENGTH_PREFIX_BYTES = 5;
+	private static final int INITIAL_EVENT_BYTES = 256;
+
+	private final AsyncEventSenderConfig config;
+	private final Disruptor<PendingEvent> ring;
+	private final RingBuffer<PendingEvent> ringBuffer;
+	private final ExecutorService executor;
+	private final List<ChannelWriter> writers;
+	private volatile Throwable failure;
+	private final AtomicLong numDropped;
+
+	public AsyncEventSender(AsyncEventSenderConfig config) throws IOException{
+		this.config = config;
+		this.failure = null;
+		this.numDropped = new AtomicLong(0);
+		this.writers = new ArrayList<ChannelWriter>(config.getNumChannels());
+
+		try{
+			for (int i = 0; i < config.getNumChannels(); i++){
+				writers.add(new ChannelWriter(i));
+			}
+		} catch (IOException e){
+			for (ChannelWriter writer: writers){
+				writer.closeChannel();
+			}
+			throw e;
+		}
+
+		this.executor = Executors.newFixedThreadPool(config.getNumChannels(), new ThreadFactory(){
+
+			private int threadNum = 0;
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "AsyncEventSender_"+threadNum++);
+				thread.setDaemon(true); // do not keep the client process alive
+
+				return thread;
+			}
+		});
+
+		this.ring = new Disruptor<PendingEvent>(PENDING_EVENT_FACTORY, config.getRingSize(), executor, ProducerType.MULTI, new SleepingWaitStrategy());
+
+		@SuppressWarnings("unchecked")
+		EventHandler<PendingEvent>[] handlers = writers.toArray(new EventHandler[writers.size()]);
+
+		ring.handleEventsWith(handlers);
+
+		this.ringBuffer = ring.start();
+
+		LOG.info("Created async client with "+config.getNumChannels()+" connection(s) to "+config.getAddress());
+	}
+
+	/**
+	 * Queues the remaining bytes of the buffer as a single event, blocking only if the ring of pending events is full.
+	 */
+	@Override
+	public void write(ByteBuffer data) throws IOException {
+		checkNotFailed();
+
+		long sequence = ringBuffer.next();
+
+		publish(sequence, data);
+	}
+
+	/**
+	 * Queues the remaining bytes of the buffer as a single event without blocking.
+	 * @param data
+	 * @return false if the ring of pending events is full and the event was dropped
+	 * @throws IOException if the sender has failed
+	 */
+	public boolean offer(ByteBuffer data) throws IOException {
+		checkNotFailed();
+
+		long sequence;
+		try {
+			sequence = ringBuffer.tryNext();
+		} catch (InsufficientCapacityException e) {
+			numDropped.incrementAndGet();
+
+			return false;
+		}
+
+		publish(sequence, data);
+
+		return true;
+	}
+
+	private void publish(long sequence, ByteBuffer data){
+		try{
+			ringBuffer.get(sequence).copyFrom(data);
+		} finally{
+			ringBuffer.publish(sequence);
+		}
+	}
+
+	private void checkNotFailed() throws IOException{
+		Throwable failure = this.failure;
+
+		if (failure != null){
+			throw new IOException("Async client to "+config.getAddress()+" has failed", failure);
+		}
+	}
+
+	/**
+	 * Returns the number of events that have been written to the network.
+	 * @return
+	 */
+	public long getNumSent(){
+		long numSent = 0;
+		for (ChannelWriter writer: writers){
+			numSent += writer.numSent;
+		}
+		return numSent;
+	}
+
+	/**
+	 * Returns the number of events that the server has acknowledged.
+	 * @return
+	 */
+	public long getNumAcknowledged(){
+		long numAcknowledged = 0;
+		for (ChannelWriter writer: writers){
+			numAcknowledged += writer.numAcknowledged;
+		}
+		return numAcknowledged;
+	}
+
+	/**
+	 * Returns the number of events that were dropped by {@link #offer(ByteBuffer)} as the ring was full.
+	 * @return
+	 */
+	public long getNumDropped(){
+		return numDropped.get();
+	}
+
+	/**
+	 * Waits for all pending events to be written and acknowledged and then closes the connections.
+	 */
+	@Override
+	public void close() throws IOException {
+		try{
+			ring.shutdown(config.getShutdownTimeoutMs(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e){
+			LOG.warn("Timed out waiting for pending events to be sent to "+config.getAddress());
+
+			ring.halt();
+		} finally{
+			executor.shutdown();
+		}
+
+		try {
+			executor.awaitTermination(config.getShutdownTimeoutMs(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void fail(Throwable cause){
+		if (failure == null){
+			LOG.error("Async client to "+config.getAddress()+" has failed", cause);
+
+			failure = cause;
+		}
+	}
+
+	private static final EventFactory<PendingEvent> PENDING_EVENT_FACTORY = new EventFactory<PendingEvent>(){
+
+		@Override
+		public PendingEvent newInstance() {
+			return new PendingEvent();
+		}
+	};
+
+	/**
+	 * An entry in the ring that holds a copy of an event's bytes. The copy is made as the caller is free to reuse its
+	 * buffer as soon as the write returns.
+	 */
+	private static class PendingEvent{
+
+		private byte[] data = new byte[INITIAL_EVENT_BYTES];
+		private int length;
+
+		private void copyFrom(ByteBuffer buffer){
+			length = buffer.remaining();
+
+			if (length > data.length){
+				data = new byte[Math.max(length, data.length * 2)];
+			}
+			buffer.get(data, 0, length);
+		}
+	}
+
+	/**
+	 * Owns one connection to the server, writing every {@link AsyncEventSenderConfig#getNumChannels()}th event in the
+	 * ring to it. Pending events are coalesced into a batch which is written when it fills up or when the writer has
+	 * caught up with the ring.
+	 */
+	private class ChannelWriter implements EventHandler<PendingEvent>, LifecycleAware{
+
+		private final int ordinal;
+		private final Selector selector;
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		private final ByteBuffer batch;
+		private final ByteBuffer[] largeFrame;
+		private final ByteBuffer ackBuffer;
+		private int numBatched;
+		private long numUnacknowledged;
+		private volatile long numSent;
+		private volatile long numAcknowledged;
+
+		private ChannelWriter(int ordinal) throws IOException{
+			this.ordinal = ordinal;
+			this.selector = SelectorProvider.provider().openSelector();
+			this.channel = IOSender.FACTORY.initiateConnection(config.getAddress(), selector);
+			this.key = channel.keyFor(selector);
+			this.batch = ByteBuffer.allocateDirect(config.getMaxBatchBytes());
+			this.largeFrame = new ByteBuffer[]{ByteBuffer.allocate(MAX_LENGTH_PREFIX_BYTES), null};
+			this.ackBuffer = ByteBuffer.allocate(2048);
+
+			key.interestOps(SelectionKey.OP_READ);
+		}
+
+		@Override
+		public void onEvent(PendingEvent event, long sequence, boolean endOfBatch) throws Exception {
+			if (failure != null){
+				return; // drop everything once failed
+			}
+
+			try{
+				if (sequence % config.getNumChannels() == ordinal){
+					append(event);
+				}
+
+				if (endOfBatch && numBatched > 0){ // caught up with the producers so send what we have
+					flush();
+				}
+			} catch (IOException | RuntimeException e){
+				fail(e);
+			}
+		}
+
+		private void append(PendingEvent event) throws IOException{
+			int frameLength = MAX_LENGTH_PREFIX_BYTES + event.length;
+
+			if (frameLength > batch.remaining()){
+				flush();
+
+				if (frameLength > batch.capacity()){ // too big to coalesce so write it on its own
+					writeLargeFrame(event);
+
+					return;
+				}
+			}
+
+			FrameDecoder.UTIL.writeVarInt(event.length, batch);
+			batch.put(event.data, 0, event.length);
+
+			numBatched++;
+		}
+
+		private void writeLargeFrame(PendingEvent event) throws IOException{
+			ByteBuffer lengthPrefix = largeFrame[0];
+
+			lengthPrefix.clear();
+			FrameDecoder.UTIL.writeVarInt(event.length, lengthPrefix);
+			lengthPrefix.flip();
+
+			largeFrame[1] = ByteBuffer.wrap(event.data, 0, event.length);
+			try{
+				while (largeFrame[1].hasRemaining()){
+					if (channel.write(largeFrame) == 0){
+						awaitChannel(SelectionKey.OP_WRITE);
+					}
+				}
+			} finally{
+				largeFrame[1] = null;
+			}
+
+			sent(1);
+		}
+
+		private void flush() throws IOException{
+			batch.flip();
+
+			while (batch.hasRemaining()){
+				if (channel.write(batch) == 0){ // socket buffer is full
+					awaitChannel(SelectionKey.OP_WRITE);
+				}
+			}
+			batch.clear();
+
+			sent(numBatched);
+			numBatched = 0;
+		}
+
+		private void sent(int numEvents) throws IOException{
+			numUnacknowledged += numEvents;
+			numSent += numEvents;
+
+			readAcks();
+
+			while (numUnacknowledged >= config.getMaxUnacknowledgedEvents()){ // the ack window is full
+				awaitChannel(0);
+			}
+		}
+
+		/**
+		 * Waits for the channel to become ready for the provided operations or for acks to arrive, consuming any acks
+		 * that have. If neither happens within the ack timeout then the server is assumed to have stalled and an
+		 * exception is thrown, failing the sender, so that this thread does not block the ring forever.
+		 */
+		private void awaitChannel(int ops) throws IOException{
+			key.interestOps(SelectionKey.OP_READ | ops);
+			try{
+				if (selector.select(config.getAckTimeoutMs()) == 0){
+					throw new IOException("Server has made no progress in "+config.getAckTimeoutMs()+"ms with "+numUnacknowledged+" events unacknowledged");
+				}
+				selector.selectedKeys().clear();
+			} finally{
+				key.interestOps(SelectionKey.OP_READ);
+			}
+
+			readAcks();
+		}
+
+		private void readAcks() throws IOException{
+			if (channel.read(ackBuffer) < 0){
+				throw new IOException("Connection closed by server with "+numUnacknowledged+" events unacknowledged");
+			}
+			ackBuffer.flip();
+
+			while (ackBuffer.hasRemaining()){
+				int ackStart = ackBuffer.position();
+				int numAcknowledged = FrameDecoder.UTIL.readVarInt(ackBuffer);
+
+				if (numAcknowledged < 0){ // partial ack. Wait for the rest
+					ackBuffer.position(ackStart);
+					break;
+				}
+
+				numUnacknowledged -= numAcknowledged;
+				this.numAcknowledged += numAcknowledged;
+
+				if (numUnacknowledged < 0){
+					throw new IllegalStateException("Server has acknowledged more events then were sent");
+				}
+			}
+			ackBuffer.compact();
+		}
+
+		@Override
+		public void onStart() {
+			// connection is established up front
+		}
+
+		/**
+		 * Invoked once all pending events have been written. Waits for the outstanding acks before closing the
+		 * connection.
+		 */
+		@Override
+		public void onShutdown() {
+			long deadline = System.currentTimeMillis() + config.getShutdownTimeoutMs();
+
+			try{
+				while (failure == null && numUnacknowledged > 0 && System.currentTimeMillis() < deadline){
+					key.interestOps(SelectionKey.OP_READ);
+
+					if (selector.select(Math.max(1, deadline - System.currentTimeMillis())) > 0){
+						selector.selectedKeys().clear();
+
+						readAcks();
+					}
+				}
+			} catch (IOException | RuntimeException e){
+				fail(e);
+			} finally{
+				if (numUnacknowledged > 0){
+					LOG.warn("Closing connection to "+config.getAddress()+" with "+numUnacknowledged+" events unacknowledged");
+				}
+				closeChannel();
+			}
+		}
+
+		private void closeChannel(){
+			try{
+				channel.close();
+				selector.close();
+			} catch (IOException e){
+				LOG.warn("Unable to close connection to "+config.getAddress(), e);
+			}
+		}
+	}
+}
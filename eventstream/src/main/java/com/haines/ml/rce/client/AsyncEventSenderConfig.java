@@ -0,0 +1,148 @@
+package com.haines.ml.rce.client;
+
+import java.net.SocketAddress;
+
+public class AsyncEventSenderConfig {
+
+	private final SocketAddress address;
+	private final int numChannels;
+	private final int ringSize;
+	private final int maxBatchBytes;
+	private final int maxUnacknowledgedEvents;
+	private final long shutdownTimeoutMs;
+	private final long ackTimeoutMs;
+
+	private AsyncEventSenderConfig(SocketAddress address, int numChannels, int ringSize, int maxBatchBytes, int maxUnacknowledgedEvents, long shutdownTimeoutMs, long ackTimeoutMs){
+		this.address = address;
+		this.numChannels = numChannels;
+		this.ringSize = ringSize;
+		this.maxBatchBytes = maxBatchBytes;
+		this.maxUnacknowledgedEvents = maxUnacknowledgedEvents;
+		this.shutdownTimeoutMs = shutdownTimeoutMs;
+		this.ackTimeoutMs = ackTimeoutMs;
+	}
+
+	public SocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns the number of connections to the server. Each connection is written to by its own I/O thread. Note that
+	 * events are only guaranteed to arrive in the order that they were sent when there is a single connection.
+	 * @return
+	 */
+	public int getNumChannels() {
+		return numChannels;
+	}
+
+	/**
+	 * Returns the number of events that can be pending, waiting to be written to the network. Must be a power of 2.
+	 * @return
+	 */
+	public int getRingSize() {
+		return ringSize;
+	}
+
+	/**
+	 * Returns the maximum number of bytes coalesced into a single write.
+	 * @return
+	 */
+	public int getMaxBatchBytes() {
+		return maxBatchBytes;
+	}
+
+	/**
+	 * Returns the number of events that each connection can have written but not yet acknowledged by the server before
+	 * it stops writing to wait for acks.
+	 * @return
+	 */
+	public int getMaxUnacknowledgedEvents() {
+		return maxUnacknowledgedEvents;
+	}
+
+	/**
+	 * Returns how long closing the sender waits for pending events to be written and acknowledged.
+	 * @return
+	 */
+	public long getShutdownTimeoutMs() {
+		return shutdownTimeoutMs;
+	}
+
+	/**
+	 * Returns how long a connection waits, when either its ack window or its socket buffer is full, without the server
+	 * acknowledging or reading any events before the connection is failed.
+	 * @return
+	 */
+	public long getAckTimeoutMs() {
+		return ackTimeoutMs;
+	}
+
+	public static class AsyncEventSenderConfigBuilder{
+
+		private SocketAddress address;
+		private int numChannels = 1;
+		private int ringSize = 65536;
+		private int maxBatchBytes = 64 * 1024; // 64Kb
+		private int maxUnacknowledgedEvents = 65536;
+		private long shutdownTimeoutMs = 5000;
+		private long ackTimeoutMs = 10000;
+
+		public AsyncEventSenderConfigBuilder address(SocketAddress address){
+			this.address = address;
+
+			return this;
+		}
+
+		public AsyncEventSenderConfigBuilder numChannels(int numChannels){
+			this.numChannels = numChannels;
+
+			return this;
+		}
+
+		public AsyncEventSenderConfigBuilder ringSize(int ringSize){
+			this.ringSize = ringSize;
+
+			return this;
+		}
+
+		public AsyncEventSenderConfigBuilder maxBatchBytes(int maxBatchBytes){
+			this.maxBatchBytes = maxBatchBytes;
+
+			return this;
+		}
+
+		public AsyncEventSenderConfigBuilder maxUnacknowledgedEvents(int maxUnacknowledgedEvents){
+			this.maxUnacknowledgedEvents = maxUnacknowledgedEvents;
+
+			return this;
+		}
+
+		public AsyncEventSenderConfigBuilder shutdownTimeoutMs(long shutdownTimeoutMs){
+			this.shutdownTimeoutMs = shutdownTimeoutMs;
+
+			return this;
+		}
+
+		public AsyncEventSenderConfigBuilder ackTimeoutMs(long ackTimeoutMs){
+			this.ackTimeoutMs = ackTimeoutMs;
+
+			return this;
+		}
+
+		public AsyncEventSenderConfig build(){
+			if (address == null){
+				throw new IllegalArgumentException("A server address is required");
+			}
+			if (Integer.bitCount(ringSize) != 1){
+				throw new IllegalArgumentException("The ring size must be a power of 2: "+ringSize);
+			}
+			if (numChannels < 1 || maxBatchBytes < 1 || maxUnacknowledgedEvents < 1){
+				throw new IllegalArgumentException("The number of channels ("+numChannels+"), max batch bytes ("+maxBatchBytes+") and max unacknowledged events ("+maxUnacknowledgedEvents+") must be at least 1");
+			}
+			if (ackTimeoutMs < 1){
+				throw new IllegalArgumentException("The ack timeout must be at least 1ms: "+ackTimeoutMs);
+			}
+			return new AsyncEventSenderConfig(address, numChannels, ringSize, maxBatchBytes, maxUnacknowledgedEvents, shutdownTimeoutMs, ackTimeoutMs);
+		}
+	}
+}
@@ -9,12 +9,15 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Iterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.haines.ml.rce.eventstream.FrameDecoder;
+
 public interface IOSender {
 	
 	public void write(ByteBuffer data) throws IOException;
@@ -177,5 +180,140 @@ public interface IOSender {
 				
 			};
 		}
+	
+		/**
+		 * Returns a sender that appends each write to the memory mapped segment files in the directory. The returned
+		 * sender should be closed once finished with so that other writers can use the directory.
+		 * @param segmentDirectory
+		 * @param segmentSize
+		 * @return
+		 * @throws IOException
+		 */
+		public MappedSegmentWriter getMappedSegmentIOSender(Path segmentDirectory, int segmentSize) throws IOException {
+			return new MappedSegmentWriter(segmentDirectory, segmentSize);
+		}
+		
+		/**
+		 * Returns a sender that prefixes every write with its length as a varint so that the server can decode many events
+		 * from a single read. Writes do not wait for the server to respond; instead any cumulative acks that have arrived
+		 * are consumed after each write.
+		 * @param eventStreamSocketAddress
+		 * @return
+		 * @throws IOException
+		 */
+		public IOSender getFramedTcpClientIOSender(SocketAddress eventStreamSocketAddress) throws IOException {
+			
+			LOG.info("creating framed TCP client channel provider for {}", eventStreamSocketAddress);
+			
+			final Selector selector = SelectorProvider.provider().openSelector();
+			
+			final SocketChannel serverChannel = initiateConnection(eventStreamSocketAddress, selector);
+			
+			serverChannel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+			
+			final ByteBuffer lengthPrefix = ByteBuffer.allocate(5);
+			final ByteBuffer ackBuffer = ByteBuffer.allocate(2048);
+			
+			return new IOSender(){
+				
+				private final ByteBuffer[] frame = new ByteBuffer[]{lengthPrefix, null};
+				private long numUnacknowledged = 0;
+	
+				@Override
+				public void write(ByteBuffer data) throws IOException {
+					
+					if (!serverChannel.isOpen()){
+						throw new IllegalStateException("channel not open");
+					}
+					
+					lengthPrefix.clear();
+					FrameDecoder.UTIL.writeVarInt(data.remaining(), lengthPrefix);
+					lengthPrefix.flip();
+					
+					frame[1] = data;
+					while (lengthPrefix.hasRemaining() || data.hasRemaining()){ // the prefix is always written, even for empty events
+						if (serverChannel.write(frame) == 0){
+							awaitWritable();
+						}
+					}
+					frame[1] = null;
+					
+					numUnacknowledged++;
+					
+					readAcks();
+				}
+				
+				/**
+				 * Blocks until the socket's send buffer has room rather then spinning on a full buffer, reading any acks that
+				 * arrive in the mean time.
+				 */
+				private void awaitWritable() throws IOException{
+					SelectionKey key = serverChannel.keyFor(selector);
+					
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					try{
+						boolean writable = false;
+						while (!writable){
+							selector.select();
+							
+							if (key.isReadable()){
+								processAcks();
+							}
+							writable = key.isWritable();
+							
+							selector.selectedKeys().clear();
+						}
+					} finally{
+						key.interestOps(SelectionKey.OP_READ);
+					}
+				}
+				
+				private void readAcks() throws IOException{
+					
+					if (selector.selectNow() == 0){
+						return;
+					}
+					
+					selector.selectedKeys().clear();
+					
+					processAcks();
+				}
+				
+				private void processAcks() throws IOException{
+					
+					serverChannel.read(ackBuffer);
+					ackBuffer.flip();
+					
+					while (ackBuffer.hasRemaining()){
+						int ackStart = ackBuffer.position();
+						int numAcknowledged = FrameDecoder.UTIL.readVarInt(ackBuffer);
+						
+						if (numAcknowledged < 0){ // partial ack. Wait for the rest
+							ackBuffer.position(ackStart);
+							break;
+						}
+						
+						numUnacknowledged -= numAcknowledged;
+						
+						if (numUnacknowledged < 0){
+							throw new IllegalStateException("Server has acknowledged more events then were sent");
+						}
+					}
+					ackBuffer.compact();
+				}
+			};
+		}
+		
+		/**
+		 * Returns a thread safe, asynchronous framed TCP sender that queues writes in a ring buffer and coalesces them
+		 * into large writes over a small pool of connections. See {@link AsyncEventSender}. The returned sender should be
+		 * closed once finished with so that pending events are flushed.
+		 * @param config
+		 * @return
+		 * @throws IOException
+		 */
+		public AsyncEventSender getAsyncFramedTcpClientIOSender(AsyncEventSenderConfig config) throws IOException {
+			return new AsyncEventSender(config);
+		}
 	}
 }
@@ -0,0 +1,145 @@
+package com.haines.ml.rce.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.haines.ml.rce.eventstream.SegmentFiles;
+
+/**
+ * Appends events to the rolling, memory mapped segment files read by a
+ * {@link com.haines.ml.rce.eventstream.MappedSegmentEventStream}. Each event's bytes are copied into the mapped segment
+ * before its header is committed so that the reader never sees a partially written event. Only one writer may append
+ * to a directory at a time, which is enforced with a file lock, so producers that need to write concurrently should
+ * either share a writer or use their own directory and stream. This class is not thread safe.
+ * @author haines
+ *
+ */
+public class MappedSegmentWriter implements IOSender, Closeable{
+
+	public static final String LOCK_FILE_NAME = "writer.lock";
+	
+	private static final String NEW_SEGMENT_SUFFIX = ".tmp";
+	
+	private final Path directory;
+	private final int segmentSize;
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+	private MappedByteBuffer segment;
+	private long segmentNumber;
+	
+	public MappedSegmentWriter(Path directory, int segmentSize) throws IOException{
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		
+		Files.createDirectories(directory);
+		
+		this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.lock = lockChannel.tryLock();
+		
+		if (lock == null){
+			lockChannel.close();
+			throw new IOException("Another writer is already appending to segments in: "+directory);
+		}
+		
+		segmentNumber = SegmentFiles.UTIL.getLastSegmentNumber(directory);
+		
+		if (segmentNumber < 0){
+			segmentNumber = 0;
+			createSegment();
+		} else{
+			openExistingSegment();
+		}
+	}
+	
+	/**
+	 * Appends the remaining bytes of the buffer as a single event.
+	 */
+	@Override
+	public void write(ByteBuffer data) throws IOException {
+		int recordLength = data.remaining();
+		int requiredBytes = SegmentFiles.HEADER_BYTES + recordLength;
+		
+		if (requiredBytes + SegmentFiles.HEADER_BYTES > segmentSize){
+			throw new IllegalArgumentException("Event of "+recordLength+" bytes is too large for a segment of "+segmentSize+" bytes");
+		}
+		
+		if (segment.remaining() < requiredBytes + SegmentFiles.HEADER_BYTES){ // always leave room for the end of segment marker
+			segment.putInt(segment.position(), SegmentFiles.END_OF_SEGMENT);
+			
+			segmentNumber++;
+			createSegment();
+		}
+		
+		int position = segment.position();
+		
+		segment.position(position + SegmentFiles.HEADER_BYTES);
+		segment.put(data);
+		
+		segment.putInt(position, SegmentFiles.UTIL.getCommittedHeader(recordLength)); // publish the event once it's all there
+	}
+	
+	/**
+	 * Forces the current segment to disk. Events are visible to readers on the same host without this.
+	 */
+	public void flush(){
+		segment.force();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try{
+			flush();
+			lock.release();
+		} finally{
+			lockChannel.close();
+		}
+	}
+	
+	/**
+	 * Creates the segment at its full size under a temporary name before moving it into place so that a reader never
+	 * maps a segment that is still being sized.
+	 */
+	private void createSegment() throws IOException{
+		Path segmentPath = SegmentFiles.UTIL.getSegmentPath(directory, segmentNumber);
+		Path newSegmentPath = segmentPath.resolveSibling(segmentPath.getFileName()+NEW_SEGMENT_SUFFIX);
+		
+		try(FileChannel channel = FileChannel.open(newSegmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			segment = channel.map(MapMode.READ_WRITE, 0, segmentSize); // extends the file with zeros
+		}
+		Files.move(newSegmentPath, segmentPath, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Maps the last segment and moves to the end of its committed records, rolling onto a new segment if it has been
+	 * closed.
+	 */
+	private void openExistingSegment() throws IOException{
+		Path segmentPath = SegmentFiles.UTIL.getSegmentPath(directory, segmentNumber);
+		
+		try(FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			segment = channel.map(MapMode.READ_WRITE, 0, channel.size());
+		}
+		
+		while (true){
+			int header = segment.getInt(segment.position());
+			
+			if (header == SegmentFiles.END_OF_SEGMENT){
+				segmentNumber++;
+				createSegment();
+				return;
+			} else if (!SegmentFiles.UTIL.isCommitted(header)){
+				return;
+			}
+			segment.position(segment.position() + SegmentFiles.HEADER_BYTES + SegmentFiles.UTIL.getRecordLength(header));
+		}
+	}
+}
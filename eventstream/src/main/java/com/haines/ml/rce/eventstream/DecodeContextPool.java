@@ -0,0 +1,117 @@
+package com.haines.ml.rce.eventstream;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.inject.Provider;
+
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+
+/**
+ * A bounded pool of {@link DecodeContext}s. Each connection accepted by a selector is given its own context so that
+ * partially received events from different clients are never merged into the same {@link EventMarshalBuffer}. Contexts
+ * are returned to the pool when their connection closes so that they can be reused by the next connection rather then
+ * allocating new buffers per connection. As a pool belongs to a single selector thread it is not thread safe.
+ * @author haines
+ *
+ * @param <E>
+ */
+class DecodeContextPool<E extends Event> {
+
+	private final Provider<EventMarshalBuffer<E>> eventBufferProvider;
+	private final Deque<DecodeContext<E>> freeContexts;
+	private final int maxContexts;
+	private int numContextsInUse;
+
+	DecodeContextPool(Provider<EventMarshalBuffer<E>> eventBufferProvider, int maxContexts){
+		this.eventBufferProvider = eventBufferProvider;
+		this.freeContexts = new ArrayDeque<DecodeContext<E>>();
+		this.maxContexts = maxContexts;
+		this.numContextsInUse = 0;
+	}
+
+	/**
+	 * Returns a context for a new connection, or null if the maximum number of contexts are already in use.
+	 * @return
+	 */
+	DecodeContext<E> acquire(){
+		if (numContextsInUse >= maxContexts){
+			return null;
+		}
+
+		DecodeContext<E> context = freeContexts.poll();
+		if (context == null){
+			context = new DecodeContext<E>(eventBufferProvider.get());
+		}
+		numContextsInUse++;
+
+		return context;
+	}
+
+	/**
+	 * Resets the context and returns it to the pool. If the context's buffer can not be reset then it is discarded.
+	 * @param context
+	 */
+	void release(DecodeContext<E> context){
+		numContextsInUse--;
+
+		try{
+			context.reset();
+		} catch (RuntimeException e){ // event buffers are not consistent in what they throw for content they can not build
+			return; // drop this context as its event buffer is left in an unknown state
+		}
+		freeContexts.push(context);
+	}
+
+	int getNumContextsInUse(){
+		return numContextsInUse;
+	}
+
+	/**
+	 * The decode state for a single connection.
+	 * @author haines
+	 *
+	 * @param <E>
+	 */
+	static class DecodeContext<E extends Event>{
+
+		private final EventMarshalBuffer<E> eventBuffer;
+		private final FrameDecoder frameDecoder;
+		private boolean hasPartialEvent;
+
+		private DecodeContext(EventMarshalBuffer<E> eventBuffer){
+			this.eventBuffer = eventBuffer;
+			this.frameDecoder = new FrameDecoder();
+			this.hasPartialEvent = false;
+		}
+
+		EventMarshalBuffer<E> getEventBuffer(){
+			return eventBuffer;
+		}
+
+		FrameDecoder getFrameDecoder(){
+			return frameDecoder;
+		}
+
+		/**
+		 * Returns whether some, but not all, of an unframed event has been marshalled into this context's buffer.
+		 * @return
+		 */
+		boolean hasPartialEvent(){
+			return hasPartialEvent || frameDecoder.hasPartialFrame();
+		}
+
+		void setHasPartialEvent(boolean hasPartialEvent){
+			this.hasPartialEvent = hasPartialEvent;
+		}
+
+		private void reset(){
+			if (hasPartialEvent){
+				eventBuffer.buildEventAndResetBuffer(); // discard whatever was left over from the last connection
+			}
+			frameDecoder.reset();
+			hasPartialEvent = false;
+		}
+	}
+}
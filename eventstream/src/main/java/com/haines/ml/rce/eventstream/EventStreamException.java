@@ -2,7 +2,7 @@ package com.haines.ml.rce.eventstream;
 
 public class EventStreamException extends Exception {
 
-	EventStreamException(String message, Throwable cause){
+	public EventStreamException(String message, Throwable cause){
 		super(message, cause);
 	}
 	
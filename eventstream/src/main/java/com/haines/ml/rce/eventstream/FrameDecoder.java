@@ -0,0 +1,185 @@
+package com.haines.ml.rce.eventstream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+
+/**
+ * Decodes varint length prefixed frames from a connection's byte stream. Every complete frame in a read buffer is
+ * unmarshalled into an event in a single pass and any trailing partial frame is held by this decoder until the rest of
+ * it arrives on a subsequent read. As the partial frame belongs to the connection that sent it, one decoder should be
+ * held for each connection.
+ * @author haines
+ *
+ */
+public class FrameDecoder {
+
+	public static final Util UTIL = new Util();
+
+	/**
+	 * The largest frame that will be accepted from a client. Anything larger is treated as a corrupt stream.
+	 */
+	public static final int MAX_FRAME_LENGTH = 1 << 24; // 16Mb
+
+	private static final int INITIAL_PARTIAL_FRAME_CAPACITY = 256;
+	private static final int INCOMPLETE_VARINT = -1;
+
+	private ByteBuffer partialFrame;
+
+	public FrameDecoder(){
+		this.partialFrame = ByteBuffer.allocate(INITIAL_PARTIAL_FRAME_CAPACITY);
+	}
+
+	/**
+	 * Decodes all the complete frames available from the supplied content (in read mode), and any partial frame
+	 * carried over from the previous call, adding an event to the supplied list for each one. Any remaining bytes are
+	 * retained by this decoder.
+	 * @param content
+	 * @param eventBuffer
+	 * @param events
+	 * @return the number of events decoded
+	 * @throws IOException if the stream contains a malformed or oversized frame or a frame whose content can not be
+	 * unmarshalled. In the latter case the event buffer may be left holding part of that frame's event.
+	 */
+	public <E extends Event> int decode(ByteBuffer content, EventMarshalBuffer<E> eventBuffer, List<E> events) throws IOException{
+
+		if (partialFrame.position() == 0){ // nothing carried over so decode straight out of the read buffer
+			int numDecoded = decodeFrames(content, eventBuffer, events);
+
+			append(content);
+
+			return numDecoded;
+		}
+
+		append(content);
+		partialFrame.flip();
+		try{
+			return decodeFrames(partialFrame, eventBuffer, events);
+		} finally{
+			partialFrame.compact();
+		}
+	}
+
+	/**
+	 * Returns whether this decoder is holding the start of a frame that has not yet been fully received.
+	 * @return
+	 */
+	public boolean hasPartialFrame(){
+		return partialFrame.position() > 0;
+	}
+
+	/**
+	 * Discards any partial frame so that this decoder can be reused for another connection.
+	 */
+	public void reset(){
+		partialFrame.clear();
+	}
+
+	private static <E extends Event> int decodeFrames(ByteBuffer frames, EventMarshalBuffer<E> eventBuffer, List<E> events) throws IOException{
+		int numDecoded = 0;
+
+		while (frames.hasRemaining()){
+			int frameStart = frames.position();
+			int frameLength = UTIL.readVarInt(frames);
+
+			if (frameLength > MAX_FRAME_LENGTH){
+				throw new IOException("Frame length of "+frameLength+" exceeds the maximum of "+MAX_FRAME_LENGTH);
+			}
+
+			if (frameLength == INCOMPLETE_VARINT || frames.remaining() < frameLength){ // wait for the rest of this frame
+				frames.position(frameStart);
+				break;
+			}
+
+			int limit = frames.limit();
+			int frameEnd = frames.position() + frameLength;
+
+			frames.limit(frameEnd);
+			try{
+				eventBuffer.marshal(frames);
+
+				events.add(eventBuffer.buildEventAndResetBuffer());
+			} catch (RuntimeException e){ // event buffers report malformed content unchecked. Only the sending connection should fail because of it
+				throw new IOException("Unable to unmarshal a frame of "+frameLength+" bytes", e);
+			} finally{
+				frames.limit(limit);
+				frames.position(frameEnd);
+			}
+			numDecoded++;
+		}
+
+		return numDecoded;
+	}
+
+	private void append(ByteBuffer content){
+		if (!content.hasRemaining()){
+			return;
+		}
+
+		int requiredCapacity = partialFrame.position() + content.remaining();
+		if (requiredCapacity > partialFrame.capacity()){
+			ByteBuffer newPartialFrame = ByteBuffer.allocate(Math.max(requiredCapacity, partialFrame.capacity() * 2));
+
+			partialFrame.flip();
+			newPartialFrame.put(partialFrame);
+
+			partialFrame = newPartialFrame;
+		}
+
+		partialFrame.put(content);
+	}
+
+	public static final class Util{
+
+		private static final int VARINT_DATA_BITS = 0x7F;
+		private static final int VARINT_CONTINUATION_BIT = 0x80;
+		private static final int MAX_VARINT_BYTES = 5;
+
+		private Util(){}
+
+		/**
+		 * Reads an unsigned, little endian base 128 varint from the buffer. If the buffer does not yet contain the whole
+		 * varint then -1 is returned and the buffer's position is undefined.
+		 * @param buffer
+		 * @return
+		 * @throws IOException if the varint is longer then an int
+		 */
+		public int readVarInt(ByteBuffer buffer) throws IOException{
+			int value = 0;
+
+			for (int i = 0; i < MAX_VARINT_BYTES; i++){
+				if (!buffer.hasRemaining()){
+					return INCOMPLETE_VARINT;
+				}
+
+				byte nextByte = buffer.get();
+				value |= (nextByte & VARINT_DATA_BITS) << (i * 7);
+
+				if ((nextByte & VARINT_CONTINUATION_BIT) == 0){
+					if (value < 0){
+						throw new IOException("Varint value overflows an int: "+Integer.toHexString(value));
+					}
+					return value;
+				}
+			}
+
+			throw new IOException("Malformed varint. Varints must not be longer then "+MAX_VARINT_BYTES+" bytes");
+		}
+
+		/**
+		 * Writes the non negative value as an unsigned, little endian base 128 varint into the buffer.
+		 * @param value
+		 * @param buffer
+		 */
+		public void writeVarInt(int value, ByteBuffer buffer){
+			while ((value & ~VARINT_DATA_BITS) != 0){
+				buffer.put((byte)((value & VARINT_DATA_BITS) | VARINT_CONTINUATION_BIT));
+				value >>>= 7;
+			}
+			buffer.put((byte)value);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package com.haines.ml.rce.eventstream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haines.ml.rce.dispatcher.Dispatcher;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventConsumer;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.system.Clock;
+
+/**
+ * An event stream that tails the rolling, memory mapped segment files (see {@link SegmentFiles}) written by producers on
+ * the same host, such as {@link com.haines.ml.rce.client.MappedSegmentWriter}. Committed records are unmarshalled
+ * straight out of the mapped segment and dispatched in batches, after which the position that has been read up to is
+ * persisted to a small memory mapped offset file in the segment directory. This means that a restarted stream resumes
+ * from where it left off. Segments that the stream has rolled past are deleted once they fall outside of
+ * {@link MappedSegmentEventStreamConfig#getNumRetainedSegments()}, or are all kept so that a directory of old segments
+ * can be replayed at disk speed by starting a stream with no offset file. Like {@link SelectorEventStream}, the {@link #start()} method will block until an appropriate
+ * call to {@link #stop()}.
+ * @author haines
+ *
+ * @param <E>
+ */
+public class MappedSegmentEventStream<E extends Event> implements EventStreamController, EventConsumer<E>{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MappedSegmentEventStream.class);
+
+	public static final String OFFSET_FILE_NAME = "reader.offset";
+
+	private static final int SEGMENT_NUMBER_OFFSET = 0;
+	private static final int POSITION_OFFSET = 8;
+	private static final int OFFSET_FILE_BYTES = 16;
+
+	private volatile boolean isAlive;
+	private volatile Thread executingThread;
+	private final MappedSegmentEventStreamConfig config;
+	private final Dispatcher<E> dispatcher;
+	private final EventMarshalBuffer<E> eventBuffer;
+	private final EventStreamListener listener;
+	private final List<E> eventBatch;
+	private final Clock clock;
+	private long nextHeartBeatTime;
+	private MappedByteBuffer offsets;
+	private MappedByteBuffer segment;
+	private ByteBuffer recordView;
+	private long segmentNumber;
+
+	@Inject
+	public MappedSegmentEventStream(Clock clock, Dispatcher<E> dispatcher, MappedSegmentEventStreamConfig config, EventMarshalBuffer<E> eventBuffer, EventStreamListener listener){
+		this.isAlive = false;
+		this.clock = clock;
+		this.dispatcher = dispatcher;
+		this.config = config;
+		this.eventBuffer = eventBuffer;
+		this.listener = listener;
+		this.eventBatch = new ArrayList<E>(config.getBatchSize());
+		this.nextHeartBeatTime = clock.getCurrentTime();
+	}
+
+	@Override
+	public void start() throws EventStreamException {
+		executingThread = Thread.currentThread();
+
+		try{
+			Files.createDirectories(config.getSegmentDirectory());
+
+			offsets = mapOffsets(config.getSegmentDirectory().resolve(OFFSET_FILE_NAME));
+			segmentNumber = offsets.getLong(SEGMENT_NUMBER_OFFSET);
+			int position = (int)offsets.getLong(POSITION_OFFSET);
+
+			deleteExpiredSegments();
+
+			isAlive = true;
+
+			LOG.info("Mapped segment stream started on directory: "+config.getSegmentDirectory()+" from segment "+segmentNumber+" at position "+position);
+			listener.streamStarted();
+
+			while (isAlive){
+				if (segment == null){
+					mapSegment(position);
+				}
+
+				if (segment == null || !readBatch()){ // caught up with the writer
+					idle();
+				}
+
+				if (Thread.interrupted()){ // we have been interrupted so stop the stream
+					isAlive = false;
+				}
+				position = 0;
+			}
+		} catch (IOException e){
+			throw new EventStreamException("Unable to read from mapped segments in: "+config.getSegmentDirectory(), e);
+		} finally{
+			isAlive = false;
+			executingThread = null;
+
+			if (offsets != null){
+				offsets.force();
+			}
+			listener.streamStopped();
+		}
+	}
+
+	/**
+	 * Reads up to a batch of committed records from the current segment, dispatches them and persists the new read
+	 * position. If the end of the segment is reached, the stream only rolls onto the next segment once the records read
+	 * from this one have been dispatched so that the persisted offset never moves past events that have not been
+	 * handed to the dispatcher.
+	 * @return true if any events were read or the stream rolled onto the next segment
+	 * @throws IOException
+	 */
+	private boolean readBatch() throws IOException{
+		int maxBatchSize = config.getBatchSize();
+		boolean endOfSegment = false;
+
+		try{
+			while (eventBatch.size() < maxBatchSize){
+				int position = segment.position();
+				int header = segment.getInt(position);
+
+				if (header == SegmentFiles.END_OF_SEGMENT){
+					endOfSegment = true;
+					break;
+				}
+
+				if (!SegmentFiles.UTIL.isCommitted(header)){ // the writer hasn't got this far yet
+					break;
+				}
+
+				int recordStart = position + SegmentFiles.HEADER_BYTES;
+				int recordEnd = recordStart + SegmentFiles.UTIL.getRecordLength(header);
+
+				recordView.limit(recordEnd);
+				recordView.position(recordStart);
+
+				eventBuffer.marshal(recordView); // each record contains the entirety of an event
+
+				E event = eventBuffer.buildEventAndResetBuffer();
+
+				listener.recievedEvent(event);
+				eventBatch.add(event);
+
+				segment.position(recordEnd);
+			}
+
+			int numRead = eventBatch.size();
+			if (numRead > 0){
+				dispatcher.dispatchEvents(eventBatch);
+
+				persistOffset();
+			}
+
+			if (endOfSegment){
+				rollSegment();
+			}
+			return numRead > 0 || endOfSegment;
+		} finally{
+			eventBatch.clear();
+		}
+	}
+
+	private void rollSegment() throws IOException{
+		segmentNumber++;
+		segment = null;
+		recordView = null;
+
+		persistOffset();
+		mapSegment(0);
+
+		deleteExpiredSegments();
+	}
+
+	/**
+	 * Deletes the segments that have fallen out of the configured number of retained segments behind the current one.
+	 */
+	private void deleteExpiredSegments() throws IOException{
+		int numRetainedSegments = config.getNumRetainedSegments();
+
+		if (numRetainedSegments != MappedSegmentEventStreamConfig.RETAIN_ALL_SEGMENTS){
+			int numDeleted = SegmentFiles.UTIL.deleteSegmentsBefore(config.getSegmentDirectory(), segmentNumber - numRetainedSegments);
+
+			if (numDeleted > 0){
+				LOG.debug("Deleted "+numDeleted+" segments that were older then segment "+(segmentNumber - numRetainedSegments));
+			}
+		}
+	}
+
+	/**
+	 * Maps the current segment number if the writer has created it yet.
+	 */
+	private void mapSegment(int position) throws IOException{
+		Path segmentPath = SegmentFiles.UTIL.getSegmentPath(config.getSegmentDirectory(), segmentNumber);
+
+		if (!Files.exists(segmentPath)){
+			return;
+		}
+
+		try(FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)){ // the mapping remains valid once the channel is closed
+			segment = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		segment.position(position);
+		recordView = segment.duplicate();
+	}
+
+	private void persistOffset(){
+		offsets.putLong(SEGMENT_NUMBER_OFFSET, segmentNumber);
+		offsets.putLong(POSITION_OFFSET, segment == null ? 0 : segment.position());
+	}
+
+	private void idle(){
+		long currentTime = clock.getCurrentTime();
+		long heartBeatPeriod = config.getHeartBeatPeriod();
+
+		if (heartBeatPeriod != SelectorEventStream.DO_NOT_SEND_HEART_BEAT && nextHeartBeatTime < currentTime){
+			LOG.debug("Sending heart beats...");
+
+			nextHeartBeatTime = currentTime + heartBeatPeriod;
+
+			dispatcher.sendHeartBeat();
+		}
+
+		try {
+			Thread.sleep(config.getIdleSleepMs());
+		} catch (InterruptedException e) {
+			isAlive = false;
+		}
+	}
+
+	private static MappedByteBuffer mapOffsets(Path offsetPath) throws IOException{
+		try(FileChannel channel = FileChannel.open(offsetPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			return channel.map(MapMode.READ_WRITE, 0, OFFSET_FILE_BYTES);
+		}
+	}
+
+	@Override
+	public void stop() throws EventStreamException {
+		Thread executingThread = this.executingThread;
+		if (executingThread != null && isAlive()){
+			isAlive = false;
+			executingThread.interrupt();
+		}
+
+		dispatcher.close();
+	}
+
+	@Override
+	public boolean isAlive() {
+		return isAlive;
+	}
+
+	@Override
+	public void consume(E event) {
+		listener.recievedEvent(event);
+		dispatcher.dispatchEvent(event);
+	}
+}
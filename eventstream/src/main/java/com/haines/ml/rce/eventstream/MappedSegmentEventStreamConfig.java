@@ -0,0 +1,137 @@
+package com.haines.ml.rce.eventstream;
+
+import java.nio.file.Path;
+
+public class MappedSegmentEventStreamConfig {
+
+	public static final int RETAIN_ALL_SEGMENTS = -1;
+
+	private final Path segmentDirectory;
+	private final int segmentSize;
+	private final int batchSize;
+	private final long idleSleepMs;
+	private final long heartBeatPeriod;
+	private final int numRetainedSegments;
+
+	private MappedSegmentEventStreamConfig(Path segmentDirectory, int segmentSize, int batchSize, long idleSleepMs, long heartBeatPeriod, int numRetainedSegments){
+		this.segmentDirectory = segmentDirectory;
+		this.segmentSize = segmentSize;
+		this.batchSize = batchSize;
+		this.idleSleepMs = idleSleepMs;
+		this.heartBeatPeriod = heartBeatPeriod;
+		this.numRetainedSegments = numRetainedSegments;
+	}
+
+	/**
+	 * Returns the directory that the segment files and the persisted read offset are held in.
+	 * @return
+	 */
+	public Path getSegmentDirectory() {
+		return segmentDirectory;
+	}
+
+	/**
+	 * Returns the size in bytes of each segment file. Writers and readers of the same directory must agree on this.
+	 * @return
+	 */
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * Returns the maximum number of events read from a segment before they are handed to the dispatcher and the read
+	 * offset is persisted.
+	 * @return
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Returns how long the stream sleeps for when it has caught up with the writer.
+	 * @return
+	 */
+	public long getIdleSleepMs() {
+		return idleSleepMs;
+	}
+
+	/**
+	 * Returns the milliseconds between heart beats when no events are being read.
+	 * @return
+	 */
+	public long getHeartBeatPeriod() {
+		return heartBeatPeriod;
+	}
+
+	/**
+	 * Returns the number of fully read segments that are kept in the directory behind the segment currently being read.
+	 * Older segments are deleted once the stream has rolled past them. {@link #RETAIN_ALL_SEGMENTS} keeps every segment
+	 * so that the directory can be replayed later.
+	 * @return
+	 */
+	public int getNumRetainedSegments() {
+		return numRetainedSegments;
+	}
+
+	public static class MappedSegmentEventStreamConfigBuilder{
+
+		private Path segmentDirectory;
+		private int segmentSize = 64 * 1024 * 1024; // 64Mb
+		private int batchSize = 64;
+		private long idleSleepMs = 1;
+		private long heartBeatPeriod = SelectorEventStream.DO_NOT_SEND_HEART_BEAT;
+		private int numRetainedSegments = 2;
+
+		public MappedSegmentEventStreamConfigBuilder segmentDirectory(Path segmentDirectory){
+			this.segmentDirectory = segmentDirectory;
+
+			return this;
+		}
+
+		public MappedSegmentEventStreamConfigBuilder segmentSize(int segmentSize){
+			this.segmentSize = segmentSize;
+
+			return this;
+		}
+
+		public MappedSegmentEventStreamConfigBuilder batchSize(int batchSize){
+			this.batchSize = batchSize;
+
+			return this;
+		}
+
+		public MappedSegmentEventStreamConfigBuilder idleSleepMs(long idleSleepMs){
+			this.idleSleepMs = idleSleepMs;
+
+			return this;
+		}
+
+		public MappedSegmentEventStreamConfigBuilder heartBeatPeriod(long heartBeatPeriod){
+			this.heartBeatPeriod = heartBeatPeriod;
+
+			return this;
+		}
+
+		public MappedSegmentEventStreamConfigBuilder numRetainedSegments(int numRetainedSegments){
+			this.numRetainedSegments = numRetainedSegments;
+
+			return this;
+		}
+
+		public MappedSegmentEventStreamConfig build(){
+			if (segmentDirectory == null){
+				throw new IllegalArgumentException("A segment directory is required");
+			}
+			if (segmentSize <= SegmentFiles.HEADER_BYTES * 2){
+				throw new IllegalArgumentException("The segment size is too small: "+segmentSize);
+			}
+			if (batchSize < 1){
+				throw new IllegalArgumentException("The batch size must be at least 1: "+batchSize);
+			}
+			if (numRetainedSegments < 0 && numRetainedSegments != RETAIN_ALL_SEGMENTS){
+				throw new IllegalArgumentException("The number of retained segments must be at least 0 or RETAIN_ALL_SEGMENTS: "+numRetainedSegments);
+			}
+			return new MappedSegmentEventStreamConfig(segmentDirectory, segmentSize, batchSize, idleSleepMs, heartBeatPeriod, numRetainedSegments);
+		}
+	}
+}
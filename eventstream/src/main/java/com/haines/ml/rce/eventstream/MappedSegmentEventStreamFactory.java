@@ -0,0 +1,33 @@
+package com.haines.ml.rce.eventstream;
+
+import javax.inject.Inject;
+
+import com.haines.ml.rce.dispatcher.Dispatcher;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.system.Clock;
+
+public class MappedSegmentEventStreamFactory<E extends Event> implements EventStreamFactory<E>{
+
+	private final MappedSegmentEventStreamConfig config;
+	private final EventMarshalBuffer<E> eventBuffer;
+	private final EventStreamListener listener;
+	private final Clock clock;
+	
+	@Inject
+	public MappedSegmentEventStreamFactory(Clock clock, MappedSegmentEventStreamConfig config, EventMarshalBuffer<E> eventBuffer, EventStreamListener listener){
+		this.clock = clock;
+		this.config = config;
+		this.eventBuffer = eventBuffer;
+		this.listener = listener;
+	}
+	
+	public MappedSegmentEventStreamFactory(Clock clock, MappedSegmentEventStreamConfig config, EventMarshalBuffer<E> eventBuffer){
+		this(clock, config, eventBuffer, EventStreamListener.NO_OP_LISTENER);
+	}
+	
+	@Override
+	public MappedSegmentEventStream<E> create(Dispatcher<E> dispatcher) {
+		return new MappedSegmentEventStream<E>(clock, dispatcher, config, eventBuffer, listener);
+	}
+}
@@ -0,0 +1,234 @@
+package com.haines.ml.rce.eventstream;
+
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventConsumer;
+
+/**
+ * An event stream that runs a number of {@link SelectorEventStream}s, each in its own thread, all listening on the
+ * same address. Each selector owns its own channel, read buffer and {@link com.haines.ml.rce.model.EventMarshalBuffer}
+ * and dispatches to its own {@link com.haines.ml.rce.dispatcher.Dispatcher} so no state is shared between selector
+ * threads. Like {@link SelectorEventStream}, the {@link #start()} method will block until an appropriate call to
+ * {@link #stop()} with the first selector being run in the calling thread.
+ * @author haines
+ *
+ * @param <T>
+ * @param <E>
+ */
+public class MultiSelectorEventStream<T extends SelectableChannel & NetworkChannel, E extends Event> implements EventStreamController, EventConsumer<E>{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MultiSelectorEventStream.class);
+
+	private static final ThreadFactory SELECTOR_THREAD_FACTORY = new ThreadFactory(){
+
+		private final AtomicInteger threadNum = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "SelectorThread_"+threadNum.getAndIncrement());
+		}
+	};
+
+	private final List<SelectorEventStream<T, E>> streams;
+	private final ShardedEventStreamListener listener;
+	private volatile EventStreamException shardFailure;
+	private ExecutorService executor;
+
+	MultiSelectorEventStream(List<SelectorEventStream<T, E>> streams, ShardedEventStreamListener listener){
+		if (streams.isEmpty()){
+			throw new IllegalArgumentException("At least one selector event stream is required");
+		}
+		this.streams = streams;
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts all the selectors, blocking until they have been stopped. If any selector fails to start then all the
+	 * selectors that did start are stopped and the failure is thrown.
+	 */
+	@Override
+	public void start() throws EventStreamException {
+
+		shardFailure = null;
+		executor = Executors.newFixedThreadPool(Math.max(1, streams.size() - 1), SELECTOR_THREAD_FACTORY);
+
+		for (final SelectorEventStream<T, E> stream: streams.subList(1, streams.size())){
+			executor.execute(new Runnable(){
+
+				@Override
+				public void run() {
+					try {
+						stream.start();
+					} catch (EventStreamException e) {
+						shardFailed(e);
+					}
+				}
+			});
+		}
+
+		try{
+			listener.awaitSecondaryShards(); // make sure the other selectors are running, or have failed, before this thread blocks
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			shardFailure = new EventStreamException("Interrupted whilst waiting for selectors to start", e);
+		}
+
+		if (shardFailure == null){
+			try{
+				streams.get(0).start(); // blocks until stopped
+			} catch (EventStreamException e){
+				shardFailed(e);
+			}
+		} else{
+			listener.shardNotRunning(); // the first selector is never started
+			stopQuietly();
+		}
+
+		if (shardFailure != null){
+			throw new EventStreamException("Unable to run all "+streams.size()+" selectors", shardFailure);
+		}
+	}
+
+	/**
+	 * Records the failure of a selector, which will never notify the listener that it has stopped, and stops all the
+	 * other selectors. Whilst the other selectors are still starting they are left to the thread starting the first
+	 * selector to stop, as a selector that is stopped part way through starting would otherwise carry on running.
+	 */
+	private void shardFailed(EventStreamException e){
+		LOG.error("Selector event stream failed. Stopping all selectors", e);
+
+		if (shardFailure == null){
+			shardFailure = e;
+		}
+		listener.shardNotRunning();
+
+		if (listener.haveSecondaryShardsStarted()){
+			stopQuietly();
+		}
+	}
+
+	private void stopQuietly(){
+		try {
+			stop();
+		} catch (EventStreamException e) {
+			LOG.error("Unable to stop selectors", e);
+		}
+	}
+
+	@Override
+	public void stop() throws EventStreamException {
+		EventStreamException stopFailure = null;
+
+		for (SelectorEventStream<T, E> stream: streams){
+			try{
+				stream.stop();
+			} catch (EventStreamException e){
+				stopFailure = e; // carry on stopping the remaining selectors
+			}
+		}
+
+		if (executor != null){
+			executor.shutdownNow();
+		}
+
+		if (stopFailure != null){
+			throw stopFailure;
+		}
+	}
+
+	@Override
+	public boolean isAlive() {
+		for (SelectorEventStream<T, E> stream: streams){
+			if (!stream.isAlive()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Injects the event through the first selector's dispatcher.
+	 */
+	@Override
+	public void consume(E event) {
+		streams.get(0).consume(event);
+	}
+
+	/**
+	 * A listener that is shared by all the selectors of a {@link MultiSelectorEventStream} so that the delegate listener
+	 * sees a single started notification once all selectors are running and a single stopped notification once they have all
+	 * stopped.
+	 * @author haines
+	 *
+	 */
+	static class ShardedEventStreamListener implements EventStreamListener{
+
+		private final EventStreamListener delegate;
+		private final int numShards;
+		private final AtomicInteger numStarted;
+		private final AtomicInteger numStopped;
+		private final CountDownLatch secondaryShardsStarted;
+
+		ShardedEventStreamListener(EventStreamListener delegate, int numShards){
+			this.delegate = delegate;
+			this.numShards = numShards;
+			this.numStarted = new AtomicInteger(0);
+			this.numStopped = new AtomicInteger(0);
+			this.secondaryShardsStarted = new CountDownLatch(numShards - 1); // the first shard is only started once the others are
+		}
+
+		@Override
+		public void streamStarted() {
+			secondaryShardsStarted.countDown();
+
+			if (numStarted.incrementAndGet() == numShards){
+				delegate.streamStarted();
+			}
+		}
+
+		/**
+		 * Called for a shard that is not running, because it either failed or was never started, and so will not notify
+		 * this listener that it has started or stopped.
+		 */
+		void shardNotRunning(){
+			secondaryShardsStarted.countDown();
+
+			streamStopped();
+		}
+
+		/**
+		 * Blocks until every shard other then the first has either started or failed.
+		 * @throws InterruptedException
+		 */
+		void awaitSecondaryShards() throws InterruptedException{
+			secondaryShardsStarted.await();
+		}
+
+		boolean haveSecondaryShardsStarted(){
+			return secondaryShardsStarted.getCount() == 0;
+		}
+
+		@Override
+		public void streamStopped() {
+			if (numStopped.incrementAndGet() == numShards){
+				delegate.streamStopped();
+			}
+		}
+
+		@Override
+		public void recievedEvent(Event event) {
+			delegate.recievedEvent(event);
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package com.haines.ml.rce.eventstream;
 
 import java.io.IOException;
+import java.net.SocketOption;
 import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
 import java.nio.channels.DatagramChannel;
@@ -26,6 +28,15 @@ public interface NetworkChannelProcessor<T extends SelectableChannel & NetworkCh
 		
 	};
 	
+	public static final NetworkChannelProcessorProvider<ServerSocketChannel> FRAMED_TCP_PROVIDER = new NetworkChannelProcessorProvider<ServerSocketChannel>(){
+
+		@Override
+		public NetworkChannelProcessor<ServerSocketChannel> get() {
+			return UTIL.getFramedServerChannelProcessor();
+		}
+		
+	};
+	
 	public static final NetworkChannelProcessorProvider<DatagramChannel> UDP_PROVIDER = new NetworkChannelProcessorProvider<DatagramChannel>(){
 
 		@Override
@@ -49,107 +60,181 @@ public interface NetworkChannelProcessor<T extends SelectableChannel & NetworkCh
 	
 	String getProtocolName();
 	
+	/**
+	 * Returns whether every read from this processor's channels yields exactly one complete message, as is the case
+	 * for datagrams. Message oriented channels are drained in batches rather then read one event per selector wakeup.
+	 * @return
+	 */
+	boolean isMessageOriented();
+	
+	/**
+	 * Returns whether each message on this processor's channels is prefixed with its length as a varint so that many
+	 * messages can be decoded from a single read. See {@link FrameDecoder}.
+	 * @return
+	 */
+	boolean isLengthPrefixFramed();
+	
 	public static final class Util{
 		
+		private static final String SO_REUSEPORT_OPTION_NAME = "SO_REUSEPORT";
+		
 		private Util(){}
 		
-		private final NetworkChannelProcessor<ServerSocketChannel> serverChannelProcessor = new NetworkChannelProcessor<ServerSocketChannel>(){
+		/**
+		 * Enables SO_REUSEPORT on the supplied channel so that multiple channels can be bound to the same address
+		 * with the kernel load balancing incoming packets/connections between them. This option is only exposed from
+		 * java 9 onwards so it is looked up reflectively to keep this module compatible with older runtimes.
+		 * @param channel
+		 * @throws IOException if the runtime or the underlying OS does not support the option
+		 */
+		@SuppressWarnings("unchecked")
+		public void enableReusePort(NetworkChannel channel) throws IOException{
+			SocketOption<Boolean> reusePort;
+			try {
+				reusePort = (SocketOption<Boolean>)StandardSocketOptions.class.getField(SO_REUSEPORT_OPTION_NAME).get(null);
+			} catch (NoSuchFieldException | IllegalAccessException e) {
+				throw new IOException("SO_REUSEPORT is not available in this runtime", e);
+			}
+			
+			if (!channel.supportedOptions().contains(reusePort)){
+				throw new IOException("SO_REUSEPORT is not supported by this platform for channel: "+channel);
+			}
+			
+			channel.setOption(reusePort, true);
+		}
+		
+		private final NetworkChannelProcessor<ServerSocketChannel> serverChannelProcessor = new ServerChannelProcessor("TCP", false);
+		
+		private final NetworkChannelProcessor<ServerSocketChannel> framedServerChannelProcessor = new ServerChannelProcessor("FRAMED_TCP", true);
+		
+		private final NetworkChannelProcessor<DatagramChannel> datagramChannelProcessor = new NetworkChannelProcessor<DatagramChannel>(){
 
 			@Override
-			public ServerSocketChannel createChannel(SelectorProvider provider) throws IOException {
-				ServerSocketChannel channel = provider.openServerSocketChannel();
+			public DatagramChannel createChannel(SelectorProvider provider) throws IOException {
+				DatagramChannel channel = provider.openDatagramChannel(StandardProtocolFamily.INET);
+				channel.configureBlocking(false);
 				
 				return channel;
 			}
 
 			@Override
-			public void acceptChannel(Selector selector, ServerSocketChannel channel) throws IOException {
-				SocketChannel socketChannel = channel.accept();
-				socketChannel.configureBlocking(false);
-				
-				socketChannel.finishConnect();
-				socketChannel.register(selector, SelectionKey.OP_READ);
+			public void acceptChannel(Selector selector, DatagramChannel channel) throws IOException {
+				throw new UnsupportedOperationException("Accept does not mean anything for a datagram packet");
 			}
 
 			@Override
 			public int getRegisterOpCodes() {
-				return SelectionKey.OP_ACCEPT;
+				return SelectionKey.OP_READ;
 			}
 
 			@Override
-			public void close(ServerSocketChannel channel) throws IOException {
+			public void close(DatagramChannel channel) throws IOException {
+				channel.disconnect();
 				channel.close();
 			}
 
 			@Override
 			public int readFromChannel(ScatteringByteChannel readerChannel, ByteBuffer buffer) throws IOException {
-				return readerChannel.read(buffer);
+				int position = buffer.position();
+				((DatagramChannel)readerChannel).receive(buffer);
+				
+				return buffer.position() - position;
 			}
 
 			@Override
-			public void closeAccept(Channel readerChannel) throws IOException {
-				readerChannel.close();
+			public void closeAccept(Channel readerChannel)throws IOException {
+				// socket does not need closing for datagrams
 			}
 
 			@Override
 			public String getProtocolName() {
-				return "TCP";
+				return "UDP";
+			}
+
+			@Override
+			public boolean isMessageOriented() {
+				return true;
+			}
+
+			@Override
+			public boolean isLengthPrefixFramed() {
+				return false;
 			}
 			
 		};
 		
-		private final NetworkChannelProcessor<DatagramChannel> datagramChannelProcessor = new NetworkChannelProcessor<DatagramChannel>(){
+		public NetworkChannelProcessor<ServerSocketChannel> getServerChannelProcessor(){
+			return serverChannelProcessor;
+		}
+		
+		public NetworkChannelProcessor<ServerSocketChannel> getFramedServerChannelProcessor(){
+			return framedServerChannelProcessor;
+		}
+		
+		public NetworkChannelProcessor<DatagramChannel> getDatagramChannelProcessor(){
+			return datagramChannelProcessor;
+		}
+		
+		private static final class ServerChannelProcessor implements NetworkChannelProcessor<ServerSocketChannel>{
+			
+			private final String protocolName;
+			private final boolean isLengthPrefixFramed;
+			
+			private ServerChannelProcessor(String protocolName, boolean isLengthPrefixFramed){
+				this.protocolName = protocolName;
+				this.isLengthPrefixFramed = isLengthPrefixFramed;
+			}
 
 			@Override
-			public DatagramChannel createChannel(SelectorProvider provider) throws IOException {
-				DatagramChannel channel = provider.openDatagramChannel(StandardProtocolFamily.INET);
-				channel.configureBlocking(false);
+			public ServerSocketChannel createChannel(SelectorProvider provider) throws IOException {
+				ServerSocketChannel channel = provider.openServerSocketChannel();
 				
 				return channel;
 			}
 
 			@Override
-			public void acceptChannel(Selector selector, DatagramChannel channel) throws IOException {
-				throw new UnsupportedOperationException("Accept does not mean anything for a datagram packet");
+			public void acceptChannel(Selector selector, ServerSocketChannel channel) throws IOException {
+				SocketChannel socketChannel = channel.accept();
+				socketChannel.configureBlocking(false);
+				
+				socketChannel.finishConnect();
+				socketChannel.register(selector, SelectionKey.OP_READ);
 			}
 
 			@Override
 			public int getRegisterOpCodes() {
-				return SelectionKey.OP_READ;
+				return SelectionKey.OP_ACCEPT;
 			}
 
 			@Override
-			public void close(DatagramChannel channel) throws IOException {
-				channel.disconnect();
+			public void close(ServerSocketChannel channel) throws IOException {
 				channel.close();
 			}
 
 			@Override
 			public int readFromChannel(ScatteringByteChannel readerChannel, ByteBuffer buffer) throws IOException {
-				int position = buffer.position();
-				((DatagramChannel)readerChannel).receive(buffer);
-				
-				return buffer.position() - position;
+				return readerChannel.read(buffer);
 			}
 
 			@Override
-			public void closeAccept(Channel readerChannel)throws IOException {
-				// socket does not need closing for datagrams
+			public void closeAccept(Channel readerChannel) throws IOException {
+				readerChannel.close();
 			}
 
 			@Override
 			public String getProtocolName() {
-				return "UDP";
+				return protocolName;
+			}
+
+			@Override
+			public boolean isMessageOriented() {
+				return false;
+			}
+
+			@Override
+			public boolean isLengthPrefixFramed() {
+				return isLengthPrefixFramed;
 			}
-			
-		};
-		
-		public NetworkChannelProcessor<ServerSocketChannel> getServerChannelProcessor(){
-			return serverChannelProcessor;
-		}
-		
-		public NetworkChannelProcessor<DatagramChannel> getDatagramChannelProcessor(){
-			return datagramChannelProcessor;
 		}
 	}
 	
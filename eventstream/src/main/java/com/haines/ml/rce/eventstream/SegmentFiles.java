@@ -0,0 +1,105 @@
+package com.haines.ml.rce.eventstream;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Defines the layout of the rolling, memory mapped segment files that are used to pass events between processes on the
+ * same host. A segment is a fixed size file, pre-filled with zeros, that contains a sequence of records. Each record is
+ * a 4 byte header followed by the event's bytes. The header is only written once the event's bytes are in place and
+ * has {@link #COMMITTED_FLAG} set alongside the length of the event so that a header of 0 indicates that the writer
+ * has not yet reached this position. When there is not enough room left in a segment for the next record, the writer
+ * marks the end of the segment with {@link #END_OF_SEGMENT} and rolls onto the next segment number.
+ * @author haines
+ *
+ */
+public final class SegmentFiles {
+
+	public static final Util UTIL = new Util();
+
+	public static final int HEADER_BYTES = 4;
+	public static final int COMMITTED_FLAG = 0x80000000;
+	public static final int END_OF_SEGMENT = 0xFFFFFFFF;
+	public static final int UNWRITTEN = 0;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".dat";
+	private static final String SEGMENT_NUMBER_FORMAT = "%016d";
+
+	private SegmentFiles(){}
+
+	public static final class Util{
+
+		private Util(){}
+
+		public Path getSegmentPath(Path directory, long segmentNumber){
+			return directory.resolve(SEGMENT_PREFIX+String.format(SEGMENT_NUMBER_FORMAT, segmentNumber)+SEGMENT_SUFFIX);
+		}
+
+		/**
+		 * Returns the highest segment number in the directory or -1 if there are no segments.
+		 * @param directory
+		 * @return
+		 * @throws IOException
+		 */
+		public long getLastSegmentNumber(Path directory) throws IOException{
+			long lastSegmentNumber = -1;
+
+			try(DirectoryStream<Path> segments = Files.newDirectoryStream(directory, SEGMENT_PREFIX+"*"+SEGMENT_SUFFIX)){
+				for (Path segment: segments){
+					lastSegmentNumber = Math.max(lastSegmentNumber, getSegmentNumber(segment));
+				}
+			}
+			return lastSegmentNumber;
+		}
+
+		/**
+		 * Returns the number of the segment file or -1 if the file is not a segment.
+		 */
+		private long getSegmentNumber(Path segment){
+			String fileName = segment.getFileName().toString();
+
+			try{
+				return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+			} catch (NumberFormatException e){
+				return -1; // not one of ours
+			}
+		}
+
+		/**
+		 * Deletes every segment in the directory with a segment number lower then the one provided.
+		 * @param directory
+		 * @param segmentNumber
+		 * @return the number of segments deleted
+		 * @throws IOException
+		 */
+		public int deleteSegmentsBefore(Path directory, long segmentNumber) throws IOException{
+			int numDeleted = 0;
+
+			try(DirectoryStream<Path> segments = Files.newDirectoryStream(directory, SEGMENT_PREFIX+"*"+SEGMENT_SUFFIX)){
+				for (Path segment: segments){
+					long number = getSegmentNumber(segment);
+
+					if (number >= 0 && number < segmentNumber && Files.deleteIfExists(segment)){
+						numDeleted++;
+					}
+				}
+			}
+			return numDeleted;
+		}
+
+		public boolean isCommitted(int header){
+			return header != END_OF_SEGMENT && (header & COMMITTED_FLAG) != 0;
+		}
+
+		public int getRecordLength(int header){
+			return header & ~COMMITTED_FLAG;
+		}
+
+		public int getCommittedHeader(int recordLength){
+			return recordLength | COMMITTED_FLAG;
+		}
+	}
+}
@@ -10,14 +10,18 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.haines.ml.rce.dispatcher.Dispatcher;
+import com.haines.ml.rce.eventstream.DecodeContextPool.DecodeContext;
 import com.haines.ml.rce.model.Event;
 import com.haines.ml.rce.model.EventConsumer;
 import com.haines.ml.rce.model.EventMarshalBuffer;
@@ -38,29 +42,56 @@ public class SelectorEventStream<T extends SelectableChannel & NetworkChannel, E
 
 	private static final byte[] SUCCESS_PAYLOAD = new byte[]{127};
 	
+	private static final int MAX_ACK_BYTES = 5; // a varint encoded int
+	
 	private volatile boolean isAlive;
 	private final SelectorEventStreamConfig config;
 	private final Dispatcher<E> dispatcher;
 	private final NetworkChannelProcessor<T> processor;
 	private final EventMarshalBuffer<E> eventBuffer;
+	private final DecodeContextPool<E> decodeContexts;
 	private final EventStreamListener listener;
+	private final List<E> eventBatch;
+	private final ByteBuffer ackBuffer;
 	private volatile Thread executingThread;
 	private long nextHeartBeatTime;
 	private final Clock clock;
 	private T channel;
 	
+	/**
+	 * Creates a stream that obtains a new {@link EventMarshalBuffer} from the supplied provider for each connection so
+	 * that the decode state of concurrent connections is kept separate.
+	 */
 	@Inject
-	public SelectorEventStream(Clock clock, Dispatcher<E> dispatcher, SelectorEventStreamConfig config, NetworkChannelProcessor<T> processor, EventMarshalBuffer<E> eventBuffer, EventStreamListener listener){
+	public SelectorEventStream(Clock clock, Dispatcher<E> dispatcher, SelectorEventStreamConfig config, NetworkChannelProcessor<T> processor, Provider<EventMarshalBuffer<E>> eventBufferProvider, EventStreamListener listener){
 		this.isAlive = false;
 		this.dispatcher = dispatcher;
 		this.config = config;
 		this.processor = processor;
-		this.eventBuffer = eventBuffer;
+		this.eventBuffer = eventBufferProvider.get();
+		this.decodeContexts = new DecodeContextPool<E>(eventBufferProvider, config.getMaxConnections());
 		this.listener = listener;
+		this.eventBatch = new ArrayList<E>(config.getDatagramBatchSize());
+		this.ackBuffer = ByteBuffer.allocate(MAX_ACK_BYTES);
 		this.clock = clock;
 		this.nextHeartBeatTime = clock.getCurrentTime(); 
 	}
 	
+	/**
+	 * Creates a stream where all connections share the one event buffer. Only use this when there will only ever be
+	 * one connection sending partial events at a time.
+	 */
+	public SelectorEventStream(Clock clock, Dispatcher<E> dispatcher, SelectorEventStreamConfig config, NetworkChannelProcessor<T> processor, final EventMarshalBuffer<E> eventBuffer, EventStreamListener listener){
+		this(clock, dispatcher, config, processor, new Provider<EventMarshalBuffer<E>>(){
+
+			@Override
+			public EventMarshalBuffer<E> get() {
+				return eventBuffer;
+			}
+			
+		}, listener);
+	}
+	
 	@Override
 	public void start() throws EventStreamException{
 		
@@ -111,6 +142,10 @@ public class SelectorEventStream<T extends SelectableChannel & NetworkChannel, E
 			channel.configureBlocking(false);
 			
 			channel.register(socketSelector, processor.getRegisterOpCodes());
+			
+			if (config.getNumSelectors() > 1){ // other selectors will be binding to the same address so let the kernel shard between us
+				NetworkChannelProcessor.UTIL.enableReusePort(channel);
+			}
 			channel.bind(config.getAddress());
 			
 			this.channel = channel;
@@ -156,45 +191,29 @@ public class SelectorEventStream<T extends SelectableChannel & NetworkChannel, E
 						//LOG.debug("accepting connection");
 						processor.acceptChannel(selector, channel);
 					} else if (key.isReadable() && channel.isOpen()){
-						buffer.clear();
-						
-						//LOG.debug("reading connection");
 						
 						ScatteringByteChannel readerChannel = (ScatteringByteChannel)channel;
-					
-						int totalRead = 0;
-						int tmpBytesRead = 0;
-						boolean enoughBuffersReadToBuildEvent = false;
-						while(!enoughBuffersReadToBuildEvent && (tmpBytesRead = processor.readFromChannel(readerChannel, buffer)) > 0){
-							totalRead += tmpBytesRead;
-							buffer.flip();
-							
-							enoughBuffersReadToBuildEvent = eventBuffer.marshal(buffer);
-							
-							buffer.flip();
-						}
-						
-						if (totalRead > 0){
-							E event = eventBuffer.buildEventAndResetBuffer();
-							
-							//LOG.info(System.currentTimeMillis()+" - recieved event");
-							this.consume(event);
-						}
 						
-						if (readerChannel instanceof SocketChannel){ // send successful packet back
-							SocketChannel socketChannel = (SocketChannel)readerChannel;
-							successBuffer.reset();
+						if (processor.isMessageOriented()){
+							drainMessages(readerChannel, buffer);
+						} else{
+							DecodeContext<E> context = getDecodeContext(key);
 							
-							//LOG.debug("writing successbuffer");
-							if (socketChannel.write(successBuffer) != 1){
-								throw new IllegalStateException("unable to write success response");
+							if (context == null){
+								LOG.warn("Refusing connection as the maximum of "+config.getMaxConnections()+" connections has been reached");
+								closeConnection(key);
+							} else if (processor.isLengthPrefixFramed()){
+								readFrames(key, context, (SocketChannel)readerChannel, buffer);
+							} else{
+								readEvent(key, context, readerChannel, buffer, successBuffer);
 							}
-						} // unable to send response back
+						}
 					} else if (key.isWritable()){
 						throw new IllegalStateException("Writable keys are not permitted. This server should not respond to the client");
 					} 
 				}	catch (IOException e){
 					LOG.warn("A client has failed to close their connection properly: "+channel.getLocalAddress()+" - "+e.getMessage());
+					releaseDecodeContext(key);
 					channel.close();
 					key.cancel();
 				}
@@ -202,6 +221,168 @@ public class SelectorEventStream<T extends SelectableChannel & NetworkChannel, E
 		}
 	}
 
+	/**
+	 * Returns the decode context attached to this connection's key, acquiring one from the pool if this is the first read
+	 * on the connection. Returns null if the pool is exhausted.
+	 */
+	private DecodeContext<E> getDecodeContext(SelectionKey key){
+		@SuppressWarnings("unchecked")
+		DecodeContext<E> context = (DecodeContext<E>)key.attachment();
+		
+		if (context == null){
+			context = decodeContexts.acquire();
+			key.attach(context);
+		}
+		return context;
+	}
+	
+	private void releaseDecodeContext(SelectionKey key){
+		@SuppressWarnings("unchecked")
+		DecodeContext<E> context = (DecodeContext<E>)key.attach(null);
+		
+		if (context != null){
+			decodeContexts.release(context);
+		}
+	}
+	
+	private void closeConnection(SelectionKey key) throws IOException{
+		releaseDecodeContext(key);
+		key.cancel();
+		processor.closeAccept(key.channel());
+	}
+
+	private void readEvent(SelectionKey key, DecodeContext<E> context, ScatteringByteChannel readerChannel, ByteBuffer buffer, ByteBuffer successBuffer) throws IOException{
+		buffer.clear();
+		
+		//LOG.debug("reading connection");
+		
+		EventMarshalBuffer<E> eventBuffer = context.getEventBuffer();
+		
+		int totalRead = 0;
+		int tmpBytesRead = 0;
+		boolean enoughBuffersReadToBuildEvent = false;
+		while(!enoughBuffersReadToBuildEvent && (tmpBytesRead = processor.readFromChannel(readerChannel, buffer)) > 0){
+			totalRead += tmpBytesRead;
+			buffer.flip();
+			
+			enoughBuffersReadToBuildEvent = eventBuffer.marshal(buffer);
+			
+			buffer.clear();
+		}
+		
+		if (enoughBuffersReadToBuildEvent){
+			E event = eventBuffer.buildEventAndResetBuffer();
+			
+			//LOG.info(System.currentTimeMillis()+" - recieved event");
+			this.consume(event);
+		}
+		context.setHasPartialEvent(totalRead > 0 && !enoughBuffersReadToBuildEvent); // the rest of the event will come on a later read
+		
+		if (tmpBytesRead < 0){ // client has closed the connection
+			closeConnection(key);
+			return;
+		}
+		
+		if (totalRead > 0 && readerChannel instanceof SocketChannel){ // send successful packet back
+			SocketChannel socketChannel = (SocketChannel)readerChannel;
+			successBuffer.reset();
+			
+			//LOG.debug("writing successbuffer");
+			if (socketChannel.write(successBuffer) != 1){
+				throw new IllegalStateException("unable to write success response");
+			}
+		} // unable to send response back
+	}
+
+	/**
+	 * Drains the message oriented channel in a tight loop until either there are no more messages queued or the
+	 * configured batch size is reached, unmarshalling each message into its own event. The batch is then passed to the
+	 * dispatcher in a single call, saving a selector wakeup and a queue publish for every message.
+	 * @param readerChannel
+	 * @param buffer
+	 * @throws IOException
+	 */
+	private void drainMessages(ScatteringByteChannel readerChannel, ByteBuffer buffer) throws IOException{
+		int maxBatchSize = config.getDatagramBatchSize();
+		
+		try{
+			while (eventBatch.size() < maxBatchSize){
+				buffer.clear();
+				
+				if (processor.readFromChannel(readerChannel, buffer) <= 0){ // nothing left in the socket buffer
+					break;
+				}
+				buffer.flip();
+				
+				eventBuffer.marshal(buffer); // each message contains the entirety of an event
+				
+				E event = eventBuffer.buildEventAndResetBuffer();
+				
+				listener.recievedEvent(event);
+				eventBatch.add(event);
+			}
+			
+			dispatcher.dispatchEvents(eventBatch);
+		} finally{
+			eventBatch.clear();
+		}
+	}
+
+	/**
+	 * Reads whatever is available on the connection and decodes every complete length prefixed frame in one pass,
+	 * carrying any partial frame over to the next read using the connection's {@link DecodeContext}. The decoded events
+	 * are dispatched as a single batch and then acknowledged with one cumulative ack containing the number of events
+	 * decoded as a varint.
+	 * @param key
+	 * @param context
+	 * @param socketChannel
+	 * @param buffer
+	 * @throws IOException
+	 */
+	private void readFrames(SelectionKey key, DecodeContext<E> context, SocketChannel socketChannel, ByteBuffer buffer) throws IOException{
+		
+		FrameDecoder decoder = context.getFrameDecoder();
+		
+		buffer.clear();
+		int bytesRead = processor.readFromChannel(socketChannel, buffer);
+		
+		if (bytesRead < 0){ // client has closed the connection
+			if (decoder.hasPartialFrame()){
+				LOG.warn("Client closed connection with a partially sent event: "+socketChannel.getRemoteAddress());
+			}
+			closeConnection(key);
+			return;
+		}
+		
+		buffer.flip();
+		
+		int numDecoded;
+		try{
+			numDecoded = decoder.decode(buffer, context.getEventBuffer(), eventBatch);
+			
+			for (E event: eventBatch){
+				listener.recievedEvent(event);
+			}
+			dispatcher.dispatchEvents(eventBatch);
+		} catch (IOException e){
+			context.setHasPartialEvent(true); // the event buffer may still hold part of the offending frame so reset it before the context is reused
+			throw e;
+		} finally{
+			eventBatch.clear();
+		}
+		
+		if (numDecoded > 0){ // send cumulative ack back
+			ackBuffer.clear();
+			FrameDecoder.UTIL.writeVarInt(numDecoded, ackBuffer);
+			ackBuffer.flip();
+			
+			socketChannel.write(ackBuffer);
+			if (ackBuffer.hasRemaining()){
+				throw new IOException("Unable to write ack as the client is not reading responses");
+			}
+		}
+	}
+
 	private ByteBuffer createBuffer() throws EventStreamException{
 		
 		ByteBuffer buffer;
@@ -225,16 +406,21 @@ public class SelectorEventStream<T extends SelectableChannel & NetworkChannel, E
 	@Override
 	public void stop() throws EventStreamException{
 		
-		executingThread.setName("Selector Thread - stopped");
-		if (isAlive()){
-			executingThread.interrupt();
-			isAlive = false;
+		Thread executingThread = this.executingThread;
+		if (executingThread != null){ // may not have been started yet when run as one of many selectors
+			executingThread.setName("Selector Thread - stopped");
+			if (isAlive()){
+				isAlive = false; // set before interrupting so that the selector thread can't clear the interrupt and select again
+				executingThread.interrupt();
+			}
 		}
 		
 		dispatcher.close();
 		
 		try {
-			processor.close(channel);
+			if (channel != null){
+				processor.close(channel);
+			}
 		} catch (IOException e) {
 			throw new EventStreamException("Unable to close stream", e);
 		}
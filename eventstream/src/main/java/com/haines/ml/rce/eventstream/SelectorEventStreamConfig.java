@@ -15,13 +15,19 @@ public class SelectorEventStreamConfig {
 	private final SocketAddress socketAddress;
 	private final ByteOrder byteOrder;
 	private final long heartBeatPeriod;
+	private final int numSelectors;
+	private final int datagramBatchSize;
+	private final int maxConnections;
 	
-	private SelectorEventStreamConfig(BufferType bufferType, int bufferCapacity, SocketAddress socketAddress, ByteOrder byteOrder, long heartBeatPeriod){
+	private SelectorEventStreamConfig(BufferType bufferType, int bufferCapacity, SocketAddress socketAddress, ByteOrder byteOrder, long heartBeatPeriod, int numSelectors, int datagramBatchSize, int maxConnections){
 		this.bufferType = bufferType;
 		this.bufferCapacity = bufferCapacity;
 		this.socketAddress = socketAddress;
 		this.byteOrder = byteOrder;
 		this.heartBeatPeriod = heartBeatPeriod;
+		this.numSelectors = numSelectors;
+		this.datagramBatchSize = datagramBatchSize;
+		this.maxConnections = maxConnections;
 	}
 	
 	public BufferType getBufferType(){
@@ -48,6 +54,34 @@ public class SelectorEventStreamConfig {
 		return socketAddress;
 	}
 	
+	/**
+	 * Returns the number of selector threads that should be listening on {@link #getAddress()}. When this is greater
+	 * then 1, each selector binds its own channel to the address using SO_REUSEPORT so that the kernel shards incoming
+	 * traffic between them.
+	 * @return
+	 */
+	public int getNumSelectors() {
+		return numSelectors;
+	}
+	
+	/**
+	 * Returns the maximum number of datagrams that will be drained from a message oriented channel on each selector
+	 * wakeup before the batch is handed to the dispatcher. Any datagrams still queued are picked up on the next select.
+	 * @return
+	 */
+	public int getDatagramBatchSize() {
+		return datagramBatchSize;
+	}
+	
+	/**
+	 * Returns the maximum number of concurrent connections that each selector will accept. Every connection is given
+	 * its own pooled decode state and any connections beyond this limit are refused.
+	 * @return
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+	
 	public static class SelectorEventStreamConfigBuilder{
 		
 		private BufferType bufferType = BufferType.DIRECT_BUFFER;
@@ -55,6 +89,9 @@ public class SelectorEventStreamConfig {
 		private SocketAddress socketAddress;
 		private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
 		private long heartBeatPeriod = SelectorEventStream.DO_NOT_SEND_HEART_BEAT;
+		private int numSelectors = 1;
+		private int datagramBatchSize = 64;
+		private int maxConnections = 1024;
 
 		public SelectorEventStreamConfigBuilder bufferType(BufferType bufferType) {
 			this.bufferType = bufferType;
@@ -86,8 +123,35 @@ public class SelectorEventStreamConfig {
 			return this;
 		}
 		
+		public SelectorEventStreamConfigBuilder numSelectors(int numSelectors){
+			this.numSelectors = numSelectors;
+			
+			return this;
+		}
+		
+		public SelectorEventStreamConfigBuilder datagramBatchSize(int datagramBatchSize){
+			this.datagramBatchSize = datagramBatchSize;
+			
+			return this;
+		}
+		
+		public SelectorEventStreamConfigBuilder maxConnections(int maxConnections){
+			this.maxConnections = maxConnections;
+			
+			return this;
+		}
+		
 		public SelectorEventStreamConfig build(){
-			return new SelectorEventStreamConfig(bufferType, bufferCapacity, socketAddress, byteOrder, heartBeatPeriod);
+			if (numSelectors < 1){
+				throw new IllegalArgumentException("The number of selectors must be at least 1: "+numSelectors);
+			}
+			if (datagramBatchSize < 1){
+				throw new IllegalArgumentException("The datagram batch size must be at least 1: "+datagramBatchSize);
+			}
+			if (maxConnections < 1){
+				throw new IllegalArgumentException("The maximum number of connections must be at least 1: "+maxConnections);
+			}
+			return new SelectorEventStreamConfig(bufferType, bufferCapacity, socketAddress, byteOrder, heartBeatPeriod, numSelectors, datagramBatchSize, maxConnections);
 		}
 	}
 }
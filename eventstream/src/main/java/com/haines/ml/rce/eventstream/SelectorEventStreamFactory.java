@@ -2,8 +2,11 @@ package com.haines.ml.rce.eventstream;
 
 import java.nio.channels.NetworkChannel;
 import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import com.haines.ml.rce.dispatcher.Dispatcher;
 import com.haines.ml.rce.model.Event;
@@ -14,30 +17,83 @@ public class SelectorEventStreamFactory<T extends SelectableChannel & NetworkCha
 
 	private final NetworkChannelProcessor<T> channelFactory;
 	private final SelectorEventStreamConfig config;
-	private final EventMarshalBuffer<E> eventBuffer;
+	private final Provider<EventMarshalBuffer<E>> eventBufferProvider;
+	private final boolean isSharedEventBuffer;
 	private final EventStreamListener listener;
 	private final Clock clock;
-	
-	@Inject
-	public SelectorEventStreamFactory(Clock clock, SelectorEventStreamConfig config, NetworkChannelProcessor<T> channelFactory, EventMarshalBuffer<E> eventBuffer, EventStreamListener listener){
+
+	private SelectorEventStreamFactory(Clock clock, SelectorEventStreamConfig config, NetworkChannelProcessor<T> channelFactory, Provider<EventMarshalBuffer<E>> eventBufferProvider, boolean isSharedEventBuffer, EventStreamListener listener){
 		this.channelFactory = channelFactory;
 		this.config = config;
-		this.eventBuffer = eventBuffer;
+		this.eventBufferProvider = eventBufferProvider;
+		this.isSharedEventBuffer = isSharedEventBuffer;
 		this.listener = listener;
 		this.clock = clock;
 	}
-	
+
+	/**
+	 * Creates a factory where every stream and connection shares the supplied event buffer. Prefer
+	 * {@link #SelectorEventStreamFactory(Clock, SelectorEventStreamConfig, NetworkChannelProcessor, Provider, EventStreamListener)}
+	 * when multiple clients may be connected at once.
+	 */
+	@Inject
+	public SelectorEventStreamFactory(Clock clock, SelectorEventStreamConfig config, NetworkChannelProcessor<T> channelFactory, final EventMarshalBuffer<E> eventBuffer, EventStreamListener listener){
+		this(clock, config, channelFactory, new Provider<EventMarshalBuffer<E>>(){
+
+			@Override
+			public EventMarshalBuffer<E> get() {
+				return eventBuffer;
+			}
+
+		}, true, listener);
+	}
+
+	/**
+	 * Creates a factory that obtains a new {@link EventMarshalBuffer} from the supplied provider for every selector and
+	 * connection created. Use this constructor if you want to create multiple selectors using {@link #create(List)} or
+	 * accept concurrent client connections.
+	 */
+	public SelectorEventStreamFactory(Clock clock, SelectorEventStreamConfig config, NetworkChannelProcessor<T> channelFactory, Provider<EventMarshalBuffer<E>> eventBufferProvider, EventStreamListener listener){
+		this(clock, config, channelFactory, eventBufferProvider, false, listener);
+	}
+
 	public SelectorEventStreamFactory(Clock clock, SelectorEventStreamConfig config, NetworkChannelProcessor<T> channelFactory, EventMarshalBuffer<E> eventBuffer){
 		this(clock, config, channelFactory, eventBuffer, EventStreamListener.NO_OP_LISTENER);
 	}
-	
+
 	@Override
 	public SelectorEventStream<T, E> create(Dispatcher<E> dispatcher) {
-		return genericCreate(dispatcher);
+		return genericCreate(dispatcher, listener);
 	}
-	
-	private SelectorEventStream<T, E> genericCreate(Dispatcher<E> dispatcher){
-		return new SelectorEventStream<T, E>(clock, dispatcher, config, channelFactory, (EventMarshalBuffer<E>)eventBuffer, listener);
+
+	/**
+	 * Creates a stream with one selector thread per supplied dispatcher. The number of dispatchers must match
+	 * {@link SelectorEventStreamConfig#getNumSelectors()} and each dispatcher should own a disjoint set of consumers
+	 * so that every downstream queue only ever has a single producing selector thread.
+	 * @param dispatchers
+	 * @return
+	 */
+	public MultiSelectorEventStream<T, E> create(List<Dispatcher<E>> dispatchers) {
+		if (dispatchers.size() != config.getNumSelectors()){
+			throw new IllegalArgumentException("Expected "+config.getNumSelectors()+" dispatchers, one for each selector, but got "+dispatchers.size());
+		}
+
+		if (isSharedEventBuffer && dispatchers.size() > 1){
+			throw new IllegalStateException("Unable to create multiple selectors that share a single event buffer. Use an event buffer provider instead");
+		}
+
+		MultiSelectorEventStream.ShardedEventStreamListener shardedListener = new MultiSelectorEventStream.ShardedEventStreamListener(listener, dispatchers.size());
+
+		List<SelectorEventStream<T, E>> streams = new ArrayList<SelectorEventStream<T, E>>(dispatchers.size());
+		for (Dispatcher<E> dispatcher: dispatchers){
+			streams.add(genericCreate(dispatcher, shardedListener));
+		}
+
+		return new MultiSelectorEventStream<T, E>(streams, shardedListener);
+	}
+
+	private SelectorEventStream<T, E> genericCreate(Dispatcher<E> dispatcher, EventStreamListener listener){
+		return new SelectorEventStream<T, E>(clock, dispatcher, config, channelFactory, eventBufferProvider, listener);
 	}
 
 }
@@ -0,0 +1,130 @@
+package com.haines.ml.rce.eventstream.replay;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.UnMarshalableException;
+
+/**
+ * An {@link EventMarshalBuffer} that decodes a single CSV row, as read by {@link ReplayFormat#LINE}, into an event
+ * using a data set specific {@link CsvRecordConverter}. Fields are separated by commas and may be quoted with double
+ * quotes, in which case a pair of double quotes represents a literal double quote. Surrounding whitespace is trimmed
+ * from unquoted fields.
+ * @author haines
+ *
+ * @param <E>
+ */
+public class CsvEventMarshalBuffer<E extends Event> implements EventMarshalBuffer<E>{
+
+	private static final char SEPARATOR = ',';
+	private static final char QUOTE = '"';
+
+	private final CsvRecordConverter<E> converter;
+	private final Charset charset;
+	private final StringBuilder row;
+	private final List<String> columns;
+	private final StringBuilder column;
+
+	public CsvEventMarshalBuffer(CsvRecordConverter<E> converter, Charset charset){
+		this.converter = converter;
+		this.charset = charset;
+		this.row = new StringBuilder();
+		this.columns = new ArrayList<String>();
+		this.column = new StringBuilder();
+	}
+
+	public CsvEventMarshalBuffer(CsvRecordConverter<E> converter){
+		this(converter, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public boolean marshal(ByteBuffer content) {
+		row.append(charset.decode(content));
+
+		return true;
+	}
+
+	/**
+	 * Returns the converted event or null if the converter rejected the row.
+	 */
+	@Override
+	public E buildEventAndResetBuffer() throws UnMarshalableException {
+		try{
+			parseColumns();
+
+			return converter.convert(columns);
+		} catch (RuntimeException e){
+			throw new UnMarshalableException("Unable to convert csv row: "+row, e);
+		} finally{
+			row.setLength(0);
+			columns.clear();
+		}
+	}
+
+	private void parseColumns(){
+		boolean inQuotes = false;
+		boolean wasQuoted = false;
+
+		column.setLength(0);
+
+		for (int i = 0; i < row.length(); i++){
+			char nextChar = row.charAt(i);
+
+			if (inQuotes){
+				if (nextChar == QUOTE){
+					if (i + 1 < row.length() && row.charAt(i + 1) == QUOTE){ // escaped quote
+						column.append(QUOTE);
+						i++;
+					} else{
+						inQuotes = false;
+					}
+				} else{
+					column.append(nextChar);
+				}
+			} else if (nextChar == QUOTE){
+				inQuotes = true;
+				wasQuoted = true;
+				column.setLength(0); // drop any whitespace before the opening quote
+			} else if (nextChar == SEPARATOR){
+				addColumn(wasQuoted);
+				wasQuoted = false;
+			} else if (!wasQuoted){
+				column.append(nextChar);
+			}
+		}
+
+		if (inQuotes){
+			throw new IllegalArgumentException("Unterminated quoted field");
+		}
+		addColumn(wasQuoted);
+	}
+
+	private void addColumn(boolean wasQuoted){
+		columns.add(wasQuoted? column.toString() : column.toString().trim());
+
+		column.setLength(0);
+	}
+
+	/**
+	 * Converts the columns of a CSV row into an event. Implementations are invoked concurrently from the replay's decode
+	 * threads and so must be thread safe.
+	 * @author haines
+	 *
+	 * @param <E>
+	 */
+	public static interface CsvRecordConverter<E extends Event>{
+
+		/**
+		 * Returns the event of the row or null if the row should be skipped, for example because it has missing
+		 * values.
+		 * @param columns the columns of the row. This list is reused between rows so must not be retained
+		 * @return
+		 */
+		E convert(List<String> columns);
+	}
+}
@@ -0,0 +1,43 @@
+package com.haines.ml.rce.eventstream.replay;
+
+import com.haines.ml.rce.model.Event;
+
+/**
+ * Resolves the time at which a replayed event was originally seen. The replay drives its
+ * {@link com.haines.ml.rce.model.system.Clock.VirtualClock} forward with these times so that windows roll as they did
+ * when the events were first received. Implementations are only ever invoked from the replay thread, in the order that
+ * the events appear in the replay files.
+ * @author haines
+ *
+ * @param <E>
+ */
+public interface EventTimestampResolver<E extends Event> {
+
+	public static final Util UTIL = new Util();
+
+	long getTimestamp(E event);
+
+	public static final class Util{
+
+		private Util(){}
+
+		/**
+		 * Returns a resolver for events that do not carry their own timestamps, which assumes that the events were seen
+		 * at a constant rate starting at the provided time.
+		 * @param startTime
+		 * @param millisPerEvent
+		 * @return
+		 */
+		public <E extends Event> EventTimestampResolver<E> getFixedRateResolver(final long startTime, final double millisPerEvent){
+			return new EventTimestampResolver<E>(){
+
+				private long numEvents = 0;
+
+				@Override
+				public long getTimestamp(E event) {
+					return startTime + (long)(numEvents++ * millisPerEvent);
+				}
+			};
+		}
+	}
+}
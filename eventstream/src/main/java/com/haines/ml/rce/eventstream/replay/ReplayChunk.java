@@ -0,0 +1,214 @@
+package com.haines.ml.rce.eventstream.replay;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.UnMarshalableException;
+
+/**
+ * A block of raw records read from a replay file along with the events that they decode into. The records of a chunk
+ * are decoded in parallel on a {@link ForkJoinPool} whilst the replay thread reads the following chunks, and the
+ * decoded events are then dispatched in the order that they were read. Chunks are reused once dispatched so that the
+ * record buffers are only allocated while the replay warms up.
+ * @author haines
+ *
+ * @param <E>
+ */
+class ReplayChunk<E extends Event> {
+
+	private static final int INITIAL_BYTES_PER_RECORD = 128;
+
+	private final int capacity;
+	private final int[] offsets;
+	private final int[] lengths;
+	private final E[] events;
+	private byte[] data;
+	private int dataLength;
+	private int numRecords;
+	private int numMalformed;
+	private ForkJoinTask<?> decodeTask;
+
+	@SuppressWarnings("unchecked")
+	ReplayChunk(int capacity){
+		this.capacity = capacity;
+		this.offsets = new int[capacity];
+		this.lengths = new int[capacity];
+		this.events = (E[])new Event[capacity];
+		this.data = new byte[capacity * INITIAL_BYTES_PER_RECORD];
+	}
+
+	boolean isFull(){
+		return numRecords == capacity;
+	}
+
+	int getNumRecords(){
+		return numRecords;
+	}
+
+	int getNumMalformed(){
+		return numMalformed;
+	}
+
+	/**
+	 * Returns the decoded event of the record at the provided index or null if the record could not be decoded.
+	 * @param index
+	 * @return
+	 */
+	E getEvent(int index){
+		return events[index];
+	}
+
+	void beginRecord(){
+		offsets[numRecords] = dataLength;
+	}
+
+	void append(byte nextByte){
+		ensureCapacity(1);
+
+		data[dataLength++] = nextByte;
+	}
+
+	void appendFully(InputStream in, int numBytes) throws IOException{
+		ensureCapacity(numBytes);
+
+		int end = dataLength + numBytes;
+		while (dataLength < end){
+			int numRead = in.read(data, dataLength, end - dataLength);
+
+			if (numRead < 0){
+				throw new EOFException("Stream ended part way through a record. Expected "+(end - dataLength)+" more bytes");
+			}
+			dataLength += numRead;
+		}
+	}
+
+	int getCurrentRecordLength(){
+		return dataLength - offsets[numRecords];
+	}
+
+	void trimTrailing(char trailingChar){
+		if (getCurrentRecordLength() > 0 && data[dataLength - 1] == trailingChar){
+			dataLength--;
+		}
+	}
+
+	void commitRecord(){
+		lengths[numRecords] = getCurrentRecordLength();
+		numRecords++;
+	}
+
+	void abortRecord(){
+		dataLength = offsets[numRecords];
+	}
+
+	/**
+	 * Submits the records of this chunk to be decoded on the pool. Each worker decodes its share of the records with
+	 * its own marshal buffer.
+	 * @param pool
+	 * @param buffers
+	 */
+	void decode(ForkJoinPool pool, ThreadLocal<EventMarshalBuffer<E>> buffers, int recordsPerTask){
+		numMalformed = 0;
+		decodeTask = pool.submit(new DecodeTask(0, numRecords, buffers, recordsPerTask));
+	}
+
+	/**
+	 * Waits for the decode of this chunk to complete.
+	 */
+	void awaitDecode(){
+		decodeTask.join();
+	}
+
+	/**
+	 * Clears this chunk so that it can be refilled with the next records from the file.
+	 */
+	void reset(){
+		Arrays.fill(events, 0, numRecords, null);
+
+		dataLength = 0;
+		numRecords = 0;
+		numMalformed = 0;
+		decodeTask = null;
+	}
+
+	private void ensureCapacity(int numBytes){
+		int requiredCapacity = dataLength + numBytes;
+
+		if (requiredCapacity > data.length){
+			data = Arrays.copyOf(data, Math.max(requiredCapacity, data.length * 2));
+		}
+	}
+
+	private class DecodeTask extends RecursiveAction{
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final ThreadLocal<EventMarshalBuffer<E>> buffers;
+		private final int recordsPerTask;
+
+		private DecodeTask(int from, int to, ThreadLocal<EventMarshalBuffer<E>> buffers, int recordsPerTask){
+			this.from = from;
+			this.to = to;
+			this.buffers = buffers;
+			this.recordsPerTask = recordsPerTask;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= recordsPerTask){
+				decodeRecords();
+			} else{
+				int mid = (from + to) >>> 1;
+
+				invokeAll(new DecodeTask(from, mid, buffers, recordsPerTask), new DecodeTask(mid, to, buffers, recordsPerTask));
+			}
+		}
+
+		private void decodeRecords(){
+			EventMarshalBuffer<E> buffer = buffers.get();
+			int numMalformed = 0;
+
+			for (int i = from; i < to; i++){
+				try{
+					buffer.marshal(ByteBuffer.wrap(data, offsets[i], lengths[i])); // each record contains the entirety of an event
+
+					events[i] = buffer.buildEventAndResetBuffer();
+				} catch (RuntimeException e){ // marshal buffers report malformed events with a range of runtime exceptions
+					events[i] = null;
+
+					resetBuffer(buffer);
+				}
+
+				if (events[i] == null){
+					numMalformed++;
+				}
+			}
+
+			if (numMalformed > 0){
+				addMalformed(numMalformed);
+			}
+		}
+
+		private void resetBuffer(EventMarshalBuffer<E> buffer){
+			try{
+				buffer.buildEventAndResetBuffer();
+			} catch (UnMarshalableException e){
+				// the partial event is being discarded anyway
+			}
+		}
+	}
+
+	private synchronized void addMalformed(int numMalformed){
+		this.numMalformed += numMalformed;
+	}
+}
@@ -0,0 +1,278 @@
+package com.haines.ml.rce.eventstream.replay;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haines.ml.rce.dispatcher.Dispatcher;
+import com.haines.ml.rce.eventstream.EventStreamController;
+import com.haines.ml.rce.eventstream.EventStreamException;
+import com.haines.ml.rce.eventstream.EventStreamListener;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventConsumer;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.system.Clock;
+import com.haines.ml.rce.model.system.Clock.VirtualClock;
+
+/**
+ * An event stream that replays files of historical events straight into the dispatcher, bypassing the network
+ * entirely. This is used to rebuild a model, for instance after a deploy, at disk speed rather then at the rate that a
+ * client can send events over the wire.
+ * <p>
+ * Records are read from each file in turn by the thread calling {@link #start()} and are handed, a chunk at a time, to a
+ * {@link ForkJoinPool} to be decoded in parallel. Each decode thread uses its own {@link EventMarshalBuffer} from the
+ * provider so the buffers must not share state between instances, or recycle their events back into the buffer that
+ * created them. Decoded chunks are dispatched in the order they were read and, before each event is dispatched, the
+ * {@link VirtualClock} is moved forward to the event's timestamp. If the rest of the system is created with this clock
+ * then windows roll according to when the events were originally seen. Note that as the dispatcher's workers run
+ * asynchronously, they may observe the clock slightly ahead of the event that they are processing.
+ * <p>
+ * Unlike the network streams, {@link #start()} returns once every file has been replayed (or {@link #stop()} has
+ * been called). A heart beat is sent at the end of the replay so that any partially filled micro batches are pushed
+ * downstream.
+ * @author haines
+ *
+ * @param <E>
+ */
+public class ReplayEventStream<E extends Event> implements EventStreamController, EventConsumer<E>{
+
+	private static final Logger LOG = LoggerFactory.getLogger(ReplayEventStream.class);
+
+	private static final int READ_BUFFER_SIZE = 1024 * 1024;
+	private static final double MILLIS_PER_SECOND = 1000;
+
+	private volatile boolean isAlive;
+	private volatile Thread executingThread;
+	private volatile long numEventsReplayed;
+	private volatile long numMalformedRecords;
+	private volatile long replayTimeMs;
+	private final Clock clock;
+	private final VirtualClock eventClock;
+	private final Dispatcher<E> dispatcher;
+	private final ReplayEventStreamConfig config;
+	private final ThreadLocal<EventMarshalBuffer<E>> eventBuffers;
+	private final EventTimestampResolver<E> timestampResolver;
+	private final EventStreamListener listener;
+	private final Deque<ReplayChunk<E>> chunksInFlight;
+	private final Deque<ReplayChunk<E>> freeChunks;
+
+	@Inject
+	public ReplayEventStream(Clock clock, VirtualClock eventClock, Dispatcher<E> dispatcher, ReplayEventStreamConfig config, final Provider<EventMarshalBuffer<E>> eventBufferProvider, EventTimestampResolver<E> timestampResolver, EventStreamListener listener){
+		this.isAlive = false;
+		this.clock = clock;
+		this.eventClock = eventClock;
+		this.dispatcher = dispatcher;
+		this.config = config;
+		this.timestampResolver = timestampResolver;
+		this.listener = listener;
+		this.chunksInFlight = new ArrayDeque<ReplayChunk<E>>(config.getMaxChunksInFlight());
+		this.freeChunks = new ArrayDeque<ReplayChunk<E>>(config.getMaxChunksInFlight());
+		this.eventBuffers = new ThreadLocal<EventMarshalBuffer<E>>(){
+
+			@Override
+			protected EventMarshalBuffer<E> initialValue() {
+				return eventBufferProvider.get();
+			}
+		};
+	}
+
+	@Override
+	public void start() throws EventStreamException {
+		executingThread = Thread.currentThread();
+		isAlive = true;
+
+		ForkJoinPool decodePool = new ForkJoinPool(config.getParallelism());
+
+		long startTime = clock.getCurrentTime();
+		long nextReportTime = startTime + config.getReportPeriodMs();
+
+		LOG.info("Replaying "+config.getReplayFiles().size()+" file(s) with "+config.getParallelism()+" decode threads");
+		listener.streamStarted();
+
+		try{
+			for (Path replayFile: config.getReplayFiles()){
+
+				LOG.info("Replaying events from: "+replayFile);
+
+				try(InputStream in = new BufferedInputStream(Files.newInputStream(replayFile), READ_BUFFER_SIZE)){
+
+					skipHeaderRecords(in);
+
+					ReplayChunk<E> chunk;
+					while (isAlive && (chunk = readChunk(in)) != null){
+						chunk.decode(decodePool, eventBuffers, config.getRecordsPerTask());
+
+						chunksInFlight.add(chunk);
+
+						if (chunksInFlight.size() >= config.getMaxChunksInFlight()){
+							dispatchChunk(chunksInFlight.poll());
+						}
+
+						long currentTime = clock.getCurrentTime();
+						if (currentTime >= nextReportTime){
+							nextReportTime = currentTime + config.getReportPeriodMs();
+
+							report(startTime, currentTime);
+						}
+
+						if (Thread.interrupted()){ // we have been interrupted so stop the replay
+							isAlive = false;
+						}
+					}
+				}
+			}
+
+			while (isAlive && !chunksInFlight.isEmpty()){
+				dispatchChunk(chunksInFlight.poll());
+			}
+
+			if (isAlive){
+				dispatcher.sendHeartBeat(); // flush any partially filled micro batches
+			}
+
+			long endTime = clock.getCurrentTime();
+
+			replayTimeMs = endTime - startTime;
+
+			LOG.info("Replay "+(isAlive? "complete" : "stopped")+".");
+			report(startTime, endTime);
+		} catch (IOException e){
+			throw new EventStreamException("Unable to replay events", e);
+		} finally{
+			decodePool.shutdownNow();
+			chunksInFlight.clear();
+
+			isAlive = false;
+			executingThread = null;
+
+			listener.streamStopped();
+		}
+	}
+
+	private void skipHeaderRecords(InputStream in) throws IOException{
+		if (config.getHeaderRecords() > 0){
+			ReplayChunk<E> headerChunk = new ReplayChunk<E>(config.getHeaderRecords());
+
+			while (!headerChunk.isFull() && config.getFormat().readRecord(in, headerChunk)){
+				// discard header
+			}
+		}
+	}
+
+	/**
+	 * Reads the next chunk of records from the file or returns null if the file has been fully read.
+	 */
+	private ReplayChunk<E> readChunk(InputStream in) throws IOException{
+		ReplayChunk<E> chunk = freeChunks.poll();
+
+		if (chunk == null){
+			chunk = new ReplayChunk<E>(config.getChunkSize());
+		}
+
+		ReplayFormat format = config.getFormat();
+		while (!chunk.isFull() && format.readRecord(in, chunk)){
+			// keep filling the chunk
+		}
+
+		if (chunk.getNumRecords() == 0){
+			freeChunks.push(chunk);
+
+			return null;
+		}
+		return chunk;
+	}
+
+	private void dispatchChunk(ReplayChunk<E> chunk){
+		chunk.awaitDecode();
+
+		int numRecords = chunk.getNumRecords();
+
+		for (int i = 0; i < numRecords; i++){
+			E event = chunk.getEvent(i);
+
+			if (event != null){
+				eventClock.advanceTo(timestampResolver.getTimestamp(event));
+
+				consume(event);
+			}
+		}
+
+		if (chunk.getNumMalformed() > 0){
+			LOG.warn("Skipped "+chunk.getNumMalformed()+" records that could not be decoded");
+		}
+
+		numEventsReplayed += numRecords - chunk.getNumMalformed();
+		numMalformedRecords += chunk.getNumMalformed();
+
+		chunk.reset();
+		freeChunks.push(chunk);
+	}
+
+	private void report(long startTime, long currentTime){
+		LOG.info("Replayed "+numEventsReplayed+" events at "+getEventsPerSecond(numEventsReplayed, currentTime - startTime)+" events/s. Event time is now "+eventClock.getCurrentTime());
+	}
+
+	private static long getEventsPerSecond(long numEvents, long timeMs){
+		if (timeMs <= 0){
+			return numEvents;
+		}
+		return (long)(numEvents * MILLIS_PER_SECOND / timeMs);
+	}
+
+	/**
+	 * Returns the number of events that have been dispatched so far.
+	 * @return
+	 */
+	public long getNumEventsReplayed(){
+		return numEventsReplayed;
+	}
+
+	/**
+	 * Returns the number of records that could not be decoded and were skipped.
+	 * @return
+	 */
+	public long getNumMalformedRecords(){
+		return numMalformedRecords;
+	}
+
+	/**
+	 * Returns the rate that events were replayed at once the replay has finished.
+	 * @return
+	 */
+	public long getEventsPerSecond(){
+		return getEventsPerSecond(numEventsReplayed, replayTimeMs);
+	}
+
+	@Override
+	public void stop() throws EventStreamException {
+		Thread executingThread = this.executingThread;
+		if (executingThread != null && isAlive()){
+			isAlive = false;
+			executingThread.interrupt();
+		}
+
+		dispatcher.close();
+	}
+
+	@Override
+	public boolean isAlive() {
+		return isAlive;
+	}
+
+	@Override
+	public void consume(E event) {
+		listener.recievedEvent(event);
+		dispatcher.dispatchEvent(event);
+	}
+}
@@ -0,0 +1,176 @@
+package com.haines.ml.rce.eventstream.replay;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ReplayEventStreamConfig {
+
+	private final List<Path> replayFiles;
+	private final ReplayFormat format;
+	private final int headerRecords;
+	private final int parallelism;
+	private final int chunkSize;
+	private final int recordsPerTask;
+	private final int maxChunksInFlight;
+	private final long reportPeriodMs;
+
+	private ReplayEventStreamConfig(List<Path> replayFiles, ReplayFormat format, int headerRecords, int parallelism, int chunkSize, int recordsPerTask, int maxChunksInFlight, long reportPeriodMs){
+		this.replayFiles = replayFiles;
+		this.format = format;
+		this.headerRecords = headerRecords;
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+		this.recordsPerTask = recordsPerTask;
+		this.maxChunksInFlight = maxChunksInFlight;
+		this.reportPeriodMs = reportPeriodMs;
+	}
+
+	/**
+	 * Returns the files to replay, in the order that they should be replayed.
+	 * @return
+	 */
+	public List<Path> getReplayFiles() {
+		return replayFiles;
+	}
+
+	public ReplayFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Returns the number of records at the start of each file that are not events, such as a CSV header row.
+	 * @return
+	 */
+	public int getHeaderRecords() {
+		return headerRecords;
+	}
+
+	/**
+	 * Returns the number of threads used to decode events.
+	 * @return
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Returns the number of records that are read from a file before they are handed off to be decoded.
+	 * @return
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Returns the number of records below which a chunk is no longer split between decode threads.
+	 * @return
+	 */
+	public int getRecordsPerTask() {
+		return recordsPerTask;
+	}
+
+	/**
+	 * Returns the number of chunks that can be read ahead of the chunk currently being dispatched.
+	 * @return
+	 */
+	public int getMaxChunksInFlight() {
+		return maxChunksInFlight;
+	}
+
+	/**
+	 * Returns how often, in milliseconds, the replay rate is logged.
+	 * @return
+	 */
+	public long getReportPeriodMs() {
+		return reportPeriodMs;
+	}
+
+	public static class ReplayEventStreamConfigBuilder{
+
+		private final List<Path> replayFiles = new ArrayList<Path>();
+		private ReplayFormat format = ReplayFormat.DELIMITED;
+		private int headerRecords = 0;
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+		private int chunkSize = 8192;
+		private int recordsPerTask = 512;
+		private int maxChunksInFlight = -1; // derived from the parallelism unless set
+		private long reportPeriodMs = 10000;
+
+		public ReplayEventStreamConfigBuilder replayFile(Path replayFile){
+			this.replayFiles.add(replayFile);
+
+			return this;
+		}
+
+		public ReplayEventStreamConfigBuilder replayFiles(Iterable<Path> replayFiles){
+			for (Path replayFile: replayFiles){
+				replayFile(replayFile);
+			}
+
+			return this;
+		}
+
+		public ReplayEventStreamConfigBuilder format(ReplayFormat format){
+			this.format = format;
+
+			return this;
+		}
+
+		public ReplayEventStreamConfigBuilder headerRecords(int headerRecords){
+			this.headerRecords = headerRecords;
+
+			return this;
+		}
+
+		public ReplayEventStreamConfigBuilder parallelism(int parallelism){
+			this.parallelism = parallelism;
+
+			return this;
+		}
+
+		public ReplayEventStreamConfigBuilder chunkSize(int chunkSize){
+			this.chunkSize = chunkSize;
+
+			return this;
+		}
+
+		public ReplayEventStreamConfigBuilder recordsPerTask(int recordsPerTask){
+			this.recordsPerTask = recordsPerTask;
+
+			return this;
+		}
+
+		public ReplayEventStreamConfigBuilder maxChunksInFlight(int maxChunksInFlight){
+			this.maxChunksInFlight = maxChunksInFlight;
+
+			return this;
+		}
+
+		public ReplayEventStreamConfigBuilder reportPeriodMs(long reportPeriodMs){
+			this.reportPeriodMs = reportPeriodMs;
+
+			return this;
+		}
+
+		public ReplayEventStreamConfig build(){
+			if (replayFiles.isEmpty()){
+				throw new IllegalArgumentException("At least one replay file is required");
+			}
+			if (format == null){
+				throw new IllegalArgumentException("A replay format is required");
+			}
+			if (parallelism < 1 || chunkSize < 1 || recordsPerTask < 1){
+				throw new IllegalArgumentException("The parallelism ("+parallelism+"), chunk size ("+chunkSize+") and records per task ("+recordsPerTask+") must be at least 1");
+			}
+
+			int maxChunksInFlight = this.maxChunksInFlight;
+			if (maxChunksInFlight < 1){
+				maxChunksInFlight = parallelism * 2; // enough to keep every decode thread busy while a chunk is dispatched
+			}
+
+			return new ReplayEventStreamConfig(Collections.unmodifiableList(new ArrayList<Path>(replayFiles)), format, headerRecords, parallelism, chunkSize, recordsPerTask, maxChunksInFlight, reportPeriodMs);
+		}
+	}
+}
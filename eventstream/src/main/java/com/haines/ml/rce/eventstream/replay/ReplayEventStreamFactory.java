@@ -0,0 +1,41 @@
+package com.haines.ml.rce.eventstream.replay;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import com.haines.ml.rce.dispatcher.Dispatcher;
+import com.haines.ml.rce.eventstream.EventStreamFactory;
+import com.haines.ml.rce.eventstream.EventStreamListener;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.system.Clock;
+import com.haines.ml.rce.model.system.Clock.VirtualClock;
+
+public class ReplayEventStreamFactory<E extends Event> implements EventStreamFactory<E>{
+
+	private final Clock clock;
+	private final VirtualClock eventClock;
+	private final ReplayEventStreamConfig config;
+	private final Provider<EventMarshalBuffer<E>> eventBufferProvider;
+	private final EventTimestampResolver<E> timestampResolver;
+	private final EventStreamListener listener;
+
+	@Inject
+	public ReplayEventStreamFactory(Clock clock, VirtualClock eventClock, ReplayEventStreamConfig config, Provider<EventMarshalBuffer<E>> eventBufferProvider, EventTimestampResolver<E> timestampResolver, EventStreamListener listener){
+		this.clock = clock;
+		this.eventClock = eventClock;
+		this.config = config;
+		this.eventBufferProvider = eventBufferProvider;
+		this.timestampResolver = timestampResolver;
+		this.listener = listener;
+	}
+
+	public ReplayEventStreamFactory(VirtualClock eventClock, ReplayEventStreamConfig config, Provider<EventMarshalBuffer<E>> eventBufferProvider, EventTimestampResolver<E> timestampResolver){
+		this(Clock.SYSTEM_CLOCK, eventClock, config, eventBufferProvider, timestampResolver, EventStreamListener.NO_OP_LISTENER);
+	}
+
+	@Override
+	public ReplayEventStream<E> create(Dispatcher<E> dispatcher) {
+		return new ReplayEventStream<E>(clock, eventClock, dispatcher, config, eventBufferProvider, timestampResolver, listener);
+	}
+}
@@ -0,0 +1,110 @@
+package com.haines.ml.rce.eventstream.replay;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The framing of the records in a replay file. Each record contains the entirety of one event which is handed to an
+ * {@link com.haines.ml.rce.model.EventMarshalBuffer} to decode.
+ * @author haines
+ *
+ */
+public enum ReplayFormat {
+
+	/**
+	 * Each record is prefixed with its length as a varint. This is the format produced by protostuff's (and
+	 * protobuf's) writeDelimitedTo methods and is the same framing used by the framed TCP transport.
+	 */
+	DELIMITED {
+		@Override
+		boolean readRecord(InputStream in, ReplayChunk<?> chunk) throws IOException {
+			int recordLength = readVarInt(in);
+
+			if (recordLength == END_OF_STREAM){
+				return false;
+			}
+
+			chunk.beginRecord();
+			chunk.appendFully(in, recordLength);
+			chunk.commitRecord();
+
+			return true;
+		}
+	},
+	/**
+	 * Each record is a single line of text, such as a row in a CSV file. Lines may be terminated with either \n or \r\n
+	 * and blank lines are skipped.
+	 */
+	LINE {
+		@Override
+		boolean readRecord(InputStream in, ReplayChunk<?> chunk) throws IOException {
+			chunk.beginRecord();
+
+			int nextByte;
+			while ((nextByte = in.read()) != END_OF_STREAM){
+				if (nextByte == '\n'){
+					chunk.trimTrailing('\r');
+
+					if (chunk.getCurrentRecordLength() > 0){
+						chunk.commitRecord();
+
+						return true;
+					}
+					continue; // blank line
+				}
+				chunk.append((byte)nextByte);
+			}
+
+			if (chunk.getCurrentRecordLength() > 0){ // last line has no terminator
+				chunk.trimTrailing('\r');
+				chunk.commitRecord();
+
+				return true;
+			}
+			chunk.abortRecord();
+
+			return false;
+		}
+	};
+
+	private static final int END_OF_STREAM = -1;
+	private static final int VARINT_DATA_BITS = 0x7F;
+	private static final int VARINT_CONTINUATION_BIT = 0x80;
+	private static final int MAX_VARINT_BYTES = 5;
+
+	/**
+	 * Reads the next record from the stream into the chunk, returning false if the end of the stream has been reached.
+	 * @param in
+	 * @param chunk
+	 * @return
+	 * @throws IOException
+	 */
+	abstract boolean readRecord(InputStream in, ReplayChunk<?> chunk) throws IOException;
+
+	private static int readVarInt(InputStream in) throws IOException{
+		int value = 0;
+
+		for (int i = 0; i < MAX_VARINT_BYTES; i++){
+			int nextByte = in.read();
+
+			if (nextByte == END_OF_STREAM){
+				if (i == 0){
+					return END_OF_STREAM;
+				}
+				throw new EOFException("Stream ended part way through a record length");
+			}
+
+			value |= (nextByte & VARINT_DATA_BITS) << (i * 7);
+
+			if ((nextByte & VARINT_CONTINUATION_BIT) == 0){
+				if (value < 0){
+					throw new IOException("Record length overflows an int: "+Integer.toHexString(value));
+				}
+				return value;
+			}
+		}
+
+		throw new IOException("Malformed record length. Varints must not be longer then "+MAX_VARINT_BYTES+" bytes");
+	}
+}
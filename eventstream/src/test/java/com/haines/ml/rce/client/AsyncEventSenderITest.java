@@ -0,0 +1,341 @@
+package com.haines.ml.rce.client;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.haines.ml.rce.eventstream.FrameDecoder;
+
+public class AsyncEventSenderITest {
+
+	private static final int TEST_EVENT_BYTES = 4;
+	private static final long TEST_TIMEOUT_MS = 30000;
+
+	private TestServer server;
+	private AsyncEventSender candidate;
+
+	@Before
+	public void before() throws IOException{
+		server = new TestServer();
+	}
+
+	@After
+	public void after() throws IOException{
+		if (candidate != null){
+			candidate.close();
+		}
+		server.close();
+	}
+
+	@Test
+	public void givenCandidateWithManyChannels_whenWritingEvents_thenEventsShardedBetweenConnectionsAndAllArriveOnce() throws Exception{
+		int numChannels = 3;
+		int numEvents = 3000;
+
+		candidate = new AsyncEventSender(getConfigBuilder()
+											.numChannels(numChannels)
+											.build());
+
+		server.acceptConnections(numChannels, true);
+
+		for (int i = 0; i < numEvents; i++){
+			candidate.write(createEvent(i));
+		}
+
+		assertThat(server.awaitEvents(numEvents), is(equalTo(true)));
+
+		Set<Integer> allIds = new HashSet<Integer>();
+		Set<Integer> connectionShards = new HashSet<Integer>();
+		for (List<Integer> connectionIds: server.getEventIdsByConnection()){
+			Set<Integer> shards = new HashSet<Integer>();
+
+			for (int id: connectionIds){
+				shards.add(id % numChannels); // the ring sequence of each event is its id
+				allIds.add(id);
+			}
+			assertThat(shards.size(), is(equalTo(1))); // each connection only writes its own share of the ring
+
+			connectionShards.addAll(shards);
+		}
+
+		assertThat(connectionShards.size(), is(equalTo(numChannels)));
+		assertThat(allIds.size(), is(equalTo(numEvents)));
+		assertThat(server.getNumEventsRecieved(), is(equalTo(numEvents)));
+	}
+
+	@Test
+	public void givenServerWithholdingAcks_whenWritingMoreEventsThenAckWindow_thenWriterStopsUntilAcksArrive() throws Exception{
+		int maxUnacknowledged = 8;
+		int numEvents = 20;
+
+		candidate = new AsyncEventSender(getConfigBuilder()
+											.maxUnacknowledgedEvents(maxUnacknowledged)
+											.maxBatchBytes(5 + TEST_EVENT_BYTES) // a single event per write so the window is exact
+											.build());
+
+		server.acceptConnections(1, false);
+
+		for (int i = 0; i < numEvents; i++){
+			candidate.write(createEvent(i));
+		}
+
+		assertThat(server.awaitEvents(maxUnacknowledged), is(equalTo(true)));
+
+		Thread.sleep(200); // give the writer the chance to wrongly carry on
+
+		assertThat(server.getNumEventsRecieved(), is(equalTo(maxUnacknowledged)));
+		assertThat(candidate.getNumSent(), is(equalTo((long)maxUnacknowledged)));
+		assertThat(candidate.getNumAcknowledged(), is(equalTo(0L)));
+
+		server.releaseAcks(); // opens the window
+
+		assertThat(server.awaitEvents(numEvents), is(equalTo(true)));
+
+		candidate.close(); // waits for the remaining acks
+
+		assertThat(candidate.getNumSent(), is(equalTo((long)numEvents)));
+		assertThat(candidate.getNumAcknowledged(), is(equalTo((long)numEvents)));
+	}
+
+	@Test
+	public void givenServerThatStopsAcking_whenOfferingEvents_thenEventsDroppedAndSenderFailsAfterAckTimeout() throws Exception{
+		int ringSize = 4;
+
+		candidate = new AsyncEventSender(getConfigBuilder()
+											.ringSize(ringSize)
+											.maxUnacknowledgedEvents(1)
+											.ackTimeoutMs(1000)
+											.build());
+
+		server.acceptConnections(1, false); // reads events but never acks them
+
+		int numDropped = 0;
+		for (int i = 0; i < 10; i++){
+			if (!candidate.offer(createEvent(i))){
+				numDropped++;
+			}
+		}
+
+		assertThat(numDropped > 0, is(equalTo(true))); // the writer is waiting on the first ack so the ring fills
+		assertThat(candidate.getNumDropped(), is(equalTo((long)numDropped)));
+
+		long deadline = System.currentTimeMillis() + TEST_TIMEOUT_MS;
+		boolean failed = false;
+		while (!failed && System.currentTimeMillis() < deadline){
+			try{
+				candidate.write(createEvent(0));
+
+				Thread.sleep(10);
+			} catch (IOException e){
+				failed = true;
+			}
+		}
+
+		assertThat(failed, is(equalTo(true)));
+		assertThat(candidate.getNumAcknowledged(), is(equalTo(0L)));
+	}
+
+	private AsyncEventSenderConfig.AsyncEventSenderConfigBuilder getConfigBuilder(){
+		return new AsyncEventSenderConfig.AsyncEventSenderConfigBuilder()
+					.address(server.getAddress())
+					.ringSize(1024)
+					.shutdownTimeoutMs(TEST_TIMEOUT_MS);
+	}
+
+	private static ByteBuffer createEvent(int id){
+		ByteBuffer event = ByteBuffer.allocate(TEST_EVENT_BYTES);
+
+		event.putInt(id);
+		event.flip();
+
+		return event;
+	}
+
+	/**
+	 * A framed TCP server that records the events each connection sends and acks every event, or withholds the acks
+	 * until {@link #releaseAcks()} is called.
+	 */
+	private static class TestServer{
+
+		private final ServerSocketChannel channel;
+		private final ExecutorService executor;
+		private final List<TestConnection> connections;
+		private int numEventsRecieved;
+
+		private TestServer() throws IOException{
+			this.channel = ServerSocketChannel.open();
+			this.channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			this.executor = Executors.newCachedThreadPool();
+			this.connections = Collections.synchronizedList(new ArrayList<TestConnection>());
+		}
+
+		private InetSocketAddress getAddress(){
+			try {
+				return (InetSocketAddress)channel.getLocalAddress();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Accepts the connections that the sender has already made.
+		 */
+		private void acceptConnections(int numConnections, boolean ack) throws IOException{
+			for (int i = 0; i < numConnections; i++){
+				final TestConnection connection = new TestConnection(channel.accept(), ack);
+
+				connections.add(connection);
+
+				executor.execute(new Runnable(){
+
+					@Override
+					public void run() {
+						connection.readEvents();
+					}
+				});
+			}
+		}
+
+		private synchronized void recievedEvent(){
+			numEventsRecieved++;
+
+			notifyAll();
+		}
+
+		private synchronized boolean awaitEvents(int numEvents) throws InterruptedException{
+			long deadline = System.currentTimeMillis() + TEST_TIMEOUT_MS;
+
+			while (numEventsRecieved < numEvents && System.currentTimeMillis() < deadline){
+				wait(Math.max(1, deadline - System.currentTimeMillis()));
+			}
+			return numEventsRecieved >= numEvents;
+		}
+
+		private synchronized int getNumEventsRecieved(){
+			return numEventsRecieved;
+		}
+
+		private List<List<Integer>> getEventIdsByConnection(){
+			List<List<Integer>> ids = new ArrayList<List<Integer>>();
+			synchronized(connections){
+				for (TestConnection connection: connections){
+					ids.add(connection.eventIds);
+				}
+			}
+			return ids;
+		}
+
+		private void releaseAcks() throws IOException{
+			synchronized(connections){
+				for (TestConnection connection: connections){
+					connection.releaseAcks();
+				}
+			}
+		}
+
+		private void close() throws IOException{
+			executor.shutdownNow();
+
+			synchronized(connections){
+				for (TestConnection connection: connections){
+					connection.socket.close();
+				}
+			}
+			channel.close();
+		}
+
+		private class TestConnection{
+
+			private final SocketChannel socket;
+			private final List<Integer> eventIds;
+			private final ByteBuffer ackBuffer;
+			private boolean ack;
+			private int numWithheld;
+
+			private TestConnection(SocketChannel socket, boolean ack){
+				this.socket = socket;
+				this.eventIds = Collections.synchronizedList(new ArrayList<Integer>());
+				this.ackBuffer = ByteBuffer.allocate(5);
+				this.ack = ack;
+			}
+
+			private void readEvents(){
+				try{
+					DataInputStream in = new DataInputStream(socket.socket().getInputStream());
+
+					while (true){
+						int length = readVarInt(in);
+						byte[] event = new byte[length];
+
+						in.readFully(event);
+
+						eventIds.add(ByteBuffer.wrap(event).getInt());
+
+						synchronized(this){
+							numWithheld++;
+
+							if (ack){
+								releaseAcks();
+							}
+						}
+						recievedEvent();
+					}
+				} catch (IOException e){
+					// connection closed
+				}
+			}
+
+			private synchronized void releaseAcks() throws IOException{
+				ack = true;
+
+				if (numWithheld > 0){
+					ackBuffer.clear();
+					FrameDecoder.UTIL.writeVarInt(numWithheld, ackBuffer);
+					ackBuffer.flip();
+
+					while (ackBuffer.hasRemaining()){
+						socket.write(ackBuffer);
+					}
+					numWithheld = 0;
+				}
+			}
+
+			private int readVarInt(InputStream in) throws IOException{
+				int value = 0;
+				for (int shift = 0; shift < 32; shift += 7){
+					int nextByte = in.read();
+
+					if (nextByte < 0){
+						throw new IOException("Connection closed");
+					}
+					value |= (nextByte & 0x7F) << shift;
+
+					if ((nextByte & 0x80) == 0){
+						return value;
+					}
+				}
+				throw new IOException("Malformed varint");
+			}
+		}
+	}
+}
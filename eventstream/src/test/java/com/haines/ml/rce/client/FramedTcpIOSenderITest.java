@@ -0,0 +1,111 @@
+package com.haines.ml.rce.client;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FramedTcpIOSenderITest {
+
+	private static final int TEST_LARGE_EVENT_SIZE = 8 * 1024 * 1024; // bigger then both socket buffers
+	private static final long TEST_READER_STALL_MS = 1000;
+	private static final int TEST_READ_TIMEOUT_MS = 30000;
+
+	private ServerSocketChannel server;
+	private ExecutorService executor;
+
+	@Before
+	public void before() throws IOException{
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void after() throws IOException{
+		executor.shutdownNow();
+		server.close();
+	}
+
+	@Test
+	public void givenFramedSender_whenWritingEmptyEvent_thenLengthPrefixStillSent() throws Exception{
+		IOSender candidate = IOSender.FACTORY.getFramedTcpClientIOSender(server.getLocalAddress());
+
+		try(SocketChannel connection = server.accept()){
+			candidate.write(ByteBuffer.allocate(0));
+			candidate.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+
+			ByteBuffer recieved = readFully(connection, 5);
+
+			assertThat(recieved.array(), is(equalTo(new byte[]{0, 3, 1, 2, 3})));
+		}
+	}
+
+	@Test
+	public void givenFramedSender_whenWritingEventLargerThenSocketBuffers_thenWriterWaitsForReaderWithoutSpinning() throws Exception{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		assumeTrue(threads.isCurrentThreadCpuTimeSupported());
+
+		IOSender candidate = IOSender.FACTORY.getFramedTcpClientIOSender(server.getLocalAddress());
+
+		final SocketChannel connection = server.accept();
+		try{
+			Future<ByteBuffer> recieved = executor.submit(new Callable<ByteBuffer>(){
+
+				@Override
+				public ByteBuffer call() throws Exception {
+					Thread.sleep(TEST_READER_STALL_MS); // leave the writer with a full send buffer
+
+					return readFully(connection, TEST_LARGE_EVENT_SIZE + 4);
+				}
+			});
+
+			byte[] event = new byte[TEST_LARGE_EVENT_SIZE];
+			event[TEST_LARGE_EVENT_SIZE - 1] = 42;
+
+			long startCpuTime = threads.getCurrentThreadCpuTime();
+
+			candidate.write(ByteBuffer.wrap(event));
+
+			long cpuTimeMs = TimeUnit.NANOSECONDS.toMillis(threads.getCurrentThreadCpuTime() - startCpuTime);
+
+			ByteBuffer frame = recieved.get(30, TimeUnit.SECONDS);
+
+			assertThat(frame.get(frame.limit() - 1), is(equalTo((byte)42)));
+			assertThat(cpuTimeMs < TEST_READER_STALL_MS / 2, is(equalTo(true))); // a spinning writer would be on cpu for the whole stall
+		} finally{
+			connection.close();
+		}
+	}
+
+	private static ByteBuffer readFully(SocketChannel connection, int numBytes) throws IOException{
+		byte[] bytes = new byte[numBytes];
+
+		connection.socket().setSoTimeout(TEST_READ_TIMEOUT_MS); // fail rather then hang if the bytes never arrive
+
+		new DataInputStream(connection.socket().getInputStream()).readFully(bytes);
+
+		return ByteBuffer.wrap(bytes);
+	}
+}
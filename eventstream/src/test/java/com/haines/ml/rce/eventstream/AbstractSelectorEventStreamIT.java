@@ -1,8 +1,10 @@
 package com.haines.ml.rce.eventstream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
@@ -12,11 +14,14 @@ import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import javax.inject.Provider;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -34,6 +39,7 @@ import com.haines.ml.rce.model.UnMarshalableException;
 import com.haines.ml.rce.model.system.Clock;
 
 import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.equalTo;
 
@@ -41,6 +47,8 @@ public abstract class AbstractSelectorEventStreamIT<T extends SelectableChannel
 
 	private static final String TEST_EVENT_MESSAGE  = "This is a test event";
 	private static final int TEST_EVENT_ID = 257; // 0x101
+	private static final byte[] TEST_MALFORMED_EVENT = new byte[]{'b', 'a', 'd', TestEventBuffer.ILLEGAL_STRING_BYTE};
+	private static final int TEST_READ_TIMEOUT_MS = 30000;
 	private static final Logger LOG = LoggerFactory.getLogger(AbstractSelectorEventStreamIT.class);
 	
 	public static final int TEST_PORT = 34564;
@@ -76,16 +84,34 @@ public abstract class AbstractSelectorEventStreamIT<T extends SelectableChannel
 		startupLatch = new CountDownLatch(1);
 		shutdownLatch = new CountDownLatch(1);
 		
-		SelectorEventStreamFactory<T, TestEvent> streamFactory = new SelectorEventStreamFactory<T, TestEvent>(Clock.SYSTEM_CLOCK, config, processor, new TestEventBuffer(), new LatchNotifierEventStreamListener(startupLatch, shutdownLatch));
+		SelectorEventStreamFactory<T, TestEvent> streamFactory = new SelectorEventStreamFactory<T, TestEvent>(Clock.SYSTEM_CLOCK, config, processor, new Provider<EventMarshalBuffer<TestEvent>>(){
+
+			@Override
+			public EventMarshalBuffer<TestEvent> get() {
+				return new TestEventBuffer();
+			}
+			
+		}, new LatchNotifierEventStreamListener(startupLatch, shutdownLatch));
 		candidate = streamFactory.create(dispatcher);
 	}
 	
 	abstract protected int getBufferCapacity();
 	
+	/**
+	 * Override to return true if the transport allows an event to be sent over multiple writes
+	 * @return
+	 */
+	protected boolean isPartialEventWriteSupported(){
+		return false;
+	}
+	
 	@After
 	public void after() throws EventStreamException, InterruptedException{
 		candidate.stop();
-		shutdownLatch.await();
+		
+		if (startupLatch.getCount() == 0){ // only wait for streams that were started, otherwise we will wait forever
+			shutdownLatch.await();
+		}
 	}
 	
 	protected abstract NetworkChannelProcessor<T> createNetworkChannelProcessor();
@@ -180,12 +206,91 @@ public abstract class AbstractSelectorEventStreamIT<T extends SelectableChannel
 		}
 	}
 	
+	@Test
+	public void givenStartedCandidate_whenTwoClientsInterleavePartialEvents_thenDispatcherIsInvokedWithBothEvents() throws InterruptedException, IOException{
+		
+		assumeTrue(isPartialEventWriteSupported());
+		
+		before(2);
+		// start server
+		executor.execute(getStarter(candidate));
+		
+		//await startup to complete
+		startupLatch.await();
+		
+		IOSender sender1 = getIOSender(config.getAddress());
+		IOSender sender2 = getIOSender(config.getAddress());
+		
+		byte[] event1 = getEventBytes(new TestEvent(TEST_EVENT_MESSAGE, 1));
+		int splitIdx = event1.length / 2;
+		
+		// send half of the first event, all of the second event from another client and then the rest of the first event
+		
+		sendBytes(sender1, ByteBuffer.wrap(event1, 0, splitIdx));
+		sendEventToServer(new TestEvent(TEST_EVENT_MESSAGE, 2), sender2);
+		sendBytes(sender1, ByteBuffer.wrap(event1, splitIdx, event1.length - splitIdx));
+		
+		dispatcher.waitForEvents();
+		
+		Iterable<TestEvent> events = dispatcher.getEventsRecieved();
+		
+		assertThat(Iterables.size(events), is(equalTo(2)));
+		
+		assertThat(Iterables.get(events, 0).testString1, is(equalTo(TEST_EVENT_MESSAGE)));
+		assertThat(Iterables.get(events, 0).testInt1, is(equalTo(2)));
+		assertThat(Iterables.get(events, 1).testString1, is(equalTo(TEST_EVENT_MESSAGE)));
+		assertThat(Iterables.get(events, 1).testInt1, is(equalTo(1)));
+	}
+	
+	@Test
+	public void givenStartedCandidate_whenOneClientSendsMalformedFrame_thenOnlyThatConnectionClosedAndOtherClientsDispatched() throws InterruptedException, IOException{
+		
+		assumeTrue(createNetworkChannelProcessor().isLengthPrefixFramed());
+		
+		// start server
+		executor.execute(getStarter(candidate));
+		
+		//await startup to complete
+		startupLatch.await();
+		
+		try(Socket badClient = new Socket()){
+			badClient.connect(config.getAddress());
+			badClient.setSoTimeout(TEST_READ_TIMEOUT_MS);
+			
+			OutputStream out = badClient.getOutputStream();
+			out.write(TEST_MALFORMED_EVENT.length); // a single byte varint
+			out.write(TEST_MALFORMED_EVENT);
+			out.flush();
+			
+			assertThat(badClient.getInputStream().read(), is(equalTo(-1))); // closed by the server without an ack
+		}
+		
+		IOSender sender = getIOSender(config.getAddress());
+		
+		sendEventToServer(new TestEvent(TEST_EVENT_MESSAGE, TEST_EVENT_ID), sender);
+		
+		dispatcher.waitForEvents();
+		
+		Iterable<TestEvent> events = dispatcher.getEventsRecieved();
+		
+		assertThat(Iterables.size(events), is(equalTo(1)));
+		
+		assertThat(Iterables.get(events, 0).testString1, is(equalTo(TEST_EVENT_MESSAGE)));
+		assertThat(Iterables.get(events, 0).testInt1, is(equalTo(TEST_EVENT_ID)));
+		assertThat(candidate.isAlive(), is(equalTo(true)));
+	}
+	
 	private static double calculateRPS(long timeSpent, int numberEventsToSend) {
 		
 		return 1000 / ((double)timeSpent / numberEventsToSend);
 	}
 	private void sendEventToServer(TestEvent event, IOSender sender) throws IOException, InterruptedException{
 
+		sendBytes(sender, ByteBuffer.wrap(getEventBytes(event)));
+	}
+	
+	static byte[] getEventBytes(TestEvent event) throws IOException{
+		
 		//LOG.debug("Sending event: "+event.testString1+"("+Integer.toBinaryString(event.testInt1)+"##"+event.testInt1+")");
 		// dont need to worry about efficiency in test case...
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -200,7 +305,7 @@ public abstract class AbstractSelectorEventStreamIT<T extends SelectableChannel
 		out.flush();
 		out.close();
 		
-		sendBytes(sender, ByteBuffer.wrap(out.toByteArray()));
+		return out.toByteArray();
 	}
 	
 	protected void sendBytes(IOSender sender, ByteBuffer buffer) throws IOException{
@@ -224,18 +329,20 @@ public abstract class AbstractSelectorEventStreamIT<T extends SelectableChannel
 		};
 	}
 	
-	private static class TestEvent implements Event{
+	static class TestEvent implements Event{
 		
-		private final String testString1;
-		private final int testInt1;
+		final String testString1;
+		final int testInt1;
 		
-		private TestEvent(String testString1, int testInt1){
+		TestEvent(String testString1, int testInt1){
 			this.testString1 = testString1;
 			this.testInt1 = testInt1;
 		}
 	}
 	
-	private static class TestEventBuffer implements EventMarshalBuffer<TestEvent>{
+	static class TestEventBuffer implements EventMarshalBuffer<TestEvent>{
+
+		static final byte ILLEGAL_STRING_BYTE = 0;
 
 		private static enum TestEventProperty{
 			TEST_STRING1,
@@ -268,6 +375,9 @@ public abstract class AbstractSelectorEventStreamIT<T extends SelectableChannel
 						break;
 					}
 					case TEST_STRING1:{
+						if (nextByte == ILLEGAL_STRING_BYTE){
+							throw new UnMarshalableException("Test strings can not contain null characters");
+						}
 						if (nextByte != Character.CONTROL){
 							testString1.append((char)nextByte);
 						}
@@ -315,6 +425,13 @@ public abstract class AbstractSelectorEventStreamIT<T extends SelectableChannel
 			latch.countDown();
 			//LOG.debug("recieved event: "+event.testString1+"("+Integer.toBinaryString(event.testInt1)+"##"+event.testInt1+")");
 		}
+		
+		@Override
+		public void dispatchEvents(List<TestEvent> events) {
+			for (TestEvent event: events){
+				dispatchEvent(event);
+			}
+		}
 
 		public void waitForEvents() throws InterruptedException {
 			latch.await();
@@ -0,0 +1,34 @@
+package com.haines.ml.rce.eventstream;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import com.haines.ml.rce.client.AsyncEventSenderConfig;
+import com.haines.ml.rce.client.IOSender;
+
+public class AsyncFramedTcpSelectorEventStreamITest extends AbstractSelectorEventStreamIT<ServerSocketChannel, SocketChannel>{
+
+	
+	@Override
+	protected NetworkChannelProcessor<ServerSocketChannel> createNetworkChannelProcessor() {
+		
+		return NetworkChannelProcessor.UTIL.getFramedServerChannelProcessor();
+	}
+
+	@Override
+	protected int getBufferCapacity() { // large enough to decode many coalesced frames in a single read
+		return 4096;
+	}
+
+	@Override
+	protected IOSender getIOSender(SocketAddress address) throws IOException, InterruptedException {
+		return IOSender.FACTORY.getAsyncFramedTcpClientIOSender(new AsyncEventSenderConfig.AsyncEventSenderConfigBuilder()
+																		.address(address)
+																		.numChannels(1) // a single connection keeps the events in order
+																		.ringSize(1024)
+																		.maxUnacknowledgedEvents(256)
+																		.build());
+	}
+}
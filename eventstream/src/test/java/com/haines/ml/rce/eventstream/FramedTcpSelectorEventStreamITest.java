@@ -0,0 +1,28 @@
+package com.haines.ml.rce.eventstream;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import com.haines.ml.rce.client.IOSender;
+
+public class FramedTcpSelectorEventStreamITest extends AbstractSelectorEventStreamIT<ServerSocketChannel, SocketChannel>{
+
+	
+	@Override
+	protected NetworkChannelProcessor<ServerSocketChannel> createNetworkChannelProcessor() {
+		
+		return NetworkChannelProcessor.UTIL.getFramedServerChannelProcessor();
+	}
+
+	@Override
+	protected int getBufferCapacity() { // smaller then a single frame so that partial frames are carried over between reads
+		return 10;
+	}
+
+	@Override
+	protected IOSender getIOSender(SocketAddress address) throws IOException, InterruptedException {
+		return IOSender.FACTORY.getFramedTcpClientIOSender(address);
+	}
+}
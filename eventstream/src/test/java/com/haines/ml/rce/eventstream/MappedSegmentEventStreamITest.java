@@ -0,0 +1,336 @@
+package com.haines.ml.rce.eventstream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.haines.ml.rce.client.IOSender;
+import com.haines.ml.rce.client.MappedSegmentWriter;
+import com.haines.ml.rce.dispatcher.Dispatcher;
+import com.haines.ml.rce.dispatcher.DispatcherConsumer;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.UnMarshalableException;
+import com.haines.ml.rce.model.system.Clock;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+public class MappedSegmentEventStreamITest {
+
+	private static final int SEGMENT_SIZE = 100; // small enough that a handful of events rolls the segment
+	private static final int NUMBER_EVENTS_TO_SEND = 50;
+	private static final int EVENTS_PER_SEGMENT = 12; // 8 byte records with room left for the end of segment marker
+
+	private Path segmentDirectory;
+	private ExecutorService executor;
+	private MappedSegmentEventStream<TestEvent> candidate;
+	private CountDownLatch startupLatch;
+	private CountDownLatch shutdownLatch;
+
+	@Before
+	public void before() throws IOException{
+		segmentDirectory = Files.createTempDirectory("segments");
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void after() throws EventStreamException, InterruptedException{
+		if (candidate != null){
+			stopCandidate();
+		}
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void givenStartedCandidate_whenWritingEventsAcrossSegments_thenDispatcherIsInvokedWithAllEventsInOrder() throws IOException, InterruptedException{
+		TestDispatcher dispatcher = new TestDispatcher(NUMBER_EVENTS_TO_SEND);
+
+		startCandidate(dispatcher);
+
+		try(MappedSegmentWriter writer = IOSender.FACTORY.getMappedSegmentIOSender(segmentDirectory, SEGMENT_SIZE)){
+			writeEvents(writer, 0, NUMBER_EVENTS_TO_SEND);
+		}
+
+		dispatcher.waitForEvents();
+
+		assertThat(SegmentFiles.UTIL.getLastSegmentNumber(segmentDirectory) > 0, is(equalTo(true)));
+		assertThat(dispatcher.getEventsRecieved(), is(equalTo(getExpectedEvents(0, NUMBER_EVENTS_TO_SEND))));
+	}
+
+	@Test
+	public void givenRestartedCandidate_whenWritingMoreEvents_thenOnlyUnreadEventsAreDispatched() throws IOException, InterruptedException, EventStreamException{
+		TestDispatcher dispatcher = new TestDispatcher(NUMBER_EVENTS_TO_SEND);
+
+		startCandidate(dispatcher);
+
+		try(MappedSegmentWriter writer = IOSender.FACTORY.getMappedSegmentIOSender(segmentDirectory, SEGMENT_SIZE)){
+			writeEvents(writer, 0, NUMBER_EVENTS_TO_SEND);
+		}
+
+		dispatcher.waitForEvents();
+
+		stopCandidate();
+
+		// the writer resumes the last segment
+		try(MappedSegmentWriter writer = IOSender.FACTORY.getMappedSegmentIOSender(segmentDirectory, SEGMENT_SIZE)){
+			writeEvents(writer, NUMBER_EVENTS_TO_SEND, 10);
+		}
+
+		TestDispatcher restartedDispatcher = new TestDispatcher(10);
+
+		startCandidate(restartedDispatcher);
+
+		restartedDispatcher.waitForEvents();
+
+		assertThat(restartedDispatcher.getEventsRecieved(), is(equalTo(getExpectedEvents(NUMBER_EVENTS_TO_SEND, 10))));
+	}
+
+	@Test
+	public void givenBatchSpanningEndOfSegment_whenDispatchFails_thenRestartedCandidateRedeliversWholeBatch() throws IOException, InterruptedException{
+		int numEvents = EVENTS_PER_SEGMENT * 2;
+
+		try(MappedSegmentWriter writer = IOSender.FACTORY.getMappedSegmentIOSender(segmentDirectory, SEGMENT_SIZE)){
+			writeEvents(writer, 0, numEvents);
+		}
+
+		int batchSize = 5; // the third batch holds the last 2 events of the first segment
+		int firstEventOfFailingBatch = (EVENTS_PER_SEGMENT / batchSize) * batchSize;
+
+		startCandidate(new FailingTestDispatcher(EVENTS_PER_SEGMENT - 1), getConfigBuilder().batchSize(batchSize).build());
+
+		shutdownLatch.await(); // the failed dispatch kills the stream
+		candidate = null;
+
+		TestDispatcher restartedDispatcher = new TestDispatcher(numEvents - firstEventOfFailingBatch);
+
+		startCandidate(restartedDispatcher, getConfigBuilder().batchSize(batchSize).build());
+
+		restartedDispatcher.waitForEvents();
+
+		assertThat(restartedDispatcher.getEventsRecieved(), is(equalTo(getExpectedEvents(firstEventOfFailingBatch, numEvents - firstEventOfFailingBatch))));
+	}
+
+	@Test
+	public void givenCandidateRetainingOneSegment_whenReadingAcrossSegments_thenOlderSegmentsDeleted() throws IOException, InterruptedException{
+		TestDispatcher dispatcher = new TestDispatcher(NUMBER_EVENTS_TO_SEND);
+
+		startCandidate(dispatcher, getConfigBuilder().numRetainedSegments(1).build());
+
+		try(MappedSegmentWriter writer = IOSender.FACTORY.getMappedSegmentIOSender(segmentDirectory, SEGMENT_SIZE)){
+			writeEvents(writer, 0, NUMBER_EVENTS_TO_SEND);
+		}
+
+		dispatcher.waitForEvents();
+
+		long lastSegmentNumber = NUMBER_EVENTS_TO_SEND / EVENTS_PER_SEGMENT;
+
+		assertThat(SegmentFiles.UTIL.getLastSegmentNumber(segmentDirectory), is(equalTo(lastSegmentNumber)));
+		for (long segmentNumber = 0; segmentNumber <= lastSegmentNumber; segmentNumber++){
+			assertThat(Files.exists(SegmentFiles.UTIL.getSegmentPath(segmentDirectory, segmentNumber)), is(equalTo(segmentNumber >= lastSegmentNumber - 1)));
+		}
+	}
+
+	@Test
+	public void givenCandidateRetainingAllSegments_whenReadingAcrossSegments_thenNoSegmentsDeleted() throws IOException, InterruptedException{
+		TestDispatcher dispatcher = new TestDispatcher(NUMBER_EVENTS_TO_SEND);
+
+		startCandidate(dispatcher, getConfigBuilder().numRetainedSegments(MappedSegmentEventStreamConfig.RETAIN_ALL_SEGMENTS).build());
+
+		try(MappedSegmentWriter writer = IOSender.FACTORY.getMappedSegmentIOSender(segmentDirectory, SEGMENT_SIZE)){
+			writeEvents(writer, 0, NUMBER_EVENTS_TO_SEND);
+		}
+
+		dispatcher.waitForEvents();
+
+		for (long segmentNumber = 0; segmentNumber <= NUMBER_EVENTS_TO_SEND / EVENTS_PER_SEGMENT; segmentNumber++){
+			assertThat(Files.exists(SegmentFiles.UTIL.getSegmentPath(segmentDirectory, segmentNumber)), is(equalTo(true)));
+		}
+	}
+
+	private MappedSegmentEventStreamConfig.MappedSegmentEventStreamConfigBuilder getConfigBuilder(){
+		return new MappedSegmentEventStreamConfig.MappedSegmentEventStreamConfigBuilder()
+					.segmentDirectory(segmentDirectory)
+					.segmentSize(SEGMENT_SIZE)
+					.batchSize(4);
+	}
+
+	private void startCandidate(TestDispatcher dispatcher) throws InterruptedException{
+		startCandidate(dispatcher, getConfigBuilder().build());
+	}
+
+	private void startCandidate(TestDispatcher dispatcher, MappedSegmentEventStreamConfig config) throws InterruptedException{
+		startupLatch = new CountDownLatch(1);
+		shutdownLatch = new CountDownLatch(1);
+
+		candidate = new MappedSegmentEventStreamFactory<TestEvent>(Clock.SYSTEM_CLOCK, config, new TestEventBuffer(), new LatchNotifierEventStreamListener(startupLatch, shutdownLatch)).create(dispatcher);
+
+		final MappedSegmentEventStream<TestEvent> stream = candidate;
+		executor.execute(new Runnable(){
+
+			@Override
+			public void run() {
+				try {
+					stream.start();
+				} catch (EventStreamException e) {
+					throw new RuntimeException("Unable to start stream", e);
+				}
+			}
+		});
+
+		startupLatch.await();
+	}
+
+	private void stopCandidate() throws EventStreamException, InterruptedException{
+		candidate.stop();
+		shutdownLatch.await();
+
+		candidate = null;
+	}
+
+	private static void writeEvents(MappedSegmentWriter writer, int firstValue, int numEvents) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+
+		for (int i = firstValue; i < firstValue + numEvents; i++){
+			buffer.clear();
+			buffer.putInt(i);
+			buffer.flip();
+
+			writer.write(buffer);
+		}
+	}
+
+	private static List<Integer> getExpectedEvents(int firstValue, int numEvents){
+		List<Integer> expected = new ArrayList<Integer>();
+
+		for (int i = firstValue; i < firstValue + numEvents; i++){
+			expected.add(i);
+		}
+		return expected;
+	}
+
+	private static class TestEvent implements Event{
+
+		private final int value;
+
+		private TestEvent(int value){
+			this.value = value;
+		}
+	}
+
+	private static class TestEventBuffer implements EventMarshalBuffer<TestEvent>{
+
+		private int value;
+
+		@Override
+		public boolean marshal(ByteBuffer content) {
+			value = content.getInt();
+
+			return true;
+		}
+
+		@Override
+		public TestEvent buildEventAndResetBuffer() throws UnMarshalableException {
+			return new TestEvent(value);
+		}
+	}
+
+	private static class TestDispatcher extends Dispatcher<TestEvent>{
+
+		private final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+		private final CountDownLatch latch;
+
+		private TestDispatcher(int numberEventsExpected){
+			super(Collections.<DispatcherConsumer<TestEvent>>emptyList());
+			this.latch = new CountDownLatch(numberEventsExpected);
+		}
+
+		@Override
+		public void dispatchEvent(TestEvent event) {
+			events.add(event.value);
+
+			latch.countDown();
+		}
+
+		@Override
+		public void dispatchEvents(List<TestEvent> events) {
+			for (TestEvent event: events){
+				dispatchEvent(event);
+			}
+		}
+
+		@Override
+		public void close(){
+			// NO OP
+		}
+
+		public void waitForEvents() throws InterruptedException {
+			latch.await();
+		}
+
+		public List<Integer> getEventsRecieved(){
+			return new ArrayList<Integer>(events);
+		}
+	}
+
+	/**
+	 * Fails the dispatch of the batch containing the given event, as if the process died before handing it on.
+	 */
+	private static class FailingTestDispatcher extends TestDispatcher{
+
+		private final int failingEvent;
+
+		private FailingTestDispatcher(int failingEvent){
+			super(failingEvent);
+			this.failingEvent = failingEvent;
+		}
+
+		@Override
+		public void dispatchEvents(List<TestEvent> events) {
+			for (TestEvent event: events){
+				if (event.value == failingEvent){
+					throw new IllegalStateException("Test failure dispatching event "+failingEvent);
+				}
+			}
+			super.dispatchEvents(events);
+		}
+	}
+
+	private static class LatchNotifierEventStreamListener implements EventStreamListener{
+
+		private final CountDownLatch startupLatch;
+		private final CountDownLatch shutdownLatch;
+
+		private LatchNotifierEventStreamListener(CountDownLatch startupLatch, CountDownLatch shutdownLatch){
+			this.startupLatch = startupLatch;
+			this.shutdownLatch = shutdownLatch;
+		}
+
+		@Override
+		public void streamStarted() {
+			startupLatch.countDown();
+		}
+
+		@Override
+		public void streamStopped() {
+			shutdownLatch.countDown();
+		}
+
+		@Override
+		public void recievedEvent(Event event) {
+			// NO OP
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package com.haines.ml.rce.eventstream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Provider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.haines.ml.rce.client.IOSender;
+import com.haines.ml.rce.dispatcher.Dispatcher;
+import com.haines.ml.rce.dispatcher.DispatcherConsumer;
+import com.haines.ml.rce.eventstream.AbstractSelectorEventStreamIT.TestEvent;
+import com.haines.ml.rce.eventstream.AbstractSelectorEventStreamIT.TestEventBuffer;
+import com.haines.ml.rce.eventstream.SelectorEventStreamConfig.BufferType;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.system.Clock;
+
+public class MultiSelectorEventStreamITest {
+
+	private static final int TEST_PORT = 34565;
+	private static final int TEST_NUM_SELECTORS = 3;
+	private static final int TEST_NUM_CLIENTS = 12;
+	private static final int TEST_EVENTS_PER_CLIENT = 500;
+	private static final String TEST_EVENT_MESSAGE = "This is a test event";
+	private static final long TEST_TIMEOUT_SECONDS = 30;
+
+	private ExecutorService executor;
+	private List<Integer> eventIdsRecieved;
+	private CountDownLatch eventsLatch;
+	private CountDownLatch startupLatch;
+	private CountDownLatch shutdownLatch;
+	private SelectorEventStreamConfig config;
+	private MultiSelectorEventStream<ServerSocketChannel, TestEvent> candidate;
+
+	@Before
+	public void before() throws IOException{
+		assumeTrue(isReusePortSupported());
+
+		executor = Executors.newSingleThreadExecutor();
+		eventIdsRecieved = Collections.synchronizedList(new ArrayList<Integer>());
+		eventsLatch = new CountDownLatch(TEST_NUM_CLIENTS * TEST_EVENTS_PER_CLIENT);
+		startupLatch = new CountDownLatch(1);
+		shutdownLatch = new CountDownLatch(1);
+
+		config = new SelectorEventStreamConfig.SelectorEventStreamConfigBuilder()
+			.bufferCapacity(64)
+			.bufferType(BufferType.DIRECT_BUFFER)
+			.socketAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), TEST_PORT))
+			.numSelectors(TEST_NUM_SELECTORS)
+			.build();
+	}
+
+	@After
+	public void after() throws EventStreamException, InterruptedException{
+		if (candidate != null){
+			candidate.stop();
+
+			if (startupLatch.getCount() == 0){
+				shutdownLatch.await(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+		}
+		if (executor != null){
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void givenStartedCandidate_whenManyClientsPushEvents_thenEveryEventDispatchedExactlyOnce() throws Exception{
+		candidate = createCandidate(NetworkChannelProcessor.UTIL.getFramedServerChannelProcessor());
+
+		executor.submit(getStarter(candidate));
+
+		assertThat(startupLatch.await(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS), is(equalTo(true)));
+		assertThat(candidate.isAlive(), is(equalTo(true)));
+
+		List<IOSender> senders = new ArrayList<IOSender>();
+		for (int i = 0; i < TEST_NUM_CLIENTS; i++){ // each connection is given to one of the selectors by the kernel
+			senders.add(IOSender.FACTORY.getFramedTcpClientIOSender(config.getAddress()));
+		}
+
+		for (int i = 0; i < TEST_EVENTS_PER_CLIENT; i++){
+			for (int clientIdx = 0; clientIdx < TEST_NUM_CLIENTS; clientIdx++){
+				byte[] event = AbstractSelectorEventStreamIT.getEventBytes(new TestEvent(TEST_EVENT_MESSAGE, clientIdx * TEST_EVENTS_PER_CLIENT + i));
+
+				senders.get(clientIdx).write(ByteBuffer.wrap(event));
+			}
+		}
+
+		assertThat(eventsLatch.await(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS), is(equalTo(true)));
+
+		Set<Integer> uniqueIds = new HashSet<Integer>(eventIdsRecieved);
+
+		assertThat(eventIdsRecieved.size(), is(equalTo(TEST_NUM_CLIENTS * TEST_EVENTS_PER_CLIENT)));
+		assertThat(uniqueIds.size(), is(equalTo(TEST_NUM_CLIENTS * TEST_EVENTS_PER_CLIENT))); // no event was seen twice so all must be present
+	}
+
+	@Test
+	public void givenCandidateWithSelectorThatFailsToStart_whenStarting_thenStartFailsAndStartedSelectorsStopped() throws Exception{
+		candidate = createCandidate(new FailingChannelProcessor(NetworkChannelProcessor.UTIL.getFramedServerChannelProcessor(), 2));
+
+		Future<?> startResult = executor.submit(getStarter(candidate));
+
+		try{
+			startResult.get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			throw new AssertionError("Expected the stream to fail to start");
+		} catch (ExecutionException e){
+			assertThat(e.getCause().getCause(), is(instanceOf(EventStreamException.class)));
+		}
+
+		assertThat(candidate.isAlive(), is(equalTo(false)));
+		assertThat(startupLatch.getCount(), is(equalTo(1L))); // never reported as started
+		assertThat(shutdownLatch.await(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS), is(equalTo(true)));
+
+		try(ServerSocketChannel channel = ServerSocketChannel.open()){ // the selector that did start must have released the address
+			channel.bind(config.getAddress());
+		}
+	}
+
+	private MultiSelectorEventStream<ServerSocketChannel, TestEvent> createCandidate(NetworkChannelProcessor<ServerSocketChannel> processor){
+		SelectorEventStreamFactory<ServerSocketChannel, TestEvent> streamFactory = new SelectorEventStreamFactory<ServerSocketChannel, TestEvent>(Clock.SYSTEM_CLOCK, config, processor, new Provider<EventMarshalBuffer<TestEvent>>(){
+
+			@Override
+			public EventMarshalBuffer<TestEvent> get() {
+				return new TestEventBuffer();
+			}
+
+		}, new EventStreamListener(){
+
+			@Override
+			public void streamStarted() {
+				startupLatch.countDown();
+			}
+
+			@Override
+			public void streamStopped() {
+				shutdownLatch.countDown();
+			}
+
+			@Override
+			public void recievedEvent(Event event) {
+				// NO OP
+			}
+		});
+
+		List<Dispatcher<TestEvent>> dispatchers = new ArrayList<Dispatcher<TestEvent>>();
+		for (int i = 0; i < TEST_NUM_SELECTORS; i++){
+			dispatchers.add(new RecordingDispatcher());
+		}
+		return streamFactory.create(dispatchers);
+	}
+
+	private static boolean isReusePortSupported() throws IOException{
+		try(ServerSocketChannel channel = ServerSocketChannel.open()){
+			return channel.supportedOptions().contains(StandardSocketOptions.class.getField("SO_REUSEPORT").get(null));
+		} catch (NoSuchFieldException | IllegalAccessException e){
+			return false;
+		}
+	}
+
+	private static Runnable getStarter(final MultiSelectorEventStream<?, TestEvent> candidate){
+		return new Runnable(){
+
+			@Override
+			public void run() {
+				try {
+					candidate.start();
+				} catch (EventStreamException e) {
+					throw new RuntimeException("Unable to start stream", e);
+				}
+			}
+		};
+	}
+
+	private class RecordingDispatcher extends Dispatcher<TestEvent>{
+
+		private RecordingDispatcher(){
+			super(Collections.<DispatcherConsumer<TestEvent>>emptyList());
+		}
+
+		@Override
+		public void dispatchEvent(TestEvent event) {
+			eventIdsRecieved.add(event.testInt1);
+
+			eventsLatch.countDown();
+		}
+
+		@Override
+		public void dispatchEvents(List<TestEvent> events) {
+			for (TestEvent event: events){
+				dispatchEvent(event);
+			}
+		}
+	}
+
+	/**
+	 * Fails to create the nth channel so that one of the selectors is unable to start.
+	 */
+	private static class FailingChannelProcessor implements NetworkChannelProcessor<ServerSocketChannel>{
+
+		private final NetworkChannelProcessor<ServerSocketChannel> delegate;
+		private final int failingChannelNum;
+		private final AtomicInteger numChannels;
+
+		private FailingChannelProcessor(NetworkChannelProcessor<ServerSocketChannel> delegate, int failingChannelNum){
+			this.delegate = delegate;
+			this.failingChannelNum = failingChannelNum;
+			this.numChannels = new AtomicInteger(0);
+		}
+
+		@Override
+		public ServerSocketChannel createChannel(SelectorProvider provider) throws IOException {
+			if (numChannels.incrementAndGet() == failingChannelNum){
+				throw new IOException("Test failure creating channel "+failingChannelNum);
+			}
+			return delegate.createChannel(provider);
+		}
+
+		@Override
+		public int getRegisterOpCodes() {
+			return delegate.getRegisterOpCodes();
+		}
+
+		@Override
+		public void acceptChannel(Selector selector, ServerSocketChannel channel) throws IOException {
+			delegate.acceptChannel(selector, channel);
+		}
+
+		@Override
+		public int readFromChannel(ScatteringByteChannel readerChannel, ByteBuffer buffer) throws IOException {
+			return delegate.readFromChannel(readerChannel, buffer);
+		}
+
+		@Override
+		public void close(ServerSocketChannel channel) throws IOException {
+			delegate.close(channel);
+		}
+
+		@Override
+		public void closeAccept(Channel readerChannel) throws IOException {
+			delegate.closeAccept(readerChannel);
+		}
+
+		@Override
+		public String getProtocolName() {
+			return delegate.getProtocolName();
+		}
+
+		@Override
+		public boolean isMessageOriented() {
+			return delegate.isMessageOriented();
+		}
+
+		@Override
+		public boolean isLengthPrefixFramed() {
+			return delegate.isLengthPrefixFramed();
+		}
+	}
+}
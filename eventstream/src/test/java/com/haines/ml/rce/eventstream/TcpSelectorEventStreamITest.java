@@ -21,6 +21,11 @@ public class TcpSelectorEventStreamITest extends AbstractSelectorEventStreamIT<S
 		return 10;
 	}
 
+	@Override
+	protected boolean isPartialEventWriteSupported() {
+		return true;
+	}
+
 	@Override
 	protected IOSender getIOSender(SocketAddress address) throws IOException, InterruptedException {
 		return IOSender.FACTORY.getTcpClientIOSender(address, false);
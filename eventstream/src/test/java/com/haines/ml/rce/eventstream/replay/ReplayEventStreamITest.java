@@ -0,0 +1,225 @@
+package com.haines.ml.rce.eventstream.replay;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.haines.ml.rce.dispatcher.Dispatcher;
+import com.haines.ml.rce.dispatcher.DispatcherConsumer;
+import com.haines.ml.rce.eventstream.EventStreamException;
+import com.haines.ml.rce.eventstream.replay.CsvEventMarshalBuffer.CsvRecordConverter;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.UnMarshalableException;
+import com.haines.ml.rce.model.system.Clock.VirtualClock;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+public class ReplayEventStreamITest {
+
+	private static final int NUMBER_EVENTS_TO_REPLAY = 10000;
+	private static final long START_TIME = 1000;
+
+	private Path replayDirectory;
+	private VirtualClock eventClock;
+	private TestDispatcher dispatcher;
+
+	@Before
+	public void before() throws IOException{
+		replayDirectory = Files.createTempDirectory("replay");
+		eventClock = new VirtualClock(0);
+		dispatcher = new TestDispatcher();
+	}
+
+	@Test
+	public void givenDelimitedFiles_whenReplaying_thenAllEventsAreDispatchedInOrderAndClockFollowsEvents() throws IOException, EventStreamException{
+		Path firstFile = writeDelimitedFile("first.bin", 0, NUMBER_EVENTS_TO_REPLAY / 2);
+		Path secondFile = writeDelimitedFile("second.bin", NUMBER_EVENTS_TO_REPLAY / 2, NUMBER_EVENTS_TO_REPLAY / 2);
+
+		ReplayEventStreamConfig config = new ReplayEventStreamConfig.ReplayEventStreamConfigBuilder()
+												.replayFile(firstFile)
+												.replayFile(secondFile)
+												.format(ReplayFormat.DELIMITED)
+												.parallelism(4)
+												.chunkSize(100)
+												.recordsPerTask(10)
+												.build();
+
+		ReplayEventStream<TestEvent> candidate = new ReplayEventStreamFactory<TestEvent>(eventClock, config, new Provider<EventMarshalBuffer<TestEvent>>(){
+
+			@Override
+			public EventMarshalBuffer<TestEvent> get() {
+				return new TestEventBuffer();
+			}
+		}, new TestEventTimestampResolver()).create(dispatcher);
+
+		candidate.start();
+
+		assertThat(dispatcher.getEventsRecieved(), is(equalTo(getExpectedEvents(NUMBER_EVENTS_TO_REPLAY))));
+		assertThat(candidate.getNumEventsReplayed(), is(equalTo((long)NUMBER_EVENTS_TO_REPLAY)));
+		assertThat(eventClock.getCurrentTime(), is(equalTo(START_TIME + NUMBER_EVENTS_TO_REPLAY - 1)));
+		assertThat(dispatcher.numHeartBeats, is(equalTo(1)));
+		assertThat(candidate.isAlive(), is(equalTo(false)));
+	}
+
+	@Test
+	public void givenCsvFileWithHeader_whenReplaying_thenRowsAreConvertedAndRejectedRowsAreSkipped() throws IOException, EventStreamException{
+		Path csvFile = replayDirectory.resolve("events.csv");
+
+		Files.write(csvFile, Arrays.asList(
+				"value,label",
+				"1, first",
+				"",
+				"?,missing",
+				"3,\"a, quoted \"\"label\"\"\"",
+				"4,last"), StandardCharsets.UTF_8);
+
+		ReplayEventStreamConfig config = new ReplayEventStreamConfig.ReplayEventStreamConfigBuilder()
+												.replayFile(csvFile)
+												.format(ReplayFormat.LINE)
+												.headerRecords(1)
+												.parallelism(2)
+												.chunkSize(2)
+												.recordsPerTask(1)
+												.build();
+
+		final CsvRecordConverter<TestEvent> converter = new CsvRecordConverter<TestEvent>(){
+
+			@Override
+			public TestEvent convert(List<String> columns) {
+				if ("?".equals(columns.get(0))){
+					return null;
+				}
+				return new TestEvent(Integer.parseInt(columns.get(0)), columns.get(1));
+			}
+		};
+
+		ReplayEventStream<TestEvent> candidate = new ReplayEventStreamFactory<TestEvent>(eventClock, config, new Provider<EventMarshalBuffer<TestEvent>>(){
+
+			@Override
+			public EventMarshalBuffer<TestEvent> get() {
+				return new CsvEventMarshalBuffer<TestEvent>(converter);
+			}
+		}, new TestEventTimestampResolver()).create(dispatcher);
+
+		candidate.start();
+
+		assertThat(dispatcher.getEventsRecieved(), is(equalTo(Arrays.asList(1, 3, 4))));
+		assertThat(dispatcher.getLabelsRecieved(), is(equalTo(Arrays.asList("first", "a, quoted \"label\"", "last"))));
+		assertThat(candidate.getNumMalformedRecords(), is(equalTo(1L)));
+	}
+
+	private Path writeDelimitedFile(String fileName, int firstValue, int numEvents) throws IOException{
+		Path file = replayDirectory.resolve(fileName);
+
+		try(OutputStream out = Files.newOutputStream(file)){
+			for (int i = firstValue; i < firstValue + numEvents; i++){
+				out.write(4); // varint length prefix
+				out.write(ByteBuffer.allocate(4).putInt(i).array());
+			}
+		}
+		return file;
+	}
+
+	private static List<Integer> getExpectedEvents(int numEvents){
+		List<Integer> expected = new ArrayList<Integer>();
+
+		for (int i = 0; i < numEvents; i++){
+			expected.add(i);
+		}
+		return expected;
+	}
+
+	private static class TestEvent implements Event{
+
+		private final int value;
+		private final String label;
+
+		private TestEvent(int value, String label){
+			this.value = value;
+			this.label = label;
+		}
+	}
+
+	private static class TestEventBuffer implements EventMarshalBuffer<TestEvent>{
+
+		private int value;
+
+		@Override
+		public boolean marshal(ByteBuffer content) {
+			value = content.getInt();
+
+			return true;
+		}
+
+		@Override
+		public TestEvent buildEventAndResetBuffer() throws UnMarshalableException {
+			return new TestEvent(value, null);
+		}
+	}
+
+	private static class TestEventTimestampResolver implements EventTimestampResolver<TestEvent>{
+
+		@Override
+		public long getTimestamp(TestEvent event) {
+			return START_TIME + event.value;
+		}
+	}
+
+	private static class TestDispatcher extends Dispatcher<TestEvent>{
+
+		private final List<TestEvent> events = new ArrayList<TestEvent>();
+		private int numHeartBeats = 0;
+
+		private TestDispatcher(){
+			super(Collections.<DispatcherConsumer<TestEvent>>emptyList());
+		}
+
+		@Override
+		public void dispatchEvent(TestEvent event) {
+			events.add(event);
+		}
+
+		@Override
+		public void sendHeartBeat() {
+			numHeartBeats++;
+		}
+
+		@Override
+		public void close(){
+			// NO OP
+		}
+
+		public List<Integer> getEventsRecieved(){
+			List<Integer> values = new ArrayList<Integer>();
+
+			for (TestEvent event: events){
+				values.add(event.value);
+			}
+			return values;
+		}
+
+		public List<String> getLabelsRecieved(){
+			List<String> labels = new ArrayList<String>();
+
+			for (TestEvent event: events){
+				labels.add(event.label);
+			}
+			return labels;
+		}
+	}
+}
@@ -3,7 +3,11 @@ package com.haines.ml.rce.main.config;
 import java.net.SocketAddress;
 import java.nio.ByteOrder;
 
+import com.haines.ml.rce.accumulator.AccumulatorConfig.StorageType;
+import com.haines.ml.rce.dispatcher.DispatcherConfig.OverloadPolicy;
+import com.haines.ml.rce.dispatcher.DisruptorConfig.WaitStrategyType;
 import com.haines.ml.rce.eventstream.SelectorEventStreamConfig.BufferType;
+import com.lmax.disruptor.dsl.ProducerType;
 
 /**
  * A delegating implementation of {@link RCEConfig} that will try the override config first and, if no value is found,
@@ -39,6 +43,105 @@ public class OverrideRCEConfig implements RCEConfig{
 			}
 		});
 	}
+	@Override
+	public Integer getNumberOfSelectors() {
+		return doOverride(new ValueGetter<Integer>(){
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getNumberOfSelectors();
+			}
+		});
+	}
+	
+	@Override
+	public Integer getDatagramBatchSize() {
+		return doOverride(new ValueGetter<Integer>(){
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getDatagramBatchSize();
+			}
+		});
+	}
+	
+	@Override
+	public Integer getMaxConnections() {
+		return doOverride(new ValueGetter<Integer>(){
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getMaxConnections();
+			}
+		});
+	}
+
+	@Override
+	public String getSegmentDirectory() {
+		return doOverride(new ValueGetter<String>(){
+
+			@Override
+			public String getValue(RCEConfig config) {
+				return config.getSegmentDirectory();
+			}
+		});
+	}
+
+	@Override
+	public Integer getSegmentSize() {
+		return doOverride(new ValueGetter<Integer>(){
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getSegmentSize();
+			}
+		});
+	}
+
+	@Override
+	public Integer getSegmentBatchSize() {
+		return doOverride(new ValueGetter<Integer>(){
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getSegmentBatchSize();
+			}
+		});
+	}
+
+	@Override
+	public Integer getNumRetainedSegments() {
+		return doOverride(new ValueGetter<Integer>(){
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getNumRetainedSegments();
+			}
+		});
+	}
+
+	@Override
+	public String getReplayFiles() {
+		return doOverride(new ValueGetter<String>(){
+
+			@Override
+			public String getValue(RCEConfig config) {
+				return config.getReplayFiles();
+			}
+		});
+	}
+
+	@Override
+	public Long getReplayEventIntervalMs() {
+		return doOverride(new ValueGetter<Long>(){
+
+			@Override
+			public Long getValue(RCEConfig config) {
+				return config.getReplayEventIntervalMs();
+			}
+		});
+	}
+	
 	@Override
 	public StreamType getEventTransportProtocal() {
 		return doOverride(new ValueGetter<StreamType>(){
@@ -126,6 +229,39 @@ public class OverrideRCEConfig implements RCEConfig{
 			}
 		});
 	}
+
+	@Override
+	public StorageType getAccumulatorStorageType() {
+		return doOverride(new ValueGetter<StorageType>(){
+
+			@Override
+			public StorageType getValue(RCEConfig config) {
+				return config.getAccumulatorStorageType();
+			}
+		});
+	}
+
+	@Override
+	public Integer getFeatureHashingBitDepth() {
+		return doOverride(new ValueGetter<Integer>(){
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getFeatureHashingBitDepth();
+			}
+		});
+	}
+
+	@Override
+	public Integer getFeatureHashingNumHashes() {
+		return doOverride(new ValueGetter<Integer>(){
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getFeatureHashingNumHashes();
+			}
+		});
+	}
 	
 	private static interface ValueGetter<T>{
 		
@@ -156,6 +292,116 @@ public class OverrideRCEConfig implements RCEConfig{
 		});
 	}
 
+	@Override
+	public WaitStrategyType getDisruptorWaitStrategy() {
+		return doOverride(new ValueGetter<WaitStrategyType>() {
+
+			@Override
+			public WaitStrategyType getValue(RCEConfig config) {
+				return config.getDisruptorWaitStrategy();
+			}
+		});
+	}
+
+	@Override
+	public ProducerType getDisruptorProducerType() {
+		return doOverride(new ValueGetter<ProducerType>() {
+
+			@Override
+			public ProducerType getValue(RCEConfig config) {
+				return config.getDisruptorProducerType();
+			}
+		});
+	}
+
+	@Override
+	public String getWorkerCpuAffinity() {
+		return doOverride(new ValueGetter<String>() {
+
+			@Override
+			public String getValue(RCEConfig config) {
+				return config.getWorkerCpuAffinity();
+			}
+		});
+	}
+
+	@Override
+	public OverloadPolicy getOverloadPolicy() {
+		return doOverride(new ValueGetter<OverloadPolicy>() {
+
+			@Override
+			public OverloadPolicy getValue(RCEConfig config) {
+				return config.getOverloadPolicy();
+			}
+		});
+	}
+
+	@Override
+	public Double getOverloadSampleRate() {
+		return doOverride(new ValueGetter<Double>() {
+
+			@Override
+			public Double getValue(RCEConfig config) {
+				return config.getOverloadSampleRate();
+			}
+		});
+	}
+
+	@Override
+	public Double getOverloadSampleHighWaterMark() {
+		return doOverride(new ValueGetter<Double>() {
+
+			@Override
+			public Double getValue(RCEConfig config) {
+				return config.getOverloadSampleHighWaterMark();
+			}
+		});
+	}
+
+	@Override
+	public DispatchType getDispatchType() {
+		return doOverride(new ValueGetter<DispatchType>() {
+
+			@Override
+			public DispatchType getValue(RCEConfig config) {
+				return config.getDispatchType();
+			}
+		});
+	}
+
+	@Override
+	public Integer getDispatchFeatureType() {
+		return doOverride(new ValueGetter<Integer>() {
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getDispatchFeatureType();
+			}
+		});
+	}
+
+	@Override
+	public Integer getEventFeatureCapacity() {
+		return doOverride(new ValueGetter<Integer>() {
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getEventFeatureCapacity();
+			}
+		});
+	}
+
+	@Override
+	public Integer getEventClassificationCapacity() {
+		return doOverride(new ValueGetter<Integer>() {
+
+			@Override
+			public Integer getValue(RCEConfig config) {
+				return config.getEventClassificationCapacity();
+			}
+		});
+	}
+
 	@Override
 	public Long getMicroBatchIntervalMs() {
 		return doOverride(new ValueGetter<Long>(){
@@ -200,4 +446,15 @@ public class OverrideRCEConfig implements RCEConfig{
 			}
 		});
 	}
+
+	@Override
+	public Boolean getGlobalIndexPerfectHash() {
+		return doOverride(new ValueGetter<Boolean>(){
+
+			@Override
+			public Boolean getValue(RCEConfig config) {
+				return config.getGlobalIndexPerfectHash();
+			}
+		});
+	}
 }
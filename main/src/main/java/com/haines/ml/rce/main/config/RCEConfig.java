@@ -6,22 +6,42 @@ import java.net.SocketAddress;
 import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 
 import com.haines.ml.rce.accumulator.AccumulatorConfig;
+import com.haines.ml.rce.accumulator.AccumulatorConfig.StorageType;
 import com.haines.ml.rce.accumulator.PipelineAccumulatorConfig;
+import com.haines.ml.rce.dispatcher.AdaptiveDispatchStrategy;
+import com.haines.ml.rce.dispatcher.ConsistentHashDispatchStrategy;
+import com.haines.ml.rce.dispatcher.DispatchKeyExtractor;
+import com.haines.ml.rce.dispatcher.DispatchStrategy;
+import com.haines.ml.rce.dispatcher.DispatcherConfig;
+import com.haines.ml.rce.dispatcher.DispatcherConfig.OverloadPolicy;
 import com.haines.ml.rce.dispatcher.DisruptorConfig;
+import com.haines.ml.rce.dispatcher.DisruptorConfig.WaitStrategyType;
+import com.haines.ml.rce.dispatcher.LeastOccupancyDispatchStrategy;
+import com.haines.ml.rce.dispatcher.RandomDispatchStrategy;
+import com.haines.ml.rce.eventstream.MappedSegmentEventStreamConfig;
+import com.haines.ml.rce.eventstream.MappedSegmentEventStreamConfig.MappedSegmentEventStreamConfigBuilder;
 import com.haines.ml.rce.eventstream.NetworkChannelProcessor;
 import com.haines.ml.rce.eventstream.NetworkChannelProcessor.NetworkChannelProcessorProvider;
 import com.haines.ml.rce.eventstream.SelectorEventStreamConfig;
 import com.haines.ml.rce.eventstream.SelectorEventStreamConfig.BufferType;
 import com.haines.ml.rce.eventstream.SelectorEventStreamConfig.SelectorEventStreamConfigBuilder;
+import com.haines.ml.rce.eventstream.replay.ReplayEventStreamConfig;
+import com.haines.ml.rce.eventstream.replay.ReplayEventStreamConfig.ReplayEventStreamConfigBuilder;
+import com.haines.ml.rce.eventstream.replay.ReplayFormat;
 import com.haines.ml.rce.main.config.jaxb.RCEConfigJAXB;
+import com.haines.ml.rce.model.Event;
 import com.haines.ml.rce.window.WindowConfig;
+import com.lmax.disruptor.dsl.ProducerType;
 
 /**
  * A config object that defines the entire configuration parameters of the system.
@@ -34,15 +54,33 @@ public interface RCEConfig {
 	
 	public static enum StreamType {
 		UDP(NetworkChannelProcessor.UDP_PROVIDER),
-		TCP(NetworkChannelProcessor.TCP_PROVIDER);
+		TCP(NetworkChannelProcessor.TCP_PROVIDER),
+		FRAMED_TCP(NetworkChannelProcessor.FRAMED_TCP_PROVIDER),
+		MAPPED_SEGMENT, // events are read from memory mapped segment files rather then a network channel
+		REPLAY; // events are replayed from files of historical events rather then a network channel
 		
 		private final NetworkChannelProcessorProvider<?> provider;
 		
+		private StreamType(){
+			this.provider = null;
+		}
+		
 		private StreamType(NetworkChannelProcessorProvider<?> provider){
 			this.provider = provider;
 		}
 
+		/**
+		 * Returns true if events of this type are read from a network channel and so have a channel processor.
+		 * @return
+		 */
+		public boolean isNetworkTransport(){
+			return provider != null;
+		}
+
 		public NetworkChannelProcessorProvider<?> getChannelProcessorProvider() {
+			if (!isNetworkTransport()){
+				throw new IllegalStateException("The "+this+" transport does not read events from a network channel");
+			}
 			return provider;
 		}
 		
@@ -56,6 +94,14 @@ public interface RCEConfig {
 			throw new IllegalArgumentException("Unknow stream type: "+value);
 		}
 	}
+	
+	public static enum DispatchType {
+		RANDOM, // events are sent to a random event worker
+		CLASSIFICATION, // events with the same classification are sent to the same event worker
+		FEATURE, // events with the same value of the configured feature type are sent to the same event worker
+		LEAST_OCCUPANCY, // events are sent to the event worker with the emptier ring of two chosen at random
+		ADAPTIVE; // as FEATURE, or CLASSIFICATION if no feature type is configured, but hot keys move to idle workers at micro batch boundaries
+	}
 
 	/** 
 	 * The number of worker threads in the system. This should be tuned to (|cpu| - 1) so that we have exactly 1 
@@ -64,6 +110,70 @@ public interface RCEConfig {
 	 */
 	Integer getNumberOfEventWorkers();
 	
+	/**
+	 * The number of selector threads reading events off the network. Each selector binds its own channel to
+	 * {@link #getEventStreamSocketAddress()} using SO_REUSEPORT and dispatches to its own share of the event workers so
+	 * this should not be greater than {@link #getNumberOfEventWorkers()}. Defaults to 1.
+	 * @return
+	 */
+	Integer getNumberOfSelectors();
+	
+	/**
+	 * The maximum number of datagrams drained from the socket on each selector wakeup when using a message oriented
+	 * transport such as UDP. The drained events are handed to the dispatcher as a single batch.
+	 * @return
+	 */
+	Integer getDatagramBatchSize();
+	
+	/**
+	 * The maximum number of concurrent client connections each selector will accept when using a connection oriented
+	 * transport such as TCP. Each connection holds its own pooled event decoding state.
+	 * @return
+	 */
+	Integer getMaxConnections();
+
+	/**
+	 * The directory that producers on the same host append memory mapped segment files to when using the MAPPED_SEGMENT
+	 * transport. The read offset of the stream is persisted in this directory.
+	 * @return
+	 */
+	String getSegmentDirectory();
+
+	/**
+	 * The size in bytes of each memory mapped segment file when using the MAPPED_SEGMENT transport. Writers appending to the
+	 * same directory must use the same size.
+	 * @return
+	 */
+	Integer getSegmentSize();
+
+	/**
+	 * The maximum number of events read from a segment before they are handed to the dispatcher and the read offset is
+	 * persisted when using the MAPPED_SEGMENT transport.
+	 * @return
+	 */
+	Integer getSegmentBatchSize();
+
+	/**
+	 * The number of fully read segments kept behind the segment currently being read when using the MAPPED_SEGMENT
+	 * transport. Older segments are deleted. A value of -1 keeps every segment so that they can be replayed later.
+	 * @return
+	 */
+	Integer getNumRetainedSegments();
+
+	/**
+	 * A comma separated list of the files to replay when using the REPLAY transport. Each file contains varint length
+	 * delimited protostuff events, as written by writeDelimitedTo.
+	 * @return
+	 */
+	String getReplayFiles();
+
+	/**
+	 * The number of milliseconds of event time between consecutive replayed events. As events do not carry their own
+	 * timestamps this sets the rate at which windows roll during a replay.
+	 * @return
+	 */
+	Long getReplayEventIntervalMs();
+	
 	/**
 	 * Whether the system should use TCP or UDP or another transport protocol.
 	 * @return
@@ -113,6 +223,27 @@ public interface RCEConfig {
 	 * @return
 	 */
 	Integer getFinalAccumulatorLineBitDepth();
+
+	/**
+	 * Where the accumulator lines are held. OFF_HEAP keeps them in direct memory so that large models do not inflate the heap
+	 * or garbage collection pauses. Defaults to HEAP
+	 * @return
+	 */
+	StorageType getAccumulatorStorageType();
+
+	/**
+	 * The number of bits of the fixed slot space that discrete features are hashed into rather then being indexed. Hashing
+	 * removes the index maintenance from the event threads at the cost of some accuracy when features share a slot. Defaults
+	 * to 0, which indexes features as usual
+	 * @return
+	 */
+	Integer getFeatureHashingBitDepth();
+
+	/**
+	 * The number of alternative slots that a hashed feature can claim before it shares a slot with another feature. Defaults to 1
+	 * @return
+	 */
+	Integer getFeatureHashingNumHashes();
 	
 	/**
 	 * How long in ms should the system wait before accumulating events together. The larger the value the less pauses are present in
@@ -128,6 +259,73 @@ public interface RCEConfig {
 	 */
 	Integer getDisruptorRingSize();
 
+	/**
+	 * How event worker threads wait for events to arrive on their disruptor rings. BUSY_SPIN gives the lowest latency but
+	 * should only be used with workers pinned to isolated cores whereas BLOCKING uses the least CPU.
+	 * @return
+	 */
+	WaitStrategyType getDisruptorWaitStrategy();
+
+	/**
+	 * Whether each disruptor ring is published to by a single thread or by many. Each selector publishes to its own share of
+	 * the event workers so SINGLE is safe unless events are published to the workers from outside of the selectors.
+	 * @return
+	 */
+	ProducerType getDisruptorProducerType();
+
+	/**
+	 * A comma separated list of the CPU cores that event worker threads are pinned to, one core per worker. Workers are not
+	 * pinned if this is not set. Pinning requires Linux and taskset.
+	 * @return
+	 */
+	String getWorkerCpuAffinity();
+
+	/**
+	 * What the dispatcher does when the disruptor ring of the event worker an event is sent to is full. See OverloadPolicy.
+	 * @return
+	 */
+	OverloadPolicy getOverloadPolicy();
+
+	/**
+	 * The fraction of events sent to an event worker whose ring is above the high water mark when using the SAMPLE overload
+	 * policy.
+	 * @return
+	 */
+	Double getOverloadSampleRate();
+
+	/**
+	 * The fraction of an event worker's ring that has to be full before the SAMPLE overload policy starts sampling events.
+	 * @return
+	 */
+	Double getOverloadSampleHighWaterMark();
+
+	/**
+	 * How events are routed to event workers. Routing events by a key means that each worker only sees, and therefore only
+	 * indexes and accumulates, a slice of the feature vocabulary.
+	 * @return
+	 */
+	DispatchType getDispatchType();
+
+	/**
+	 * The type of the feature that events are routed to event workers on when using the FEATURE dispatch type.
+	 * @return
+	 */
+	Integer getDispatchFeatureType();
+
+	/**
+	 * The number of features that each event pre-allocated in a disruptor ring is initially sized for. Only used when the ring
+	 * pre-allocates its events.
+	 * @return
+	 */
+	Integer getEventFeatureCapacity();
+
+	/**
+	 * The number of classifications that each event pre-allocated in a disruptor ring is initially sized for. Only used when
+	 * the ring pre-allocates its events.
+	 * @return
+	 */
+	Integer getEventClassificationCapacity();
+
 	/**
 	 * Where the global name space starts. The larger the value the more room you have for new, unseen event value/type at the cost
 	 * of how many type/values you can store in the global index
@@ -135,6 +333,13 @@ public interface RCEConfig {
 	 */
 	Integer getGlobalIndexLimit();
 
+	/**
+	 * Whether the global index is compiled into a minimal perfect hash each time it is rebuilt. This makes looking up the most
+	 * frequent properties cheaper at the cost of a slower rebuild, which happens off the event threads.
+	 * @return
+	 */
+	Boolean getGlobalIndexPerfectHash();
+
 	/**
 	 * The number of windows to store. Based on the {@link #getWindowPeriod()} this determines how long the whole model is representative
 	 * for. It's total time period can be determined using {@link #getNumWindows()} * {@link #getWindowPeriod()}. The larger the value
@@ -221,26 +426,145 @@ public interface RCEConfig {
 				configBuilder.byteOrder(config.getByteOrder());
 			}
 			
+			if (config.getNumberOfSelectors() != null){
+				configBuilder.numSelectors(config.getNumberOfSelectors());
+			}
+			
+			if (config.getDatagramBatchSize() != null){
+				configBuilder.datagramBatchSize(config.getDatagramBatchSize());
+			}
+			
+			if (config.getMaxConnections() != null){
+				configBuilder.maxConnections(config.getMaxConnections());
+			}
+			
 			return configBuilder.build();
 		}
 
-		public NetworkChannelProcessorProvider<?> getNetworkChannelProcessorProvider(RCEConfig config) {
-			switch (config.getEventTransportProtocal()){
-				case TCP:{
-					return NetworkChannelProcessor.TCP_PROVIDER;
-				} case UDP:{
-					return NetworkChannelProcessor.UDP_PROVIDER;
-				} default:{
-					throw new IllegalArgumentException("unknown stream type: "+config.getEventTransportProtocal());
+		public MappedSegmentEventStreamConfig getMappedSegmentEventStreamConfig(RCEConfig config){
+			if (config.getSegmentDirectory() == null){
+				throw new IllegalArgumentException("A segment directory must be configured when using the "+StreamType.MAPPED_SEGMENT+" transport");
+			}
+			
+			MappedSegmentEventStreamConfigBuilder configBuilder = new MappedSegmentEventStreamConfigBuilder()
+															.segmentDirectory(Paths.get(config.getSegmentDirectory()))
+															.heartBeatPeriod(config.getMicroBatchIntervalMs());
+			
+			if (config.getSegmentSize() != null){
+				configBuilder.segmentSize(config.getSegmentSize());
+			}
+			
+			if (config.getSegmentBatchSize() != null){
+				configBuilder.batchSize(config.getSegmentBatchSize());
+			}
+			
+			if (config.getNumRetainedSegments() != null){
+				configBuilder.numRetainedSegments(config.getNumRetainedSegments());
+			}
+			
+			return configBuilder.build();
+		}
+
+		public ReplayEventStreamConfig getReplayEventStreamConfig(RCEConfig config){
+			if (config.getReplayFiles() == null){
+				throw new IllegalArgumentException("Replay files must be configured when using the "+StreamType.REPLAY+" transport");
+			}
+			
+			ReplayEventStreamConfigBuilder configBuilder = new ReplayEventStreamConfigBuilder()
+															.format(ReplayFormat.DELIMITED);
+			
+			for (String replayFile: config.getReplayFiles().split(",")){
+				if (!replayFile.trim().isEmpty()){
+					configBuilder.replayFile(Paths.get(replayFile.trim()));
 				}
 			}
+			
+			return configBuilder.build();
+		}
+
+		public NetworkChannelProcessorProvider<?> getNetworkChannelProcessorProvider(RCEConfig config) {
+			return config.getEventTransportProtocal().getChannelProcessorProvider();
 		}
 		
 		public DisruptorConfig getDisruptorConfig(RCEConfig config){
 			
-			return new DisruptorConfig.Builder().ringSize(config.getDisruptorRingSize()).build();
+			DisruptorConfig.Builder configBuilder = new DisruptorConfig.Builder().ringSize(config.getDisruptorRingSize());
+			
+			if (config.getEventFeatureCapacity() != null){
+				configBuilder.eventFeatureCapacity(config.getEventFeatureCapacity());
+			}
+			
+			if (config.getEventClassificationCapacity() != null){
+				configBuilder.eventClassificationCapacity(config.getEventClassificationCapacity());
+			}
+			
+			if (config.getDisruptorWaitStrategy() != null){
+				configBuilder.waitStrategyType(config.getDisruptorWaitStrategy());
+			}
+			
+			if (config.getDisruptorProducerType() != null){
+				configBuilder.producerType(config.getDisruptorProducerType());
+			}
+			
+			if (config.getWorkerCpuAffinity() != null){
+				List<Integer> cpus = new ArrayList<Integer>();
+				for (String cpu: config.getWorkerCpuAffinity().split(",")){
+					if (!cpu.trim().isEmpty()){
+						cpus.add(Integer.parseInt(cpu.trim()));
+					}
+				}
+				configBuilder.cpuAffinity(cpus);
+			}
+			
+			return configBuilder.build();
 		}
-		
+
+		public DispatcherConfig getDispatcherConfig(RCEConfig config){
+
+			DispatcherConfig.Builder configBuilder = new DispatcherConfig.Builder();
+
+			if (config.getOverloadPolicy() != null){
+				configBuilder.overloadPolicy(config.getOverloadPolicy());
+			}
+
+			if (config.getOverloadSampleRate() != null){
+				configBuilder.sampleRate(config.getOverloadSampleRate());
+			}
+
+			if (config.getOverloadSampleHighWaterMark() != null){
+				configBuilder.sampleHighWaterMark(config.getOverloadSampleHighWaterMark());
+			}
+
+			return configBuilder.build();
+		}
+
+		public <E extends Event> DispatchStrategy<E> getDispatchStrategy(RCEConfig config){
+			
+			DispatchType dispatchType = config.getDispatchType() != null? config.getDispatchType() : DispatchType.RANDOM;
+			
+			switch (dispatchType){
+				case RANDOM:{
+					return new RandomDispatchStrategy<E>();
+				} case CLASSIFICATION:{
+					return new ConsistentHashDispatchStrategy<E>(DispatchKeyExtractor.UTIL.getClassificationKeyExtractor());
+				} case FEATURE:{
+					if (config.getDispatchFeatureType() == null){
+						throw new IllegalArgumentException("A dispatch feature type must be configured when using the "+DispatchType.FEATURE+" dispatch type");
+					}
+					return new ConsistentHashDispatchStrategy<E>(DispatchKeyExtractor.UTIL.getFeatureKeyExtractor(config.getDispatchFeatureType()));
+				} case LEAST_OCCUPANCY:{
+					return new LeastOccupancyDispatchStrategy<E>();
+				} case ADAPTIVE:{
+					if (config.getDispatchFeatureType() != null){
+						return new AdaptiveDispatchStrategy<E>(DispatchKeyExtractor.UTIL.getFeatureKeyExtractor(config.getDispatchFeatureType()));
+					}
+					return new AdaptiveDispatchStrategy<E>(DispatchKeyExtractor.UTIL.getClassificationKeyExtractor());
+				} default:{
+					throw new IllegalArgumentException("unknown dispatch type: "+dispatchType);
+				}
+			}
+		}
+
 		public PipelineAccumulatorConfig getPipelineAccumulatorConfig(final RCEConfig config){
 			return new PipelineAccumulatorConfig() {
 				
@@ -268,6 +592,21 @@ public interface RCEConfig {
 				public int getFinalAccumulatorLineBitDepth() {
 					return config.getFinalAccumulatorLineBitDepth();
 				}
+
+				@Override
+				public StorageType getStorageType() {
+					return config.getAccumulatorStorageType() != null? config.getAccumulatorStorageType() : StorageType.HEAP;
+				}
+
+				@Override
+				public int getFeatureHashingBitDepth() {
+					return config.getFeatureHashingBitDepth() != null? config.getFeatureHashingBitDepth() : NO_FEATURE_HASHING;
+				}
+
+				@Override
+				public int getFeatureHashingNumHashes() {
+					return config.getFeatureHashingNumHashes() != null? config.getFeatureHashingNumHashes() : 1;
+				}
 				
 			};
 		}
@@ -289,6 +628,11 @@ public interface RCEConfig {
 				public int getGlobalIndexLimit() {
 					return config.getGlobalIndexLimit();
 				}
+
+				@Override
+				public boolean getGlobalIndexPerfectHash() {
+					return config.getGlobalIndexPerfectHash();
+				}
 				
 			};
 		}
@@ -313,6 +657,87 @@ public interface RCEConfig {
 			return Runtime.getRuntime().availableProcessors() - 1; // 1 cpu should be used for the event dispatching
 		}
 
+		@Override
+		public Integer getNumberOfSelectors() {
+			if (delegate != null){
+				return delegate.getNumberOfSelectors();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getDatagramBatchSize() {
+			if (delegate != null){
+				return delegate.getDatagramBatchSize();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getMaxConnections() {
+			if (delegate != null){
+				return delegate.getMaxConnections();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public String getSegmentDirectory() {
+			if (delegate != null){
+				return delegate.getSegmentDirectory();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getSegmentSize() {
+			if (delegate != null){
+				return delegate.getSegmentSize();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getSegmentBatchSize() {
+			if (delegate != null){
+				return delegate.getSegmentBatchSize();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getNumRetainedSegments() {
+			if (delegate != null){
+				return delegate.getNumRetainedSegments();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public String getReplayFiles() {
+			if (delegate != null){
+				return delegate.getReplayFiles();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Long getReplayEventIntervalMs() {
+			if (delegate != null){
+				return delegate.getReplayEventIntervalMs();
+			} else{
+				return null;
+			}
+		}
+
 		@Override
 		public StreamType getEventTransportProtocal() {
 			if (delegate != null){
@@ -385,6 +810,33 @@ public interface RCEConfig {
 			}
 		}
 
+		@Override
+		public StorageType getAccumulatorStorageType() {
+			if (delegate != null){
+				return delegate.getAccumulatorStorageType();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getFeatureHashingBitDepth() {
+			if (delegate != null){
+				return delegate.getFeatureHashingBitDepth();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getFeatureHashingNumHashes() {
+			if (delegate != null){
+				return delegate.getFeatureHashingNumHashes();
+			} else{
+				return null;
+			}
+		}
+
 		@Override
 		public Integer getDisruptorRingSize() {
 			if (delegate != null){
@@ -394,6 +846,96 @@ public interface RCEConfig {
 			}
 		}
 
+		@Override
+		public WaitStrategyType getDisruptorWaitStrategy() {
+			if (delegate != null){
+				return delegate.getDisruptorWaitStrategy();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public ProducerType getDisruptorProducerType() {
+			if (delegate != null){
+				return delegate.getDisruptorProducerType();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public String getWorkerCpuAffinity() {
+			if (delegate != null){
+				return delegate.getWorkerCpuAffinity();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public OverloadPolicy getOverloadPolicy() {
+			if (delegate != null){
+				return delegate.getOverloadPolicy();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Double getOverloadSampleRate() {
+			if (delegate != null){
+				return delegate.getOverloadSampleRate();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Double getOverloadSampleHighWaterMark() {
+			if (delegate != null){
+				return delegate.getOverloadSampleHighWaterMark();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public DispatchType getDispatchType() {
+			if (delegate != null){
+				return delegate.getDispatchType();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getDispatchFeatureType() {
+			if (delegate != null){
+				return delegate.getDispatchFeatureType();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getEventFeatureCapacity() {
+			if (delegate != null){
+				return delegate.getEventFeatureCapacity();
+			} else{
+				return null;
+			}
+		}
+
+		@Override
+		public Integer getEventClassificationCapacity() {
+			if (delegate != null){
+				return delegate.getEventClassificationCapacity();
+			} else{
+				return null;
+			}
+		}
+
 		@Override
 		public Long getMicroBatchIntervalMs() {
 			if (delegate != null){
@@ -429,6 +971,15 @@ public interface RCEConfig {
 				return null;
 			}
 		}
+
+		@Override
+		public Boolean getGlobalIndexPerfectHash() {
+			if (delegate != null){
+				return delegate.getGlobalIndexPerfectHash();
+			} else{
+				return null;
+			}
+		}
 		
 	}
 }
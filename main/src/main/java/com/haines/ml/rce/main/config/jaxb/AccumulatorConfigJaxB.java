@@ -2,11 +2,16 @@ package com.haines.ml.rce.main.config.jaxb;
 
 import javax.xml.bind.annotation.XmlElement;
 
+import com.haines.ml.rce.accumulator.AccumulatorConfig.StorageType;
+
 public class AccumulatorConfigJaxB {
 
 	private Integer accumulatorFirstLineBitDepth;
 	private Integer accumulatorSecondLineBitDepth;
 	private Integer accumulatorFinalLineBitDepth;
+	private StorageType accumulatorStorageType;
+	private Integer featureHashingBitDepth;
+	private Integer featureHashingNumHashes;
 	
 	@XmlElement(name="firstLineBitDepth")
 	public Integer getAccumulatorFirstLineBitDepth() {
@@ -34,4 +39,31 @@ public class AccumulatorConfigJaxB {
 	public void setAccumulatorFinalLineBitDepth(Integer accumulatorFinalLineBitDepth) {
 		this.accumulatorFinalLineBitDepth = accumulatorFinalLineBitDepth;
 	}
+	
+	@XmlElement(name="storageType")
+	public StorageType getAccumulatorStorageType() {
+		return accumulatorStorageType;
+	}
+	
+	public void setAccumulatorStorageType(StorageType accumulatorStorageType) {
+		this.accumulatorStorageType = accumulatorStorageType;
+	}
+	
+	@XmlElement
+	public Integer getFeatureHashingBitDepth() {
+		return featureHashingBitDepth;
+	}
+	
+	public void setFeatureHashingBitDepth(Integer featureHashingBitDepth) {
+		this.featureHashingBitDepth = featureHashingBitDepth;
+	}
+	
+	@XmlElement
+	public Integer getFeatureHashingNumHashes() {
+		return featureHashingNumHashes;
+	}
+	
+	public void setFeatureHashingNumHashes(Integer featureHashingNumHashes) {
+		this.featureHashingNumHashes = featureHashingNumHashes;
+	}
 }
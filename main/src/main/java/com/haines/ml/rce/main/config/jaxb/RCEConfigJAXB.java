@@ -7,8 +7,12 @@ import java.nio.ByteOrder;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import com.haines.ml.rce.accumulator.AccumulatorConfig.StorageType;
+import com.haines.ml.rce.dispatcher.DispatcherConfig.OverloadPolicy;
+import com.haines.ml.rce.dispatcher.DisruptorConfig.WaitStrategyType;
 import com.haines.ml.rce.eventstream.SelectorEventStreamConfig.BufferType;
 import com.haines.ml.rce.main.config.RCEConfig;
+import com.lmax.disruptor.dsl.ProducerType;
 
 @XmlRootElement(name="config")
 public class RCEConfigJAXB implements RCEConfig{
@@ -19,6 +23,24 @@ public class RCEConfigJAXB implements RCEConfig{
 
 	private Integer numberOfEventWorkers;
 	
+	private Integer numberOfSelectors;
+	
+	private Integer datagramBatchSize;
+	
+	private Integer maxConnections;
+	
+	private String segmentDirectory;
+	
+	private Integer segmentSize;
+	
+	private Integer segmentBatchSize;
+	
+	private Integer numRetainedSegments;
+	
+	private String replayFiles;
+	
+	private Long replayEventIntervalMs;
+	
 	private TransportConfigJaxB transport;
 	
 	private Integer eventBufferCapacity;
@@ -31,11 +53,33 @@ public class RCEConfigJAXB implements RCEConfig{
 	
 	private Integer disruptorRingSize;
 	
+	private WaitStrategyType disruptorWaitStrategy;
+	
+	private ProducerType disruptorProducerType;
+	
+	private String workerCpuAffinity;
+	
+	private OverloadPolicy overloadPolicy;
+	
+	private Double overloadSampleRate;
+	
+	private Double overloadSampleHighWaterMark;
+	
+	private DispatchType dispatchType;
+	
+	private Integer dispatchFeatureType;
+	
+	private Integer eventFeatureCapacity;
+	
+	private Integer eventClassificationCapacity;
+	
 	private Long microBatchIntervalMs;
 	
 	private WindowConfigJaxB window;
 	
 	private int globalIndexLimit;
+	
+	private Boolean globalIndexPerfectHash;
 
 	@Override
 	@XmlElement
@@ -47,6 +91,96 @@ public class RCEConfigJAXB implements RCEConfig{
 		this.numberOfEventWorkers = numberOfEventWorkers;
 	}
 
+	@Override
+	@XmlElement
+	public Integer getNumberOfSelectors() {
+		return numberOfSelectors;
+	}
+
+	public void setNumberOfSelectors(Integer numberOfSelectors) {
+		this.numberOfSelectors = numberOfSelectors;
+	}
+
+	@Override
+	@XmlElement
+	public Integer getDatagramBatchSize() {
+		return datagramBatchSize;
+	}
+
+	public void setDatagramBatchSize(Integer datagramBatchSize) {
+		this.datagramBatchSize = datagramBatchSize;
+	}
+
+	@Override
+	@XmlElement
+	public Integer getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(Integer maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	@Override
+	@XmlElement
+	public String getSegmentDirectory() {
+		return segmentDirectory;
+	}
+
+	public void setSegmentDirectory(String segmentDirectory) {
+		this.segmentDirectory = segmentDirectory;
+	}
+
+	@Override
+	@XmlElement
+	public Integer getSegmentSize() {
+		return segmentSize;
+	}
+
+	public void setSegmentSize(Integer segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	@Override
+	@XmlElement
+	public Integer getSegmentBatchSize() {
+		return segmentBatchSize;
+	}
+
+	public void setSegmentBatchSize(Integer segmentBatchSize) {
+		this.segmentBatchSize = segmentBatchSize;
+	}
+
+	@Override
+	@XmlElement
+	public Integer getNumRetainedSegments() {
+		return numRetainedSegments;
+	}
+
+	public void setNumRetainedSegments(Integer numRetainedSegments) {
+		this.numRetainedSegments = numRetainedSegments;
+	}
+
+	@Override
+	@XmlElement
+	public String getReplayFiles() {
+		return replayFiles;
+	}
+
+	public void setReplayFiles(String replayFiles) {
+		this.replayFiles = replayFiles;
+	}
+
+	@Override
+	@XmlElement
+	public Long getReplayEventIntervalMs() {
+		return replayEventIntervalMs;
+	}
+
+	public void setReplayEventIntervalMs(Long replayEventIntervalMs) {
+		this.replayEventIntervalMs = replayEventIntervalMs;
+	}
+
 	@Override
 	public StreamType getEventTransportProtocal() {
 		return StreamType.valueOf(transport.getProtocol());
@@ -101,6 +235,21 @@ public class RCEConfigJAXB implements RCEConfig{
 		return getAccumulatorConfig().getAccumulatorFinalLineBitDepth();
 	}
 
+	@Override
+	public StorageType getAccumulatorStorageType() {
+		return getAccumulatorConfig().getAccumulatorStorageType();
+	}
+
+	@Override
+	public Integer getFeatureHashingBitDepth() {
+		return getAccumulatorConfig().getFeatureHashingBitDepth();
+	}
+
+	@Override
+	public Integer getFeatureHashingNumHashes() {
+		return getAccumulatorConfig().getFeatureHashingNumHashes();
+	}
+
 	public void setEventBufferCapacity(Integer eventBufferCapacity) {
 		this.eventBufferCapacity = eventBufferCapacity;
 	}
@@ -130,6 +279,106 @@ public class RCEConfigJAXB implements RCEConfig{
 		this.disruptorRingSize = disruptorRingSize;
 	}
 
+	@Override
+	@XmlElement
+	public WaitStrategyType getDisruptorWaitStrategy() {
+		return disruptorWaitStrategy;
+	}
+
+	public void setDisruptorWaitStrategy(WaitStrategyType disruptorWaitStrategy) {
+		this.disruptorWaitStrategy = disruptorWaitStrategy;
+	}
+
+	@Override
+	@XmlElement
+	public ProducerType getDisruptorProducerType() {
+		return disruptorProducerType;
+	}
+
+	public void setDisruptorProducerType(ProducerType disruptorProducerType) {
+		this.disruptorProducerType = disruptorProducerType;
+	}
+
+	@Override
+	@XmlElement
+	public String getWorkerCpuAffinity() {
+		return workerCpuAffinity;
+	}
+
+	public void setWorkerCpuAffinity(String workerCpuAffinity) {
+		this.workerCpuAffinity = workerCpuAffinity;
+	}
+
+	@Override
+	@XmlElement
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+		this.overloadPolicy = overloadPolicy;
+	}
+
+	@Override
+	@XmlElement
+	public Double getOverloadSampleRate() {
+		return overloadSampleRate;
+	}
+
+	public void setOverloadSampleRate(Double overloadSampleRate) {
+		this.overloadSampleRate = overloadSampleRate;
+	}
+
+	@Override
+	@XmlElement
+	public Double getOverloadSampleHighWaterMark() {
+		return overloadSampleHighWaterMark;
+	}
+
+	public void setOverloadSampleHighWaterMark(Double overloadSampleHighWaterMark) {
+		this.overloadSampleHighWaterMark = overloadSampleHighWaterMark;
+	}
+
+	@Override
+	@XmlElement
+	public DispatchType getDispatchType() {
+		return dispatchType;
+	}
+
+	public void setDispatchType(DispatchType dispatchType) {
+		this.dispatchType = dispatchType;
+	}
+
+	@Override
+	@XmlElement
+	public Integer getDispatchFeatureType() {
+		return dispatchFeatureType;
+	}
+
+	public void setDispatchFeatureType(Integer dispatchFeatureType) {
+		this.dispatchFeatureType = dispatchFeatureType;
+	}
+
+	@Override
+	@XmlElement
+	public Integer getEventFeatureCapacity() {
+		return eventFeatureCapacity;
+	}
+
+	public void setEventFeatureCapacity(Integer eventFeatureCapacity) {
+		this.eventFeatureCapacity = eventFeatureCapacity;
+	}
+
+	@Override
+	@XmlElement
+	public Integer getEventClassificationCapacity() {
+		return eventClassificationCapacity;
+	}
+
+	public void setEventClassificationCapacity(Integer eventClassificationCapacity) {
+		this.eventClassificationCapacity = eventClassificationCapacity;
+	}
+
 	@Override
 	@XmlElement(name="microBatchIntervalMs")
 	public Long getMicroBatchIntervalMs() {
@@ -186,4 +435,14 @@ public class RCEConfigJAXB implements RCEConfig{
 	public void setGlobalIndexLimit(Integer globalIndexLimit) {
 		this.globalIndexLimit = globalIndexLimit;
 	}
+
+	@Override
+	@XmlElement
+	public Boolean getGlobalIndexPerfectHash() {
+		return globalIndexPerfectHash;
+	}
+
+	public void setGlobalIndexPerfectHash(Boolean globalIndexPerfectHash) {
+		this.globalIndexPerfectHash = globalIndexPerfectHash;
+	}
 }
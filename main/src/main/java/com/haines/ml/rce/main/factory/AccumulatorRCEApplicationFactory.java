@@ -5,6 +5,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 
+import javax.inject.Provider;
+
 import com.haines.ml.rce.accumulator.AccumulatorLookupStrategy;
 import com.haines.ml.rce.accumulator.AccumulatorLookupStrategy.AccumulatorLookupStrategyFactory;
 import com.haines.ml.rce.accumulator.HandlerRepository;
@@ -12,6 +14,7 @@ import com.haines.ml.rce.accumulator.SyncPipelineEventConsumer.DisruptorEventCon
 import com.haines.ml.rce.accumulator.lookups.RONaiveBayesMapBasedLookupStrategy;
 import com.haines.ml.rce.accumulator.model.AccumulatedEvent;
 import com.haines.ml.rce.dispatcher.DisruptorConsumer;
+import com.haines.ml.rce.dispatcher.PreallocatedEventFactory;
 import com.haines.ml.rce.main.RCEApplication;
 import com.haines.ml.rce.model.ClassifiedEvent;
 import com.haines.ml.rce.model.EventConsumer;
@@ -38,14 +41,14 @@ public class AccumulatorRCEApplicationFactory<E extends ClassifiedEvent, T exten
 		SYNC
 	}
 	
-	private final RCEApplicationFactory<E> defaultFactory;
+	private final DefaultRCEApplicationFactory<E, ?, ?> defaultFactory;
 	
-	public AccumulatorRCEApplicationFactory(EventMarshalBuffer<E> marshalBuffer, Mode mode, RCEConfig config, EventConsumer<AccumulatedEvent<RONaiveBayesMapBasedLookupStrategy<E>>> windowEventConsumer, Clock clock, AccumulatorLookupStrategyFactory<E> lookUpStrategy, HandlerRepository<E> featureHandlerRepo){
+	public AccumulatorRCEApplicationFactory(Provider<EventMarshalBuffer<E>> marshalBufferProvider, Mode mode, RCEConfig config, EventConsumer<AccumulatedEvent<RONaiveBayesMapBasedLookupStrategy<E>>> windowEventConsumer, Clock clock, AccumulatorLookupStrategyFactory<E> lookUpStrategy, HandlerRepository<E> featureHandlerRepo){
 		
 		FeaturedAccumulatorEventConsumerFactory<E> factory = new FeaturedAccumulatorEventConsumerFactory<E>(RCEConfig.UTIL.getAccumulatorConfig(config), lookUpStrategy, featureHandlerRepo);
 		
 		if (mode == Mode.ASYNC){
-			defaultFactory = new DefaultASyncRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>>(marshalBuffer, factory, windowEventConsumer, getScheduledExecutor(), clock);
+			defaultFactory = new DefaultASyncRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>>(marshalBufferProvider, factory, windowEventConsumer, getScheduledExecutor(), clock);
 		} else if (mode == Mode.SYNC){
 			
 			DisruptorEventConsumer<E, RONaiveBayesMapBasedLookupStrategy<E>> disrupterEventConsumer = new DisruptorEventConsumer<E, RONaiveBayesMapBasedLookupStrategy<E>>(new DisruptorConsumer.Builder<AccumulatedEvent<RONaiveBayesMapBasedLookupStrategy<E>>>(Executors.newSingleThreadExecutor(ACCUMULATED_EVENT_THREAD_FACTORY), RCEConfig.UTIL.getDisruptorConfig(config))
@@ -55,7 +58,7 @@ public class AccumulatorRCEApplicationFactory<E extends ClassifiedEvent, T exten
 			windowEventConsumer = disrupterEventConsumer;
 			
 			
-			defaultFactory = new DefaultSyncRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>>(marshalBuffer, factory, config, windowEventConsumer, clock);
+			defaultFactory = new DefaultSyncRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>>(marshalBufferProvider, factory, config, windowEventConsumer, clock);
 			this.addSystemListeners(Arrays.asList(disrupterEventConsumer));
 		} else{
 			throw new IllegalArgumentException("Unknown mode type: "+mode);
@@ -93,4 +96,8 @@ public class AccumulatorRCEApplicationFactory<E extends ClassifiedEvent, T exten
 		this.defaultFactory.useSpecificHandlerRepository(featureHandlerRepo);
 		
 	}
+	
+	public void usePreallocatedEvents(PreallocatedEventFactory<E> preallocatedEventFactory) {
+		this.defaultFactory.usePreallocatedEvents(preallocatedEventFactory);
+	}
 }
@@ -10,6 +10,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import com.google.common.collect.Iterables;
 import com.haines.ml.rce.accumulator.AccumulatorConfig;
@@ -22,18 +23,31 @@ import com.haines.ml.rce.accumulator.PipelineAccumulatorController.PipelineAccum
 import com.haines.ml.rce.accumulator.SyncPipelineEventConsumer;
 import com.haines.ml.rce.accumulator.handlers.ClassifiedEventAccumulatorConsumer;
 import com.haines.ml.rce.accumulator.model.AccumulatedEvent;
+import com.haines.ml.rce.dispatcher.AffinityThreadFactory;
+import com.haines.ml.rce.dispatcher.DispatchStrategy;
 import com.haines.ml.rce.dispatcher.Dispatcher;
 import com.haines.ml.rce.dispatcher.DispatcherConsumer;
 import com.haines.ml.rce.dispatcher.DisruptorConfig;
 import com.haines.ml.rce.dispatcher.DisruptorConsumer;
+import com.haines.ml.rce.dispatcher.PreallocatedEventFactory;
 import com.haines.ml.rce.eventstream.EventStreamListener;
+import com.haines.ml.rce.eventstream.MappedSegmentEventStream;
+import com.haines.ml.rce.eventstream.MappedSegmentEventStreamConfig;
+import com.haines.ml.rce.eventstream.MappedSegmentEventStreamFactory;
+import com.haines.ml.rce.eventstream.MultiSelectorEventStream;
 import com.haines.ml.rce.eventstream.NetworkChannelProcessor;
 import com.haines.ml.rce.eventstream.SelectorEventStream;
 import com.haines.ml.rce.eventstream.NetworkChannelProcessor.NetworkChannelProcessorProvider;
+import com.haines.ml.rce.eventstream.SelectorEventStreamConfig;
 import com.haines.ml.rce.eventstream.SelectorEventStreamFactory;
+import com.haines.ml.rce.eventstream.replay.EventTimestampResolver;
+import com.haines.ml.rce.eventstream.replay.ReplayEventStream;
+import com.haines.ml.rce.eventstream.replay.ReplayEventStreamConfig;
+import com.haines.ml.rce.eventstream.replay.ReplayEventStreamFactory;
 import com.haines.ml.rce.main.RCEApplication;
 import com.haines.ml.rce.main.RCEApplication.DefaultRCEApplication;
 import com.haines.ml.rce.main.config.RCEConfig;
+import com.haines.ml.rce.main.config.RCEConfig.StreamType;
 import com.haines.ml.rce.model.ClassifiedEvent;
 import com.haines.ml.rce.model.Event;
 import com.haines.ml.rce.model.EventConsumer;
@@ -42,30 +56,26 @@ import com.haines.ml.rce.model.EventMarshalBuffer;
 import com.haines.ml.rce.model.FeaturedEvent;
 import com.haines.ml.rce.model.PipelinedEventConsumer;
 import com.haines.ml.rce.model.system.Clock;
+import com.haines.ml.rce.model.system.Clock.VirtualClock;
 import com.haines.ml.rce.model.system.SystemListener;
+import com.haines.ml.rce.model.system.MicroBatchListener;
 import com.haines.ml.rce.model.system.SystemStartedListener;
 
 public class DefaultRCEApplicationFactory<E extends Event, EC extends EventConsumer<E>, T extends AccumulatorLookupStrategy<? super E>> implements RCEApplicationFactory<E>{
 
-	private static final ThreadFactory SELECTOR_THREAD_FACTORY = new ThreadFactory(){
-
-		private int threadNum = 0;
-		@Override
-		public Thread newThread(Runnable r) {
-			return new Thread(r, "DisruptorSelectorThread_"+threadNum++);
-		}
-	};
+	private static final String WORKER_THREAD_NAME_PREFIX = "DisruptorSelectorThread_";
 	
-	private final EventMarshalBuffer<E> marshalBuffer;
+	private final Provider<EventMarshalBuffer<E>> marshalBufferProvider;
 	private final EventConsumerFactory<E, EC> eventConsumerFactory;
 	private final EventConsumer<AccumulatedEvent<T>> accumulatedEventConsumer;
 	private final Collection<SystemListener> systemListeners;
 	private RCEConfig overrideConfig;
 	private FeatureHandlerRepositoryFactory featureHandlerRepo;
+	private PreallocatedEventFactory<E> preallocatedEventFactory;
 	private final Clock clock;
 	
-	private DefaultRCEApplicationFactory(EventMarshalBuffer<E> marshalBuffer, Clock clock, EventConsumerFactory<E, EC> eventConsumerFactory, EventConsumer<AccumulatedEvent<T>> accumulatedEventConsumer){
-		this.marshalBuffer = marshalBuffer;
+	private DefaultRCEApplicationFactory(Provider<EventMarshalBuffer<E>> marshalBufferProvider, Clock clock, EventConsumerFactory<E, EC> eventConsumerFactory, EventConsumer<AccumulatedEvent<T>> accumulatedEventConsumer){
+		this.marshalBufferProvider = marshalBufferProvider;
 		this.eventConsumerFactory = eventConsumerFactory;
 		this.accumulatedEventConsumer = accumulatedEventConsumer;
 		
@@ -86,10 +96,7 @@ public class DefaultRCEApplicationFactory<E extends Event, EC extends EventConsu
 			if (config == null){
 				config = RCEApplicationFactory.UTIL.loadConfig(configOverrideLocation);
 			}
-			SelectorEventStream<?, E> eventStream = getSelectorEventStream(config, clock);
-			RCEApplication<E> application = new DefaultRCEApplication<E>(eventStream, eventStream, config, systemListeners);
-			
-			return application;
+			return createApplication(config, clock);
 		} catch (Exception e){
 			throw new RuntimeException("Unable to instantiate RCE application", e);
 		}
@@ -110,28 +117,130 @@ public class DefaultRCEApplicationFactory<E extends Event, EC extends EventConsu
 		return clock;
 	}
 
-	private <S extends SelectableChannel & NetworkChannel> SelectorEventStream<S, E> getSelectorEventStream(RCEConfig config, Clock clock){
+	private <S extends SelectableChannel & NetworkChannel> RCEApplication<E> createApplication(RCEConfig config, Clock clock){
 		
-		Dispatcher<E> dispatcher = getDispatcher(config);
+		if (config.getEventTransportProtocal() == StreamType.MAPPED_SEGMENT){
+			return createMappedSegmentApplication(config, clock);
+		} else if (config.getEventTransportProtocal() == StreamType.REPLAY){
+			return createReplayApplication(config, clock);
+		}
+		
+		SelectorEventStreamConfig streamConfig = RCEConfig.UTIL.getSelectorEventStreamConfig(config);
 		
 		NetworkChannelProcessorProvider<?> channelProcessorProvider = RCEConfig.UTIL.getNetworkChannelProcessorProvider(config);
 		
 		@SuppressWarnings("unchecked")
 		NetworkChannelProcessor<S> channelProcessor = (NetworkChannelProcessor<S>)channelProcessorProvider.get();
 		
-		EventMarshalBuffer<E> eventBuffer = this.marshalBuffer;
 		EventStreamListener streamListener = EventStreamListener.UTIL.chainListeners(Iterables.filter(systemListeners, EventStreamListener.class));
 		
-		SelectorEventStreamFactory<S, E> factory = new SelectorEventStreamFactory<S, E>(clock, RCEConfig.UTIL.getSelectorEventStreamConfig(config), channelProcessor, eventBuffer, streamListener);
+		SelectorEventStreamFactory<S, E> factory = new SelectorEventStreamFactory<S, E>(clock, streamConfig, channelProcessor, marshalBufferProvider, streamListener);
+		
+		Iterable<DispatcherConsumer<E>> consumers = getDispatcherConsumers(config, eventConsumerFactory, accumulatedEventConsumer);
+		
+		if (streamConfig.getNumSelectors() > 1){
+			MultiSelectorEventStream<S, E> eventStream = factory.create(getShardedDispatchers(consumers, streamConfig.getNumSelectors(), config));
+			
+			return new DefaultRCEApplication<E>(eventStream, eventStream, config, systemListeners);
+		} else{
+			SelectorEventStream<S, E> eventStream = factory.create(createDispatcher(consumers, config));
+			
+			return new DefaultRCEApplication<E>(eventStream, eventStream, config, systemListeners);
+		}
+	}
+
+	private RCEApplication<E> createMappedSegmentApplication(RCEConfig config, Clock clock){
+		
+		MappedSegmentEventStreamConfig streamConfig = RCEConfig.UTIL.getMappedSegmentEventStreamConfig(config);
+		
+		EventStreamListener streamListener = EventStreamListener.UTIL.chainListeners(Iterables.filter(systemListeners, EventStreamListener.class));
+		
+		MappedSegmentEventStreamFactory<E> factory = new MappedSegmentEventStreamFactory<E>(clock, streamConfig, marshalBufferProvider.get(), streamListener);
+		
+		Iterable<DispatcherConsumer<E>> consumers = getDispatcherConsumers(config, eventConsumerFactory, accumulatedEventConsumer);
 		
-		return factory.create(dispatcher);
+		MappedSegmentEventStream<E> eventStream = factory.create(createDispatcher(consumers, config));
+		
+		return new DefaultRCEApplication<E>(eventStream, eventStream, config, systemListeners);
 	}
 
-	private Dispatcher<E> getDispatcher(RCEConfig config) {
+	/**
+	 * Creates an application that replays historical events rather then receiving them from the network. The event
+	 * time of a replay is driven by the events themselves so the application must have been created with a
+	 * {@link VirtualClock} that is shared with the rest of the system, such as the window manager.
+	 */
+	private RCEApplication<E> createReplayApplication(RCEConfig config, Clock clock){
+		
+		if (!(clock instanceof VirtualClock)){
+			throw new IllegalStateException("The "+StreamType.REPLAY+" transport requires the application to be created with a "+VirtualClock.class.getSimpleName()+" but got: "+clock);
+		}
+		
+		VirtualClock eventClock = (VirtualClock)clock;
+		
+		ReplayEventStreamConfig streamConfig = RCEConfig.UTIL.getReplayEventStreamConfig(config);
+		
+		long eventIntervalMs = config.getReplayEventIntervalMs() != null? config.getReplayEventIntervalMs() : 1;
+		
+		EventStreamListener streamListener = EventStreamListener.UTIL.chainListeners(Iterables.filter(systemListeners, EventStreamListener.class));
+		
+		ReplayEventStreamFactory<E> factory = new ReplayEventStreamFactory<E>(Clock.SYSTEM_CLOCK, eventClock, streamConfig, marshalBufferProvider, EventTimestampResolver.UTIL.<E>getFixedRateResolver(eventClock.getCurrentTime(), eventIntervalMs), streamListener);
 		
 		Iterable<DispatcherConsumer<E>> consumers = getDispatcherConsumers(config, eventConsumerFactory, accumulatedEventConsumer);
 		
-		return new Dispatcher<E>(consumers);
+		ReplayEventStream<E> eventStream = factory.create(createDispatcher(consumers, config));
+		
+		return new DefaultRCEApplication<E>(eventStream, eventStream, config, systemListeners);
+	}
+
+	/**
+	 * Splits the workers round robin into a dispatcher for each selector so that each worker queue is only ever published
+	 * to by a single selector thread.
+	 * @param consumers
+	 * @param numSelectors
+	 * @param config
+	 * @return
+	 */
+	private List<Dispatcher<E>> getShardedDispatchers(Iterable<DispatcherConsumer<E>> consumers, int numSelectors, RCEConfig config) {
+		
+		List<List<DispatcherConsumer<E>>> shards = new ArrayList<List<DispatcherConsumer<E>>>(numSelectors);
+		for (int i = 0; i < numSelectors; i++){
+			shards.add(new ArrayList<DispatcherConsumer<E>>());
+		}
+		
+		int numConsumers = 0;
+		for (DispatcherConsumer<E> consumer: consumers){
+			shards.get(numConsumers++ % numSelectors).add(consumer);
+		}
+		
+		if (numConsumers < numSelectors){
+			throw new IllegalArgumentException("Unable to share "+numConsumers+" event workers between "+numSelectors+" selectors. Each selector requires at least one worker");
+		}
+		
+		List<Dispatcher<E>> dispatchers = new ArrayList<Dispatcher<E>>(numSelectors);
+		for (List<DispatcherConsumer<E>> shard: shards){
+			dispatchers.add(createDispatcher(shard, config));
+		}
+		
+		return dispatchers;
+	}
+
+	private Dispatcher<E> createDispatcher(Iterable<DispatcherConsumer<E>> consumers, RCEConfig config){
+		DispatchStrategy<E> strategy = RCEConfig.UTIL.<E>getDispatchStrategy(config);
+		
+		if (strategy instanceof MicroBatchListener){
+			addMicroBatchListener((MicroBatchListener)strategy);
+		}
+		
+		return new Dispatcher<E>(consumers, RCEConfig.UTIL.getDispatcherConfig(config), strategy);
+	}
+	
+	/**
+	 * Registers a listener to be notified at the end of every micro batch. Only applications that push their
+	 * accumulators downstream from a single coordinating thread have micro batches that span all the workers.
+	 * @param listener
+	 */
+	protected void addMicroBatchListener(MicroBatchListener listener){
+		throw new IllegalArgumentException(listener+" requires micro batch notifications which are only available when the accumulators are pushed asynchronously");
 	}
 
 	/**
@@ -147,10 +256,16 @@ public class DefaultRCEApplicationFactory<E extends Event, EC extends EventConsu
 		
 		List<DispatcherConsumer<E>> workers = new ArrayList<DispatcherConsumer<E>>();
 		
+		ThreadFactory workerThreadFactory = new AffinityThreadFactory(WORKER_THREAD_NAME_PREFIX, disruptorConfig.getCpuAffinity());
+		
 		for (EC consumer: consumers){ // create a new disptcher for each down stream consumer
-			workers.add(new DisruptorConsumer.Builder<E>(Executors.newSingleThreadExecutor(SELECTOR_THREAD_FACTORY), disruptorConfig)
-						.addConsumer(consumer)
-						.build());
+			DisruptorConsumer.Builder<E> builder = new DisruptorConsumer.Builder<E>(Executors.newSingleThreadExecutor(workerThreadFactory), disruptorConfig)
+						.addConsumer(consumer);
+			
+			if (preallocatedEventFactory != null){
+				builder.preallocateEvents(preallocatedEventFactory);
+			}
+			workers.add(builder.build());
 		}
 		
 		return workers;
@@ -190,8 +305,10 @@ public class DefaultRCEApplicationFactory<E extends Event, EC extends EventConsu
 	public static class DefaultASyncRCEApplicationFactory<E extends FeaturedEvent, T extends AccumulatorLookupStrategy<? super E>> extends DefaultRCEApplicationFactory<E, PipelinedEventConsumer<E, Accumulator<E>>, T>{
 		
 		private final ScheduledExecutorService executorService;
-		public DefaultASyncRCEApplicationFactory(EventMarshalBuffer<E> marshalBuffer, EventConsumerFactory<E, Accumulator<E>> downstreamConsumerFactory, EventConsumer<AccumulatedEvent<T>> accumulatedEventConsumer, ScheduledExecutorService executorService, Clock clock){
-			super(marshalBuffer, clock, new ASyncEventConsumerFactory<E, Accumulator<E>>(downstreamConsumerFactory), accumulatedEventConsumer);
+		private AsyncPipelineAccumulatorController<E, T> asyncController;
+		
+		public DefaultASyncRCEApplicationFactory(Provider<EventMarshalBuffer<E>> marshalBufferProvider, EventConsumerFactory<E, Accumulator<E>> downstreamConsumerFactory, EventConsumer<AccumulatedEvent<T>> accumulatedEventConsumer, ScheduledExecutorService executorService, Clock clock){
+			super(marshalBufferProvider, clock, new ASyncEventConsumerFactory<E, Accumulator<E>>(downstreamConsumerFactory), accumulatedEventConsumer);
 			
 			this.executorService = executorService;
 		}
@@ -214,17 +331,22 @@ public class DefaultRCEApplicationFactory<E extends Event, EC extends EventConsu
 		protected Iterable<PipelinedEventConsumer<E, Accumulator<E>>> getEventConsumers(RCEConfig config, EventConsumerFactory<E, PipelinedEventConsumer<E, Accumulator<E>>> consumerFactory, EventConsumer<AccumulatedEvent<T>> windowEventConsumer) {
 			Iterable<PipelinedEventConsumer<E, Accumulator<E>>> consumers = super.getEventConsumers(config, consumerFactory, windowEventConsumer);
 			
-			AsyncPipelineAccumulatorController<E, T> asyncController = new AsyncPipelineAccumulatorController<E, T>(getClock(), RCEConfig.UTIL.getPipelineAccumulatorConfig(config), consumers, windowEventConsumer, executorService);
+			asyncController = new AsyncPipelineAccumulatorController<E, T>(getClock(), RCEConfig.UTIL.getPipelineAccumulatorConfig(config), consumers, windowEventConsumer, executorService);
 			
 			super.addSystemListener(asyncController);
 			return consumers;
 		}
+		
+		@Override
+		protected void addMicroBatchListener(MicroBatchListener listener) {
+			asyncController.addMicroBatchListener(listener);
+		}
 	}
 	
 	public static class DefaultSyncRCEApplicationFactory<E extends Event, T extends AccumulatorLookupStrategy<? super E>> extends DefaultRCEApplicationFactory<E, SyncPipelineEventConsumer<E, T>, T>{
 		
-		public DefaultSyncRCEApplicationFactory(EventMarshalBuffer<E> marshalBuffer, EventConsumerFactory<E, Accumulator<E>> factory, RCEConfig config, EventConsumer<AccumulatedEvent<T>> windowEventConsumer, Clock clock){
-			super(marshalBuffer, clock, DefaultSyncRCEApplicationFactory.<E, T>getSynEventConsumerFactory(clock, config, factory, windowEventConsumer), windowEventConsumer);
+		public DefaultSyncRCEApplicationFactory(Provider<EventMarshalBuffer<E>> marshalBufferProvider, EventConsumerFactory<E, Accumulator<E>> factory, RCEConfig config, EventConsumer<AccumulatedEvent<T>> windowEventConsumer, Clock clock){
+			super(marshalBufferProvider, clock, DefaultSyncRCEApplicationFactory.<E, T>getSynEventConsumerFactory(clock, config, factory, windowEventConsumer), windowEventConsumer);
 		}
 		
 		private static <E extends Event, T extends AccumulatorLookupStrategy<? super E>> EventConsumerFactory<E, SyncPipelineEventConsumer<E, T>> getSynEventConsumerFactory(Clock clock, RCEConfig config, EventConsumerFactory<E, Accumulator<E>> factory, EventConsumer<AccumulatedEvent<T>> windowEventConsumer) {
@@ -269,4 +391,13 @@ public class DefaultRCEApplicationFactory<E extends Event, EC extends EventConsu
 	protected FeatureHandlerRepositoryFactory getFeatureHandlerRepo() {
 		return featureHandlerRepo;
 	}
+	
+	/**
+	 * Pre-allocates the events held in each worker's disruptor ring using the supplied factory so that events are
+	 * transferred into the ring rather then referenced by it.
+	 * @param preallocatedEventFactory
+	 */
+	public void usePreallocatedEvents(PreallocatedEventFactory<E> preallocatedEventFactory) {
+		this.preallocatedEventFactory = preallocatedEventFactory;
+	}
 }
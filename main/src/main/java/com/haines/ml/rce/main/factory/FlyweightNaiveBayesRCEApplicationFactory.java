@@ -0,0 +1,79 @@
+package com.haines.ml.rce.main.factory;
+
+import javax.inject.Provider;
+
+import com.haines.ml.rce.dispatcher.PreallocatedEventFactory;
+import com.haines.ml.rce.main.config.RCEConfig;
+import com.haines.ml.rce.main.factory.AccumulatorRCEApplicationFactory.Mode;
+import com.haines.ml.rce.main.protostuff.FlyweightEvent;
+import com.haines.ml.rce.main.protostuff.FlyweightEventMarshalBuffer;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.system.SystemListener;
+import com.haines.ml.rce.naivebayes.NaiveBayesRCEApplication;
+
+/**
+ * Creates a naive bayes application that decodes events off the wire into pooled {@link FlyweightEvent}s rather then
+ * allocating a new {@link com.haines.ml.rce.transport.Event} for each one. Each worker's disruptor ring pre-allocates
+ * its own flyweight events that the decoded events are transferred into, so that the pool only needs to cover the
+ * events that are in flight on the selector thread.
+ * @author haines
+ *
+ */
+public class FlyweightNaiveBayesRCEApplicationFactory implements RCEApplicationFactory<FlyweightEvent>{
+
+	private static final PreallocatedEventFactory<FlyweightEvent> RING_EVENT_FACTORY = new PreallocatedEventFactory<FlyweightEvent>(){
+
+		@Override
+		public FlyweightEvent newEvent(int featureCapacity, int classificationCapacity) {
+			return new FlyweightEvent(featureCapacity, classificationCapacity);
+		}
+	};
+	
+	private Iterable<? extends SystemListener> startupListeners = null;
+	private RCEConfig rceConfig;
+	private FeatureHandlerRepositoryFactory featureHandlerRepo;
+	private final Mode mode;
+	
+	public FlyweightNaiveBayesRCEApplicationFactory(){
+		this(Mode.SYNC);
+	}
+	
+	public FlyweightNaiveBayesRCEApplicationFactory(Mode mode){
+		this.mode = mode;
+	}
+
+	@Override
+	public NaiveBayesRCEApplication<FlyweightEvent> createApplication(String configOverrideLocation) {
+		
+		NaiveBayesRCEApplicationFactory<FlyweightEvent> factory = new NaiveBayesRCEApplicationFactory<FlyweightEvent>(new Provider<EventMarshalBuffer<FlyweightEvent>>(){
+
+			@Override
+			public EventMarshalBuffer<FlyweightEvent> get() { // each buffer owns the pool of events that it creates
+				return new FlyweightEventMarshalBuffer();
+			}
+			
+		}, mode);
+	
+		factory.usePreallocatedEvents(RING_EVENT_FACTORY);
+		factory.addSystemListeners(startupListeners);
+		factory.useSpecificConfig(rceConfig);
+		factory.useSpecificHandlerRepository(featureHandlerRepo);
+		
+		return factory.createApplication(configOverrideLocation);
+	}
+
+	@Override
+	public void addSystemListeners(Iterable<? extends SystemListener> startupListeners) {
+		this.startupListeners = startupListeners;
+	}
+
+	@Override
+	public void useSpecificConfig(RCEConfig config) {
+		this.rceConfig = config;
+	}
+
+	@Override
+	public void useSpecificHandlerRepository(FeatureHandlerRepositoryFactory featureHandlerRepo) {
+		this.featureHandlerRepo = featureHandlerRepo;
+	}
+}
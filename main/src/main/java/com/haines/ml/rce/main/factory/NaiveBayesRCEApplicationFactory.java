@@ -3,20 +3,26 @@ package com.haines.ml.rce.main.factory;
 import java.io.IOException;
 import java.util.ServiceLoader;
 
+import javax.inject.Provider;
 import javax.xml.bind.JAXBException;
 
 import com.google.common.collect.Iterables;
+import com.haines.ml.rce.accumulator.AccumulatorConfig;
 import com.haines.ml.rce.accumulator.AccumulatorLookupStrategy;
 import com.haines.ml.rce.accumulator.HandlerRepository;
 import com.haines.ml.rce.accumulator.AccumulatorLookupStrategy.AccumulatorLookupStrategyFactory;
+import com.haines.ml.rce.accumulator.lookups.FeatureHashingLookupStrategy;
 import com.haines.ml.rce.accumulator.lookups.RONaiveBayesMapBasedLookupStrategy;
 import com.haines.ml.rce.accumulator.model.AccumulatedEvent;
+import com.haines.ml.rce.dispatcher.PreallocatedEventFactory;
 import com.haines.ml.rce.main.config.RCEConfig;
+import com.haines.ml.rce.main.config.RCEConfig.StreamType;
 import com.haines.ml.rce.main.factory.AccumulatorRCEApplicationFactory.Mode;
 import com.haines.ml.rce.model.ClassifiedEvent;
 import com.haines.ml.rce.model.EventConsumer;
 import com.haines.ml.rce.model.EventMarshalBuffer;
 import com.haines.ml.rce.model.system.Clock;
+import com.haines.ml.rce.model.system.Clock.VirtualClock;
 import com.haines.ml.rce.model.system.SystemListener;
 import com.haines.ml.rce.naivebayes.NaiveBayesGlobalIndexes;
 import com.haines.ml.rce.naivebayes.NaiveBayesLocalIndexes;
@@ -30,21 +36,40 @@ import com.haines.ml.rce.window.WindowUpdatedListener;
 
 public class NaiveBayesRCEApplicationFactory<E extends ClassifiedEvent> implements RCEApplicationFactory<E>{
 
-	public static <E extends ClassifiedEvent> AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>> getSyncNaiveBayesRCEApplicationFactory(EventMarshalBuffer<E> marshalBuffer, RCEConfig config, WindowManager manager, Clock clock, HandlerRepository<E> featureHandlerRepo, WindowConfig windowConfig){
-		return getNaiveBayesRCEApplicationFactory(Mode.SYNC, marshalBuffer, config, manager, clock, featureHandlerRepo, windowConfig);
+	public static <E extends ClassifiedEvent> AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>> getSyncNaiveBayesRCEApplicationFactory(Provider<EventMarshalBuffer<E>> marshalBufferProvider, RCEConfig config, WindowManager manager, Clock clock, HandlerRepository<E> featureHandlerRepo, WindowConfig windowConfig){
+		return getNaiveBayesRCEApplicationFactory(Mode.SYNC, marshalBufferProvider, config, manager, clock, featureHandlerRepo, windowConfig);
 	}
 	
-	public static <E extends ClassifiedEvent> AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>> getASyncNaiveBayesRCEApplicationFactory(EventMarshalBuffer<E> marshalBuffer, RCEConfig config, WindowManager manager, Clock clock, HandlerRepository<E> featureHandlerRepo, WindowConfig windowConfig){
-		return getNaiveBayesRCEApplicationFactory(Mode.ASYNC, marshalBuffer, config, manager, clock, featureHandlerRepo, windowConfig);
+	public static <E extends ClassifiedEvent> AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>> getASyncNaiveBayesRCEApplicationFactory(Provider<EventMarshalBuffer<E>> marshalBufferProvider, RCEConfig config, WindowManager manager, Clock clock, HandlerRepository<E> featureHandlerRepo, WindowConfig windowConfig){
+		return getNaiveBayesRCEApplicationFactory(Mode.ASYNC, marshalBufferProvider, config, manager, clock, featureHandlerRepo, windowConfig);
 	}
 	
-	private static <E extends ClassifiedEvent> AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>> getNaiveBayesRCEApplicationFactory(Mode mode, EventMarshalBuffer<E> marshalBuffer, RCEConfig config, WindowManager manager, Clock clock, HandlerRepository<E> featureHandlerRepo, WindowConfig windowConfig){
+	private static <E extends ClassifiedEvent> AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>> getNaiveBayesRCEApplicationFactory(Mode mode, Provider<EventMarshalBuffer<E>> marshalBufferProvider, RCEConfig config, WindowManager manager, Clock clock, HandlerRepository<E> featureHandlerRepo, WindowConfig windowConfig){
 		
 		final VolatileNaiveBayesGlobalIndexesProvider globalIndexes = new VolatileNaiveBayesGlobalIndexesProvider(new NaiveBayesGlobalIndexes());
 		
 		EventConsumer<AccumulatedEvent<RONaiveBayesMapBasedLookupStrategy<E>>> windowEventConsumer = new WindowEventConsumer<E>(manager, featureHandlerRepo, windowConfig, globalIndexes);
 		
-		return new AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>>(marshalBuffer, mode, config, windowEventConsumer, clock, new AccumulatorLookupStrategyFactory<E>() {
+		final AccumulatorConfig accumulatorConfig = RCEConfig.UTIL.getAccumulatorConfig(config);
+		
+		if (accumulatorConfig.getFeatureHashingBitDepth() != AccumulatorConfig.NO_FEATURE_HASHING){
+			
+			int accumulatorBitDepth = accumulatorConfig.getFirstAccumulatorLineBitDepth() + accumulatorConfig.getSecondAccumulatorLineBitDepth() + accumulatorConfig.getFinalAccumulatorLineBitDepth();
+			
+			if (accumulatorConfig.getFeatureHashingBitDepth() >= accumulatorBitDepth){ // leave room for the distribution slots after the hashed slots
+				throw new IllegalArgumentException("The feature hashing bit depth ("+accumulatorConfig.getFeatureHashingBitDepth()+") must be less then the accumulator's total bit depth ("+accumulatorBitDepth+")");
+			}
+			
+			return new AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>>(marshalBufferProvider, mode, config, windowEventConsumer, clock, new AccumulatorLookupStrategyFactory<E>() {
+
+				@Override
+				public AccumulatorLookupStrategy<? super E> create() {
+					return new FeatureHashingLookupStrategy<E>(accumulatorConfig.getFeatureHashingBitDepth(), accumulatorConfig.getFeatureHashingNumHashes());
+				}
+			}, featureHandlerRepo);
+		}
+		
+		return new AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>>(marshalBufferProvider, mode, config, windowEventConsumer, clock, new AccumulatorLookupStrategyFactory<E>() {
 
 			@Override
 			public AccumulatorLookupStrategy<? super E> create() {
@@ -53,14 +78,15 @@ public class NaiveBayesRCEApplicationFactory<E extends ClassifiedEvent> implemen
 		}, featureHandlerRepo);
 	}
 	
-	private final EventMarshalBuffer<E> marshalBuffer;
+	private final Provider<EventMarshalBuffer<E>> marshalBufferProvider;
 	private final Mode mode;
 	private Iterable<? extends SystemListener> startupListeners = null;
 	private RCEConfig config;
 	private FeatureHandlerRepositoryFactory featureHandlerRepo = null;
+	private PreallocatedEventFactory<E> preallocatedEventFactory = null;
 	
-	public NaiveBayesRCEApplicationFactory(EventMarshalBuffer<E> marshalBuffer, Mode mode){
-		this.marshalBuffer = marshalBuffer;
+	public NaiveBayesRCEApplicationFactory(Provider<EventMarshalBuffer<E>> marshalBufferProvider, Mode mode){
+		this.marshalBufferProvider = marshalBufferProvider;
 		this.mode = mode;
 	}
 	
@@ -76,6 +102,10 @@ public class NaiveBayesRCEApplicationFactory<E extends ClassifiedEvent> implemen
 			}
 			Clock clock = Clock.SYSTEM_CLOCK;
 			
+			if (config.getEventTransportProtocal() == StreamType.REPLAY){ // windows roll with the replayed events rather then the system time
+				clock = new VirtualClock(clock.getCurrentTime());
+			}
+			
 			if (featureHandlerRepo == null){ // if we haven't had a hander explicitly set then use the service loader to find one
 				for (FeatureHandlerRepositoryFactory factory: ServiceLoader.load(FeatureHandlerRepositoryFactory.class)){
 					featureHandlerRepo = factory;
@@ -94,7 +124,11 @@ public class NaiveBayesRCEApplicationFactory<E extends ClassifiedEvent> implemen
 			
 			NaiveBayesService classifierService = new NaiveBayesService(manager);
 			
-			RCEApplicationFactory<E> factory = NaiveBayesRCEApplicationFactory.getNaiveBayesRCEApplicationFactory(mode, marshalBuffer, config, manager, clock, repo, windowConfig);
+			AccumulatorRCEApplicationFactory<E, RONaiveBayesMapBasedLookupStrategy<E>> factory = NaiveBayesRCEApplicationFactory.getNaiveBayesRCEApplicationFactory(mode, marshalBufferProvider, config, manager, clock, repo, windowConfig);
+			
+			if (preallocatedEventFactory != null){
+				factory.usePreallocatedEvents(preallocatedEventFactory);
+			}
 			
 			if (startupListeners != null){
 				factory.addSystemListeners(startupListeners);
@@ -121,4 +155,8 @@ public class NaiveBayesRCEApplicationFactory<E extends ClassifiedEvent> implemen
 	public void useSpecificHandlerRepository(FeatureHandlerRepositoryFactory featureHandlerRepo){
 		this.featureHandlerRepo = featureHandlerRepo;
 	}
+	
+	public void usePreallocatedEvents(PreallocatedEventFactory<E> preallocatedEventFactory){
+		this.preallocatedEventFactory = preallocatedEventFactory;
+	}
 }
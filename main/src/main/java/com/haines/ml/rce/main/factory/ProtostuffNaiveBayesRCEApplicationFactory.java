@@ -1,11 +1,14 @@
 package com.haines.ml.rce.main.factory;
 
+import javax.inject.Provider;
+
 import com.dyuproject.protostuff.Message;
 import com.dyuproject.protostuff.Schema;
 import com.haines.ml.rce.io.protostuff.ProtostuffEventMarshalBuffer;
 import com.haines.ml.rce.main.config.RCEConfig;
 import com.haines.ml.rce.main.factory.AccumulatorRCEApplicationFactory.Mode;
 import com.haines.ml.rce.model.ClassifiedEvent;
+import com.haines.ml.rce.model.EventMarshalBuffer;
 import com.haines.ml.rce.model.system.SystemListener;
 import com.haines.ml.rce.naivebayes.NaiveBayesRCEApplication;
 
@@ -25,7 +28,14 @@ public abstract class ProtostuffNaiveBayesRCEApplicationFactory<E extends Messag
 	@Override
 	public NaiveBayesRCEApplication<E> createApplication(String configOverrideLocation) {
 		
-		NaiveBayesRCEApplicationFactory<E> factory = new NaiveBayesRCEApplicationFactory<E>(new ProtostuffEventMarshalBuffer<E>(schema), mode);
+		NaiveBayesRCEApplicationFactory<E> factory = new NaiveBayesRCEApplicationFactory<E>(new Provider<EventMarshalBuffer<E>>(){
+
+			@Override
+			public EventMarshalBuffer<E> get() { // each selector gets its own marshal buffer
+				return new ProtostuffEventMarshalBuffer<E>(schema);
+			}
+			
+		}, mode);
 	
 		factory.addSystemListeners(startupListeners);
 		factory.useSpecificConfig(rceConfig);
@@ -140,6 +140,21 @@ public class AsyncPipelineRCEConfigConfiguredInitiationModule<T extends Selectab
 				public int getFinalAccumulatorLineBitDepth() {
 					return config.getFinalAccumulatorLineBitDepth();
 				}
+
+				@Override
+				public StorageType getStorageType() {
+					return config.getAccumulatorStorageType() != null? config.getAccumulatorStorageType() : StorageType.HEAP;
+				}
+
+				@Override
+				public int getFeatureHashingBitDepth() {
+					return config.getFeatureHashingBitDepth() != null? config.getFeatureHashingBitDepth() : NO_FEATURE_HASHING;
+				}
+
+				@Override
+				public int getFeatureHashingNumHashes() {
+					return config.getFeatureHashingNumHashes() != null? config.getFeatureHashingNumHashes() : 1;
+				}
 				
 			};
 		}
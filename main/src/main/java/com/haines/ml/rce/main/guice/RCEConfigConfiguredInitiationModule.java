@@ -8,6 +8,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -19,6 +20,7 @@ import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
 import com.google.inject.util.Types;
+import com.haines.ml.rce.dispatcher.AffinityThreadFactory;
 import com.haines.ml.rce.dispatcher.Dispatcher;
 import com.haines.ml.rce.dispatcher.DispatcherConsumer;
 import com.haines.ml.rce.dispatcher.DisruptorConfig;
@@ -137,7 +139,7 @@ public abstract class RCEConfigConfiguredInitiationModule<T extends SelectableCh
 		private final SelectorEventStreamConfig config;
 		private final NetworkChannelProcessorProvider<T> networkProcessorProvider;
 		private final Dispatcher<E> dispatcher;
-		private final EventMarshalBuffer<E> marshalBuffer;
+		private final Provider<EventMarshalBuffer<E>> marshalBufferProvider;
 		private final EventStreamListener listener;
 		private final Clock clock;
 		
@@ -145,20 +147,20 @@ public abstract class RCEConfigConfiguredInitiationModule<T extends SelectableCh
 		public SelectorEventStreamProvider(SelectorEventStreamConfig config, 
 										   NetworkChannelProcessorProvider<T> networkProcessorProvider,
 										   Dispatcher<E> dispatcher,
-										   EventMarshalBuffer<E> marshalBuffer,
+										   Provider<EventMarshalBuffer<E>> marshalBufferProvider,
 										   EventStreamListener listener,
 										   Clock clock){
 			this.config = config;
 			this.networkProcessorProvider = networkProcessorProvider;
 			this.dispatcher = dispatcher;
-			this.marshalBuffer = marshalBuffer;
+			this.marshalBufferProvider = marshalBufferProvider;
 			this.listener = listener;
 			this.clock = clock;
 		}
 		
 		@Override
 		public SelectorEventStream<T, E> get() {
-			SelectorEventStreamFactory<T, E> streamFactory = new SelectorEventStreamFactory<T, E>(clock, config, networkProcessorProvider.get(), marshalBuffer, listener);
+			SelectorEventStreamFactory<T, E> streamFactory = new SelectorEventStreamFactory<T, E>(clock, config, networkProcessorProvider.get(), marshalBufferProvider, listener);
 			return streamFactory.create(dispatcher);
 		}	
 	}
@@ -179,8 +181,10 @@ public abstract class RCEConfigConfiguredInitiationModule<T extends SelectableCh
 		public Iterable<DispatcherConsumer<E>> get() {
 			List<DispatcherConsumer<E>> workers = new ArrayList<DispatcherConsumer<E>>(config.getNumberOfEventWorkers());
 			
+			ThreadFactory workerThreadFactory = new AffinityThreadFactory("DisruptorWorkerThread_", disruptorConfig.getCpuAffinity());
+			
 			for (int i = 0; i < config.getNumberOfEventWorkers(); i++){
-				workers.add(new DisruptorConsumer.Builder<E>(Executors.newSingleThreadExecutor(), disruptorConfig)
+				workers.add(new DisruptorConsumer.Builder<E>(Executors.newSingleThreadExecutor(workerThreadFactory), disruptorConfig)
 							.addConsumer(consumerFactory.create())
 							.build());
 			}
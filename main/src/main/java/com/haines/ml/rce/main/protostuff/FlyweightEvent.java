@@ -0,0 +1,504 @@
+package com.haines.ml.rce.main.protostuff;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.Feature;
+import com.haines.ml.rce.model.Flyweight;
+import com.haines.ml.rce.model.RecyclableEvent;
+import com.haines.ml.rce.model.TransferableEvent;
+import com.haines.ml.rce.transport.ValueType;
+
+/**
+ * A reusable view over the wire bytes of a {@link com.haines.ml.rce.transport.Event}. Rather then materialising a
+ * Feature and Classification object per value, the fields decoded by a {@link FlyweightEventMarshalBuffer} are held in
+ * primitive columns that can be read directly using {@link #getFeatureType(int)}, {@link #getFeatureIntValue(int)} etc.
+ * The feature and classification lists returned by this event are views over these columns and so are only valid
+ * until this event is {@link #recycle()}d. Anything that needs to hold on to a value after the event has been consumed
+ * should use {@link Flyweight.Util#retain(Object)}.
+ * @author haines
+ *
+ */
+public class FlyweightEvent extends ProtostuffEventAdaptor implements RecyclableEvent, TransferableEvent<FlyweightEvent>{
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int INITIAL_DATA_CAPACITY = 256;
+	private static final int DEFAULT_FEATURE_CAPACITY = 16;
+	private static final int DEFAULT_CLASSIFICATION_CAPACITY = 1;
+	private static final ValueType[] VALUE_TYPES_BY_NUMBER;
+
+	static{
+		int maxNumber = 0;
+		for (ValueType valueType: ValueType.values()){
+			maxNumber = Math.max(maxNumber, valueType.number);
+		}
+
+		VALUE_TYPES_BY_NUMBER = new ValueType[maxNumber + 1];
+		for (ValueType valueType: ValueType.values()){
+			VALUE_TYPES_BY_NUMBER[valueType.number] = valueType;
+		}
+	}
+
+	private final FlyweightEventMarshalBuffer.Pool owner;
+	private final ValueColumns features;
+	private final ValueColumns classifications;
+	private byte[] data;
+	private int dataLength;
+	private boolean recycled;
+	FlyweightEvent nextFree; // links the free events of the owning pool
+
+	FlyweightEvent(FlyweightEventMarshalBuffer.Pool owner){
+		this(owner, DEFAULT_FEATURE_CAPACITY, DEFAULT_CLASSIFICATION_CAPACITY);
+	}
+	
+	/**
+	 * Creates an event that does not belong to any marshal buffer, such as an entry that is pre-allocated in a ring.
+	 * Recycling such an event has no effect.
+	 * @param featureCapacity
+	 * @param classificationCapacity
+	 */
+	public FlyweightEvent(int featureCapacity, int classificationCapacity){
+		this(null, featureCapacity, classificationCapacity);
+	}
+	
+	private FlyweightEvent(FlyweightEventMarshalBuffer.Pool owner, int featureCapacity, int classificationCapacity){
+		this.owner = owner;
+		this.features = new ValueColumns(this, featureCapacity);
+		this.classifications = new ValueColumns(this, classificationCapacity);
+		this.data = new byte[INITIAL_DATA_CAPACITY];
+		this.dataLength = 0;
+		this.recycled = false;
+	}
+
+	@Override
+	public List<? extends Feature> getFeaturesList() {
+		return features.values;
+	}
+
+	@Override
+	public List<? extends Classification> getClassificationsList() {
+		return classifications.values;
+	}
+
+	public int getNumFeatures(){
+		return features.size;
+	}
+
+	public int getFeatureType(int index){
+		return features.get(index).getType();
+	}
+
+	public ValueType getFeatureValueType(int index){
+		return features.get(index).getValueType();
+	}
+
+	public int getFeatureIntValue(int index){
+		return features.get(index).getIntValue();
+	}
+
+	public long getFeatureLongValue(int index){
+		return features.get(index).getLongValue();
+	}
+
+	public float getFeatureFloatValue(int index){
+		return features.get(index).getFloatValue();
+	}
+
+	public double getFeatureDoubleValue(int index){
+		return features.get(index).getDoubleValue();
+	}
+
+	public String getFeatureStringValue(int index){
+		return features.get(index).getStringValue();
+	}
+
+	public int getNumClassifications(){
+		return classifications.size;
+	}
+
+	public int getClassificationType(int index){
+		return classifications.get(index).getType();
+	}
+
+	public ValueType getClassificationValueType(int index){
+		return classifications.get(index).getValueType();
+	}
+
+	public int getClassificationIntValue(int index){
+		return classifications.get(index).getIntValue();
+	}
+
+	public long getClassificationLongValue(int index){
+		return classifications.get(index).getLongValue();
+	}
+
+	public float getClassificationFloatValue(int index){
+		return classifications.get(index).getFloatValue();
+	}
+
+	public double getClassificationDoubleValue(int index){
+		return classifications.get(index).getDoubleValue();
+	}
+
+	public String getClassificationStringValue(int index){
+		return classifications.get(index).getStringValue();
+	}
+
+	/**
+	 * Returns this event to the marshal buffer that created it. Once recycled, this event and any feature or
+	 * classification views obtained from it will be overwritten by a subsequent event.
+	 */
+	@Override
+	public void recycle() {
+		if (owner != null && !recycled){ // guard against the same event being returned to the pool twice
+			recycled = true;
+			owner.release(this);
+		}
+	}
+
+	/**
+	 * Swaps the contents of this event with the target so that neither event has to copy or allocate. This event is
+	 * left holding the target's previous storage.
+	 */
+	@Override
+	public void transferTo(FlyweightEvent target) {
+		byte[] targetData = target.data;
+		int targetDataLength = target.dataLength;
+		
+		target.data = this.data;
+		target.dataLength = this.dataLength;
+		
+		this.data = targetData;
+		this.dataLength = targetDataLength;
+		
+		features.swap(target.features);
+		classifications.swap(target.classifications);
+	}
+
+	void reset(){
+		dataLength = 0;
+		recycled = false;
+		clearValues();
+	}
+
+	void clearValues(){
+		features.clear();
+		classifications.clear();
+	}
+
+	byte[] getData(){
+		return data;
+	}
+
+	int getDataLength(){
+		return dataLength;
+	}
+
+	/**
+	 * Copies the remaining content of the buffer onto the end of this event's data.
+	 * @param content
+	 */
+	void append(ByteBuffer content){
+		int length = content.remaining();
+
+		if (dataLength + length > data.length){
+			data = Arrays.copyOf(data, Math.max(dataLength + length, data.length * 2));
+		}
+		content.get(data, dataLength, length);
+		dataLength += length;
+	}
+
+	ValueColumns getFeatureColumns(){
+		return features;
+	}
+
+	ValueColumns getClassificationColumns(){
+		return classifications;
+	}
+
+	private static ValueType getValueType(int number){
+		if (number < 0 || number >= VALUE_TYPES_BY_NUMBER.length){
+			return null;
+		}
+		return VALUE_TYPES_BY_NUMBER[number];
+	}
+
+	/**
+	 * The decoded fields of either the features or the classifications of an event, stored column wise so that they
+	 * can be reused between events without allocation.
+	 * @author haines
+	 *
+	 */
+	static class ValueColumns{
+
+		private static final int DEFAULT_TYPE = 1;
+
+		private final FlyweightEvent event;
+		private final List<ValueView> values;
+		private int size;
+		private int[] types;
+		private int[] valueTypes;
+		private long[] integralValues; // int and long values
+		private double[] realValues; // float and double values
+		private int[] stringOffsets;
+		private int[] stringLengths;
+		private String[] strings;
+		private ValueView[] views;
+
+		private ValueColumns(FlyweightEvent event, int capacity){
+			capacity = Math.max(1, capacity);
+			
+			this.event = event;
+			this.size = 0;
+			this.types = new int[capacity];
+			this.valueTypes = new int[capacity];
+			this.integralValues = new long[capacity];
+			this.realValues = new double[capacity];
+			this.stringOffsets = new int[capacity];
+			this.stringLengths = new int[capacity];
+			this.strings = new String[capacity];
+			this.views = new ValueView[capacity];
+			this.values = new AbstractList<ValueView>(){
+
+				@Override
+				public ValueView get(int index) {
+					return ValueColumns.this.get(index);
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+
+		/**
+		 * Adds a new value with default fields and returns its index.
+		 * @return
+		 */
+		int add(){
+			if (size == types.length){
+				int newCapacity = size * 2;
+
+				types = Arrays.copyOf(types, newCapacity);
+				valueTypes = Arrays.copyOf(valueTypes, newCapacity);
+				integralValues = Arrays.copyOf(integralValues, newCapacity);
+				realValues = Arrays.copyOf(realValues, newCapacity);
+				stringOffsets = Arrays.copyOf(stringOffsets, newCapacity);
+				stringLengths = Arrays.copyOf(stringLengths, newCapacity);
+				strings = Arrays.copyOf(strings, newCapacity);
+			}
+
+			types[size] = DEFAULT_TYPE;
+			valueTypes[size] = 0;
+			integralValues[size] = 0;
+			realValues[size] = 0;
+			stringLengths[size] = -1;
+			strings[size] = null;
+
+			return size++;
+		}
+
+		void setType(int index, int type){
+			types[index] = type;
+		}
+
+		void setValueType(int index, int valueType){
+			valueTypes[index] = valueType;
+		}
+
+		void setIntegralValue(int index, long value){
+			integralValues[index] = value;
+		}
+
+		void setRealValue(int index, double value){
+			realValues[index] = value;
+		}
+
+		void setStringValue(int index, int offset, int length){
+			stringOffsets[index] = offset;
+			stringLengths[index] = length;
+			strings[index] = null;
+		}
+
+		/**
+		 * Swaps the column values, but not the views, with the other columns.
+		 */
+		private void swap(ValueColumns other){
+			int otherSize = other.size;
+			int[] otherTypes = other.types;
+			int[] otherValueTypes = other.valueTypes;
+			long[] otherIntegralValues = other.integralValues;
+			double[] otherRealValues = other.realValues;
+			int[] otherStringOffsets = other.stringOffsets;
+			int[] otherStringLengths = other.stringLengths;
+			String[] otherStrings = other.strings;
+			
+			other.size = size;
+			other.types = types;
+			other.valueTypes = valueTypes;
+			other.integralValues = integralValues;
+			other.realValues = realValues;
+			other.stringOffsets = stringOffsets;
+			other.stringLengths = stringLengths;
+			other.strings = strings;
+			
+			size = otherSize;
+			types = otherTypes;
+			valueTypes = otherValueTypes;
+			integralValues = otherIntegralValues;
+			realValues = otherRealValues;
+			stringOffsets = otherStringOffsets;
+			stringLengths = otherStringLengths;
+			strings = otherStrings;
+		}
+
+		private void clear(){
+			Arrays.fill(strings, 0, size, null); // don't keep the previous event's strings reachable
+			size = 0;
+		}
+
+		private ValueView get(int index){
+			if (index < 0 || index >= size){
+				throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+			}
+
+			if (index >= views.length){
+				views = Arrays.copyOf(views, types.length);
+			}
+			
+			ValueView view = views[index];
+			if (view == null){
+				view = new ValueView(this, index);
+				views[index] = view;
+			}
+			return view;
+		}
+
+		private String getString(int index){
+			String string = strings[index];
+			if (string == null && stringLengths[index] >= 0){ // only decode strings that are actually read
+				string = new String(event.data, stringOffsets[index], stringLengths[index], UTF8);
+				strings[index] = string;
+			}
+			return string;
+		}
+	}
+
+	/**
+	 * A view of a single feature or classification of this event.
+	 * @author haines
+	 *
+	 */
+	private static class ValueView extends ProtostuffValueAdaptor implements Feature, Classification, Flyweight<Value>{
+
+		private final ValueColumns columns;
+		private final int index;
+
+		private ValueView(ValueColumns columns, int index){
+			this.columns = columns;
+			this.index = index;
+		}
+
+		@Override
+		public ValueType getValueType() {
+			return FlyweightEvent.getValueType(columns.valueTypes[index]);
+		}
+
+		@Override
+		public long getLongValue() {
+			return columns.integralValues[index];
+		}
+
+		@Override
+		public int getIntValue() {
+			return (int)columns.integralValues[index];
+		}
+
+		@Override
+		public float getFloatValue() {
+			return (float)columns.realValues[index];
+		}
+
+		@Override
+		public double getDoubleValue() {
+			return columns.realValues[index];
+		}
+
+		@Override
+		public String getStringValue() {
+			return columns.getString(index);
+		}
+
+		@Override
+		public int getType() {
+			return columns.types[index];
+		}
+
+		@Override
+		public Value copy() {
+			return new Value(getType(), getValueType(), getLongValue(), getDoubleValue(), getStringValue());
+		}
+	}
+
+	/**
+	 * An immutable copy of a {@link ValueView} that is safe to hold on to after its event has been recycled.
+	 * @author haines
+	 *
+	 */
+	private static class Value extends ProtostuffValueAdaptor implements Feature, Classification{
+
+		private final int type;
+		private final ValueType valueType;
+		private final long integralValue;
+		private final double realValue;
+		private final String stringValue;
+
+		private Value(int type, ValueType valueType, long integralValue, double realValue, String stringValue){
+			this.type = type;
+			this.valueType = valueType;
+			this.integralValue = integralValue;
+			this.realValue = realValue;
+			this.stringValue = stringValue;
+		}
+
+		@Override
+		public ValueType getValueType() {
+			return valueType;
+		}
+
+		@Override
+		public long getLongValue() {
+			return integralValue;
+		}
+
+		@Override
+		public int getIntValue() {
+			return (int)integralValue;
+		}
+
+		@Override
+		public float getFloatValue() {
+			return (float)realValue;
+		}
+
+		@Override
+		public double getDoubleValue() {
+			return realValue;
+		}
+
+		@Override
+		public String getStringValue() {
+			return stringValue;
+		}
+
+		@Override
+		public int getType() {
+			return type;
+		}
+	}
+}
@@ -0,0 +1,382 @@
+package com.haines.ml.rce.main.protostuff;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.haines.ml.rce.main.protostuff.FlyweightEvent.ValueColumns;
+import com.haines.ml.rce.model.EventMarshalBuffer;
+import com.haines.ml.rce.model.UnMarshalableException;
+
+/**
+ * An {@link EventMarshalBuffer} that decodes the protostuff (or protobuf) wire format of a
+ * {@link com.haines.ml.rce.transport.Event} into a pooled {@link FlyweightEvent} instead of a newly allocated event
+ * object graph. The bytes of each event have to be copied out of the receive buffer, as the selector reuses it before
+ * the event is consumed, but beyond that decoding does not allocate once the pool has warmed up. Like every other marshal
+ * buffer, an instance must only be used by a single thread. The events that it creates, however, may be recycled by
+ * any thread, as they are when the disruptor slot that they occupy is next claimed by the dispatching thread.
+ * @author haines
+ *
+ */
+public class FlyweightEventMarshalBuffer implements EventMarshalBuffer<FlyweightEvent>{
+
+	private static final int WIRETYPE_VARINT = 0;
+	private static final int WIRETYPE_FIXED64 = 1;
+	private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+	private static final int WIRETYPE_START_GROUP = 3;
+	private static final int WIRETYPE_END_GROUP = 4;
+	private static final int WIRETYPE_FIXED32 = 5;
+
+	private static final int TAG_TYPE_BITS = 3;
+	private static final int TAG_TYPE_MASK = (1 << TAG_TYPE_BITS) - 1;
+
+	private static final int EVENT_FEATURES_FIELD = 1;
+	private static final int EVENT_CLASSIFICATIONS_FIELD = 2;
+
+	private static final int VALUE_TYPE_FIELD = 1;
+	private static final int VALUE_STRING_FIELD = 2;
+	private static final int VALUE_DOUBLE_FIELD = 3;
+	private static final int VALUE_INT_FIELD = 4;
+	private static final int VALUE_LONG_FIELD = 5;
+	private static final int VALUE_FLOAT_FIELD = 6;
+	private static final int VALUE_TYPE_NUMBER_FIELD = 7;
+
+	private static final int INCOMPLETE = -1;
+
+	private final Pool pool;
+	private FlyweightEvent currentEvent;
+
+	// decode state. Only valid during a call to decode()
+	private byte[] data;
+	private int position;
+	private int limit;
+
+	public FlyweightEventMarshalBuffer(){
+		this.pool = new Pool();
+		this.currentEvent = null;
+	}
+
+	@Override
+	public boolean marshal(ByteBuffer content) {
+		if (currentEvent == null){
+			currentEvent = pool.acquire();
+		}
+
+		currentEvent.append(content);
+
+		return decode(currentEvent);
+	}
+
+	@Override
+	public FlyweightEvent buildEventAndResetBuffer() throws UnMarshalableException {
+		FlyweightEvent event = currentEvent;
+
+		if (event == null){ // nothing has been marshalled so return an empty event
+			event = pool.acquire();
+		}
+		currentEvent = null;
+
+		return event;
+	}
+
+	/**
+	 * Returns the number of recycled events waiting to be reused. This should only be called by the thread using this
+	 * buffer.
+	 * @return
+	 */
+	public int getNumPooledEvents(){
+		return pool.size();
+	}
+
+	/**
+	 * Decodes all the data currently held by the event, returning true if it ends on a complete field. As fields may
+	 * arrive across multiple calls to {@link #marshal(ByteBuffer)}, the event is decoded from the start each time.
+	 * @param event
+	 * @return
+	 */
+	private boolean decode(FlyweightEvent event){
+		event.clearValues();
+
+		data = event.getData();
+		position = 0;
+		limit = event.getDataLength();
+
+		try{
+			while (position < limit){
+				int tag = readVarInt();
+				if (tag == INCOMPLETE){
+					return false;
+				}
+
+				int fieldNumber = tag >>> TAG_TYPE_BITS;
+				int wireType = tag & TAG_TYPE_MASK;
+
+				boolean complete;
+				if (fieldNumber == EVENT_FEATURES_FIELD && isMessage(wireType)){
+					complete = decodeValue(event.getFeatureColumns(), fieldNumber, wireType);
+				} else if (fieldNumber == EVENT_CLASSIFICATIONS_FIELD && isMessage(wireType)){
+					complete = decodeValue(event.getClassificationColumns(), fieldNumber, wireType);
+				} else{
+					complete = skipField(fieldNumber, wireType);
+				}
+
+				if (!complete){
+					return false;
+				}
+			}
+			return true;
+		} finally{
+			data = null;
+		}
+	}
+
+	private boolean decodeValue(ValueColumns columns, int fieldNumber, int wireType){
+		int valueLimit;
+		if (wireType == WIRETYPE_LENGTH_DELIMITED){
+			int length = readVarInt();
+			if (length == INCOMPLETE || limit - position < length){
+				return false;
+			}
+			valueLimit = position + length;
+		} else{
+			valueLimit = limit; // a group is terminated by its end tag
+		}
+
+		int index = columns.add();
+
+		while (position < valueLimit){
+			int tag = readVarInt();
+			if (tag == INCOMPLETE){
+				return false;
+			}
+
+			int valueFieldNumber = tag >>> TAG_TYPE_BITS;
+			int valueWireType = tag & TAG_TYPE_MASK;
+
+			if (valueWireType == WIRETYPE_END_GROUP){
+				if (valueFieldNumber != fieldNumber){
+					throw new IllegalStateException("Unable to marshal event from buffer. Mismatched end group tag: "+valueFieldNumber);
+				}
+				return true;
+			}
+
+			long value;
+			switch (valueFieldNumber){
+			case VALUE_TYPE_FIELD:
+				value = readVarLong(valueWireType);
+				columns.setValueType(index, (int)value);
+				break;
+			case VALUE_TYPE_NUMBER_FIELD:
+				value = readVarLong(valueWireType);
+				columns.setType(index, (int)value);
+				break;
+			case VALUE_INT_FIELD:
+			case VALUE_LONG_FIELD:
+				value = readVarLong(valueWireType);
+				columns.setIntegralValue(index, value);
+				break;
+			case VALUE_DOUBLE_FIELD:
+				value = readFixed(valueWireType, WIRETYPE_FIXED64, 8);
+				columns.setRealValue(index, Double.longBitsToDouble(value));
+				break;
+			case VALUE_FLOAT_FIELD:
+				value = readFixed(valueWireType, WIRETYPE_FIXED32, 4);
+				columns.setRealValue(index, Float.intBitsToFloat((int)value));
+				break;
+			case VALUE_STRING_FIELD:
+				if (valueWireType != WIRETYPE_LENGTH_DELIMITED){
+					throw new IllegalStateException("Unable to marshal event from buffer. Unexpected wire type for string field: "+valueWireType);
+				}
+				int length = readVarInt();
+				if (length == INCOMPLETE || limit - position < length){
+					return false;
+				}
+				columns.setStringValue(index, position, length);
+				position += length;
+				break;
+			default:
+				if (!skipField(valueFieldNumber, valueWireType)){
+					return false;
+				}
+			}
+
+			if (position > limit){ // the value was cut short
+				return false;
+			}
+		}
+
+		// a length delimited value is complete once all its bytes are read. A group is only complete at its end tag
+		return wireType == WIRETYPE_LENGTH_DELIMITED;
+	}
+
+	private boolean skipField(int fieldNumber, int wireType){
+		switch (wireType){
+		case WIRETYPE_VARINT:
+			readVarLong(wireType);
+			return position <= limit;
+		case WIRETYPE_FIXED64:
+			position += 8;
+			return position <= limit;
+		case WIRETYPE_FIXED32:
+			position += 4;
+			return position <= limit;
+		case WIRETYPE_LENGTH_DELIMITED:
+			int length = readVarInt();
+			if (length == INCOMPLETE){
+				return false;
+			}
+			position += length;
+			return position <= limit;
+		case WIRETYPE_START_GROUP:
+			while (position < limit){
+				int tag = readVarInt();
+				if (tag == INCOMPLETE){
+					return false;
+				}
+
+				if ((tag & TAG_TYPE_MASK) == WIRETYPE_END_GROUP){
+					return (tag >>> TAG_TYPE_BITS) == fieldNumber;
+				}
+
+				if (!skipField(tag >>> TAG_TYPE_BITS, tag & TAG_TYPE_MASK)){
+					return false;
+				}
+			}
+			return false;
+		default:
+			throw new IllegalStateException("Unable to marshal event from buffer. Unknown wire type: "+wireType);
+		}
+	}
+
+	private static boolean isMessage(int wireType){
+		return wireType == WIRETYPE_LENGTH_DELIMITED || wireType == WIRETYPE_START_GROUP;
+	}
+
+	/**
+	 * Reads a varint that fits into a non negative int, returning {@link #INCOMPLETE} if the data ends first.
+	 * @return
+	 */
+	private int readVarInt(){
+		long value = readVarLong(WIRETYPE_VARINT);
+
+		if (position > limit){
+			return INCOMPLETE;
+		}
+		if (value < 0 || value > Integer.MAX_VALUE){
+			throw new IllegalStateException("Unable to marshal event from buffer. Malformed length or tag: "+value);
+		}
+		return (int)value;
+	}
+
+	/**
+	 * Reads a varint. If the data ends before the varint does then the position is moved past the limit.
+	 * @param wireType
+	 * @return
+	 */
+	private long readVarLong(int wireType){
+		if (wireType != WIRETYPE_VARINT){
+			throw new IllegalStateException("Unable to marshal event from buffer. Expected a varint but got wire type: "+wireType);
+		}
+
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7){
+			if (position >= limit){
+				position = limit + 1;
+				return INCOMPLETE;
+			}
+
+			byte nextByte = data[position++];
+			value |= (long)(nextByte & 0x7F) << shift;
+
+			if ((nextByte & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new IllegalStateException("Unable to marshal event from buffer. Malformed varint");
+	}
+
+	/**
+	 * Reads a little endian fixed width value. If the data ends before the value does then the position is moved past
+	 * the limit.
+	 * @param wireType
+	 * @param expectedWireType
+	 * @param numBytes
+	 * @return
+	 */
+	private long readFixed(int wireType, int expectedWireType, int numBytes){
+		if (wireType != expectedWireType){
+			throw new IllegalStateException("Unable to marshal event from buffer. Expected wire type "+expectedWireType+" but got: "+wireType);
+		}
+
+		if (limit - position < numBytes){
+			position = limit + 1;
+			return INCOMPLETE;
+		}
+
+		long value = 0;
+		for (int i = 0; i < numBytes; i++){
+			value |= (long)(data[position++] & 0xFF) << (i * 8);
+		}
+		return value;
+	}
+
+	/**
+	 * The recycled events of a single marshal buffer. Events are only acquired by the thread that is using the buffer but
+	 * may be released by any thread, such as the thread that dispatches a batch of events that were decoded on another
+	 * thread. Released events are pushed onto a lock free stack that is linked through the events themselves, so
+	 * recycling does not allocate. The acquiring thread takes the entire released stack in one go once its private free
+	 * list runs out, which avoids the ABA problem of popping single events off a shared stack.
+	 * @author haines
+	 *
+	 */
+	static class Pool{
+
+		private final AtomicReference<FlyweightEvent> releasedEvents;
+		private FlyweightEvent freeEvents; // only accessed by the acquiring thread
+
+		private Pool(){
+			this.releasedEvents = new AtomicReference<FlyweightEvent>();
+			this.freeEvents = null;
+		}
+
+		private FlyweightEvent acquire(){
+			FlyweightEvent event = freeEvents;
+
+			if (event == null){
+				event = releasedEvents.getAndSet(null);
+			}
+
+			if (event == null){
+				event = new FlyweightEvent(this);
+			} else{
+				freeEvents = event.nextFree;
+				event.nextFree = null;
+			}
+			event.reset();
+
+			return event;
+		}
+
+		void release(FlyweightEvent event){
+			FlyweightEvent head;
+			do{
+				head = releasedEvents.get();
+				event.nextFree = head;
+			} while (!releasedEvents.compareAndSet(head, event));
+		}
+
+		/**
+		 * Returns the number of events waiting to be reused. This should only be called by the acquiring thread.
+		 * @return
+		 */
+		private int size(){
+			int size = 0;
+			for (FlyweightEvent event = freeEvents; event != null; event = event.nextFree){
+				size++;
+			}
+			for (FlyweightEvent event = releasedEvents.get(); event != null; event = event.nextFree){
+				size++;
+			}
+			return size;
+		}
+	}
+}
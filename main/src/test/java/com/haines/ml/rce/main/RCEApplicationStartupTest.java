@@ -431,6 +431,9 @@ public class RCEApplicationStartupTest {
 			    case TCP:
 			    	threadIoSender = IOSender.FACTORY.getTcpClientIOSender(config.getEventStreamSocketAddress(), false);
 			    	break;
+			    case FRAMED_TCP:
+			    	threadIoSender = IOSender.FACTORY.getFramedTcpClientIOSender(config.getEventStreamSocketAddress());
+			    	break;
 				
 				default: throw new IllegalArgumentException("Unknown stream type: "+config.getEventTransportProtocal());
 			}
@@ -0,0 +1,296 @@
+package com.haines.ml.rce.main.protostuff;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dyuproject.protostuff.LinkedBuffer;
+import com.dyuproject.protostuff.ProtobufIOUtil;
+import com.dyuproject.protostuff.ProtostuffIOUtil;
+import com.haines.ml.rce.transport.Event;
+import com.haines.ml.rce.transport.Event.Classification;
+import com.haines.ml.rce.transport.Event.Feature;
+import com.haines.ml.rce.transport.ValueType;
+
+public class FlyweightEventMarshalBufferUnitTest {
+
+	private static final String TEST_STRING = "testString";
+	private static final String TEST_UTF8_STRING = "t\u00e9st\u4e2d"; // multi byte characters
+	private static final long TEST_LONG = -5738384747627L;
+	private static final int TEST_INT = -578592947;
+	private static final float TEST_FLOAT = 0.567433f;
+	private static final double TEST_DOUBLE = (Double.MAX_VALUE - 3433) + 0.05;
+	private static final int TEST_TYPE = 300; // more then a single varint byte
+	private static final int NUM_CROSS_THREAD_EVENTS = 100000;
+
+	private FlyweightEventMarshalBuffer candidate;
+
+	@Before
+	public void before(){
+		candidate = new FlyweightEventMarshalBuffer();
+	}
+
+	@Test
+	public void givenEventWithEveryValueTypeEncodedAsGroups_whenMarshalling_thenAllValuesDecoded(){
+		Event event = getTestEvent();
+
+		assertThat(candidate.marshal(ByteBuffer.wrap(toProtostuffBytes(event))), is(equalTo(true)));
+
+		assertEventDecoded(candidate.buildEventAndResetBuffer(), event);
+	}
+
+	@Test
+	public void givenEventWithEveryValueTypeEncodedAsLengthDelimitedMessages_whenMarshalling_thenAllValuesDecoded(){
+		Event event = getTestEvent();
+
+		assertThat(candidate.marshal(ByteBuffer.wrap(toProtobufBytes(event))), is(equalTo(true)));
+
+		assertEventDecoded(candidate.buildEventAndResetBuffer(), event);
+	}
+
+	@Test
+	public void givenEventSplitAcrossTwoBuffers_whenMarshallingEachSplit_thenEventDecodedAtEverySplitPoint(){
+		Event event = getTestEvent();
+
+		for (byte[] bytes: Arrays.asList(toProtostuffBytes(event), toProtobufBytes(event))){
+			for (int split = 1; split < bytes.length; split++){
+				candidate.marshal(ByteBuffer.wrap(bytes, 0, split));
+
+				assertThat(candidate.marshal(ByteBuffer.wrap(bytes, split, bytes.length - split)), is(equalTo(true)));
+
+				FlyweightEvent decodedEvent = candidate.buildEventAndResetBuffer();
+
+				assertEventDecoded(decodedEvent, event);
+
+				decodedEvent.recycle();
+			}
+		}
+	}
+
+	@Test
+	public void givenEventSplitIntoSingleBytes_whenMarshallingEachByte_thenEventDecoded(){
+		Event event = getTestEvent();
+
+		for (byte[] bytes: Arrays.asList(toProtostuffBytes(event), toProtobufBytes(event))){
+			for (int i = 0; i < bytes.length - 1; i++){
+				candidate.marshal(ByteBuffer.wrap(bytes, i, 1)); // every varint, fixed width value and string is cut short at some point
+			}
+			assertThat(candidate.marshal(ByteBuffer.wrap(bytes, bytes.length - 1, 1)), is(equalTo(true)));
+
+			FlyweightEvent decodedEvent = candidate.buildEventAndResetBuffer();
+
+			assertEventDecoded(decodedEvent, event);
+
+			decodedEvent.recycle();
+		}
+	}
+
+	@Test
+	public void givenRecycledEvent_whenMarshallingNextEvent_thenPooledEventReusedWithOnlyNewValues(){
+		Event firstEvent = getTestEvent();
+		Event secondEvent = getEvent(Arrays.asList(getFeature(ValueType.STRING, 1)), Arrays.asList(getClassification(ValueType.INT, 2)));
+
+		candidate.marshal(ByteBuffer.wrap(toProtostuffBytes(firstEvent)));
+
+		FlyweightEvent decodedFirstEvent = candidate.buildEventAndResetBuffer();
+
+		assertThat(candidate.getNumPooledEvents(), is(equalTo(0)));
+
+		decodedFirstEvent.recycle();
+		decodedFirstEvent.recycle(); // recycling twice must not put the event in the pool twice
+
+		assertThat(candidate.getNumPooledEvents(), is(equalTo(1)));
+
+		candidate.marshal(ByteBuffer.wrap(toProtobufBytes(secondEvent)));
+
+		FlyweightEvent decodedSecondEvent = candidate.buildEventAndResetBuffer();
+
+		assertThat(decodedSecondEvent, is(sameInstance(decodedFirstEvent)));
+		assertThat(candidate.getNumPooledEvents(), is(equalTo(0)));
+
+		assertEventDecoded(decodedSecondEvent, secondEvent);
+	}
+
+	@Test
+	public void givenEventsRecycledOnAnotherThread_whenMarshalling_thenEventsReusedAndNeverHandedOutTwice() throws InterruptedException{
+		final BlockingQueue<FlyweightEvent> dispatched = new ArrayBlockingQueue<FlyweightEvent>(64);
+		final Set<FlyweightEvent> inUse = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<FlyweightEvent, Boolean>()));
+		final AtomicReference<Throwable> recyclerFailure = new AtomicReference<Throwable>();
+
+		Set<FlyweightEvent> allEvents = Collections.newSetFromMap(new IdentityHashMap<FlyweightEvent, Boolean>());
+
+		Thread recycler = new Thread(new Runnable(){
+
+			@Override
+			public void run() {
+				try{
+					for (int i = 0; i < NUM_CROSS_THREAD_EVENTS; i++){
+						FlyweightEvent event = dispatched.take();
+
+						if (event.getFeatureIntValue(0) != i){
+							throw new AssertionError("Event "+i+" was overwritten with "+event.getFeatureIntValue(0));
+						}
+						inUse.remove(event);
+
+						event.recycle();
+					}
+				} catch (Throwable t){
+					recyclerFailure.set(t);
+				}
+			}
+		});
+		recycler.start();
+
+		boolean allDispatched = false;
+		try{
+			for (int i = 0; i < NUM_CROSS_THREAD_EVENTS && recyclerFailure.get() == null; i++){
+				Feature feature = getFeature(ValueType.INT, 1);
+				feature.setIntValue(i);
+
+				candidate.marshal(ByteBuffer.wrap(toProtostuffBytes(getEvent(Arrays.asList(feature), Collections.<Classification>emptyList()))));
+
+				FlyweightEvent event = candidate.buildEventAndResetBuffer();
+
+				assertThat(inUse.add(event), is(equalTo(true))); // a recycled event must not be handed out while still in use
+				allEvents.add(event);
+
+				while (!dispatched.offer(event, 10, TimeUnit.MILLISECONDS) && recyclerFailure.get() == null){}
+			}
+			allDispatched = true;
+		} finally{
+			if (!allDispatched){ // the recycler would otherwise wait forever for the remaining events
+				recycler.interrupt();
+			}
+			recycler.join();
+		}
+
+		assertThat(recyclerFailure.get(), is(nullValue()));
+		assertThat(allEvents.size() < NUM_CROSS_THREAD_EVENTS / 100, is(equalTo(true))); // the events are being reused
+	}
+
+	private static void assertEventDecoded(FlyweightEvent decodedEvent, Event event){
+		assertThat(decodedEvent.getNumFeatures(), is(equalTo(event.getFeaturesList().size())));
+		assertThat(decodedEvent.getNumClassifications(), is(equalTo(event.getClassificationsList().size())));
+
+		for (int i = 0; i < decodedEvent.getNumFeatures(); i++){
+			Feature feature = event.getFeaturesList().get(i);
+
+			assertThat(decodedEvent.getFeatureType(i), is(equalTo(feature.getType())));
+			assertThat(decodedEvent.getFeatureValueType(i), is(equalTo(feature.getValueType())));
+			assertThat(decodedEvent.getFeaturesList().get(i).getValue(), is(equalTo(feature.getValue())));
+		}
+
+		for (int i = 0; i < decodedEvent.getNumClassifications(); i++){
+			Classification classification = event.getClassificationsList().get(i);
+
+			assertThat(decodedEvent.getClassificationType(i), is(equalTo(classification.getType())));
+			assertThat(decodedEvent.getClassificationValueType(i), is(equalTo(classification.getValueType())));
+			assertThat(decodedEvent.getClassificationsList().get(i).getValue(), is(equalTo(classification.getValue())));
+		}
+	}
+
+	private static Event getTestEvent(){
+		List<Feature> features = new ArrayList<Feature>();
+
+		for (ValueType valueType: ValueType.values()){
+			features.add(getFeature(valueType, TEST_TYPE + valueType.number));
+		}
+
+		Feature utf8Feature = getFeature(ValueType.STRING, 1); // the default type
+		utf8Feature.setStringValue(TEST_UTF8_STRING);
+		features.add(utf8Feature);
+
+		List<Classification> classifications = new ArrayList<Classification>();
+
+		for (ValueType valueType: ValueType.values()){
+			classifications.add(getClassification(valueType, valueType.number));
+		}
+		return getEvent(features, classifications);
+	}
+
+	private static Event getEvent(List<Feature> features, List<Classification> classifications){
+		Event event = new Event();
+
+		event.setFeaturesList(features);
+		event.setClassificationsList(classifications);
+
+		return event;
+	}
+
+	private static Feature getFeature(ValueType valueType, int type){
+		Feature feature = new Feature();
+
+		feature.setType(type);
+		feature.setValueType(valueType);
+
+		switch (valueType){
+		case STRING:
+			feature.setStringValue(TEST_STRING);
+			break;
+		case LONG:
+			feature.setLongValue(TEST_LONG);
+			break;
+		case INT:
+			feature.setIntValue(TEST_INT);
+			break;
+		case FLOAT:
+			feature.setFloatValue(TEST_FLOAT);
+			break;
+		case DOUBLE:
+			feature.setDoubleValue(TEST_DOUBLE);
+			break;
+		}
+		return feature;
+	}
+
+	private static Classification getClassification(ValueType valueType, int type){
+		Classification classification = new Classification();
+
+		classification.setType(type);
+		classification.setValueType(valueType);
+
+		switch (valueType){
+		case STRING:
+			classification.setStringValue(TEST_STRING);
+			break;
+		case LONG:
+			classification.setLongValue(TEST_LONG);
+			break;
+		case INT:
+			classification.setIntValue(TEST_INT);
+			break;
+		case FLOAT:
+			classification.setFloatValue(TEST_FLOAT);
+			break;
+		case DOUBLE:
+			classification.setDoubleValue(TEST_DOUBLE);
+			break;
+		}
+		return classification;
+	}
+
+	private static byte[] toProtostuffBytes(Event event){ // nested messages are written as groups
+		return ProtostuffIOUtil.toByteArray(event, event.cachedSchema(), LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
+	}
+
+	private static byte[] toProtobufBytes(Event event){ // nested messages are written length delimited
+		return ProtobufIOUtil.toByteArray(event, event.cachedSchema(), LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
+	}
+}
@@ -0,0 +1,21 @@
+package com.haines.ml.rce.model;
+
+import java.util.List;
+
+/**
+ * An {@link EventConsumer} that can also be handed a run of events at a time, for instance all the events that a
+ * worker thread found waiting on its queue when it woke. This allows any per event overhead, such as publishing state
+ * to other threads, to be paid once per batch rather then once per event.
+ * @author haines
+ *
+ * @param <T>
+ */
+public interface BatchEventConsumer<T extends Event> extends EventConsumer<T>{
+
+	/**
+	 * Consumes all the events of a batch, in order. The list, and any events in it that are owned by the caller, may be
+	 * reused once this method returns so must not be retained.
+	 * @param events
+	 */
+	void consumeBatch(List<? extends T> events);
+}
@@ -0,0 +1,40 @@
+package com.haines.ml.rce.model;
+
+/**
+ * A value, such as a {@link Feature} or {@link Classification}, that is a view over state that is reused once the event
+ * it belongs to has been consumed. Anything that holds a reference to a flyweight beyond the consumption of its event,
+ * such as a key in an index, must hold a {@link #copy()} instead.
+ * @author haines
+ *
+ * @param <T>
+ */
+public interface Flyweight<T> {
+
+	public static final Util UTIL = new Util();
+
+	/**
+	 * Returns an immutable copy of the current state of this flyweight. The copy must implement all the value interfaces
+	 * that this flyweight does so that it can be used in its place.
+	 * @return
+	 */
+	T copy();
+
+	public static final class Util{
+
+		private Util(){}
+
+		/**
+		 * Returns a version of the supplied value that is safe to hold on to. If the value is a flyweight then an
+		 * immutable copy is returned, otherwise the value itself is returned.
+		 * @param value
+		 * @return
+		 */
+		@SuppressWarnings("unchecked")
+		public <T> T retain(T value){
+			if (value instanceof Flyweight){
+				return (T)((Flyweight<?>)value).copy();
+			}
+			return value;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.haines.ml.rce.model;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,7 +16,8 @@ import org.slf4j.LoggerFactory;
  * 
  * This class is meant to be used with at most 2 threads. One being the consumer thread, the thread that
  * calls the {@link #consume(Event)} method and the other the coordinator thread that calls the
- * {@link #switchLiveConsumer()}. 
+ * {@link #switchLiveConsumer()}. When events are consumed a batch at a time using {@link #consumeBatch(List)}, the live
+ * consumer is only marked as active once for the whole batch which avoids a volatile write for every event.
  * 
  *                T(consumer)
  *                     \
@@ -56,7 +59,7 @@ import org.slf4j.LoggerFactory;
  * @param <E>
  * @param <T>
  */
-public class PipelinedEventConsumer<E extends Event, T extends EventConsumer<? super E>> implements EventConsumer<E>{
+public class PipelinedEventConsumer<E extends Event, T extends EventConsumer<? super E>> implements BatchEventConsumer<E>{
 
 	private final static Logger LOG = LoggerFactory.getLogger(PipelinedEventConsumer.class);
 	private final static byte LIVE_CONSUMER_MASK = 0x1;
@@ -100,6 +103,29 @@ public class PipelinedEventConsumer<E extends Event, T extends EventConsumer<? s
 		}
 	}
 	
+	@Override
+	public void consumeBatch(List<? extends E> events) {
+		
+		byte liveConsumerState = this.liveConsumerState;
+		int liveConsumer = getLiveConsumer(liveConsumerState);
+		
+		int activeConsumerBitMask = (LIVE_CONSUMER_ACTIVE_MASK << liveConsumer);
+		this.liveConsumerState |= activeConsumerBitMask; // the whole batch goes to the same live consumer
+		try{
+			T consumer = consumers[liveConsumer];
+			
+			for (int i = 0; i < events.size(); i++){
+				E event = events.get(i);
+				
+				if (event != Event.HEARTBEAT){
+					consumer.consume(event);
+				}
+			}
+		} finally{
+			this.liveConsumerState ^= activeConsumerBitMask;
+		}
+	}
+	
 	private final int getLiveConsumer(byte consumerBitSet) {
 		return consumerBitSet & LIVE_CONSUMER_MASK;
 	}
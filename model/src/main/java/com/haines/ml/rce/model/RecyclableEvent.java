@@ -0,0 +1,15 @@
+package com.haines.ml.rce.model;
+
+/**
+ * An event whose instance is reused once it has been consumed rather then being left for the garbage collector. An
+ * implementation's {@link #recycle()} method should only be invoked once nothing else will read from the event.
+ * @author haines
+ *
+ */
+public interface RecyclableEvent extends Event{
+
+	/**
+	 * Indicates that this event has been fully consumed and so its instance can be reused for a subsequent event.
+	 */
+	void recycle();
+}
@@ -0,0 +1,19 @@
+package com.haines.ml.rce.model;
+
+/**
+ * An event whose state can be moved into another, pre-allocated instance of the same type. This allows an event to be
+ * decoded into a scratch instance and then handed over to a reusable slot, such as an entry in a ring buffer, without
+ * allocating a new event for each one.
+ * @author haines
+ *
+ * @param <E>
+ */
+public interface TransferableEvent<E extends Event> extends Event{
+
+	/**
+	 * Moves the state of this event into the target. After this call the target represents this event and the contents
+	 * of this event are undefined until it is next written to.
+	 * @param target
+	 */
+	void transferTo(E target);
+}
@@ -46,4 +46,37 @@ public interface Clock {
 			this.staticTime = staticTime;
 		}
 	}
+
+	/**
+	 * Returns a time that is driven forward by the events being processed rather then by the system clock. This is
+	 * used when replaying historical events so that windows roll at the rate that the events were originally seen
+	 * and not at the rate they are replayed. Time is only ever moved forward by a single thread but can be read from
+	 * any thread.
+	 * @author haines
+	 *
+	 */
+	public static class VirtualClock implements Clock {
+
+		private volatile long currentTime;
+
+		public VirtualClock(long startTime){
+			this.currentTime = startTime;
+		}
+
+		@Override
+		public long getCurrentTime() {
+			return currentTime;
+		}
+
+		/**
+		 * Moves this clock forward to the provided time. Times earlier then the current time are ignored so that out of
+		 * order events do not move the clock backwards.
+		 * @param time
+		 */
+		public void advanceTo(long time){
+			if (time > currentTime){
+				currentTime = time;
+			}
+		}
+	}
 }
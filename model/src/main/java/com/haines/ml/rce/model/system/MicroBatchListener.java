@@ -0,0 +1,16 @@
+package com.haines.ml.rce.model.system;
+
+/**
+ * A listener that implementations can subscribe to to get a notification each time the live accumulators have been
+ * switched out and pushed downstream, marking the boundary between one micro batch and the next.
+ * @author haines
+ *
+ */
+public interface MicroBatchListener {
+
+	/**
+	 * Notifies that a micro batch has ended. This is called from the thread that coordinates the micro batches rather
+	 * then from any event thread so implementations must hand the notification over to their own threads safely.
+	 */
+	void microBatchEnded();
+}
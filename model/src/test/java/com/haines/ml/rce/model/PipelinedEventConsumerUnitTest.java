@@ -1,5 +1,7 @@
 package com.haines.ml.rce.model;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -27,6 +29,16 @@ public class PipelinedEventConsumerUnitTest {
 	
 	@Test
 	public void givenCandidateAnd2Threads_whenCallingSwitchConsumer_thenOwnershipOfConsumerTransferedBetweenThreads() throws InterruptedException{
+		assertOwnershipTransferedBetweenThreads(false);
+	}
+	
+	@Test
+	public void givenCandidateAnd2Threads_whenCallingSwitchConsumerWhilstConsumingBatches_thenOwnershipOfConsumerTransferedBetweenThreads() throws InterruptedException{
+		assertOwnershipTransferedBetweenThreads(true);
+	}
+	
+	private void assertOwnershipTransferedBetweenThreads(final boolean consumeInBatches) throws InterruptedException{
+		final List<TestEvent> batch = Arrays.asList(new TestEvent(1), new TestEvent(1), new TestEvent(1));
 		final CountDownLatch starter = new CountDownLatch(2);
 		final CountDownLatch finished = new CountDownLatch(2);
 		final AtomicBoolean stopped = new AtomicBoolean(false);
@@ -38,7 +50,11 @@ public class PipelinedEventConsumerUnitTest {
 				starter.countDown();
 				try{
 					while(!stopped.get()){
-						candidate.consume(new TestEvent(1));
+						if (consumeInBatches){
+							candidate.consumeBatch(batch);
+						} else{
+							candidate.consume(new TestEvent(1));
+						}
 					}
 				} finally{
 					finished.countDown();
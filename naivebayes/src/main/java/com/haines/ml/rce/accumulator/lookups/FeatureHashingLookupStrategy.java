@@ -0,0 +1,36 @@
+package com.haines.ml.rce.accumulator.lookups;
+
+import com.haines.ml.rce.accumulator.AccumulatorLookupStrategy;
+import com.haines.ml.rce.model.ClassifiedEvent;
+import com.haines.ml.rce.naivebayes.FeatureHashingNaiveBayesIndexes;
+import com.haines.ml.rce.naivebayes.NaiveBayesIndexes;
+
+/**
+ * A lookup strategy that hashes discrete features straight to a fixed number of slots using
+ * {@link FeatureHashingNaiveBayesIndexes} rather then maintaining an index of every feature seen. The memory used is
+ * therefore fixed up front and copying or clearing the strategy between micro batches only costs in proportion to the
+ * number of slots claimed in that batch rather then the size of the slot space, at the cost of some accuracy when
+ * features have to share a slot.
+ * @author haines
+ *
+ * @param <E>
+ */
+public class FeatureHashingLookupStrategy<E extends ClassifiedEvent> extends RONaiveBayesMapBasedLookupStrategy<E> {
+
+	/**
+	 * @param hashedSlotBitDepth the number of bits of the hashed slot space
+	 * @param numHashes the number of slots a feature can try before sharing one with another feature
+	 */
+	public FeatureHashingLookupStrategy(int hashedSlotBitDepth, int numHashes){
+		this(new FeatureHashingNaiveBayesIndexes(hashedSlotBitDepth, numHashes));
+	}
+
+	private FeatureHashingLookupStrategy(NaiveBayesIndexes indexes){
+		super(indexes);
+	}
+
+	@Override
+	public AccumulatorLookupStrategy<E> copy() {
+		return new FeatureHashingLookupStrategy<E>(getIndexes().copy());
+	}
+}
@@ -1,7 +1,5 @@
 package com.haines.ml.rce.accumulator.lookups;
 
-import java.util.Iterator;
-
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -9,6 +7,7 @@ import com.haines.ml.rce.accumulator.AccumulatorLookupStrategy;
 import com.haines.ml.rce.model.Classification;
 import com.haines.ml.rce.model.ClassifiedEvent;
 import com.haines.ml.rce.model.Feature;
+import com.haines.ml.rce.naivebayes.InterningNaiveBayesIndexes;
 import com.haines.ml.rce.naivebayes.NaiveBayesIndexes;
 import com.haines.ml.rce.naivebayes.NaiveBayesIndexes.NaiveBayesPosteriorDistributionProperty;
 
@@ -16,60 +15,90 @@ public class RONaiveBayesMapBasedLookupStrategy<E extends ClassifiedEvent> imple
 
 	public static final String LOOKUP_STRATEGY_INDEXES = "com.haines.ml.rce.accumulator.lookups.indexes";
 	private final NaiveBayesIndexes indexes;
+	private final InterningNaiveBayesIndexes interningIndexes;
+	private E startedEvent;
+	private int[] classificationIds;
 	
 	@Inject
 	public RONaiveBayesMapBasedLookupStrategy(@Named(LOOKUP_STRATEGY_INDEXES) NaiveBayesIndexes indexes){
 		this.indexes = indexes;
+		this.interningIndexes = (indexes instanceof InterningNaiveBayesIndexes)? (InterningNaiveBayesIndexes)indexes: null;
+		this.classificationIds = new int[1];
+	}
+	
+	/**
+	 * When the indexes support interning, resolves the ids of the event's classifications once so that the slots of
+	 * each of its features are found with a single probe per classification.
+	 */
+	@Override
+	public void startEvent(E event) {
+		if (interningIndexes != null){
+			int numClassifications = event.getClassificationsList().size();
+			
+			if (numClassifications > classificationIds.length){
+				classificationIds = new int[numClassifications];
+			}
+			
+			int idx = 0;
+			for (Classification classification: event.getClassificationsList()){
+				classificationIds[idx++] = interningIndexes.getClassificationId(classification);
+			}
+			
+			startedEvent = event;
+		}
 	}
 	
 	int[] getSlots(E event){
-		int[] allSlots = new int[]{};
+		int numClassifications = event.getClassificationsList().size();
+		
+		// accumulator for all feature->classification pairs and then all classifications
+		int[] allSlots = new int[(event.getFeaturesList().size() + 1) * numClassifications];
 		
+		int idx = 0;
 		for (Feature feature: event.getFeaturesList()){
-			int[] featureSlots = this.getSlots(feature, event);
-			
-			allSlots = combine(allSlots, featureSlots);
+			for (Classification classification: event.getClassificationsList()){
+				allSlots[idx++] = getPosteriorIndex(feature, classification);
+			}
 		}
 		
-		int i = 0;
-		
-		int[] priorSlots = new int[event.getClassificationsList().size()];
 		for (Classification classification: event.getClassificationsList()){
-			int classificationSlot = this.getSlot(classification, event);
-			
-			priorSlots[i++] = classificationSlot;
+			allSlots[idx++] = this.getSlot(classification, event);
 		}
-		allSlots = combine(allSlots, priorSlots);
-		
 		
 		return allSlots;
 	}
 	
-	private final int[] combine(int[] array1, int[] array2){
-		int[] tmp = new int[array1.length + array2.length];
+	@Override
+	public int[] getSlots(Feature feature, E event) {
 		
-		System.arraycopy(array1, 0, tmp, 0, array1.length);
-		System.arraycopy(array2, 0, tmp, array1.length, array2.length);
+		int[] accumulatorIndexesToUpdate = new int[event.getClassificationsList().size()];
 		
-		return tmp;
+		getSlots(feature, event, accumulatorIndexesToUpdate);
+		
+		return accumulatorIndexesToUpdate;
 	}
 	
 	@Override
-	public int[] getSlots(Feature feature, E event) {
+	public int getSlots(Feature feature, E event, int[] slotBuffer) {
 		
-		// accumulator for all feature->classification pairs and then all classifications
-		int[] accumulatorIndexesToUpdate = new int[event.getClassificationsList().size()];
+		int numSlots = event.getClassificationsList().size();
 		
-		int idx = 0;
-
-		Iterator<? extends Classification> classificationIt = event.getClassificationsList().iterator();
-		while (classificationIt.hasNext()){
-			Classification classification = classificationIt.next();
-			
-			accumulatorIndexesToUpdate[idx++] = getPosteriorIndex(feature, classification);
+		if (numSlots <= slotBuffer.length){
+			if (event == startedEvent){
+				int featureId = interningIndexes.getFeatureId(feature);
+				
+				for (int idx = 0; idx < numSlots; idx++){
+					slotBuffer[idx] = interningIndexes.getDiscretePosteriorIndex(featureId, classificationIds[idx]);
+				}
+			} else{
+				int idx = 0;
+				for (Classification classification: event.getClassificationsList()){
+					slotBuffer[idx++] = getPosteriorIndex(feature, classification);
+				}
+			}
 		}
 		
-		return accumulatorIndexesToUpdate;
+		return numSlots;
 	}
 	
 	@Override
@@ -115,6 +144,8 @@ public class RONaiveBayesMapBasedLookupStrategy<E extends ClassifiedEvent> imple
 	@Override
 	public void clear() {
 		indexes.clear();
+		
+		startedEvent = null; // any ids resolved are no longer valid
 	}
 
 	@Override
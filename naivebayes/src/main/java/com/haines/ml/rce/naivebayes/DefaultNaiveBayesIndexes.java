@@ -1,10 +1,6 @@
 package com.haines.ml.rce.naivebayes;
 
-import gnu.trove.map.hash.THashMap;
-
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,14 +20,6 @@ public abstract class DefaultNaiveBayesIndexes implements NaiveBayesIndexes {
 	
 	private final static Logger LOG = LoggerFactory.getLogger(DefaultNaiveBayesIndexes.class);
 
-	private static final Function<? super Classification, ? extends DiscreteNaiveBayesPriorProperty> CLASSIFICATION_TO_PRIOR_PROPERTY_FUNC = new Function<Classification, DiscreteNaiveBayesPriorProperty>(){
-
-		@Override
-		public DiscreteNaiveBayesPriorProperty apply(Classification input) {
-			return new DiscreteNaiveBayesPriorProperty(input);
-		}
-	};
-
 	private static final Function<? super Integer, ? extends NaiveBayesPriorDistributionProperty> PRIOR_TYPE_TRANSFORM_FUNCTION = new Function<Integer, NaiveBayesPriorDistributionProperty>(){
 
 			@Override
@@ -40,44 +28,35 @@ public abstract class DefaultNaiveBayesIndexes implements NaiveBayesIndexes {
 			}
 		};
 	
-	protected final Map<Classification, Map<Feature, Integer>> posteriorProbabilityIndexes;
-	protected final Map<Classification, Integer> priorProbabilityIndexes;
+	protected final DiscreteIndexDictionary discreteIndexes;
 	protected final Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes;
 	protected final Map<Integer, int[]> priorTypeIndexes;
 	protected int maxIndex;
 	
 	protected DefaultNaiveBayesIndexes(Map<Classification, Map<Feature, Integer>> posteriorProbabilityIndexes, Map<Classification, Integer> priorProbabilityIndexes, Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes, Map<Integer, int[]> priorTypeIndexes, int maxIndex){
 		
-		this.posteriorProbabilityIndexes = checkIsEmpty(posteriorProbabilityIndexes);
-		this.priorProbabilityIndexes = checkIsEmpty(priorProbabilityIndexes);
+		this.discreteIndexes = DiscreteIndexDictionary.create(checkIsEmpty(posteriorProbabilityIndexes), checkIsEmpty(priorProbabilityIndexes));
 		this.posteriorTypeIndexes = checkIsEmpty(posteriorTypeIndexes);
 		this.priorTypeIndexes = checkIsEmpty(priorTypeIndexes);
 		
 		this.maxIndex = maxIndex;
 	}
 	
-	public int getDiscretePosteriorIndex(Feature feature, Classification classification){
+	DefaultNaiveBayesIndexes(DiscreteIndexDictionary discreteIndexes, Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes, Map<Integer, int[]> priorTypeIndexes, int maxIndex){
 		
-		Map<Feature, Integer> innerMap = posteriorProbabilityIndexes.get(classification);
+		this.discreteIndexes = discreteIndexes;
+		this.posteriorTypeIndexes = checkIsEmpty(posteriorTypeIndexes);
+		this.priorTypeIndexes = checkIsEmpty(priorTypeIndexes);
 		
-		if (innerMap != null){
-			Integer index = innerMap.get(feature);
-			
-			if (index != null){
-				return index;
-			}
-		}
-		return NO_INDEX_FOUND;
+		this.maxIndex = maxIndex;
+	}
+	
+	public int getDiscretePosteriorIndex(Feature feature, Classification classification){
+		return discreteIndexes.getPosteriorIndex(feature, classification);
 	}
 
 	public int getDiscretePriorIndex(Classification classification){
-		
-		Integer index = priorProbabilityIndexes.get(classification);
-		
-		if (index != null){
-			return index;
-		}
-		return NO_INDEX_FOUND;
+		return discreteIndexes.getPriorIndex(classification);
 	}
 	
 	public final int getMaxIndex(){
@@ -135,52 +114,16 @@ public abstract class DefaultNaiveBayesIndexes implements NaiveBayesIndexes {
 	}
 
 	public Iterable<DiscreteNaiveBayesPosteriorProperty> getDiscretePosteriors(){
-		return new Iterable<DiscreteNaiveBayesPosteriorProperty>(){
-
-			@Override
-			public Iterator<DiscreteNaiveBayesPosteriorProperty> iterator() {
-				
-				final Iterator<Map.Entry<Classification, Map<Feature, Integer>>> keySetIt = new THashMap<Classification, Map<Feature, Integer>>(posteriorProbabilityIndexes).entrySet().iterator();
-				return new Iterator<DiscreteNaiveBayesPosteriorProperty>(){
-
-					private Iterator<Feature> currentPosteriorFeatureForClassification;
-					private Classification currentClassification;
-					
-					@Override
-					public boolean hasNext() {
-						return keySetIt.hasNext() || (currentPosteriorFeatureForClassification != null && currentPosteriorFeatureForClassification.hasNext());
-					}
-
-					@Override
-					public DiscreteNaiveBayesPosteriorProperty next() {
-						if (currentPosteriorFeatureForClassification == null || !currentPosteriorFeatureForClassification.hasNext()){
-							
-							Map.Entry<Classification, Map<Feature, Integer>> entry = keySetIt.next();
-							
-							currentClassification = entry.getKey();
-							currentPosteriorFeatureForClassification = entry.getValue().keySet().iterator();
-						}
-						
-						return new DiscreteNaiveBayesPosteriorProperty(currentPosteriorFeatureForClassification.next(), currentClassification);
-					}
-
-					@Override
-					public void remove() {
-						throw new UnsupportedOperationException("Backing array is immutable");
-					}
-				};
-			}
-		};
+		return discreteIndexes.getPosteriors();
 	}
 
 	public Iterable<DiscreteNaiveBayesPriorProperty> getDiscretePriors() {
-		return Iterables.transform(new THashMap<>(priorProbabilityIndexes).keySet(), CLASSIFICATION_TO_PRIOR_PROPERTY_FUNC);
+		return discreteIndexes.getPriors();
 	}
 
 	@Override
 	public void clear() {
-		posteriorProbabilityIndexes.clear();
-		priorProbabilityIndexes.clear();
+		discreteIndexes.clear();
 		posteriorTypeIndexes.clear();
 		priorTypeIndexes.clear();
 		
@@ -193,7 +136,7 @@ public abstract class DefaultNaiveBayesIndexes implements NaiveBayesIndexes {
 		
 		final NaiveBayesIndexes globalIndexes = this.getGlobalIndexes();
 		
-		return new NaiveBayesLocalIndexes(copyPosterior(posteriorProbabilityIndexes), copyPriors(priorProbabilityIndexes), copyPosteriorTypes(posteriorTypeIndexes), copyPriorTypes(priorTypeIndexes), new NaiveBayesIndexesProvider() {
+		return new NaiveBayesLocalIndexes(discreteIndexes.copy(), copyPosteriorTypes(posteriorTypeIndexes), copyPriorTypes(priorTypeIndexes), new NaiveBayesIndexesProvider() {
 			
 			@Override
 			public void setIndexes(NaiveBayesIndexes indexes) {
@@ -217,10 +160,6 @@ public abstract class DefaultNaiveBayesIndexes implements NaiveBayesIndexes {
 		};
 	}
 
-	private final static Map<Classification, Integer> copyPriors(Map<Classification, Integer> priorProbabilityIndexes) {
-		return ImmutableMap.copyOf(priorProbabilityIndexes);
-	}
-	
 	private final static Map<NaiveBayesPosteriorDistributionProperty, int[]> copyPosteriorTypes(Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypes){
 		return ImmutableMap.copyOf(Maps.transformEntries(posteriorTypes, new EntryTransformer<NaiveBayesPosteriorDistributionProperty, int[], int[]>(){
 
@@ -239,14 +178,4 @@ public abstract class DefaultNaiveBayesIndexes implements NaiveBayesIndexes {
 	private final static Map<Integer, int[]> copyPriorTypes(Map<Integer, int[]> priorTypes){
 		return ImmutableMap.copyOf(priorTypes);
 	}
-
-	private final static  Map<Classification, Map<Feature, Integer>> copyPosterior(Map<Classification, Map<Feature, Integer>> posteriorProbabilityIndexes) {
-		Map<Classification, Map<Feature, Integer>> mapCopy = new THashMap<Classification, Map<Feature,Integer>>();
-		
-		for(Entry<Classification, Map<Feature, Integer>> entry: posteriorProbabilityIndexes.entrySet()){
-			mapCopy.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
-		}
-		
-		return mapCopy;
-	}
 }
@@ -0,0 +1,473 @@
+package com.haines.ml.rce.naivebayes;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.Feature;
+import com.haines.ml.rce.model.Flyweight;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPosteriorProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPriorProperty;
+
+/**
+ * Holds the discrete posterior and prior indexes of a {@link DefaultNaiveBayesIndexes}. Rather then nesting a map of
+ * boxed indexes per classification, each feature and classification is interned into a dense int id the first time it
+ * is indexed. Posterior indexes are then held in a single primitive, open addressed map keyed by the (classification,
+ * feature) ids packed into a long and prior indexes in one keyed by the classification id. Each distinct feature is
+ * therefore only held once, however many classifications it is seen with, and no index is boxed. Callers that look up
+ * many pairs, such as every feature of an event against each of its classifications, can resolve each id once and
+ * then find every pair with a single probe using {@link #getPosteriorIndex(int, int)}.
+ * <p>
+ * A dictionary can be layered over a frozen parent dictionary, as the local indexes of a worker are over the global
+ * indexes. The ids the parent has already given out stay the parent's, new ids follow on from them and lookups fall
+ * through to the parent, so that properties known globally are resolved without being copied into, or retained by,
+ * every worker. Only the entries added to this dictionary are iterated, copied or cleared.
+ * <p>
+ * Once frozen, a dictionary can be {@link #compile() compiled}, replacing its posterior and prior maps with a
+ * {@link DiscretePerfectHashIndex} that finds an id key with one hash and one array read and is smaller then the maps.
+ *
+ * Like the indexes that own it, this class is not thread safe. A parent must never be written to once layered under
+ * another dictionary.
+ * @author haines
+ *
+ */
+final class DiscreteIndexDictionary {
+
+	static final int NO_ID = -1;
+
+	private final TObjectIntHashMap<Feature> featureIds;
+	private final TObjectIntHashMap<Classification> classificationIds;
+	private final List<Feature> features;
+	private final List<Classification> classifications;
+	private final TLongIntHashMap posteriorIndexes;
+	private final TIntIntHashMap priorIndexes;
+	private DiscretePerfectHashIndex compiledIndexes;
+	private DiscreteIndexDictionary parent;
+	private int firstFeatureId;
+	private int firstClassificationId;
+
+	DiscreteIndexDictionary(){
+		this.featureIds = new TObjectIntHashMap<Feature>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_ID);
+		this.classificationIds = new TObjectIntHashMap<Classification>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_ID);
+		this.features = new ArrayList<Feature>();
+		this.classifications = new ArrayList<Classification>();
+		this.posteriorIndexes = new TLongIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, 0, NaiveBayesIndexes.NO_INDEX_FOUND);
+		this.priorIndexes = new TIntIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_ID, NaiveBayesIndexes.NO_INDEX_FOUND);
+	}
+	
+	private DiscreteIndexDictionary(DiscreteIndexDictionary dictionary){
+		this.featureIds = new TObjectIntHashMap<Feature>(dictionary.featureIds);
+		this.classificationIds = new TObjectIntHashMap<Classification>(dictionary.classificationIds);
+		this.features = new ArrayList<Feature>(dictionary.features);
+		this.classifications = new ArrayList<Classification>(dictionary.classifications);
+		this.posteriorIndexes = new TLongIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, 0, NaiveBayesIndexes.NO_INDEX_FOUND); // copies are always writable so are never compiled
+		this.priorIndexes = new TIntIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_ID, NaiveBayesIndexes.NO_INDEX_FOUND);
+		
+		long[] posteriorKeys = dictionary.getPosteriorKeys();
+		int[] posteriorIndexes = dictionary.getPosteriorIndexes();
+		
+		for (int i = 0; i < posteriorKeys.length; i++){
+			this.posteriorIndexes.put(posteriorKeys[i], posteriorIndexes[i]);
+		}
+		
+		int[] priorKeys = dictionary.getPriorKeys();
+		int[] priorIndexes = dictionary.getPriorIndexes();
+		
+		for (int i = 0; i < priorKeys.length; i++){
+			this.priorIndexes.put(priorKeys[i], priorIndexes[i]);
+		}
+		this.parent = dictionary.parent;
+		this.firstFeatureId = dictionary.firstFeatureId;
+		this.firstClassificationId = dictionary.firstClassificationId;
+	}
+
+	/**
+	 * Creates an empty dictionary layered over the provided, frozen, parent.
+	 * @param parent
+	 * @return
+	 */
+	static DiscreteIndexDictionary create(DiscreteIndexDictionary parent){
+		DiscreteIndexDictionary dictionary = new DiscreteIndexDictionary();
+		
+		dictionary.setParent(parent);
+		
+		return dictionary;
+	}
+
+	/**
+	 * Creates a dictionary containing the indexes of the provided maps.
+	 * @param posteriorIndexes
+	 * @param priorIndexes
+	 * @return
+	 */
+	static DiscreteIndexDictionary create(Map<Classification, Map<Feature, Integer>> posteriorIndexes, Map<Classification, Integer> priorIndexes){
+		DiscreteIndexDictionary dictionary = new DiscreteIndexDictionary();
+
+		for (Map.Entry<Classification, Map<Feature, Integer>> classificationIndexes: posteriorIndexes.entrySet()){
+			for (Map.Entry<Feature, Integer> index: classificationIndexes.getValue().entrySet()){
+				dictionary.putPosteriorIndex(index.getKey(), classificationIndexes.getKey(), index.getValue());
+			}
+		}
+
+		for (Map.Entry<Classification, Integer> index: priorIndexes.entrySet()){
+			dictionary.putPriorIndex(index.getKey(), index.getValue());
+		}
+
+		return dictionary;
+	}
+
+	int getPosteriorIndex(Feature feature, Classification classification){
+		int classificationId = getClassificationId(classification);
+
+		if (classificationId != NO_ID){
+			return getPosteriorIndex(getFeatureId(feature), classificationId);
+		}
+		return NaiveBayesIndexes.NO_INDEX_FOUND;
+	}
+
+	int getPriorIndex(Classification classification){
+		return getPriorIndex(getClassificationId(classification));
+	}
+	
+	/**
+	 * Returns the index of the posterior of the feature and classification with the provided ids, or
+	 * {@link NaiveBayesIndexes#NO_INDEX_FOUND} if there is none. This is a single probe of a primitive map, or of the
+	 * parent's map when both ids are the parent's.
+	 * @param featureId
+	 * @param classificationId
+	 * @return
+	 */
+	int getPosteriorIndex(int featureId, int classificationId){
+		if (featureId == NO_ID || classificationId == NO_ID){
+			return NaiveBayesIndexes.NO_INDEX_FOUND;
+		}
+		long key = pack(classificationId, featureId);
+		
+		if (featureId < firstFeatureId && classificationId < firstClassificationId){
+			int index = parent.getOwnPosteriorIndex(key);
+			
+			if (index != NaiveBayesIndexes.NO_INDEX_FOUND){
+				return index;
+			}
+		}
+		return getOwnPosteriorIndex(key);
+	}
+	
+	int getPriorIndex(int classificationId){
+		if (classificationId == NO_ID){
+			return NaiveBayesIndexes.NO_INDEX_FOUND;
+		}
+		
+		if (classificationId < firstClassificationId){
+			int index = parent.getOwnPriorIndex(classificationId);
+			
+			if (index != NaiveBayesIndexes.NO_INDEX_FOUND){
+				return index;
+			}
+		}
+		return getOwnPriorIndex(classificationId);
+	}
+	
+	private int getOwnPosteriorIndex(long key){
+		return compiledIndexes != null? compiledIndexes.getPosteriorIndex(key): posteriorIndexes.get(key);
+	}
+	
+	private int getOwnPriorIndex(int classificationId){
+		return compiledIndexes != null? compiledIndexes.getPriorIndex(classificationId): priorIndexes.get(classificationId);
+	}
+	
+	/**
+	 * Returns the id of the feature or {@link #NO_ID} if it has not been interned by either this dictionary or its
+	 * parent.
+	 * @param feature
+	 * @return
+	 */
+	int getFeatureId(Feature feature){
+		if (parent != null){
+			int featureId = parent.featureIds.get(feature);
+			
+			if (featureId != NO_ID){
+				return featureId;
+			}
+		}
+		return featureIds.get(feature);
+	}
+	
+	/**
+	 * Returns the id of the classification or {@link #NO_ID} if it has not been interned by either this dictionary or
+	 * its parent.
+	 * @param classification
+	 * @return
+	 */
+	int getClassificationId(Classification classification){
+		if (parent != null){
+			int classificationId = parent.classificationIds.get(classification);
+			
+			if (classificationId != NO_ID){
+				return classificationId;
+			}
+		}
+		return classificationIds.get(classification);
+	}
+
+	void putPosteriorIndex(Feature feature, Classification classification, int index){
+		putPosteriorIndex(internFeature(feature), internClassification(classification), index);
+	}
+	
+	void putPosteriorIndex(int featureId, int classificationId, int index){
+		checkNotCompiled();
+		
+		posteriorIndexes.put(pack(classificationId, featureId), index);
+	}
+
+	void putPriorIndex(Classification classification, int index){
+		putPriorIndex(internClassification(classification), index);
+	}
+	
+	void putPriorIndex(int classificationId, int index){
+		checkNotCompiled();
+		
+		priorIndexes.put(classificationId, index);
+	}
+
+	/**
+	 * Returns the greatest index held in this dictionary or {@link NaiveBayesIndexes#NO_INDEX_FOUND} if it is empty.
+	 * @return
+	 */
+	int getMaxIndex(){
+		int maxIndex = NaiveBayesIndexes.NO_INDEX_FOUND;
+
+		for (int index: getPosteriorIndexes()){
+			maxIndex = Math.max(maxIndex, index);
+		}
+		for (int index: getPriorIndexes()){
+			maxIndex = Math.max(maxIndex, index);
+		}
+		return maxIndex;
+	}
+
+	/**
+	 * Returns the posterior properties held in this dictionary at the point this method is called, in the order of
+	 * their indexes so that reading their slots walks the accumulator sequentially.
+	 * @return
+	 */
+	Iterable<DiscreteNaiveBayesPosteriorProperty> getPosteriors(){
+		final long[] keys = sortByIndex(getPosteriorKeys(), getPosteriorIndexes());
+		final Feature[] features = this.features.toArray(new Feature[this.features.size()]); // so that later writes don't affect this snapshot
+		final Classification[] classifications = this.classifications.toArray(new Classification[this.classifications.size()]);
+		final DiscreteIndexDictionary parent = this.parent; // frozen so can be read directly
+		final int firstFeatureId = this.firstFeatureId;
+		final int firstClassificationId = this.firstClassificationId;
+
+		return new Iterable<DiscreteNaiveBayesPosteriorProperty>(){
+
+			@Override
+			public Iterator<DiscreteNaiveBayesPosteriorProperty> iterator() {
+				return new Iterator<DiscreteNaiveBayesPosteriorProperty>(){
+
+					private int idx = 0;
+
+					@Override
+					public boolean hasNext() {
+						return idx < keys.length;
+					}
+
+					@Override
+					public DiscreteNaiveBayesPosteriorProperty next() {
+						long key = keys[idx++];
+						int featureId = (int)key;
+						int classificationId = (int)(key >>> 32);
+
+						return new DiscreteNaiveBayesPosteriorProperty(featureId < firstFeatureId? parent.features.get(featureId): features[featureId - firstFeatureId], 
+																	   classificationId < firstClassificationId? parent.classifications.get(classificationId): classifications[classificationId - firstClassificationId]);
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException("Backing array is immutable");
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Returns the prior properties held in this dictionary at the point this method is called, in the order of their
+	 * indexes.
+	 * @return
+	 */
+	Iterable<DiscreteNaiveBayesPriorProperty> getPriors(){
+		int[] classificationIds = getPriorKeys();
+		long[] keys = new long[classificationIds.length];
+
+		for (int i = 0; i < classificationIds.length; i++){
+			keys[i] = classificationIds[i];
+		}
+
+		keys = sortByIndex(keys, getPriorIndexes());
+
+		List<DiscreteNaiveBayesPriorProperty> priors = new ArrayList<DiscreteNaiveBayesPriorProperty>(keys.length);
+
+		for (long classificationId: keys){
+			priors.add(new DiscreteNaiveBayesPriorProperty(getClassification((int)classificationId)));
+		}
+		return priors;
+	}
+
+	DiscreteIndexDictionary copy(){
+		return new DiscreteIndexDictionary(this);
+	}
+	
+	/**
+	 * Compiles the posterior and prior indexes of this dictionary, which must no longer be written to, into a
+	 * {@link DiscretePerfectHashIndex} and releases the maps that held them. Returns false, leaving the maps in place, if
+	 * a perfect hash could not be found.
+	 * @return
+	 */
+	boolean compile(){
+		checkNotCompiled();
+		
+		DiscretePerfectHashIndex compiledIndexes = DiscretePerfectHashIndex.create(posteriorIndexes.keys(), posteriorIndexes.values(), priorIndexes.keys(), priorIndexes.values());
+		
+		if (compiledIndexes == null){
+			return false;
+		}
+		
+		this.compiledIndexes = compiledIndexes;
+		
+		posteriorIndexes.clear();
+		posteriorIndexes.compact();
+		priorIndexes.clear();
+		priorIndexes.compact();
+		
+		return true;
+	}
+
+	/**
+	 * Clears the entries of this dictionary and layers it over a new parent, which may be null.
+	 * @param parent
+	 */
+	void clear(DiscreteIndexDictionary parent){
+		clear();
+		
+		setParent(parent);
+	}
+	
+	void clear(){
+		featureIds.clear();
+		classificationIds.clear();
+		features.clear();
+		classifications.clear();
+		posteriorIndexes.clear();
+		priorIndexes.clear();
+		compiledIndexes = null;
+	}
+
+	private void setParent(DiscreteIndexDictionary parent){
+		if (parent != null && parent.parent != null){
+			throw new IllegalArgumentException("Dictionaries can only be layered over a dictionary without a parent");
+		}
+		this.parent = parent;
+		this.firstFeatureId = parent != null? parent.features.size(): 0;
+		this.firstClassificationId = parent != null? parent.classifications.size(): 0;
+	}
+	
+	private void checkNotCompiled(){
+		if (compiledIndexes != null){
+			throw new IllegalStateException("Compiled dictionaries are read only");
+		}
+	}
+	
+	private long[] getPosteriorKeys(){
+		return compiledIndexes != null? compiledIndexes.getPosteriorKeys(): posteriorIndexes.keys();
+	}
+	
+	private int[] getPosteriorIndexes(){
+		return compiledIndexes != null? compiledIndexes.getPosteriorIndexes(): posteriorIndexes.values();
+	}
+	
+	private int[] getPriorKeys(){
+		return compiledIndexes != null? compiledIndexes.getPriorKeys(): priorIndexes.keys();
+	}
+	
+	private int[] getPriorIndexes(){
+		return compiledIndexes != null? compiledIndexes.getPriorIndexes(): priorIndexes.values();
+	}
+	
+	private Classification getClassification(int classificationId){
+		return classificationId < firstClassificationId? parent.classifications.get(classificationId): classifications.get(classificationId - firstClassificationId);
+	}
+
+	/**
+	 * Returns the id of the feature, interning it into this dictionary if neither this dictionary nor its parent
+	 * already holds it.
+	 * @param feature
+	 * @return
+	 */
+	int internFeature(Feature feature){
+		int featureId = getFeatureId(feature);
+
+		if (featureId == NO_ID){
+			featureId = firstFeatureId + features.size();
+
+			feature = Flyweight.UTIL.retain(feature); // don't hold on to a view of an event that will be reused
+
+			features.add(feature);
+			featureIds.put(feature, featureId);
+		}
+		return featureId;
+	}
+
+	/**
+	 * Returns the id of the classification, interning it into this dictionary if neither this dictionary nor its
+	 * parent already holds it.
+	 * @param classification
+	 * @return
+	 */
+	int internClassification(Classification classification){
+		int classificationId = getClassificationId(classification);
+
+		if (classificationId == NO_ID){
+			classificationId = firstClassificationId + classifications.size();
+
+			classification = Flyweight.UTIL.retain(classification);
+
+			classifications.add(classification);
+			classificationIds.put(classification, classificationId);
+		}
+		return classificationId;
+	}
+
+	/**
+	 * Returns the keys reordered by their associated index. The keys and indexes must be in the same order, as
+	 * returned by a map's keys() and values() methods.
+	 */
+	private static long[] sortByIndex(long[] keys, int[] indexes){
+		long[] indexPositions = new long[indexes.length];
+
+		for (int i = 0; i < indexes.length; i++){
+			indexPositions[i] = pack(indexes[i], i); // indexes are never negative so sort in the same order as the packed longs
+		}
+
+		Arrays.sort(indexPositions);
+
+		long[] sortedKeys = new long[keys.length];
+
+		for (int i = 0; i < indexPositions.length; i++){
+			sortedKeys[i] = keys[(int)indexPositions[i]];
+		}
+		return sortedKeys;
+	}
+
+	private static long pack(int classificationId, int featureId){
+		return ((long)classificationId << 32) | featureId;
+	}
+}
@@ -0,0 +1,137 @@
+package com.haines.ml.rce.naivebayes;
+
+/**
+ * The compiled form of the posterior and prior indexes of a frozen {@link DiscreteIndexDictionary}, held in
+ * {@link MinimalPerfectHash}es rather then open addressed maps. Keys are the dictionary's interned ids, the (classification,
+ * feature) ids packed into a long for posteriors and the classification id for priors, so they are always distinct and,
+ * unlike the hash codes of the properties themselves, never collide. Each slot of a hash holds only its key, so that keys
+ * that were never indexed can be told apart, and its accumulator index in two dense, parallel arrays. No features or
+ * classifications are referenced and, as there are no empty slots, this is smaller then the maps it replaces.
+ * <p>
+ * Instances are immutable and so are thread safe.
+ * @author haines
+ *
+ */
+final class DiscretePerfectHashIndex {
+
+	private final MinimalPerfectHash posteriorHash;
+	private final long[] posteriorKeys;
+	private final int[] posteriorIndexes;
+	private final MinimalPerfectHash priorHash;
+	private final int[] priorKeys;
+	private final int[] priorIndexes;
+
+	private DiscretePerfectHashIndex(MinimalPerfectHash posteriorHash, long[] posteriorKeys, int[] posteriorIndexes, MinimalPerfectHash priorHash, int[] priorKeys, int[] priorIndexes){
+		this.posteriorHash = posteriorHash;
+		this.posteriorKeys = posteriorKeys;
+		this.posteriorIndexes = posteriorIndexes;
+		this.priorHash = priorHash;
+		this.priorKeys = priorKeys;
+		this.priorIndexes = priorIndexes;
+	}
+
+	/**
+	 * Compiles the provided keys and their indexes into perfect hashes or returns null if a perfect hash could not be
+	 * found for them. The keys and indexes must be in the same order, as returned by a map's keys() and values() methods.
+	 * @param posteriorKeys
+	 * @param posteriorIndexes
+	 * @param priorKeys
+	 * @param priorIndexes
+	 * @return
+	 */
+	static DiscretePerfectHashIndex create(long[] posteriorKeys, int[] posteriorIndexes, int[] priorKeys, int[] priorIndexes){
+		long[] priorKeyHashes = new long[priorKeys.length];
+
+		for (int i = 0; i < priorKeys.length; i++){
+			priorKeyHashes[i] = priorKeys[i];
+		}
+
+		MinimalPerfectHash posteriorHash = MinimalPerfectHash.create(posteriorKeys);
+		MinimalPerfectHash priorHash = MinimalPerfectHash.create(priorKeyHashes);
+
+		if (posteriorHash == null || priorHash == null){
+			return null;
+		}
+
+		long[] posteriorSlotKeys = new long[posteriorKeys.length];
+		int[] posteriorSlotIndexes = new int[posteriorKeys.length];
+
+		for (int i = 0; i < posteriorKeys.length; i++){
+			int slot = posteriorHash.getSlot(posteriorKeys[i]);
+
+			posteriorSlotKeys[slot] = posteriorKeys[i];
+			posteriorSlotIndexes[slot] = posteriorIndexes[i];
+		}
+
+		int[] priorSlotKeys = new int[priorKeys.length];
+		int[] priorSlotIndexes = new int[priorKeys.length];
+
+		for (int i = 0; i < priorKeys.length; i++){
+			int slot = priorHash.getSlot(priorKeys[i]);
+
+			priorSlotKeys[slot] = priorKeys[i];
+			priorSlotIndexes[slot] = priorIndexes[i];
+		}
+
+		return new DiscretePerfectHashIndex(posteriorHash, posteriorSlotKeys, posteriorSlotIndexes, priorHash, priorSlotKeys, priorSlotIndexes);
+	}
+
+	int getPosteriorIndex(long key){
+		if (posteriorKeys.length == 0){
+			return NaiveBayesIndexes.NO_INDEX_FOUND;
+		}
+
+		int slot = posteriorHash.getSlot(key);
+
+		if (posteriorKeys[slot] == key){
+			return posteriorIndexes[slot];
+		}
+		return NaiveBayesIndexes.NO_INDEX_FOUND;
+	}
+
+	int getPriorIndex(int key){
+		if (priorKeys.length == 0){
+			return NaiveBayesIndexes.NO_INDEX_FOUND;
+		}
+
+		int slot = priorHash.getSlot(key);
+
+		if (priorKeys[slot] == key){
+			return priorIndexes[slot];
+		}
+		return NaiveBayesIndexes.NO_INDEX_FOUND;
+	}
+
+	/**
+	 * Returns the posterior keys in slot order. The returned array must not be modified.
+	 * @return
+	 */
+	long[] getPosteriorKeys(){
+		return posteriorKeys;
+	}
+
+	/**
+	 * Returns the posterior indexes in the same order as {@link #getPosteriorKeys()}. The returned array must not be
+	 * modified.
+	 * @return
+	 */
+	int[] getPosteriorIndexes(){
+		return posteriorIndexes;
+	}
+
+	/**
+	 * Returns the prior keys in slot order. The returned array must not be modified.
+	 * @return
+	 */
+	int[] getPriorKeys(){
+		return priorKeys;
+	}
+
+	/**
+	 * Returns the prior indexes in the same order as {@link #getPriorKeys()}. The returned array must not be modified.
+	 * @return
+	 */
+	int[] getPriorIndexes(){
+		return priorIndexes;
+	}
+}
@@ -0,0 +1,441 @@
+package com.haines.ml.rce.naivebayes;
+
+import gnu.trove.map.hash.THashMap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.Feature;
+import com.haines.ml.rce.model.Flyweight;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPosteriorProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPriorProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.NaiveBayesPriorDistributionProperty;
+
+/**
+ * Indexes that hash discrete properties straight to one of a fixed number of slots rather then allocating each property
+ * its own slot. No maps of discrete properties are maintained so the memory used is fixed up front and the cost of
+ * finding a slot does not grow with the number of properties seen.
+ * <p>
+ * So that the counts can be read back by property, each slot records the first property that hashed to it. A property
+ * may try up to numHashes slots, each chosen by a different hash, to find one that is either free or already its own.
+ * If they are all taken by other properties, it shares the first with its owner and its counts are attributed to that
+ * property instead. This is the accuracy that is traded for removing index maintenance from the event threads, and is
+ * reduced by using more slots or hashes.
+ * <p>
+ * The slot table is allocated once and only records which claim, if any, owns each slot. The claimed properties are
+ * kept in claim order so that clearing, iterating and copying only touch the slots that were used in the micro batch,
+ * rather then all 2^bits of them. A {@link #copy()} only takes the claims. Its counts are read through
+ * {@link #getSlottedDiscretePosteriors()} and {@link #getSlottedDiscretePriors()}, and any lookup of a property it already
+ * holds is answered from its claims, so a copy only allocates a slot table of its own if it claims a new slot. The
+ * distribution properties, of which there are only a handful per feature type, are allocated
+ * slots after the hashed slots as they would be by {@link NaiveBayesLocalIndexes} and are shared, copy on write, with
+ * any copy.
+ * There are no global indexes. Like the local indexes, instances are not thread safe.
+ * @author haines
+ *
+ */
+public class FeatureHashingNaiveBayesIndexes implements SlottedNaiveBayesIndexes {
+
+	private static final NaiveBayesIndexes NO_GLOBAL_INDEXES = new NaiveBayesGlobalIndexes();
+
+	private static final Function<? super Integer, ? extends NaiveBayesPriorDistributionProperty> PRIOR_TYPE_TRANSFORM_FUNCTION = new Function<Integer, NaiveBayesPriorDistributionProperty>(){
+
+		@Override
+		public NaiveBayesPriorDistributionProperty apply(Integer input) {
+			return new NaiveBayesPriorDistributionProperty(input);
+		}
+	};
+
+	private static final Function<SlottedProperty<DiscreteNaiveBayesPosteriorProperty>, DiscreteNaiveBayesPosteriorProperty> POSTERIOR_PROPERTY_FUNCTION = new Function<SlottedProperty<DiscreteNaiveBayesPosteriorProperty>, DiscreteNaiveBayesPosteriorProperty>(){
+
+		@Override
+		public DiscreteNaiveBayesPosteriorProperty apply(SlottedProperty<DiscreteNaiveBayesPosteriorProperty> input) {
+			return input.getProperty();
+		}
+	};
+
+	private static final Function<SlottedProperty<DiscreteNaiveBayesPriorProperty>, DiscreteNaiveBayesPriorProperty> PRIOR_PROPERTY_FUNCTION = new Function<SlottedProperty<DiscreteNaiveBayesPriorProperty>, DiscreteNaiveBayesPriorProperty>(){
+
+		@Override
+		public DiscreteNaiveBayesPriorProperty apply(SlottedProperty<DiscreteNaiveBayesPriorProperty> input) {
+			return input.getProperty();
+		}
+	};
+
+	private static final long PRIOR_SEED = 0x9e3779b97f4a7c15L;
+	private static final long MURMUR_MIX_1 = 0xff51afd7ed558ccdL;
+	private static final long MURMUR_MIX_2 = 0xc4ceb9fe1a85ec53L;
+
+	private static final int INITIAL_NUM_CLAIMS = 16;
+	private static final int NO_CLAIM = 0;
+
+	private final int numHashedSlots;
+	private final int hashedSlotMask;
+	private final int numHashes;
+	private Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes;
+	private Map<Integer, int[]> priorTypeIndexes;
+	private boolean typeIndexesShared;
+	private int[] slotClaims; // claim number, 1 based, of each slot's owner
+	private int[] claimedSlots;
+	private Feature[] claimedFeatures;
+	private Classification[] claimedClassifications;
+	private int numClaims;
+	private int maxIndex;
+
+	/**
+	 * @param hashedSlotBitDepth the number of bits of the hashed slot space, giving 2^hashedSlotBitDepth slots
+	 * @param numHashes the number of slots a property can try before sharing one with another property
+	 */
+	public FeatureHashingNaiveBayesIndexes(int hashedSlotBitDepth, int numHashes){
+		if (hashedSlotBitDepth < 1 || hashedSlotBitDepth > 30 || numHashes < 1){
+			throw new IllegalArgumentException("The hashed slot bit depth ("+hashedSlotBitDepth+") must be between 1 and 30 and the number of hashes ("+numHashes+") at least 1");
+		}
+		this.numHashedSlots = 1 << hashedSlotBitDepth;
+		this.hashedSlotMask = numHashedSlots - 1;
+		this.numHashes = numHashes;
+		this.posteriorTypeIndexes = new THashMap<NaiveBayesPosteriorDistributionProperty, int[]>();
+		this.priorTypeIndexes = new THashMap<Integer, int[]>();
+		this.slotClaims = new int[numHashedSlots];
+		this.claimedSlots = new int[Math.min(INITIAL_NUM_CLAIMS, numHashedSlots)];
+		this.claimedFeatures = new Feature[claimedSlots.length];
+		this.claimedClassifications = new Classification[claimedSlots.length];
+		this.maxIndex = numHashedSlots - 1;
+	}
+
+	private FeatureHashingNaiveBayesIndexes(FeatureHashingNaiveBayesIndexes indexes){
+		this.numHashedSlots = indexes.numHashedSlots;
+		this.hashedSlotMask = indexes.hashedSlotMask;
+		this.numHashes = indexes.numHashes;
+		this.posteriorTypeIndexes = indexes.posteriorTypeIndexes;
+		this.priorTypeIndexes = indexes.priorTypeIndexes;
+		this.typeIndexesShared = true;
+		this.slotClaims = null; // only rebuilt if this copy claims a new slot
+		this.claimedSlots = Arrays.copyOf(indexes.claimedSlots, indexes.numClaims);
+		this.claimedFeatures = Arrays.copyOf(indexes.claimedFeatures, indexes.numClaims);
+		this.claimedClassifications = Arrays.copyOf(indexes.claimedClassifications, indexes.numClaims);
+		this.numClaims = indexes.numClaims;
+		this.maxIndex = indexes.maxIndex;
+	}
+
+	@Override
+	public int getDiscretePosteriorIndex(Feature feature, Classification classification) {
+		return getSlot(feature, classification, mix(((long)classification.hashCode() << 32) | (feature.hashCode() & 0xFFFFFFFFL)));
+	}
+
+	@Override
+	public int getDiscretePriorIndex(Classification classification) {
+		return getSlot(null, classification, mix(classification.hashCode() ^ PRIOR_SEED));
+	}
+
+	/**
+	 * Returns the slot of the discrete property, claiming one if this is the first time it has been seen. Priors have no
+	 * feature.
+	 */
+	private int getSlot(Feature feature, Classification classification, long hash){
+		int firstSlot = (int)hash & hashedSlotMask;
+		int step = (int)(hash >>> 32) | 1; // odd so that no slot is tried twice
+
+		int slot = firstSlot;
+		for (int i = 0; i < numHashes; i++){
+			int claim = getClaim(slot);
+
+			if (claim < 0){
+				claimSlot(slot, feature, classification);
+
+				return slot;
+			}
+
+			Feature slotFeature = claimedFeatures[claim];
+
+			if ((feature == null? slotFeature == null: slotFeature != null && slotFeature.equals(feature)) && claimedClassifications[claim].equals(classification)){
+				return slot;
+			}
+
+			slot = (slot + step) & hashedSlotMask;
+		}
+
+		return firstSlot; // every slot is owned by another property so share the first
+	}
+
+	/**
+	 * Returns the index of the claim that owns the slot or -1 if it is free.
+	 */
+	private int getClaim(int slot){
+		if (slotClaims != null){
+			return slotClaims[slot] - 1;
+		}
+
+		for (int claim = 0; claim < numClaims; claim++){ // a copy without a slot table. Its counts are read through its slots so this is only for the odd lookup
+			if (claimedSlots[claim] == slot){
+				return claim;
+			}
+		}
+		return -1;
+	}
+
+	private void claimSlot(int slot, Feature feature, Classification classification){
+		if (slotClaims == null){ // a copy is now being written to so needs a slot table of its own
+			rebuildSlotClaims();
+		}
+
+		if (numClaims == claimedSlots.length){
+			int numClaimsCapacity = Math.min(Math.max(claimedSlots.length * 2, INITIAL_NUM_CLAIMS), numHashedSlots); // each slot can only be claimed once
+
+			claimedSlots = Arrays.copyOf(claimedSlots, numClaimsCapacity);
+			claimedFeatures = Arrays.copyOf(claimedFeatures, numClaimsCapacity);
+			claimedClassifications = Arrays.copyOf(claimedClassifications, numClaimsCapacity);
+		}
+
+		claimedSlots[numClaims] = slot;
+		claimedFeatures[numClaims] = (feature != null)? Flyweight.UTIL.retain(feature): null; // don't hold on to a view of an event that will be reused
+		claimedClassifications[numClaims] = Flyweight.UTIL.retain(classification);
+
+		slotClaims[slot] = ++numClaims;
+	}
+
+	private void rebuildSlotClaims(){
+		slotClaims = new int[numHashedSlots];
+
+		for (int claim = 0; claim < numClaims; claim++){
+			slotClaims[claimedSlots[claim]] = claim + 1;
+		}
+	}
+
+	@Override
+	public int[] getPosteriorDistributionIndexes(NaiveBayesPosteriorDistributionProperty types, int numIdxes) {
+		int[] indexes = posteriorTypeIndexes.get(types);
+
+		if (indexes == null){
+			if (numIdxes == UNKNOWN_NUM_INDEXES){
+				return NO_INDEXES_FOUND;
+			}
+			indexes = allocateIndexes(numIdxes);
+
+			unshareTypeIndexes();
+
+			posteriorTypeIndexes.put(retain(types), indexes);
+		} else{
+			checkIndexLength(types, indexes, numIdxes);
+		}
+		return indexes;
+	}
+
+	@Override
+	public int[] getPriorDistributionIndexes(int classificationIndex, int numIndexes) {
+		int[] indexes = priorTypeIndexes.get(classificationIndex);
+
+		if (indexes == null){
+			if (numIndexes == UNKNOWN_NUM_INDEXES){
+				return NO_INDEXES_FOUND;
+			}
+			indexes = allocateIndexes(numIndexes);
+
+			unshareTypeIndexes();
+
+			priorTypeIndexes.put(classificationIndex, indexes);
+		} else{
+			checkIndexLength(null, indexes, numIndexes);
+		}
+		return indexes;
+	}
+
+	private void unshareTypeIndexes(){
+		if (typeIndexesShared){
+			posteriorTypeIndexes = new THashMap<NaiveBayesPosteriorDistributionProperty, int[]>(posteriorTypeIndexes); // the index arrays are never written to once allocated so can be shared
+			priorTypeIndexes = new THashMap<Integer, int[]>(priorTypeIndexes);
+
+			typeIndexesShared = false;
+		}
+	}
+
+	private int[] allocateIndexes(int numIndexes){
+		int[] indexes = new int[numIndexes];
+
+		for (int i = 0; i < indexes.length; i++){
+			indexes[i] = ++maxIndex;
+		}
+		return indexes;
+	}
+
+	private static void checkIndexLength(NaiveBayesPosteriorDistributionProperty types, int[] indexes, int numIdxes) {
+		if (indexes.length != numIdxes && numIdxes != UNKNOWN_NUM_INDEXES){
+			throw new IllegalArgumentException("Existing slots for type: "+types+" does not have the required num of requested slots. Wanted: "+numIdxes+" slots, found: "+indexes.length+" slots");
+		}
+	}
+
+	private static NaiveBayesPosteriorDistributionProperty retain(NaiveBayesPosteriorDistributionProperty types){
+		if (types.getClassification() instanceof Flyweight){
+			return new NaiveBayesPosteriorDistributionProperty(types.getFeatureType(), Flyweight.UTIL.retain(types.getClassification()));
+		}
+		return types;
+	}
+
+	/**
+	 * Returns the posterior properties that have claimed a slot, in claim order. Only the claims made before this method
+	 * is called are returned and the returned iterable is only valid until this instance is next cleared.
+	 */
+	@Override
+	public Iterable<DiscreteNaiveBayesPosteriorProperty> getDiscretePosteriors() {
+		return Iterables.transform(getSlottedDiscretePosteriors(), POSTERIOR_PROPERTY_FUNCTION);
+	}
+
+	/**
+	 * Returns the prior properties that have claimed a slot, in claim order. Only the claims made before this method is
+	 * called are returned and the returned iterable is only valid until this instance is next cleared.
+	 */
+	@Override
+	public Iterable<DiscreteNaiveBayesPriorProperty> getDiscretePriors() {
+		return Iterables.transform(getSlottedDiscretePriors(), PRIOR_PROPERTY_FUNCTION);
+	}
+
+	/**
+	 * The equivalent of {@link #getDiscretePosteriors()} that also returns the slot each property claimed.
+	 */
+	@Override
+	public Iterable<SlottedProperty<DiscreteNaiveBayesPosteriorProperty>> getSlottedDiscretePosteriors() {
+		final int[] slots = claimedSlots;
+		final Feature[] features = claimedFeatures;
+		final Classification[] classifications = claimedClassifications;
+		final int numClaims = this.numClaims;
+
+		return new Iterable<SlottedProperty<DiscreteNaiveBayesPosteriorProperty>>(){
+
+			@Override
+			public Iterator<SlottedProperty<DiscreteNaiveBayesPosteriorProperty>> iterator() {
+				return new AbstractIterator<SlottedProperty<DiscreteNaiveBayesPosteriorProperty>>(){
+
+					private int claim = 0;
+
+					@Override
+					protected SlottedProperty<DiscreteNaiveBayesPosteriorProperty> computeNext() {
+						while (claim < numClaims){
+							int currentClaim = claim++;
+
+							if (features[currentClaim] != null){
+								return new SlottedProperty<DiscreteNaiveBayesPosteriorProperty>(new DiscreteNaiveBayesPosteriorProperty(features[currentClaim], classifications[currentClaim]), slots[currentClaim]);
+							}
+						}
+						return endOfData();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * The equivalent of {@link #getDiscretePriors()} that also returns the slot each property claimed.
+	 */
+	@Override
+	public Iterable<SlottedProperty<DiscreteNaiveBayesPriorProperty>> getSlottedDiscretePriors() {
+		final int[] slots = claimedSlots;
+		final Feature[] features = claimedFeatures;
+		final Classification[] classifications = claimedClassifications;
+		final int numClaims = this.numClaims;
+
+		return new Iterable<SlottedProperty<DiscreteNaiveBayesPriorProperty>>(){
+
+			@Override
+			public Iterator<SlottedProperty<DiscreteNaiveBayesPriorProperty>> iterator() {
+				return new AbstractIterator<SlottedProperty<DiscreteNaiveBayesPriorProperty>>(){
+
+					private int claim = 0;
+
+					@Override
+					protected SlottedProperty<DiscreteNaiveBayesPriorProperty> computeNext() {
+						while (claim < numClaims){
+							int currentClaim = claim++;
+
+							if (features[currentClaim] == null){
+								return new SlottedProperty<DiscreteNaiveBayesPriorProperty>(new DiscreteNaiveBayesPriorProperty(classifications[currentClaim]), slots[currentClaim]);
+							}
+						}
+						return endOfData();
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public Iterable<NaiveBayesPosteriorDistributionProperty> getPosteriorDistributionsTypes() {
+		return posteriorTypeIndexes.keySet();
+	}
+
+	@Override
+	public Iterable<NaiveBayesPriorDistributionProperty> getPriorDistributionTypes() {
+		return Iterables.transform(priorTypeIndexes.keySet(), PRIOR_TYPE_TRANSFORM_FUNCTION);
+	}
+
+	@Override
+	public int getMaxIndex() {
+		return maxIndex;
+	}
+
+	@Override
+	public void clear() {
+		if (slotClaims != null){
+			for (int claim = 0; claim < numClaims; claim++){ // only reset the slots used since the last clear
+				slotClaims[claimedSlots[claim]] = NO_CLAIM;
+			}
+		}
+		Arrays.fill(claimedFeatures, 0, numClaims, null); // copies take their own claims so only need releasing here
+		Arrays.fill(claimedClassifications, 0, numClaims, null);
+		numClaims = 0;
+
+		if (typeIndexesShared){ // leave the copy with the shared maps
+			posteriorTypeIndexes = new THashMap<NaiveBayesPosteriorDistributionProperty, int[]>();
+			priorTypeIndexes = new THashMap<Integer, int[]>();
+
+			typeIndexesShared = false;
+		} else{
+			posteriorTypeIndexes.clear();
+			priorTypeIndexes.clear();
+		}
+
+		maxIndex = numHashedSlots - 1;
+	}
+
+	@Override
+	public NaiveBayesIndexes copy() {
+		typeIndexesShared = true;
+
+		return new FeatureHashingNaiveBayesIndexes(this);
+	}
+
+	@Override
+	public NaiveBayesIndexes getGlobalIndexes() {
+		return NO_GLOBAL_INDEXES;
+	}
+
+	@Override
+	public long getEpoch() {
+		return NO_GLOBAL_INDEXES.getEpoch();
+	}
+
+	/**
+	 * Returns whether this instance holds a slot table. Visible for testing.
+	 */
+	boolean hasSlotTable(){
+		return slotClaims != null;
+	}
+
+	@Override
+	public String toString(){
+		return "Feature Hashing Indexes ("+numHashedSlots+" slots, "+numHashes+" hashes)";
+	}
+
+	private static long mix(long hash){ // murmur3 64 bit finaliser
+		hash ^= hash >>> 33;
+		hash *= MURMUR_MIX_1;
+		hash ^= hash >>> 33;
+		hash *= MURMUR_MIX_2;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+}
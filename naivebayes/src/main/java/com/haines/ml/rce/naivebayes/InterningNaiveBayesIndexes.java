@@ -0,0 +1,44 @@
+package com.haines.ml.rce.naivebayes;
+
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.Feature;
+
+/**
+ * Indexes that intern discrete features and classifications into dense int ids. A lookup strategy can resolve the id
+ * of each of an event's features and classifications once and then find the index of every (feature, classification)
+ * pair with a single probe keyed by the ids, rather then hashing and comparing the feature and classification again
+ * for every pair. Ids are only valid until the indexes are next cleared.
+ * @author haines
+ *
+ */
+public interface InterningNaiveBayesIndexes extends NaiveBayesIndexes{
+
+	/**
+	 * Returns the id of the feature, interning it if it has not been seen before.
+	 * @param feature
+	 * @return
+	 */
+	int getFeatureId(Feature feature);
+	
+	/**
+	 * Returns the id of the classification, interning it if it has not been seen before.
+	 * @param classification
+	 * @return
+	 */
+	int getClassificationId(Classification classification);
+	
+	/**
+	 * The equivalent of {@link #getDiscretePosteriorIndex(Feature, Classification)} for interned ids.
+	 * @param featureId
+	 * @param classificationId
+	 * @return
+	 */
+	int getDiscretePosteriorIndex(int featureId, int classificationId);
+	
+	/**
+	 * The equivalent of {@link #getDiscretePriorIndex(Classification)} for an interned id.
+	 * @param classificationId
+	 * @return
+	 */
+	int getDiscretePriorIndex(int classificationId);
+}
@@ -0,0 +1,175 @@
+package com.haines.ml.rce.naivebayes;
+
+import java.util.BitSet;
+
+/**
+ * A minimal perfect hash over a fixed set of distinct 64 bit key hashes, built in the style of CHD (compress, hash and
+ * displace). Keys are first hashed into buckets of around {@value #AVERAGE_BUCKET_SIZE} keys. Then, largest bucket
+ * first, each bucket searches for the first displacement that moves all of its keys into free slots of a table that has
+ * exactly one slot per key. Only the displacement of each bucket is stored so finding the slot of a key costs a couple
+ * of hash mixes and a single array read, regardless of how many keys there are.
+ * <p>
+ * The slot returned for a key hash that was not in the set is arbitrary so callers must check the key held in the slot.
+ * Instances are immutable and so are thread safe.
+ * @author haines
+ *
+ */
+final class MinimalPerfectHash {
+
+	private static final int AVERAGE_BUCKET_SIZE = 4;
+	private static final int MAX_SEED_ATTEMPTS = 8;
+	private static final long MAX_DISPLACEMENTS_PER_KEY = 64;
+	private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+	private static final long MURMUR_MIX_1 = 0xff51afd7ed558ccdL;
+	private static final long MURMUR_MIX_2 = 0xc4ceb9fe1a85ec53L;
+
+	private final int[] displacements;
+	private final long seed;
+	private final int numKeys;
+
+	private MinimalPerfectHash(int[] displacements, long seed, int numKeys){
+		this.displacements = displacements;
+		this.seed = seed;
+		this.numKeys = numKeys;
+	}
+
+	/**
+	 * Builds a minimal perfect hash of the provided key hashes, which must all be distinct, or returns null if one could
+	 * not be found.
+	 * @param keyHashes
+	 * @return
+	 */
+	static MinimalPerfectHash create(long[] keyHashes){
+		int numKeys = keyHashes.length;
+		int numBuckets = Math.max(1, (numKeys + AVERAGE_BUCKET_SIZE - 1) / AVERAGE_BUCKET_SIZE);
+
+		for (int attempt = 1; attempt <= MAX_SEED_ATTEMPTS; attempt++){
+			long seed = mix(attempt * GOLDEN_RATIO);
+
+			int[] displacements = displace(keyHashes, numBuckets, seed);
+
+			if (displacements != null){
+				return new MinimalPerfectHash(displacements, seed, numKeys);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the slot, between 0 and {@link #getNumKeys()} exclusive, of the provided key hash. If the key hash was not
+	 * one that this instance was built from then the slot is arbitrary.
+	 * @param keyHash
+	 * @return
+	 */
+	int getSlot(long keyHash){
+		long hash = mix(keyHash ^ seed);
+
+		return getSlot(hash, displacements[getBucket(hash, displacements.length)], numKeys);
+	}
+
+	int getNumKeys(){
+		return numKeys;
+	}
+
+	private static int[] displace(long[] keyHashes, int numBuckets, long seed){
+		int numKeys = keyHashes.length;
+
+		// group the hashes by bucket, counting sort style, so that each bucket's hashes are contiguous
+
+		int[] bucketStarts = new int[numBuckets + 1];
+		for (long keyHash: keyHashes){
+			bucketStarts[getBucket(mix(keyHash ^ seed), numBuckets) + 1]++;
+		}
+
+		int maxBucketSize = 0;
+		for (int i = 0; i < numBuckets; i++){
+			maxBucketSize = Math.max(maxBucketSize, bucketStarts[i + 1]);
+			bucketStarts[i + 1] += bucketStarts[i];
+		}
+
+		long[] bucketHashes = new long[numKeys];
+		int[] bucketCursors = new int[numBuckets];
+		for (long keyHash: keyHashes){
+			long hash = mix(keyHash ^ seed);
+			int bucket = getBucket(hash, numBuckets);
+
+			bucketHashes[bucketStarts[bucket] + bucketCursors[bucket]++] = hash;
+		}
+
+		// place the largest buckets first, whilst there is most room for them
+
+		int[] sizeStarts = new int[maxBucketSize + 2];
+		for (int bucket = 0; bucket < numBuckets; bucket++){
+			sizeStarts[maxBucketSize - getBucketSize(bucketStarts, bucket) + 1]++;
+		}
+		for (int i = 0; i < maxBucketSize + 1; i++){
+			sizeStarts[i + 1] += sizeStarts[i];
+		}
+
+		int[] bucketOrder = new int[numBuckets];
+		for (int bucket = 0; bucket < numBuckets; bucket++){
+			bucketOrder[sizeStarts[maxBucketSize - getBucketSize(bucketStarts, bucket)]++] = bucket;
+		}
+
+		int[] displacements = new int[numBuckets];
+		int[] bucketSlots = new int[maxBucketSize];
+		BitSet takenSlots = new BitSet(numKeys);
+		long maxDisplacement = Math.min(Integer.MAX_VALUE, MAX_DISPLACEMENTS_PER_KEY * numKeys + AVERAGE_BUCKET_SIZE);
+
+		for (int bucket: bucketOrder){
+			int bucketStart = bucketStarts[bucket];
+			int bucketSize = getBucketSize(bucketStarts, bucket);
+
+			if (bucketSize == 0){
+				break; // all remaining buckets are also empty
+			}
+
+			int displacement = 0;
+			while (!tryPlace(bucketHashes, bucketStart, bucketSize, displacement, numKeys, takenSlots, bucketSlots)){
+				if (++displacement >= maxDisplacement){
+					return null; // give up on this seed
+				}
+			}
+			displacements[bucket] = displacement;
+		}
+		return displacements;
+	}
+
+	private static boolean tryPlace(long[] bucketHashes, int bucketStart, int bucketSize, int displacement, int numKeys, BitSet takenSlots, int[] bucketSlots){
+		for (int i = 0; i < bucketSize; i++){
+			int slot = getSlot(bucketHashes[bucketStart + i], displacement, numKeys);
+
+			if (takenSlots.get(slot)){
+				for (int j = 0; j < i; j++){ // undo the slots of this bucket that were taken for this displacement
+					takenSlots.clear(bucketSlots[j]);
+				}
+				return false;
+			}
+			takenSlots.set(slot);
+			bucketSlots[i] = slot;
+		}
+		return true;
+	}
+
+	private static int getBucketSize(int[] bucketStarts, int bucket){
+		return bucketStarts[bucket + 1] - bucketStarts[bucket];
+	}
+
+	private static int getBucket(long hash, int numBuckets){
+		return (int)((hash >>> 1) % numBuckets);
+	}
+
+	private static int getSlot(long hash, int displacement, int numKeys){
+		return (int)((mix(hash + (displacement + 1) * GOLDEN_RATIO) >>> 1) % numKeys);
+	}
+
+	private static long mix(long hash){ // murmur3 64 bit finaliser
+		hash ^= hash >>> 33;
+		hash *= MURMUR_MIX_1;
+		hash ^= hash >>> 33;
+		hash *= MURMUR_MIX_2;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+}
@@ -9,6 +9,7 @@ import com.haines.ml.rce.accumulator.handlers.ClassificationHandler;
 import com.haines.ml.rce.accumulator.handlers.FeatureHandler;
 import com.haines.ml.rce.model.distribution.DistributionParameters;
 import com.haines.ml.rce.naivebayes.NaiveBayesIndexes.NaiveBayesPosteriorDistributionProperty;
+import com.haines.ml.rce.naivebayes.SlottedNaiveBayesIndexes.SlottedProperty;
 import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts;
 import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts.DiscreteNaiveBayesCounts;
 import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts.NaiveBayesDistributionCounts;
@@ -23,6 +24,7 @@ public class NaiveBayesAccumulatorBackedCountsProvider implements NaiveBayesCoun
 
 	private final Function<NaiveBayesPosteriorProperty, NaiveBayesCounts<?>> posteriorPropertyToCountsFunction;
 	private final Function<NaiveBayesPriorProperty, NaiveBayesCounts<?>> priorPropertyToCountsFunction;
+	private final Function<SlottedProperty<?>, NaiveBayesCounts<?>> slottedPropertyToCountsFunction;
 	
 	private final NaiveBayesIndexes indexes;
 	private final HandlerRepository<?> featureHandlers;
@@ -103,16 +105,40 @@ public class NaiveBayesAccumulatorBackedCountsProvider implements NaiveBayesCoun
 				}
 			}
 		};
+		
+		this.slottedPropertyToCountsFunction = new Function<SlottedProperty<?>, NaiveBayesCounts<?>>(){
+
+			@Override
+			public NaiveBayesCounts<?> apply(SlottedProperty<?> input) {
+				int count = accumulator.getAccumulatorValue(input.getSlot());
+				
+				if (count > 0){
+					return new DiscreteNaiveBayesCounts(input.getProperty(), count);
+				} else{
+					return null;
+				}
+			}
+		};
 	}
 
 	private Iterable<NaiveBayesCounts<?>> getPosteriorCounts(NaiveBayesIndexes indexes) {
+		if (indexes instanceof SlottedNaiveBayesIndexes){ // read the counts straight from the slots rather then looking each property up again
+			return Iterables.concat(getSlottedCounts(((SlottedNaiveBayesIndexes)indexes).getSlottedDiscretePosteriors()), Iterables.transform(indexes.getPosteriorDistributionsTypes(), posteriorPropertyToCountsFunction));
+		}
 		return Iterables.filter(Iterables.transform(Iterables.concat(indexes.getDiscretePosteriors(), indexes.getPosteriorDistributionsTypes()), posteriorPropertyToCountsFunction), Predicates.notNull());
 	}
 
 	private Iterable<NaiveBayesCounts<?>> getPriorCounts(NaiveBayesIndexes indexes) {
+		if (indexes instanceof SlottedNaiveBayesIndexes){
+			return Iterables.concat(getSlottedCounts(((SlottedNaiveBayesIndexes)indexes).getSlottedDiscretePriors()), Iterables.transform(indexes.getPriorDistributionTypes(), priorPropertyToCountsFunction));
+		}
 		return Iterables.filter(Iterables.transform(Iterables.concat(indexes.getDiscretePriors(), indexes.getPriorDistributionTypes()), priorPropertyToCountsFunction), Predicates.notNull());
 	}
 	
+	private Iterable<NaiveBayesCounts<?>> getSlottedCounts(Iterable<? extends SlottedProperty<?>> slottedProperties){
+		return Iterables.filter(Iterables.transform(slottedProperties, slottedPropertyToCountsFunction), Predicates.notNull());
+	}
+	
 	private Iterable<NaiveBayesCounts<?>> getPosteriorCounts(){
 		return Iterables.concat(getPosteriorCounts(indexes), getPosteriorCounts(indexes.getGlobalIndexes()));
 	}
@@ -1,7 +1,5 @@
 package com.haines.ml.rce.naivebayes;
 
-import gnu.trove.map.hash.THashMap;
-
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -9,6 +7,7 @@ import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.haines.ml.rce.model.Classification;
 import com.haines.ml.rce.model.Feature;
@@ -17,46 +16,50 @@ import com.haines.ml.rce.model.Feature;
  * This class stores global indexes shared between all accumulator event consumers in a single
  * pipeline (live, staging). This is used to aid in positioning frequently used accumulators 
  * adjacent to each other so that they will probabilistically result in fewer cacheline misses. 
- * Note that the threading policy of instances of this class assumes a single writer paradim 
- * (which will be the accumulator extractor). Consequently, as the maps contained in this class
- * are not synchronised, care needs to be taken to ensure that no thread is reading values from
- * this map whilst an update is taking place. This can partially be accomplished by using a single
- * instance for the staging and live pipelines configured in {@link SwitchableAccumulatorEventConsumer}
- * but additional care will need to be taken to ensure that no existing thread is still operating
- * in a paticular pipeline prior to writing to the index
+ * Instances are immutable once built and are stamped with an epoch. Rather then being updated
+ * in place, a new version with the next epoch is built by the single writer (the window consumer)
+ * off the event threads, using a {@link Builder}, and swapped in through a 
+ * {@link VolatileNaiveBayesGlobalIndexesProvider}. Readers therefore never see a partially written
+ * index and each {@link NaiveBayesLocalIndexes} adopts the latest version at its next micro batch
+ * boundary.
+ * <p>
+ * As the discrete key set of a version is frozen once built, its dictionary can optionally be
+ * compiled into a {@link DiscretePerfectHashIndex} so that global hits are resolved with a single
+ * hash and array read and held in less memory. See {@link Builder#usePerfectHash(boolean)}.
  * @author haines
  *
  */
 public class NaiveBayesGlobalIndexes extends DefaultNaiveBayesIndexes{
 
 	private static final Logger LOG = LoggerFactory.getLogger(NaiveBayesGlobalIndexes.class);
+	
+	public static final long INITIAL_EPOCH = 0;
+	
+	private final long epoch;
+	
 	/**
-	 * Enables constructions of this class to use a more fitting map (such as EnumMap) if
-	 * feature/classification instances can be constrained.
+	 * Creates global indexes from the provided maps. The discrete indexes are copied into a dictionary keyed by
+	 * interned ids so the maps are not retained.
 	 * 
 	 * @param posteriorProbabilityIndexes
 	 * @param priorProbabilityIndexes
 	 */
 	public NaiveBayesGlobalIndexes(Map<Classification, Map<Feature, Integer>> posteriorProbabilityIndexes, Map<Classification, Integer> priorProbabilityIndexes, Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes, Map<Integer, int[]> priorTypeIndexes){
-		super(posteriorProbabilityIndexes, priorProbabilityIndexes, posteriorTypeIndexes, priorTypeIndexes, getGreatestIndex(posteriorProbabilityIndexes, priorProbabilityIndexes, posteriorTypeIndexes, priorTypeIndexes)); // no index set at beginning.
+		this(DiscreteIndexDictionary.create(posteriorProbabilityIndexes, priorProbabilityIndexes), ImmutableMap.copyOf(posteriorTypeIndexes), ImmutableMap.copyOf(priorTypeIndexes), INITIAL_EPOCH, false);
 	}
 	
-	private static int getGreatestIndex(Map<Classification, Map<Feature, Integer>> posteriorProbabilityIndexes, Map<Classification, Integer> priorProbabilityIndexes, Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes, Map<Integer, int[]> priorTypeIndexes) {
-		Integer currentMax = NO_INDEX_FOUND;
+	private NaiveBayesGlobalIndexes(DiscreteIndexDictionary discreteIndexes, ImmutableMap<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes, ImmutableMap<Integer, int[]> priorTypeIndexes, long epoch, boolean usePerfectHash){
+		super(discreteIndexes, posteriorTypeIndexes, priorTypeIndexes, getGreatestIndex(discreteIndexes, posteriorTypeIndexes, priorTypeIndexes)); // no index set at beginning.
 		
-		for (Map<Feature, Integer> classIndexes: posteriorProbabilityIndexes.values()){
-			for (Integer idx: classIndexes.values()){
-				if (currentMax < idx){
-					currentMax = idx;
-				}
-			}
-		}
+		this.epoch = epoch;
 		
-		for (Integer idx: priorProbabilityIndexes.values()){
-			if (currentMax < idx){
-				currentMax = idx;
-			}
+		if (usePerfectHash && !discreteIndexes.compile()){
+			LOG.warn("Unable to compile the global indexes into a perfect hash. Falling back to hash map lookups");
 		}
+	}
+	
+	private static int getGreatestIndex(DiscreteIndexDictionary discreteIndexes, Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes, Map<Integer, int[]> priorTypeIndexes) {
+		int currentMax = discreteIndexes.getMaxIndex();
 		
 		for (int[] indexes: Iterables.concat(posteriorTypeIndexes.values(), priorTypeIndexes.values())){
 			for (int idx: indexes){
@@ -73,7 +76,7 @@ public class NaiveBayesGlobalIndexes extends DefaultNaiveBayesIndexes{
 
 	@Inject
 	public NaiveBayesGlobalIndexes(){
-		this(new THashMap<Classification, Map<Feature, Integer>>(), new THashMap<Classification, Integer>(), new THashMap<NaiveBayesPosteriorDistributionProperty, int[]>(), new THashMap<Integer, int[]>());
+		this(new DiscreteIndexDictionary(), ImmutableMap.<NaiveBayesPosteriorDistributionProperty, int[]>of(), ImmutableMap.<Integer, int[]>of(), INITIAL_EPOCH, false);
 	}
 	
 	@Override
@@ -81,9 +84,19 @@ public class NaiveBayesGlobalIndexes extends DefaultNaiveBayesIndexes{
 		return map; // global indexes can have items in them
 	}
 	
+	@Override
+	public long getEpoch() {
+		return epoch;
+	}
+	
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("Global indexes are immutable. Publish a new version instead");
+	}
+	
 	@Override
 	public String toString(){
-		return "Global Indexes";
+		return "Global Indexes (epoch "+epoch+")";
 	}
 
 	@Override
@@ -111,7 +124,74 @@ public class NaiveBayesGlobalIndexes extends DefaultNaiveBayesIndexes{
 			
 			assert((currentThread == null)? (currentThread = Thread.currentThread()) == Thread.currentThread(): currentThread == Thread.currentThread()); // when running with assertions on, ensure that only one thread has access to update this index.
 
-			this.indexes = (NaiveBayesGlobalIndexes)indexes;
+			if (indexes.getEpoch() < this.indexes.getEpoch()){
+				throw new IllegalArgumentException("Unable to publish global indexes from epoch "+indexes.getEpoch()+" as they are older then the current epoch "+this.indexes.getEpoch());
+			}
+			
+			this.indexes = (NaiveBayesGlobalIndexes)indexes; // a single volatile write so readers see either the old or the new version, never a mixture
 		}	
 	}
+	
+	/**
+	 * Builds a new, immutable version of the global indexes. Builders are not thread safe and can only be built once.
+	 * @author haines
+	 *
+	 */
+	public static class Builder {
+		
+		private final long epoch;
+		private final DiscreteIndexDictionary discreteIndexes;
+		private final ImmutableMap.Builder<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes;
+		private final ImmutableMap.Builder<Integer, int[]> priorTypeIndexes;
+		private boolean usePerfectHash;
+		
+		public Builder(long epoch){
+			this.epoch = epoch;
+			this.discreteIndexes = new DiscreteIndexDictionary();
+			this.posteriorTypeIndexes = ImmutableMap.builder();
+			this.priorTypeIndexes = ImmutableMap.builder();
+			this.usePerfectHash = false;
+		}
+		
+		/**
+		 * Whether the discrete indexes should be compiled into a minimal perfect hash when built. This makes building
+		 * slower but lookups of frequently seen properties faster and the indexes smaller. If a perfect hash can't be found, the indexes are
+		 * looked up through their maps as usual.
+		 * @param usePerfectHash
+		 * @return
+		 */
+		public Builder usePerfectHash(boolean usePerfectHash){
+			this.usePerfectHash = usePerfectHash;
+			
+			return this;
+		}
+		
+		public Builder addDiscretePosteriorIndex(Feature feature, Classification classification, int index){
+			discreteIndexes.putPosteriorIndex(feature, classification, index);
+			
+			return this;
+		}
+		
+		public Builder addDiscretePriorIndex(Classification classification, int index){
+			discreteIndexes.putPriorIndex(classification, index);
+			
+			return this;
+		}
+		
+		public Builder addPosteriorDistributionIndexes(NaiveBayesPosteriorDistributionProperty types, int[] indexes){
+			posteriorTypeIndexes.put(types, indexes);
+			
+			return this;
+		}
+		
+		public Builder addPriorDistributionIndexes(int classificationType, int[] indexes){
+			priorTypeIndexes.put(classificationType, indexes);
+			
+			return this;
+		}
+		
+		public NaiveBayesGlobalIndexes build(){
+			return new NaiveBayesGlobalIndexes(discreteIndexes, posteriorTypeIndexes.build(), priorTypeIndexes.build(), epoch, usePerfectHash);
+		}
+	}
 }
@@ -41,6 +41,13 @@ public interface NaiveBayesIndexes {
 
 	NaiveBayesIndexes getGlobalIndexes();
 	
+	/**
+	 * Returns the version of the global indexes that these indexes are based on. Each new version of the global
+	 * indexes that is published has a greater epoch then the last.
+	 * @return
+	 */
+	long getEpoch();
+	
 	public static class NaiveBayesPosteriorDistributionProperty implements NaiveBayesPosteriorProperty{
 		private final int featureType;
 		private final Classification classification;
@@ -9,8 +9,17 @@ import javax.inject.Named;
 
 import com.haines.ml.rce.model.Classification;
 import com.haines.ml.rce.model.Feature;
+import com.haines.ml.rce.model.Flyweight;
 
-public class NaiveBayesLocalIndexes extends DefaultNaiveBayesIndexes{
+/**
+ * The indexes of a single worker. Properties missing from the current version of the global indexes are given local
+ * indexes, above the greatest global index, until the next micro batch boundary. The discrete indexes are layered over
+ * those of the global indexes so that features and classifications are interned into one id space, allowing a pair
+ * known either globally or locally to be found with a single probe by its ids.
+ * @author haines
+ *
+ */
+public class NaiveBayesLocalIndexes extends DefaultNaiveBayesIndexes implements InterningNaiveBayesIndexes{
 
 	public static final String INJECT_BINDING_GLOBAL_INDEXES_KEY = "com.haines.ml.rce.naivebayes.globalIndexes";
 	private final NaiveBayesIndexesProvider globalIndexesProvider;
@@ -23,20 +32,50 @@ public class NaiveBayesLocalIndexes extends DefaultNaiveBayesIndexes{
 		
 		this.globalIndexesProvider = globalIndexesProvider;
 		this.currentGlobalIndexes = globalIndexesProvider.getIndexes();
+		
+		discreteIndexes.clear(getDiscreteIndexes(currentGlobalIndexes)); // the provided maps must be empty so there is nothing to lose
+	}
+	
+	/**
+	 * Creates local indexes from a dictionary that must either already be layered over the discrete indexes of the
+	 * global indexes returned by the provider or hold all of their entries itself, as a copy of the global indexes does.
+	 */
+	NaiveBayesLocalIndexes(DiscreteIndexDictionary discreteIndexes, Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes, Map<Integer, int[]> priorTypeIndexes, NaiveBayesIndexesProvider globalIndexesProvider){
+		this(discreteIndexes, posteriorTypeIndexes, priorTypeIndexes, globalIndexesProvider, globalIndexesProvider.getIndexes());
+	}
+	
+	private NaiveBayesLocalIndexes(DiscreteIndexDictionary discreteIndexes, Map<NaiveBayesPosteriorDistributionProperty, int[]> posteriorTypeIndexes, Map<Integer, int[]> priorTypeIndexes, NaiveBayesIndexesProvider globalIndexesProvider, NaiveBayesIndexes currentGlobalIndexes){
+		super(discreteIndexes, posteriorTypeIndexes, priorTypeIndexes, currentGlobalIndexes.getMaxIndex());
+		
+		this.globalIndexesProvider = globalIndexesProvider;
+		this.currentGlobalIndexes = currentGlobalIndexes;
 	}
 	
 	@Override
 	public void clear() {
 		super.clear();
 		
-		this.currentGlobalIndexes = globalIndexesProvider.getIndexes(); // update the global index. Remember that due to the chain and order of events, this means that the global index will actually be 2 windows behind.
+		this.currentGlobalIndexes = globalIndexesProvider.getIndexes(); // adopt the latest published version. As clear is only called at a micro batch boundary, the version never changes whilst slots are being allocated against it
+		
+		discreteIndexes.clear(getDiscreteIndexes(currentGlobalIndexes)); // ids given out before this point are no longer valid
 		
 		this.maxIndex = currentGlobalIndexes.getMaxIndex(); // update to the global index max when clearing so that the global name space is 0->g.maxIdx and local name space is g.maxId -> Integer.MAX_VALUE
 	}
 
 	@Inject
 	public NaiveBayesLocalIndexes(@Named(INJECT_BINDING_GLOBAL_INDEXES_KEY) NaiveBayesIndexesProvider globalIndexes){
-		this(new THashMap<Classification, Map<Feature, Integer>>(), new THashMap<Classification, Integer>(), new THashMap<NaiveBayesPosteriorDistributionProperty, int[]>(), new THashMap<Integer, int[]>(), globalIndexes);
+		this(globalIndexes, globalIndexes.getIndexes());
+	}
+	
+	private NaiveBayesLocalIndexes(NaiveBayesIndexesProvider globalIndexesProvider, NaiveBayesIndexes currentGlobalIndexes){
+		this(DiscreteIndexDictionary.create(getDiscreteIndexes(currentGlobalIndexes)), new THashMap<NaiveBayesPosteriorDistributionProperty, int[]>(), new THashMap<Integer, int[]>(), globalIndexesProvider, currentGlobalIndexes);
+	}
+	
+	private static DiscreteIndexDictionary getDiscreteIndexes(NaiveBayesIndexes globalIndexes){
+		if (globalIndexes instanceof DefaultNaiveBayesIndexes){
+			return ((DefaultNaiveBayesIndexes)globalIndexes).discreteIndexes;
+		}
+		throw new IllegalArgumentException("Local indexes can only be layered over global indexes that hold discrete indexes: "+globalIndexes);
 	}
 	
 	@Override
@@ -82,7 +121,7 @@ public class NaiveBayesLocalIndexes extends DefaultNaiveBayesIndexes{
 				for (int i = 0; i < localIndexes.length; i++){
 					localIndexes[i] = ++super.maxIndex;
 				}
-				posteriorTypeIndexes.put(types, localIndexes);
+				posteriorTypeIndexes.put(retain(types), localIndexes);
 			} else{
 				checkIndexLength(types, localIndexes, numIdxes);
 			}
@@ -95,59 +134,68 @@ public class NaiveBayesLocalIndexes extends DefaultNaiveBayesIndexes{
 
 	@Override
 	public int getDiscretePosteriorIndex(Feature feature, Classification classification) {
+		return getDiscretePosteriorIndex(getFeatureId(feature), getClassificationId(classification));
+	}
+
+	@Override
+	public int getDiscretePriorIndex(Classification classification) {
+		return getDiscretePriorIndex(getClassificationId(classification));
+	}
+	
+	@Override
+	public int getFeatureId(Feature feature) {
+		return discreteIndexes.internFeature(feature);
+	}
+
+	@Override
+	public int getClassificationId(Classification classification) {
+		return discreteIndexes.internClassification(classification);
+	}
+
+	@Override
+	public int getDiscretePosteriorIndex(int featureId, int classificationId) {
 		
 		assert((currentThread == null)? (currentThread = Thread.currentThread()) == Thread.currentThread(): currentThread == Thread.currentThread()); // when running with assertions on, ensure that only one thread has access to this local index cache
 		
-		int globalIndex = currentGlobalIndexes.getDiscretePosteriorIndex(feature, classification);
+		int index = discreteIndexes.getPosteriorIndex(featureId, classificationId); // global indexes are found through the parent dictionary
 		
-		if (globalIndex == NaiveBayesIndexes.NO_INDEX_FOUND){
-			// see if we have a local index
-			
-			Map<Feature, Integer> innerMap = posteriorProbabilityIndexes.get(classification);
-			
-			if (innerMap != null){
-				Integer localIndex = innerMap.get(feature);
-				
-				if (localIndex != null){
-					return localIndex;
-				}
-			} else {
-				innerMap = new THashMap<Feature, Integer>();
-				posteriorProbabilityIndexes.put(classification, innerMap);
-			}	
-			
-			int	newIndex = ++super.maxIndex;
-			
-			innerMap.put(feature, newIndex);
+		if (index == NaiveBayesIndexes.NO_INDEX_FOUND){
+			index = ++super.maxIndex;
 			
-			return newIndex;
+			discreteIndexes.putPosteriorIndex(featureId, classificationId, index);
 		}
-		return globalIndex;
+		return index;
 	}
 
 	@Override
-	public int getDiscretePriorIndex(Classification classification) {
+	public int getDiscretePriorIndex(int classificationId) {
 		
 		assert((currentThread == null)? (currentThread = Thread.currentThread()) == Thread.currentThread(): currentThread == Thread.currentThread()); // when running with assertions on, ensure that only one thread has access to this local index cache
 		
-		int globalIndex = currentGlobalIndexes.getDiscretePriorIndex(classification);
+		int index = discreteIndexes.getPriorIndex(classificationId);
 		
-		if (globalIndex == NaiveBayesIndexes.NO_INDEX_FOUND){
-			Integer localIndex = priorProbabilityIndexes.get(classification);
-			
-			if (localIndex == null){
-				localIndex = ++super.maxIndex;
-				priorProbabilityIndexes.put(classification, localIndex);
-			}
+		if (index == NaiveBayesIndexes.NO_INDEX_FOUND){
+			index = ++super.maxIndex;
 			
-			return localIndex;
+			discreteIndexes.putPriorIndex(classificationId, index);
 		}
-		
-		return globalIndex;
+		return index;
+	}
+
+	private static NaiveBayesPosteriorDistributionProperty retain(NaiveBayesPosteriorDistributionProperty types){
+		if (types.getClassification() instanceof Flyweight){ // don't hold on to a view of an event that will be reused
+			return new NaiveBayesPosteriorDistributionProperty(types.getFeatureType(), Flyweight.UTIL.retain(types.getClassification()));
+		}
+		return types;
 	}
 
 	@Override
 	public NaiveBayesIndexes getGlobalIndexes() {
 		return currentGlobalIndexes;
 	}
+
+	@Override
+	public long getEpoch() {
+		return currentGlobalIndexes.getEpoch();
+	}
 }
@@ -0,0 +1,51 @@
+package com.haines.ml.rce.naivebayes;
+
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPosteriorProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPriorProperty;
+
+/**
+ * Indexes that can return each of their discrete properties along with the slot it was allocated. The counts of a
+ * property can then be read straight from its slot rather then by looking the property up again, which some indexes
+ * can only do by building structures that a read only copy would otherwise never need.
+ * @author haines
+ *
+ */
+public interface SlottedNaiveBayesIndexes extends NaiveBayesIndexes{
+
+	/**
+	 * Returns the discrete posterior properties held by these indexes along with their slots.
+	 * @return
+	 */
+	Iterable<SlottedProperty<DiscreteNaiveBayesPosteriorProperty>> getSlottedDiscretePosteriors();
+
+	/**
+	 * Returns the discrete prior properties held by these indexes along with their slots.
+	 * @return
+	 */
+	Iterable<SlottedProperty<DiscreteNaiveBayesPriorProperty>> getSlottedDiscretePriors();
+
+	public static class SlottedProperty<P extends NaiveBayesProperty>{
+
+		private final P property;
+		private final int slot;
+
+		public SlottedProperty(P property, int slot){
+			this.property = property;
+			this.slot = slot;
+		}
+
+		public P getProperty() {
+			return property;
+		}
+
+		public int getSlot() {
+			return slot;
+		}
+
+		@Override
+		public String toString(){
+			return property+"@"+slot;
+		}
+	}
+}
@@ -96,7 +96,7 @@ public class NaiveBayesAccumulatorFunctionalTest {
 		
 		assertThat(counts.getPosteriors(), Matchers.<NaiveBayesCounts<?>>contains(new DiscreteNaiveBayesCounts(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("true", 1), new TestClassification("class1", 1)), 1),
 																				  new DiscreteNaiveBayesCounts(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("false", 2), new TestClassification("class1", 1)), 1),
-																				  new NaiveBayesDistributionCounts(new NaiveBayesPosteriorDistributionProperty(3, new TestClassification("class1", 1)), new DistributionParameters(1, 4.599999904632568, Double.NaN))));
+																				  new NaiveBayesDistributionCounts(new NaiveBayesPosteriorDistributionProperty(3, new TestClassification("class1", 1)), new DistributionParameters(1, 4.6, Double.NaN))));
 		
 		assertThat(counts.getPriors(), Matchers.<NaiveBayesCounts<?>>contains(new DiscreteNaiveBayesCounts(new DiscreteNaiveBayesPriorProperty(new TestClassification("class1", 1)), 1)));
 	}
@@ -126,8 +126,8 @@ public class NaiveBayesAccumulatorFunctionalTest {
 																				  new DiscreteNaiveBayesCounts(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("false", 1), new TestClassification("class1", 1)), 1),
 																				  new DiscreteNaiveBayesCounts(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("true", 1), new TestClassification("class2", 1)), 1),
 																				  new DiscreteNaiveBayesCounts(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("true", 2), new TestClassification("class2", 1)), 1),
-																				  new NaiveBayesDistributionCounts(new NaiveBayesPosteriorDistributionProperty(3, new TestClassification("class1", 1)), new DistributionParameters(3, 3.5866668224334717, 0.9465337991714478)),
-																				  new NaiveBayesDistributionCounts(new NaiveBayesPosteriorDistributionProperty(3, new TestClassification("class2", 1)), new DistributionParameters(1, 9.322999954223633, Double.NaN))));
+																				  new NaiveBayesDistributionCounts(new NaiveBayesPosteriorDistributionProperty(3, new TestClassification("class1", 1)), new DistributionParameters(3, 3.5866666666666664, 0.9465333333333328)),
+																				  new NaiveBayesDistributionCounts(new NaiveBayesPosteriorDistributionProperty(3, new TestClassification("class2", 1)), new DistributionParameters(1, 9.323, Double.NaN))));
 		
 		assertThat(counts.getPriors(), Matchers.<NaiveBayesCounts<?>>containsInAnyOrder(new DiscreteNaiveBayesCounts(new DiscreteNaiveBayesPriorProperty(new TestClassification("class1", 1)), 3),
 																			  new DiscreteNaiveBayesCounts(new DiscreteNaiveBayesPriorProperty(new TestClassification("class2", 1)), 1)));
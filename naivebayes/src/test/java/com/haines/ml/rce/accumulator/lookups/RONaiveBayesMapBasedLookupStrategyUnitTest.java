@@ -131,4 +131,52 @@ public class RONaiveBayesMapBasedLookupStrategyUnitTest {
 		assertThat(indexes[2], is(equalTo(1))); 
 		assertThat(indexes[3], is(equalTo(2)));
 	}
+	
+	@Test
+	public void givenCandidate_whenCallingGetSlotsWithBuffer_thenSlotsWrittenIntoBufferWithoutAllocating(){
+		TestEvent event = new TestEvent(Arrays.asList(new TestFeature("feature1")), Arrays.asList(new TestClassification("class1"), new TestClassification("class2")));
+		TestFeature feature = new TestFeature("feature1");
+		
+		int[] slotBuffer = new int[]{-1};
+		
+		assertThat(candidate.getSlots(feature, event, slotBuffer), is(equalTo(2)));
+		assertThat(slotBuffer[0], is(equalTo(-1))); // buffer too small so left untouched
+		
+		slotBuffer = new int[]{-1, -1, -1};
+		
+		assertThat(candidate.getSlots(feature, event, slotBuffer), is(equalTo(2)));
+		assertThat(slotBuffer[0], is(equalTo(0)));
+		assertThat(slotBuffer[1], is(equalTo(1)));
+		assertThat(slotBuffer[2], is(equalTo(-1)));
+		
+		int[] indexes = candidate.getSlots(feature, event);
+		
+		assertThat(indexes.length, is(equalTo(2)));
+		assertThat(indexes[0], is(equalTo(0)));
+		assertThat(indexes[1], is(equalTo(1)));
+	}
+	
+	@Test
+	public void givenStartedEvent_whenCallingGetSlotsWithBuffer_thenSameSlotsAsUnstartedEventReturned(){
+		TestEvent event = new TestEvent(Arrays.asList(new TestFeature("feature1"), new TestFeature("feature2")), Arrays.asList(new TestClassification("class1"), new TestClassification("class2")));
+		TestEvent sameEvent = new TestEvent(Arrays.asList(new TestFeature("feature2"), new TestFeature("feature1")), Arrays.asList(new TestClassification("class1"), new TestClassification("class2")));
+		
+		int[] slotBuffer = new int[2];
+		
+		candidate.startEvent(event);
+		
+		assertThat(candidate.getSlots(new TestFeature("feature1"), event, slotBuffer), is(equalTo(2)));
+		assertThat(slotBuffer, is(equalTo(new int[]{0, 1})));
+		
+		assertThat(candidate.getSlots(new TestFeature("feature2"), event, slotBuffer), is(equalTo(2)));
+		assertThat(slotBuffer, is(equalTo(new int[]{2, 3})));
+		
+		assertThat(candidate.getSlots(new TestFeature("feature2"), sameEvent, slotBuffer), is(equalTo(2))); // not started so found by the feature and classifications
+		assertThat(slotBuffer, is(equalTo(new int[]{2, 3})));
+		
+		candidate.clear();
+		
+		assertThat(candidate.getSlots(new TestFeature("feature2"), event, slotBuffer), is(equalTo(2))); // ids are no longer valid once cleared
+		assertThat(slotBuffer, is(equalTo(new int[]{0, 1})));
+	}
 }
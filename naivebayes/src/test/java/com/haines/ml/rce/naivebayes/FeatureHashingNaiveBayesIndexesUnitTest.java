@@ -0,0 +1,171 @@
+package com.haines.ml.rce.naivebayes;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.haines.ml.rce.naivebayes.NaiveBayesIndexes.NaiveBayesPosteriorDistributionProperty;
+import com.haines.ml.rce.naivebayes.SlottedNaiveBayesIndexes.SlottedProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPosteriorProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPriorProperty;
+import com.haines.ml.rce.test.TestClassification;
+import com.haines.ml.rce.test.TestFeature;
+
+public class FeatureHashingNaiveBayesIndexesUnitTest {
+
+	private static final int TEST_BIT_DEPTH = 10;
+	private static final int TEST_NUM_HASHES = 4;
+
+	private FeatureHashingNaiveBayesIndexes candidate;
+
+	@Before
+	public void before(){
+		candidate = new FeatureHashingNaiveBayesIndexes(TEST_BIT_DEPTH, TEST_NUM_HASHES);
+	}
+
+	@Test
+	public void givenCandidate_whenCallingGetDiscretePosteriorIndexTwice_thenSameHashedSlotReturned(){
+		int slot = candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"));
+
+		assertThat(slot < 1 << TEST_BIT_DEPTH, is(equalTo(true)));
+		assertThat(candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1")), is(equalTo(slot)));
+		assertThat(candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class2")), is(not(equalTo(slot))));
+		assertThat(candidate.getMaxIndex(), is(equalTo((1 << TEST_BIT_DEPTH) - 1)));
+	}
+
+	@Test
+	public void givenCandidate_whenCallingGetDiscretePosteriors_thenOnlySeenPropertiesReturned(){
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"));
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1"));
+		candidate.getDiscretePriorIndex(new TestClassification("class1"));
+
+		assertThat(Iterables.size(candidate.getDiscretePosteriors()), is(equalTo(2)));
+		assertThat(Iterables.contains(candidate.getDiscretePosteriors(), new DiscreteNaiveBayesPosteriorProperty(new TestFeature("feature2"), new TestClassification("class1"))), is(equalTo(true)));
+		assertThat(Lists.newArrayList(candidate.getDiscretePriors()), is(equalTo(Arrays.asList(new DiscreteNaiveBayesPriorProperty(new TestClassification("class1"))))));
+	}
+
+	@Test
+	public void givenCandidateWithOneSlotAndHash_whenCallingGetDiscretePosteriorIndex_thenSlotSharedWithFirstProperty(){
+		candidate = new FeatureHashingNaiveBayesIndexes(1, 1);
+
+		int slot = candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"));
+
+		for (int i = 2; i < 10; i++){
+			candidate.getDiscretePosteriorIndex(new TestFeature("feature"+i), new TestClassification("class1"));
+		}
+
+		assertThat(candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1")), is(equalTo(slot)));
+		assertThat(Iterables.size(candidate.getDiscretePosteriors()) <= 2, is(equalTo(true))); // only the owners of the 2 slots are reported
+	}
+
+	@Test
+	public void givenCandidate_whenCallingGetPosteriorDistributionIndexes_thenIndexesAllocatedAfterHashedSlots(){
+		int[] indexes = candidate.getPosteriorDistributionIndexes(new NaiveBayesPosteriorDistributionProperty(0, new TestClassification("class1")), 3);
+
+		assertThat(indexes, is(equalTo(new int[]{1 << TEST_BIT_DEPTH, (1 << TEST_BIT_DEPTH) + 1, (1 << TEST_BIT_DEPTH) + 2})));
+		assertThat(candidate.getMaxIndex(), is(equalTo((1 << TEST_BIT_DEPTH) + 2)));
+		assertThat(candidate.getPosteriorDistributionIndexes(new NaiveBayesPosteriorDistributionProperty(0, new TestClassification("class1")), NaiveBayesIndexes.UNKNOWN_NUM_INDEXES), is(equalTo(indexes)));
+	}
+
+	@Test
+	public void givenCopyOfCandidate_whenCandidateClearedAndReused_thenCopyRetainsProperties(){
+		int slot = candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"));
+
+		NaiveBayesIndexes copy = candidate.copy();
+
+		candidate.clear();
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1"));
+
+		assertThat(Lists.newArrayList(copy.getDiscretePosteriors()), is(equalTo(Arrays.asList(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("feature1"), new TestClassification("class1"))))));
+		assertThat(copy.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1")), is(equalTo(slot)));
+		assertThat(Lists.newArrayList(candidate.getDiscretePosteriors()), is(equalTo(Arrays.asList(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("feature2"), new TestClassification("class1"))))));
+	}
+
+	@Test
+	public void givenCopyOfCandidate_whenCandidateClaimsNewSlot_thenCopyUnaffected(){
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"));
+
+		NaiveBayesIndexes copy = candidate.copy();
+
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1"));
+
+		assertThat(Iterables.size(copy.getDiscretePosteriors()), is(equalTo(1)));
+		assertThat(Iterables.size(candidate.getDiscretePosteriors()), is(equalTo(2)));
+	}
+
+	@Test
+	public void givenClearedCandidate_whenCallingGetDiscretePosteriorIndex_thenSlotsClaimedBeforeClearAreFree(){
+		candidate = new FeatureHashingNaiveBayesIndexes(1, 1);
+
+		int slot = candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"));
+
+		TestFeature sharingFeature = null;
+		for (int i = 2; sharingFeature == null; i++){
+			if (candidate.getDiscretePosteriorIndex(new TestFeature("feature"+i), new TestClassification("class1")) == slot){
+				sharingFeature = new TestFeature("feature"+i);
+			}
+		}
+
+		candidate.clear();
+
+		assertThat(Iterables.size(candidate.getDiscretePosteriors()), is(equalTo(0)));
+		assertThat(candidate.getDiscretePosteriorIndex(sharingFeature, new TestClassification("class1")), is(equalTo(slot)));
+		assertThat(Lists.newArrayList(candidate.getDiscretePosteriors()), is(equalTo(Arrays.asList(new DiscreteNaiveBayesPosteriorProperty(sharingFeature, new TestClassification("class1")))))); // now the owner of the slot
+	}
+
+	@Test
+	public void givenCopyOfCandidate_whenCopyClaimsNewSlot_thenCandidateUnaffected(){
+		int slot = candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"));
+		candidate.getPosteriorDistributionIndexes(new NaiveBayesPosteriorDistributionProperty(0, new TestClassification("class1")), 2);
+
+		NaiveBayesIndexes copy = candidate.copy();
+
+		assertThat(copy.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1")), is(equalTo(slot)));
+
+		copy.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1"));
+		copy.getPosteriorDistributionIndexes(new NaiveBayesPosteriorDistributionProperty(1, new TestClassification("class1")), 2);
+
+		assertThat(Iterables.size(copy.getDiscretePosteriors()), is(equalTo(2)));
+		assertThat(Iterables.size(copy.getPosteriorDistributionsTypes()), is(equalTo(2)));
+		assertThat(Lists.newArrayList(candidate.getDiscretePosteriors()), is(equalTo(Arrays.asList(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("feature1"), new TestClassification("class1"))))));
+		assertThat(Iterables.size(candidate.getPosteriorDistributionsTypes()), is(equalTo(1)));
+
+		candidate.clear();
+
+		assertThat(Iterables.size(copy.getPosteriorDistributionsTypes()), is(equalTo(2)));
+		assertThat(Iterables.size(candidate.getPosteriorDistributionsTypes()), is(equalTo(0)));
+	}
+
+	@Test
+	public void givenCopyOfCandidate_whenReadingSlottedPropertiesAndLookingUpClaimedProperties_thenNoSlotTableAllocated(){
+		int posteriorSlot = candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"));
+		int priorSlot = candidate.getDiscretePriorIndex(new TestClassification("class1"));
+
+		FeatureHashingNaiveBayesIndexes copy = (FeatureHashingNaiveBayesIndexes)candidate.copy();
+
+		SlottedProperty<DiscreteNaiveBayesPosteriorProperty> posterior = Iterables.getOnlyElement(copy.getSlottedDiscretePosteriors());
+		SlottedProperty<DiscreteNaiveBayesPriorProperty> prior = Iterables.getOnlyElement(copy.getSlottedDiscretePriors());
+
+		assertThat(posterior.getProperty(), is(equalTo(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("feature1"), new TestClassification("class1")))));
+		assertThat(posterior.getSlot(), is(equalTo(posteriorSlot)));
+		assertThat(prior.getProperty(), is(equalTo(new DiscreteNaiveBayesPriorProperty(new TestClassification("class1")))));
+		assertThat(prior.getSlot(), is(equalTo(priorSlot)));
+
+		assertThat(copy.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1")), is(equalTo(posteriorSlot)));
+		assertThat(copy.getDiscretePriorIndex(new TestClassification("class1")), is(equalTo(priorSlot)));
+		assertThat(copy.hasSlotTable(), is(equalTo(false)));
+
+		copy.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1")); // a new claim needs the table
+
+		assertThat(copy.hasSlotTable(), is(equalTo(true)));
+		assertThat(copy.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1")), is(equalTo(posteriorSlot)));
+	}
+}
@@ -4,15 +4,28 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.equalTo;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.haines.ml.rce.model.Classification;
 import com.haines.ml.rce.model.Feature;
+import com.haines.ml.rce.naivebayes.NaiveBayesGlobalIndexes.VolatileNaiveBayesGlobalIndexesProvider;
 import com.haines.ml.rce.naivebayes.NaiveBayesIndexes.NaiveBayesPosteriorDistributionProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPosteriorProperty;
 import com.haines.ml.rce.test.TestClassification;
 import com.haines.ml.rce.test.TestFeature;
 
@@ -112,6 +125,248 @@ public class NaiveBayesIndexesUnitTest {
 		assertThat(candidate.getMaxIndex(), is(equalTo(5)));
 	}
 
+	@Test
+	public void givenCandidateWithLocalIndexes_whenCallingGetDiscretePosteriors_thenPropertiesReturnedInIndexOrder(){
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature3"), new TestClassification("class2"));
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1"));
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature3"), new TestClassification("class1"));
+		
+		assertThat(Lists.newArrayList(candidate.getDiscretePosteriors()), is(equalTo(Arrays.asList(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("feature3"), new TestClassification("class2")),
+																									new DiscreteNaiveBayesPosteriorProperty(new TestFeature("feature2"), new TestClassification("class1")),
+																									new DiscreteNaiveBayesPosteriorProperty(new TestFeature("feature3"), new TestClassification("class1"))))));
+	}
+	
+	@Test
+	public void givenCandidate_whenLookingUpByInternedIds_thenSameIndexesAsFeatureLookupsReturned(){
+		int feature1Id = candidate.getFeatureId(new TestFeature("feature1"));
+		int feature2Id = candidate.getFeatureId(new TestFeature("feature2"));
+		int class1Id = candidate.getClassificationId(new TestClassification("class1"));
+		
+		assertThat(candidate.getFeatureId(new TestFeature("feature1")), is(equalTo(feature1Id)));
+		assertThat(candidate.getDiscretePosteriorIndex(feature1Id, class1Id), is(equalTo(GLOBAL_INDEX_FEATURE1_CLASS1)));
+		assertThat(candidate.getDiscretePriorIndex(class1Id), is(equalTo(GLOBAL_PRIOR_INDEX_CLASS1)));
+		assertThat(candidate.getDiscretePosteriorIndex(feature2Id, class1Id), is(equalTo(LOCAL_INDEX_FEATURE2_CLASS1)));
+		assertThat(candidate.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1")), is(equalTo(LOCAL_INDEX_FEATURE2_CLASS1)));
+	}
+	
+	@Test
+	public void givenCandidate_whenCallingGetIndexFromGlobalVariable_thenGlobalIndexNotHeldLocally(){
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"));
+		candidate.getDiscretePriorIndex(new TestClassification("class1"));
+		
+		assertThat(Iterables.size(candidate.getDiscretePosteriors()), is(equalTo(0)));
+		assertThat(Iterables.size(candidate.getDiscretePriors()), is(equalTo(0)));
+		
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1"));
+		
+		assertThat(Lists.newArrayList(candidate.getDiscretePosteriors()), is(equalTo(Arrays.asList(new DiscreteNaiveBayesPosteriorProperty(new TestFeature("feature2"), new TestClassification("class1"))))));
+	}
+	
+	@Test
+	public void givenCopyOfCandidate_whenCandidateCleared_thenCopyRetainsIndexes(){
+		candidate.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1"));
+		candidate.getDiscretePriorIndex(new TestClassification("class2"));
+		
+		NaiveBayesIndexes copy = candidate.copy();
+		
+		candidate.clear();
+		
+		assertThat(copy.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1")), is(equalTo(4)));
+		assertThat(copy.getDiscretePriorIndex(new TestClassification("class2")), is(equalTo(5)));
+		assertThat(Iterables.size(copy.getDiscretePosteriors()), is(equalTo(1)));
+		assertThat(Iterables.size(candidate.getDiscretePosteriors()), is(equalTo(0)));
+	}
+
+	@Test
+	public void givenCandidate_whenNewGlobalIndexesPublished_thenAdoptedAtNextClear(){
+		VolatileNaiveBayesGlobalIndexesProvider provider = new VolatileNaiveBayesGlobalIndexesProvider(new NaiveBayesGlobalIndexes());
+		NaiveBayesLocalIndexes candidate = new NaiveBayesLocalIndexes(provider);
+		
+		assertThat(candidate.getEpoch(), is(equalTo(NaiveBayesGlobalIndexes.INITIAL_EPOCH)));
+		
+		provider.setIndexes(new NaiveBayesGlobalIndexes.Builder(1).addDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1"), 0)
+																	.addDiscretePriorIndex(new TestClassification("class1"), 1)
+																	.build());
+		
+		assertThat(candidate.getEpoch(), is(equalTo(NaiveBayesGlobalIndexes.INITIAL_EPOCH))); // still on the old version within this micro batch
+		assertThat(candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1")), is(equalTo(0)));
+		
+		candidate.clear();
+		
+		assertThat(candidate.getEpoch(), is(equalTo(1L)));
+		assertThat(candidate.getMaxIndex(), is(equalTo(1)));
+		assertThat(candidate.getDiscretePosteriorIndex(new TestFeature("feature1"), new TestClassification("class1")), is(equalTo(0)));
+		assertThat(candidate.getDiscretePosteriorIndex(new TestFeature("feature2"), new TestClassification("class1")), is(equalTo(2)));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void givenProvider_whenPublishingOlderGlobalIndexes_thenExceptionThrown(){
+		VolatileNaiveBayesGlobalIndexesProvider provider = new VolatileNaiveBayesGlobalIndexesProvider(new NaiveBayesGlobalIndexes.Builder(2).build());
+		
+		provider.setIndexes(new NaiveBayesGlobalIndexes.Builder(1).build());
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void givenGlobalIndexes_whenCleared_thenExceptionThrown(){
+		new NaiveBayesGlobalIndexes().clear();
+	}
+
+	@Test
+	public void givenPerfectHashGlobalIndexes_whenCallingGetDiscreteIndexes_thenCorrectIndexesReturned(){
+		NaiveBayesGlobalIndexes.Builder builder = new NaiveBayesGlobalIndexes.Builder(1).usePerfectHash(true);
+		
+		int index = 0;
+		for (int classification = 0; classification < 3; classification++){
+			builder.addDiscretePriorIndex(new TestClassification(classification), index++);
+			
+			for (int feature = 0; feature < 10000; feature++){
+				builder.addDiscretePosteriorIndex(new TestFeature(feature), new TestClassification(classification), index++);
+			}
+		}
+		
+		NaiveBayesGlobalIndexes perfectHashIndexes = builder.build();
+		
+		index = 0;
+		for (int classification = 0; classification < 3; classification++){
+			assertThat(perfectHashIndexes.getDiscretePriorIndex(new TestClassification(classification)), is(equalTo(index++)));
+			
+			for (int feature = 0; feature < 10000; feature++){
+				assertThat(perfectHashIndexes.getDiscretePosteriorIndex(new TestFeature(feature), new TestClassification(classification)), is(equalTo(index++)));
+			}
+		}
+		
+		assertThat(perfectHashIndexes.getDiscretePosteriorIndex(new TestFeature(10000), new TestClassification(0)), is(equalTo(NaiveBayesIndexes.NO_INDEX_FOUND)));
+		assertThat(perfectHashIndexes.getDiscretePosteriorIndex(new TestFeature(0), new TestClassification(3)), is(equalTo(NaiveBayesIndexes.NO_INDEX_FOUND)));
+		assertThat(perfectHashIndexes.getDiscretePriorIndex(new TestClassification(3)), is(equalTo(NaiveBayesIndexes.NO_INDEX_FOUND)));
+		assertThat(perfectHashIndexes.getMaxIndex(), is(equalTo(index - 1)));
+	}
+	
+	@Test
+	public void givenPerfectHashGlobalIndexesWithCollidingHashCodes_whenCallingGetDiscretePosteriorIndex_thenCorrectIndexesReturned(){
+		TestFeature feature1 = new TestFeature(5, 0);
+		TestFeature feature2 = new TestFeature(4, 1); // same hash code as feature1
+		TestFeature feature3 = new TestFeature(3, 2); // same hash code as feature1 but not indexed
+		
+		NaiveBayesGlobalIndexes perfectHashIndexes = new NaiveBayesGlobalIndexes.Builder(1)
+			.usePerfectHash(true)
+			.addDiscretePosteriorIndex(feature1, new TestClassification("class1"), 0)
+			.addDiscretePosteriorIndex(feature2, new TestClassification("class1"), 1)
+			.build();
+		
+		assertThat(perfectHashIndexes.getDiscretePosteriorIndex(feature1, new TestClassification("class1")), is(equalTo(0)));
+		assertThat(perfectHashIndexes.getDiscretePosteriorIndex(feature2, new TestClassification("class1")), is(equalTo(1)));
+		assertThat(perfectHashIndexes.getDiscretePosteriorIndex(feature3, new TestClassification("class1")), is(equalTo(NaiveBayesIndexes.NO_INDEX_FOUND)));
+	}
+
+	@Test
+	public void givenPerfectHashGlobalIndexes_whenEstimatingRetainedSize_thenSmallerThenMapBasedIndexes(){
+		NaiveBayesGlobalIndexes.Builder perfectHashBuilder = new NaiveBayesGlobalIndexes.Builder(1).usePerfectHash(true);
+		NaiveBayesGlobalIndexes.Builder mapBuilder = new NaiveBayesGlobalIndexes.Builder(1);
+		
+		int index = 0;
+		for (int classification = 0; classification < 3; classification++){
+			perfectHashBuilder.addDiscretePriorIndex(new TestClassification(classification), index);
+			mapBuilder.addDiscretePriorIndex(new TestClassification(classification), index++);
+			
+			for (int feature = 0; feature < 10000; feature++){
+				perfectHashBuilder.addDiscretePosteriorIndex(new TestFeature(feature), new TestClassification(classification), index);
+				mapBuilder.addDiscretePosteriorIndex(new TestFeature(feature), new TestClassification(classification), index++);
+			}
+		}
+		
+		NaiveBayesGlobalIndexes perfectHashIndexes = perfectHashBuilder.build();
+		NaiveBayesGlobalIndexes mapIndexes = mapBuilder.build();
+		
+		long perfectHashBytes = getRetainedBytes(perfectHashIndexes);
+		long mapBytes = getRetainedBytes(mapIndexes);
+		
+		assertThat(perfectHashBytes < mapBytes, is(equalTo(true)));
+		assertThat(perfectHashIndexes.getDiscretePosteriorIndex(new TestFeature(9999), new TestClassification(2)), is(equalTo(index - 1)));
+	}
+
+	/**
+	 * Estimates the bytes retained by the object, assuming compressed references. The internals of jdk classes, such as
+	 * the features' values and the dictionary's lists, are not walked as both sets of indexes hold the same ones.
+	 */
+	private static long getRetainedBytes(Object object){
+		Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		Deque<Object> toVisit = new ArrayDeque<Object>();
+		
+		toVisit.push(object);
+		
+		long bytes = 0;
+		while (!toVisit.isEmpty()){
+			Object next = toVisit.pop();
+			
+			if (!visited.add(next)){
+				continue;
+			}
+			
+			Class<?> clazz = next.getClass();
+			
+			if (clazz.isArray()){
+				int length = Array.getLength(next);
+				Class<?> componentType = clazz.getComponentType();
+				
+				bytes += align(16 + length * getFieldBytes(componentType));
+				
+				if (!componentType.isPrimitive()){
+					for (int i = 0; i < length; i++){
+						Object element = Array.get(next, i);
+						
+						if (element != null){
+							toVisit.push(element);
+						}
+					}
+				}
+			} else if (clazz.getName().startsWith("java.")){
+				bytes += 16;
+			} else{
+				long objectBytes = 12;
+				
+				for (Class<?> c = clazz; c != null; c = c.getSuperclass()){
+					for (Field field: c.getDeclaredFields()){
+						if (Modifier.isStatic(field.getModifiers())){
+							continue;
+						}
+						objectBytes += getFieldBytes(field.getType());
+						
+						if (!field.getType().isPrimitive()){
+							field.setAccessible(true);
+							
+							try {
+								Object value = field.get(next);
+								
+								if (value != null){
+									toVisit.push(value);
+								}
+							} catch (IllegalAccessException e) {
+								throw new IllegalStateException("Unable to read "+field, e);
+							}
+						}
+					}
+				}
+				bytes += align(objectBytes);
+			}
+		}
+		return bytes;
+	}
+	
+	private static long getFieldBytes(Class<?> type){
+		if (type == long.class || type == double.class){
+			return 8;
+		} else if (type == byte.class || type == boolean.class){
+			return 1;
+		} else if (type == short.class || type == char.class){
+			return 2;
+		}
+		return 4; // ints, floats and compressed references
+	}
+	
+	private static long align(long bytes){
+		return (bytes + 7) & ~7L;
+	}
+
 	private Map<Classification, Integer> getLocalPriorIndexes() {
 		return new HashMap<Classification, Integer>();
 	}
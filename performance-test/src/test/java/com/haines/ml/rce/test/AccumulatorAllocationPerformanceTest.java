@@ -0,0 +1,179 @@
+package com.haines.ml.rce.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haines.ml.rce.accumulator.Accumulator;
+import com.haines.ml.rce.accumulator.AccumulatorConfig;
+import com.haines.ml.rce.accumulator.AccumulatorLookupStrategy;
+import com.haines.ml.rce.accumulator.AccumulatorProvider;
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.Feature;
+
+/**
+ * Drives an accumulator through many micro batches of the same working set to show that, once warmed up, pushing
+ * each batch downstream as the pipeline does, by taking a snapshot, clearing the accumulator and releasing the
+ * snapshot once read, recycles its lines rather then allocating new ones.
+ * @author haines
+ *
+ */
+public class AccumulatorAllocationPerformanceTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AccumulatorAllocationPerformanceTest.class);
+	
+	private static final int NUM_MICRO_BATCHES = 50;
+	private static final int NUM_EVENTS_PER_BATCH = 200000;
+	private static final int WORKING_SET_SIZE = 1 << 22;
+	
+	@Test
+	public void givenHeapAccumulator_whenPushedBetweenMicroBatches_thenNoLinesAllocatedAfterWarmUp(){
+		assertNoLinesAllocatedAfterWarmUp(AccumulatorConfig.StorageType.HEAP);
+	}
+	
+	@Test
+	public void givenOffHeapAccumulator_whenPushedBetweenMicroBatches_thenNoLinesAllocatedAfterWarmUp(){
+		assertNoLinesAllocatedAfterWarmUp(AccumulatorConfig.StorageType.OFF_HEAP);
+	}
+	
+	private void assertNoLinesAllocatedAfterWarmUp(final AccumulatorConfig.StorageType storageType){
+		Accumulator<Event> candidate = new Accumulator<Event>(getConfig(storageType), new NoOpLookupStrategy()){
+
+			@Override
+			public void consume(Event event) {
+				// slots are incremented directly by the test
+			}
+		};
+		
+		Random random = new Random(0);
+		
+		// warm up with the whole working set so that every line the test can touch has been allocated. One batch of lines is held by the snapshot while the next is accumulated so push twice
+		for (int i = 0; i < 2; i++){
+			for (int slot = 0; slot < WORKING_SET_SIZE; slot += 1 << Accumulator.DEFAULT_CONFIG.getFinalAccumulatorLineBitDepth()){
+				candidate.incrementAccumulator(slot);
+			}
+			push(candidate);
+		}
+		
+		long linesAllocatedAfterWarmUp = candidate.getNumLinesAllocated();
+		long startTime = System.nanoTime();
+		
+		for (int i = 0; i < NUM_MICRO_BATCHES; i++){
+			for (int j = 0; j < NUM_EVENTS_PER_BATCH; j++){
+				candidate.incrementAccumulator(random.nextInt(WORKING_SET_SIZE));
+			}
+			push(candidate);
+		}
+		
+		long timeTakenMs = (System.nanoTime() - startTime) / 1000000;
+		
+		LOG.info(storageType+" accumulator processed "+NUM_MICRO_BATCHES+" micro batches in "+timeTakenMs+"ms. Lines allocated during warm up: "+linesAllocatedAfterWarmUp+", lines allocated after warm up: "+(candidate.getNumLinesAllocated() - linesAllocatedAfterWarmUp)+", lines recycled: "+candidate.getNumLinesRecycled());
+		
+		assertThat(candidate.getNumLinesAllocated(), is(equalTo(linesAllocatedAfterWarmUp)));
+		assertThat(candidate.getNumLinesRecycled() > 0, is(equalTo(true)));
+	}
+	
+	private static void push(Accumulator<Event> candidate){
+		AccumulatorProvider<Event> provider = candidate.getAccumulatorProvider();
+		
+		candidate.clear();
+		
+		provider.getAccumulatorValue(0); // read downstream before being released
+		provider.release();
+	}
+	
+	private static AccumulatorConfig getConfig(final AccumulatorConfig.StorageType storageType){
+		return new AccumulatorConfig(){
+
+			@Override
+			public int getFirstAccumulatorLineBitDepth() {
+				return Accumulator.DEFAULT_CONFIG.getFirstAccumulatorLineBitDepth();
+			}
+
+			@Override
+			public int getSecondAccumulatorLineBitDepth() {
+				return Accumulator.DEFAULT_CONFIG.getSecondAccumulatorLineBitDepth();
+			}
+
+			@Override
+			public int getFinalAccumulatorLineBitDepth() {
+				return Accumulator.DEFAULT_CONFIG.getFinalAccumulatorLineBitDepth();
+			}
+
+			@Override
+			public StorageType getStorageType() {
+				return storageType;
+			}
+
+			@Override
+			public int getFeatureHashingBitDepth() {
+				return NO_FEATURE_HASHING;
+			}
+
+			@Override
+			public int getFeatureHashingNumHashes() {
+				return 1;
+			}
+		};
+	}
+	
+	private static class NoOpLookupStrategy implements AccumulatorLookupStrategy<Event>{
+
+		@Override
+		public int[] getPosteriorSlots(Feature feature, Classification classification, int numSlots) {
+			return null;
+		}
+
+		@Override
+		public int[] getClassificationSlots(Classification classification, int numSlots) {
+			return null;
+		}
+
+		@Override
+		public int getClassificationSlot(Classification classification) {
+			return 0;
+		}
+
+		@Override
+		public void startEvent(Event event) {
+			// NO OP
+		}
+
+		@Override
+		public int[] getSlots(Feature feature, Event event) {
+			return null;
+		}
+
+		@Override
+		public int getSlots(Feature feature, Event event, int[] slotBuffer) {
+			return 0;
+		}
+
+		@Override
+		public int getSlot(Classification classification, Event event) {
+			return 0;
+		}
+
+		@Override
+		public int getMaxIndex() {
+			return WORKING_SET_SIZE;
+		}
+
+		@Override
+		public AccumulatorLookupStrategy<Event> copy() {
+			return this;
+		}
+
+		@Override
+		public void clear() {
+			// NoOp
+		}
+	}
+}
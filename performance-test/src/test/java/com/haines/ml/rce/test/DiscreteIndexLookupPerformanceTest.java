@@ -0,0 +1,155 @@
+package com.haines.ml.rce.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haines.ml.rce.accumulator.lookups.RONaiveBayesMapBasedLookupStrategy;
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.Feature;
+import com.haines.ml.rce.naivebayes.NaiveBayesGlobalIndexes;
+import com.haines.ml.rce.naivebayes.NaiveBayesIndexes;
+import com.haines.ml.rce.naivebayes.NaiveBayesIndexesProvider;
+import com.haines.ml.rce.naivebayes.NaiveBayesLocalIndexes;
+
+/**
+ * Compares the cost of looking up the slots of every (feature, classification) pair of an event when the ids of the
+ * event's classifications are interned once per event, and of each feature once per feature, against finding each pair
+ * by its feature and classification. All pairs are held in the global indexes, as they are once a model has warmed up.
+ * As this measures wall clock time it is kept out of the unit tests of the naivebayes module.
+ * @author haines
+ *
+ */
+public class DiscreteIndexLookupPerformanceTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DiscreteIndexLookupPerformanceTest.class);
+
+	private static final int NUM_FEATURE_VALUES = 10000;
+	private static final int NUM_CLASSIFICATIONS = 4;
+	private static final int NUM_FEATURES_PER_EVENT = 20;
+	private static final int NUM_TEST_EVENTS = 1000;
+	private static final int NUM_ITERATIONS = 20;
+	private static final int NUM_TRIALS = 7;
+
+	@Test
+	public void givenWarmGlobalIndexes_whenLookingUpSlotsOfStartedEvents_thenFasterThenLookingUpEachPair(){
+		List<TestEvent> events = getTestEvents();
+
+		RONaiveBayesMapBasedLookupStrategy<TestEvent> candidate = new RONaiveBayesMapBasedLookupStrategy<TestEvent>(new NaiveBayesLocalIndexes(getGlobalIndexesProvider(getGlobalIndexes(events))));
+
+		long[] perPairNanos = new long[NUM_TRIALS];
+		long[] internedNanos = new long[NUM_TRIALS];
+
+		long checksum = 0;
+		for (int i = 0; i < NUM_TRIALS; i++){ // interleave the trials so that both paths see the same machine noise
+			long startTime = System.nanoTime();
+			checksum += lookupSlots(candidate, events, false);
+			perPairNanos[i] = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			checksum -= lookupSlots(candidate, events, true);
+			internedNanos[i] = System.nanoTime() - startTime;
+		}
+
+		assertThat(checksum, is(equalTo(0L))); // both paths must find the same slots
+		assertThat(candidate.getMaxIndex(), is(equalTo(candidate.getIndexes().getGlobalIndexes().getMaxIndex()))); // and never fall back to local slots
+
+		double numLookups = (double)NUM_ITERATIONS * NUM_TEST_EVENTS * NUM_FEATURES_PER_EVENT * NUM_CLASSIFICATIONS;
+
+		double perPairNanosPerLookup = getMedian(perPairNanos) / numLookups;
+		double internedNanosPerLookup = getMedian(internedNanos) / numLookups;
+
+		LOG.info("median ns per posterior lookup over "+NUM_TRIALS+" trials - per pair: "+perPairNanosPerLookup+" "+Arrays.toString(perPairNanos)+", interned: "+internedNanosPerLookup+" "+Arrays.toString(internedNanos));
+
+		assertThat(internedNanosPerLookup < perPairNanosPerLookup, is(equalTo(true)));
+	}
+
+	private static long lookupSlots(RONaiveBayesMapBasedLookupStrategy<TestEvent> candidate, List<TestEvent> events, boolean startEvents){
+		int[] slotBuffer = new int[NUM_CLASSIFICATIONS];
+		long checksum = 0;
+
+		for (int i = 0; i < NUM_ITERATIONS; i++){
+			for (TestEvent event: events){
+				if (startEvents){
+					candidate.startEvent(event);
+				}
+				for (Feature feature: event.getFeaturesList()){
+					candidate.getSlots(feature, event, slotBuffer);
+
+					for (int slot: slotBuffer){
+						checksum += slot;
+					}
+				}
+			}
+			candidate.clear(); // as at a micro batch boundary
+		}
+		return checksum;
+	}
+
+	private static long getMedian(long[] values){
+		long[] sortedValues = Arrays.copyOf(values, values.length);
+
+		Arrays.sort(sortedValues);
+
+		return sortedValues[sortedValues.length / 2];
+	}
+
+	private static List<TestEvent> getTestEvents(){
+		List<Classification> classifications = new ArrayList<Classification>(NUM_CLASSIFICATIONS);
+		for (int i = 0; i < NUM_CLASSIFICATIONS; i++){
+			classifications.add(new TestClassification("class"+i));
+		}
+
+		List<TestEvent> events = new ArrayList<TestEvent>(NUM_TEST_EVENTS);
+		for (int i = 0; i < NUM_TEST_EVENTS; i++){
+			List<Feature> features = new ArrayList<Feature>(NUM_FEATURES_PER_EVENT);
+
+			for (int j = 0; j < NUM_FEATURES_PER_EVENT; j++){
+				features.add(new TestFeature("feature"+((i * NUM_FEATURES_PER_EVENT + j) % NUM_FEATURE_VALUES), j));
+			}
+			events.add(new TestEvent(features, classifications));
+		}
+		return events;
+	}
+
+	private static NaiveBayesGlobalIndexes getGlobalIndexes(List<TestEvent> events){
+		NaiveBayesGlobalIndexes.Builder builder = new NaiveBayesGlobalIndexes.Builder(1);
+
+		int index = 0;
+		for (Classification classification: events.get(0).getClassificationsList()){
+			builder.addDiscretePriorIndex(classification, index++);
+		}
+
+		for (TestEvent event: events){
+			for (Feature feature: event.getFeaturesList()){
+				for (Classification classification: event.getClassificationsList()){
+					builder.addDiscretePosteriorIndex(feature, classification, index++); // events sharing a feature value overwrite its index
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	private static NaiveBayesIndexesProvider getGlobalIndexesProvider(final NaiveBayesIndexes globalIndexes){
+		return new NaiveBayesIndexesProvider(){
+
+			@Override
+			public NaiveBayesIndexes getIndexes() {
+				return globalIndexes;
+			}
+
+			@Override
+			public void setIndexes(NaiveBayesIndexes indexes) {
+				throw new UnsupportedOperationException("Global indexes are fixed in this test");
+			}
+		};
+	}
+}
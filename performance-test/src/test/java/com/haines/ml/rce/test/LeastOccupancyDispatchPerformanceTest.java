@@ -0,0 +1,123 @@
+package com.haines.ml.rce.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haines.ml.rce.dispatcher.DispatchStrategy;
+import com.haines.ml.rce.dispatcher.Dispatcher;
+import com.haines.ml.rce.dispatcher.DispatcherConfig;
+import com.haines.ml.rce.dispatcher.DispatcherConsumer;
+import com.haines.ml.rce.dispatcher.DisruptorConfig;
+import com.haines.ml.rce.dispatcher.DisruptorConsumer;
+import com.haines.ml.rce.dispatcher.LeastOccupancyDispatchStrategy;
+import com.haines.ml.rce.dispatcher.RandomDispatchStrategy;
+import com.haines.ml.rce.model.Event;
+import com.haines.ml.rce.model.EventConsumer;
+
+/**
+ * Compares the publish latency of the random and least occupancy dispatch strategies when one of the workers is slower
+ * then the others. As this measures wall clock time it is kept out of the unit tests of the dispatcher module.
+ * @author haines
+ *
+ */
+public class LeastOccupancyDispatchPerformanceTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LeastOccupancyDispatchPerformanceTest.class);
+
+	private static final int NUM_CONSUMERS = 4;
+	private static final int RING_SIZE = 256;
+	private static final int NUM_TEST_EVENTS = 100000;
+	private static final long SLOW_CONSUMER_NANOS_PER_EVENT = 50000; // 50 micro seconds
+	private static final int NUM_TRIALS = 5;
+
+	@Test
+	public void givenOneSlowConsumer_whenDispatchingEvents_thenLeastOccupancyHasLowerP99PublishLatencyThenRandom() throws InterruptedException{
+		assumeTrue(Runtime.getRuntime().availableProcessors() > NUM_CONSUMERS); // the publisher and every consumer need their own core
+
+		long[] randomP99s = new long[NUM_TRIALS];
+		long[] leastOccupancyP99s = new long[NUM_TRIALS];
+
+		for (int i = 0; i < NUM_TRIALS; i++){ // interleave the trials so that both strategies see the same machine noise
+			randomP99s[i] = getP99PublishLatency(new RandomDispatchStrategy<Event>());
+			leastOccupancyP99s[i] = getP99PublishLatency(new LeastOccupancyDispatchStrategy<Event>());
+		}
+
+		long randomP99 = getMedian(randomP99s);
+		long leastOccupancyP99 = getMedian(leastOccupancyP99s);
+
+		LOG.info("median p99 publish latency over "+NUM_TRIALS+" trials with one slow consumer - random: "+randomP99+"ns "+Arrays.toString(randomP99s)+", least occupancy: "+leastOccupancyP99+"ns "+Arrays.toString(leastOccupancyP99s));
+
+		assertThat(leastOccupancyP99 < randomP99, is(equalTo(true)));
+	}
+
+	private static long getMedian(long[] values){
+		long[] sortedValues = Arrays.copyOf(values, values.length);
+
+		Arrays.sort(sortedValues);
+
+		return sortedValues[sortedValues.length / 2];
+	}
+
+	private static long getP99PublishLatency(DispatchStrategy<Event> strategy) throws InterruptedException{
+		CountDownLatch latch = new CountDownLatch(NUM_TEST_EVENTS);
+
+		List<DispatcherConsumer<Event>> consumers = new ArrayList<DispatcherConsumer<Event>>(NUM_CONSUMERS);
+		for (int i = 0; i < NUM_CONSUMERS; i++){
+			consumers.add(new DisruptorConsumer.Builder<Event>(Executors.newSingleThreadExecutor(),
+					new DisruptorConfig.Builder()
+						.ringSize(RING_SIZE)
+						.build()
+			).addConsumer(new DelayingEventConsumer(latch, i == 0 ? SLOW_CONSUMER_NANOS_PER_EVENT : 0))
+			.build());
+		}
+
+		Dispatcher<Event> candidate = new Dispatcher<Event>(consumers, DispatcherConfig.DEFAULT_CONFIG, strategy);
+
+		long[] latencies = new long[NUM_TEST_EVENTS];
+		Event event = new Event(){};
+		for (int i = 0; i < NUM_TEST_EVENTS; i++){
+			long startTime = System.nanoTime();
+			candidate.dispatchEvent(event);
+			latencies[i] = System.nanoTime() - startTime;
+		}
+
+		latch.await();
+		candidate.close();
+
+		Arrays.sort(latencies);
+
+		return latencies[(int)(NUM_TEST_EVENTS * 0.99)];
+	}
+
+	private static class DelayingEventConsumer implements EventConsumer<Event>{
+
+		private final CountDownLatch latch;
+		private final long nanosPerEvent;
+
+		private DelayingEventConsumer(CountDownLatch latch, long nanosPerEvent){
+			this.latch = latch;
+			this.nanosPerEvent = nanosPerEvent;
+		}
+
+		@Override
+		public void consume(Event event) {
+			long endTime = System.nanoTime() + nanosPerEvent;
+			while (System.nanoTime() < endTime){
+				// spin to simulate a consumer that is slower then the others
+			}
+			latch.countDown();
+		}
+	}
+}
@@ -0,0 +1,435 @@
+package com.haines.ml.rce.window;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.haines.ml.rce.accumulator.HandlerRepository;
+import com.haines.ml.rce.model.Classification;
+import com.haines.ml.rce.model.Feature;
+import com.haines.ml.rce.model.distribution.DistributionParameters;
+import com.haines.ml.rce.naivebayes.NaiveBayesIndexes.NaiveBayesPosteriorDistributionProperty;
+import com.haines.ml.rce.naivebayes.NaiveBayesProbabilities;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts.MutableNaiveBayesDistributionCounts;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPosteriorProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPriorProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.NaiveBayesPriorDistributionProperty;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.PropertyType;
+import com.haines.ml.rce.naivebayes.model.Probability.DistributionProbability;
+
+/**
+ * A live view of the probabilities of the running total of a {@link WindowManager}'s windows. Rather then rebuilding every
+ * probability each time counts are pushed, the single writer applies only the pushed counts to the outcomes of their
+ * properties and to the totals they belong to. Discrete probabilities are then calculated from these when they are read
+ * so a push costs time proportional to the micro batch rather then to the model. Distribution probabilities depend only
+ * on their own parameters and so are only rebuilt for the distributions in a push.
+ * <p>
+ * Reads never block the writer and may interleave with a push, in which case they see some of its counts and not others.
+ * The writer changes an outcome and its total within a {@link SequenceLock}, one for each classification's posteriors and
+ * one for the priors, and readers retry until they read both from the same update, so a probability is never more then 1.
+ * @author haines
+ *
+ */
+final class RunningNaiveBayesProbabilities implements NaiveBayesProbabilities{
+
+	private static final Comparator<PropertyOutcomes> MOST_POPULAR_OUTCOMES_COMPARATOR = new Comparator<PropertyOutcomes>(){
+
+		@Override
+		public int compare(PropertyOutcomes o1, PropertyOutcomes o2) {
+			return o2.outcomes - o1.outcomes;
+		}
+	};
+
+	private static final Function<PropertyOutcomes, NaiveBayesProperty> PROPERTY_FUNC = new Function<PropertyOutcomes, NaiveBayesProperty>(){
+
+		@Override
+		public NaiveBayesProperty apply(PropertyOutcomes input) {
+			return input.property;
+		}
+	};
+
+	private static final double NO_OUTCOMES = -1;
+
+	private final ConcurrentMap<Classification, ClassificationPosteriors> posteriors;
+	private final ConcurrentMap<Classification, AtomicInteger> discretePriorOutcomes;
+	private final ConcurrentMap<Integer, DistributionProbability> distributionPriors;
+	private final AtomicInteger priorTotal;
+	private final SequenceLock priorLock;
+
+	// the running parameters of each distribution. These are only ever accessed by the single writer
+	private final Map<NaiveBayesPosteriorDistributionProperty, MutableNaiveBayesDistributionCounts> distributionPosteriorCounts;
+	private final Map<Integer, MutableNaiveBayesDistributionCounts> distributionPriorCounts;
+	private final HandlerRepository<?> featureHandlers;
+
+	RunningNaiveBayesProbabilities(HandlerRepository<?> featureHandlers){
+		this.posteriors = new ConcurrentHashMap<Classification, ClassificationPosteriors>();
+		this.discretePriorOutcomes = new ConcurrentHashMap<Classification, AtomicInteger>();
+		this.distributionPriors = new ConcurrentHashMap<Integer, DistributionProbability>();
+		this.priorTotal = new AtomicInteger(0);
+		this.priorLock = new SequenceLock();
+		this.distributionPosteriorCounts = new HashMap<NaiveBayesPosteriorDistributionProperty, MutableNaiveBayesDistributionCounts>();
+		this.distributionPriorCounts = new HashMap<Integer, MutableNaiveBayesDistributionCounts>();
+		this.featureHandlers = featureHandlers;
+	}
+
+	/**
+	 * Adds the counts to the running total. This must only be called by the single writer.
+	 * @param counts
+	 */
+	void add(Iterable<? extends NaiveBayesCounts<?>> counts){
+		update(counts, false);
+	}
+
+	/**
+	 * Subtracts the counts, which must have previously been added, from the running total. This must only be called by
+	 * the single writer.
+	 * @param counts
+	 */
+	void subtract(Iterable<? extends NaiveBayesCounts<?>> counts){
+		update(counts, true);
+	}
+
+	private void update(Iterable<? extends NaiveBayesCounts<?>> counts, boolean subtract){
+		for (NaiveBayesCounts<?> count: counts){
+			PropertyType<?> type = count.getProperty().getType();
+
+			if (type == PropertyType.DISCRETE_POSTERIOR_TYPE){
+				DiscreteNaiveBayesPosteriorProperty posterior = PropertyType.DISCRETE_POSTERIOR_TYPE.cast(count.getProperty());
+
+				ClassificationPosteriors classificationPosteriors = getClassificationPosteriors(posterior.getClassification());
+
+				AtomicInteger total = classificationPosteriors.getTotal(posterior.getFeatureType());
+
+				classificationPosteriors.lock.startWrite();
+				try{
+					updateOutcomes(classificationPosteriors.discreteOutcomes, posterior.getFeature(), total, count.getCounts(), subtract);
+				} finally{
+					classificationPosteriors.lock.endWrite();
+				}
+			} else if (type == PropertyType.DISCRETE_PRIOR_TYPE){
+				DiscreteNaiveBayesPriorProperty prior = PropertyType.DISCRETE_PRIOR_TYPE.cast(count.getProperty());
+
+				priorLock.startWrite();
+				try{
+					updateOutcomes(discretePriorOutcomes, prior.getClassification(), priorTotal, count.getCounts(), subtract);
+				} finally{
+					priorLock.endWrite();
+				}
+			} else if (type == PropertyType.DISTRIBUTION_POSTERIOR_TYPE){
+				NaiveBayesPosteriorDistributionProperty posterior = PropertyType.DISTRIBUTION_POSTERIOR_TYPE.cast(count.getProperty());
+
+				DistributionParameters parameters = updateDistribution(distributionPosteriorCounts, posterior, count, subtract);
+
+				ConcurrentMap<Integer, DistributionProbability> distributions = getClassificationPosteriors(posterior.getClassification()).distributions;
+
+				if (parameters == null){
+					distributions.remove(posterior.getFeatureType());
+				} else{
+					distributions.put(posterior.getFeatureType(), new DistributionProbability(parameters, featureHandlers.getFeatureHandler(posterior.getFeatureType()).getDistributionProvider().getDistribution()));
+				}
+			} else if (type == PropertyType.DISTRIBUTION_PRIOR_TYPE){
+				NaiveBayesPriorDistributionProperty prior = PropertyType.DISTRIBUTION_PRIOR_TYPE.cast(count.getProperty());
+
+				DistributionParameters parameters = updateDistribution(distributionPriorCounts, prior.getClassificationType(), count, subtract);
+
+				if (parameters == null){
+					distributionPriors.remove(prior.getClassificationType());
+				} else{
+					distributionPriors.put(prior.getClassificationType(), new DistributionProbability(parameters, featureHandlers.getClassificationHandler(prior.getClassificationType()).getDistributionProvider().getDistribution()));
+				}
+
+				priorLock.startWrite();
+				try{
+					priorTotal.addAndGet(subtract? -count.getCounts(): count.getCounts()); // all priors share the same total
+				} finally{
+					priorLock.endWrite();
+				}
+			} else{
+				throw new IllegalStateException("unknown naive bayes property type: "+type);
+			}
+		}
+	}
+
+	private ClassificationPosteriors getClassificationPosteriors(Classification classification){
+		ClassificationPosteriors classificationPosteriors = posteriors.get(classification);
+
+		if (classificationPosteriors == null){
+			classificationPosteriors = new ClassificationPosteriors();
+			posteriors.put(classification, classificationPosteriors);
+		}
+
+		return classificationPosteriors;
+	}
+
+	private static <K> void updateOutcomes(ConcurrentMap<K, AtomicInteger> outcomesMap, K key, AtomicInteger total, int counts, boolean subtract){
+		AtomicInteger outcomes = outcomesMap.get(key);
+
+		if (subtract){
+			if (outcomes == null){ // if you are subtracting, there has to be an existing record to subtract from
+				return;
+			}
+
+			int newOutcomes = outcomes.get() - counts;
+
+			if (newOutcomes < 0){
+				throw new IllegalArgumentException("Unable to subtract counts if the results is < 0 (Ie you can only subtract if you have enough values to subtract from. Negative values are not allowed)");
+			}
+
+			if (newOutcomes == 0){ // remove reference to outcomes if its 0
+				outcomesMap.remove(key);
+			} else{
+				outcomes.set(newOutcomes);
+			}
+		} else if (outcomes == null){
+			outcomesMap.put(key, new AtomicInteger(counts));
+		} else{
+			outcomes.set(outcomes.get() + counts);
+		}
+
+		total.addAndGet(subtract? -counts: counts);
+	}
+
+	private static <K> DistributionParameters updateDistribution(Map<K, MutableNaiveBayesDistributionCounts> distributionCounts, K key, NaiveBayesCounts<?> counts, boolean subtract){
+		MutableNaiveBayesDistributionCounts currentCounts = distributionCounts.get(key);
+
+		if (currentCounts == null){
+			if (subtract){ // if you are subtracting, there has to be an existing record to subtract from
+				return null;
+			}
+			currentCounts = ((MutableNaiveBayesDistributionCounts)counts.toMutable()).copy();
+			distributionCounts.put(key, currentCounts);
+		} else if (subtract){
+			currentCounts.sub((MutableNaiveBayesDistributionCounts)counts.toMutable());
+
+			if (currentCounts.getCounts() == 0){ // remove reference to count object if its 0
+				distributionCounts.remove(key);
+
+				return null;
+			}
+		} else{
+			currentCounts.add((MutableNaiveBayesDistributionCounts)counts.toMutable());
+		}
+
+		return currentCounts.getDistribution();
+	}
+
+	/**
+	 * Returns the probability of the key's outcomes within their total, or {@link #NO_OUTCOMES} if the key has none. Both
+	 * are read within the lock so that they always come from the same update.
+	 */
+	private static <K> double getProbability(SequenceLock lock, ConcurrentMap<K, AtomicInteger> outcomesMap, K key, AtomicInteger total){
+		int numOutcomes;
+		int numTotal;
+		int sequence;
+
+		do{
+			sequence = lock.startRead();
+
+			AtomicInteger outcomes = outcomesMap.get(key);
+
+			numOutcomes = (outcomes != null)? outcomes.get(): 0;
+			numTotal = total.get();
+		} while (!lock.validateRead(sequence));
+
+		if (numOutcomes == 0){
+			return NO_OUTCOMES;
+		}
+
+		return numOutcomes / (double)numTotal;
+	}
+
+	@Override
+	public double getPosteriorProbability(Feature feature, Classification classification) {
+		ClassificationPosteriors classificationPosteriors = posteriors.get(classification);
+
+		if (classificationPosteriors == null){
+			return NOMINAL_PROBABILITY;
+		}
+
+		return classificationPosteriors.getProbability(feature, classification);
+	}
+
+	@Override
+	public double getPriorProbability(Classification classification) {
+		double probability = getProbability(priorLock, discretePriorOutcomes, classification, priorTotal);
+
+		if (probability != NO_OUTCOMES){
+			return probability;
+		}
+
+		if (!distributionPriors.isEmpty()){
+			DistributionProbability distribution = distributionPriors.get(classification.getType());
+
+			if (distribution != null){
+				return distribution.getProbability(classification);
+			}
+		}
+
+		return NOMINAL_PROBABILITY;
+	}
+
+	@Override
+	public Iterable<Classification> getAllClassifications() {
+		if (!distributionPriors.isEmpty()){
+			throw new IllegalStateException("Unable to handle non discrete classification probabilities yet"); // TODO need to work out how this will work!
+		}
+
+		return Collections.unmodifiableSet(discretePriorOutcomes.keySet());
+	}
+
+	/**
+	 * Sorts the properties as they are when iterated. This is only called when a new window is created so, unlike the
+	 * probabilities, is not kept up to date on every push.
+	 */
+	@Override
+	public Iterable<NaiveBayesProperty> getOrderedProperties() {
+		return new Iterable<NaiveBayesProperty>(){
+
+			@Override
+			public Iterator<NaiveBayesProperty> iterator() {
+				return Lists.transform(getSortedProperties(), PROPERTY_FUNC).iterator();
+			}
+		};
+	}
+
+	private List<PropertyOutcomes> getSortedProperties(){
+		List<PropertyOutcomes> sortedProperties = new ArrayList<PropertyOutcomes>();
+
+		// add posteriors
+
+		for (Entry<Classification, ClassificationPosteriors> classification: posteriors.entrySet()){
+			for (Entry<Feature, AtomicInteger> outcomes: classification.getValue().discreteOutcomes.entrySet()){
+				addProperty(sortedProperties, new DiscreteNaiveBayesPosteriorProperty(outcomes.getKey(), classification.getKey()), outcomes.getValue().get());
+			}
+
+			for (Entry<Integer, DistributionProbability> distribution: classification.getValue().distributions.entrySet()){
+				addProperty(sortedProperties, new NaiveBayesPosteriorDistributionProperty(distribution.getKey(), classification.getKey()), distribution.getValue().getOutcomes());
+			}
+		}
+
+		// add priors
+
+		for (Entry<Classification, AtomicInteger> outcomes: discretePriorOutcomes.entrySet()){
+			addProperty(sortedProperties, new DiscreteNaiveBayesPriorProperty(outcomes.getKey()), outcomes.getValue().get());
+		}
+
+		for (Entry<Integer, DistributionProbability> distribution: distributionPriors.entrySet()){
+			addProperty(sortedProperties, new NaiveBayesPriorDistributionProperty(distribution.getKey()), distribution.getValue().getOutcomes());
+		}
+
+		Collections.sort(sortedProperties, MOST_POPULAR_OUTCOMES_COMPARATOR);
+
+		return sortedProperties;
+	}
+
+	private static void addProperty(List<PropertyOutcomes> properties, NaiveBayesProperty property, int outcomes){
+		if (outcomes > 0){ // skip properties subtracted to nothing during the iteration
+			properties.add(new PropertyOutcomes(property, outcomes));
+		}
+	}
+
+	@Override
+	public String toString(){
+		return Iterables.toString(getOrderedProperties());
+	}
+
+	/**
+	 * The posterior outcomes of a single classification along with the total outcomes of each of its feature types.
+	 */
+	private static class ClassificationPosteriors{
+
+		private final ConcurrentMap<Feature, AtomicInteger> discreteOutcomes = new ConcurrentHashMap<Feature, AtomicInteger>();
+		private final ConcurrentMap<Integer, AtomicInteger> totals = new ConcurrentHashMap<Integer, AtomicInteger>();
+		private final ConcurrentMap<Integer, DistributionProbability> distributions = new ConcurrentHashMap<Integer, DistributionProbability>();
+		private final SequenceLock lock = new SequenceLock();
+
+		private AtomicInteger getTotal(int featureType){
+			AtomicInteger total = totals.get(featureType);
+
+			if (total == null){ // totals are never removed so that a reader that finds outcomes always finds their total
+				total = new AtomicInteger(0);
+				totals.put(featureType, total);
+			}
+
+			return total;
+		}
+
+		private double getProbability(Feature feature, Classification classification){
+			AtomicInteger total = totals.get(feature.getType());
+
+			if (total != null){ // there can only be outcomes of a feature type once it has a total
+				double probability = RunningNaiveBayesProbabilities.getProbability(lock, discreteOutcomes, feature, total);
+
+				if (probability != NO_OUTCOMES){
+					return probability;
+				}
+			}
+
+			if (!distributions.isEmpty()){
+				DistributionProbability probability = distributions.get(feature.getType());
+
+				if (probability != null){
+					return probability.getProbability(feature, classification);
+				}
+			}
+
+			return NOMINAL_PROBABILITY;
+		}
+	}
+
+	/**
+	 * A sequence lock between the single writer and any number of readers. The writer makes the sequence odd while it
+	 * changes an outcome and its total and even again once it is done. Readers never block the writer. Instead they retry
+	 * if the sequence was odd, or changed, while they read so that the values they return all come from the same update.
+	 */
+	private static class SequenceLock{
+
+		private volatile int sequence = 0;
+
+		private void startWrite(){
+			sequence++; // only the single writer changes the sequence so this need not be atomic
+		}
+
+		private void endWrite(){
+			sequence++;
+		}
+
+		private int startRead(){
+			int currentSequence;
+
+			while (((currentSequence = sequence) & 1) != 0){
+				Thread.yield(); // the writer only holds the lock while it changes a single outcome and its total
+			}
+
+			return currentSequence;
+		}
+
+		private boolean validateRead(int startSequence){
+			return sequence == startSequence;
+		}
+	}
+
+	private static class PropertyOutcomes{
+
+		private final NaiveBayesProperty property;
+		private final int outcomes;
+
+		private PropertyOutcomes(NaiveBayesProperty property, int outcomes){
+			this.property = property;
+			this.outcomes = outcomes;
+		}
+	}
+}
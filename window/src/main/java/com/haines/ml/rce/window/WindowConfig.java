@@ -19,4 +19,10 @@ public interface WindowConfig {
 	 * @return
 	 */
 	int getGlobalIndexLimit();
+
+	/**
+	 * Returns whether the global index should be compiled into a minimal perfect hash each time it is rebuilt
+	 * @return
+	 */
+	boolean getGlobalIndexPerfectHash();
 }
@@ -1,26 +1,16 @@
 package com.haines.ml.rce.window;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Iterables;
 import com.haines.ml.rce.accumulator.HandlerRepository;
 import com.haines.ml.rce.aggregator.Aggregator;
-import com.haines.ml.rce.model.Classification;
-import com.haines.ml.rce.model.Feature;
 import com.haines.ml.rce.model.system.Clock;
-import com.haines.ml.rce.naivebayes.CountsProviderNaiveBayesProbabilities;
 import com.haines.ml.rce.naivebayes.NaiveBayesCountsProvider;
 import com.haines.ml.rce.naivebayes.NaiveBayesCountsProvider.Counts;
-import com.haines.ml.rce.naivebayes.NaiveBayesIndexes.NaiveBayesPosteriorDistributionProperty;
 import com.haines.ml.rce.naivebayes.NaiveBayesProbabilities;
 import com.haines.ml.rce.naivebayes.NaiveBayesProbabilitiesProvider;
-import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts;
-import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts.MutableDiscreteNaiveBayesCounts;
-import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts.MutableNaiveBayesDistributionCounts;
 
 public class WindowManager implements NaiveBayesProbabilitiesProvider{
 
@@ -40,10 +30,7 @@ public class WindowManager implements NaiveBayesProbabilitiesProvider{
 		this.clock = clock;
 		this.config = config;
 		this.cyclicWindowBuffer = new Window[config.getNumWindows()];
-		this.windowProbabilities = new WindowProbabilities(new SubtractableAggregator(new ConcurrentHashMap<Classification, Map<Feature, MutableDiscreteNaiveBayesCounts>>(), 
-																				new ConcurrentHashMap<Classification, MutableDiscreteNaiveBayesCounts>(),
-																				new ConcurrentHashMap<NaiveBayesPosteriorDistributionProperty, MutableNaiveBayesDistributionCounts>(),
-																				new ConcurrentHashMap<Integer, MutableNaiveBayesDistributionCounts>()), featureHandlers);
+		this.windowProbabilities = new WindowProbabilities(new RunningNaiveBayesProbabilities(featureHandlers));
 		
 		this.staticWindowListeners = staticWindowListeners;
 		
@@ -111,25 +98,15 @@ public class WindowManager implements NaiveBayesProbabilitiesProvider{
 		} else { // add to existing window
 			Window currentWindow = cyclicWindowBuffer[currentMaxIdx];
 			
-			Aggregator aggregatedWindow = Aggregator.newInstance();
-			
-			Counts currentWindowCounts = currentWindow.getProvider().getCounts();
 			Counts newCounts = provider.getCounts();
 			
-			aggregatedWindow.aggregate(Iterables.concat(currentWindowCounts.getPosteriors(), 
-														currentWindowCounts.getPriors()));
-			
-			aggregatedWindow.aggregate(Iterables.concat(newCounts.getPosteriors(), 
-														newCounts.getPriors()));
-			
-			
-			Window newAggregatedWindow = new Window(cyclicWindowBuffer[currentMaxIdx].getExpires(), aggregatedWindow);
+			// only the new counts are added, both to the current window and to the running total, so the cost is proportional to the micro batch rather then the window
 			
-			cyclicWindowBuffer[currentMaxIdx] = newAggregatedWindow;
+			currentWindow.add(newCounts);
 			
 			//LOG.debug("Window {} updated ", currentMaxIdx);
 			
-			windowProbabilities.processWindows(newAggregatedWindow.getProvider(), currentWindow.getProvider());
+			windowProbabilities.processUpdate(newCounts);
 		}
 	}
 	
@@ -168,13 +145,19 @@ public class WindowManager implements NaiveBayesProbabilitiesProvider{
 		return (idx == 0)?cyclicWindowBuffer.length-1:(idx - 1);
 	}
 	
+	/**
+	 * A window holds its own copy of the counts pushed to it so that later pushes within its period can be added in place.
+	 * It is only ever accessed by the single writer.
+	 */
 	private static class Window{
 		private final long expires;
-		private final NaiveBayesCountsProvider provider;
+		private final Aggregator counts;
 		
 		private Window(long expires, NaiveBayesCountsProvider provider){
 			this.expires = expires;
-			this.provider = provider;
+			this.counts = Aggregator.newInstance();
+			
+			add(provider.getCounts());
 		}
 
 		public long getExpires() {
@@ -182,26 +165,32 @@ public class WindowManager implements NaiveBayesProbabilitiesProvider{
 		}
 
 		public NaiveBayesCountsProvider getProvider() {
-			return provider;
+			return counts;
+		}
+		
+		private void add(Counts newCounts){
+			counts.aggregate(Iterables.concat(newCounts.getPosteriors(), newCounts.getPriors()));
 		}
 		
 		@Override
 		public String toString(){
-			return "exp: "+expires+" - "+provider.toString();
+			return "exp: "+expires+" - "+counts.toString();
 		}
 	}
 	
 	private static class WindowProbabilities{
 		
-		private final SubtractableAggregator aggregator;
-		private volatile NaiveBayesProbabilities probabilities = NaiveBayesProbabilities.NOMINAL_PROBABILITIES;
-		private final HandlerRepository<?> featureHandlers;
+		private final RunningNaiveBayesProbabilities probabilities;
 		
-		private WindowProbabilities(SubtractableAggregator aggregator, HandlerRepository<?> featureHandlers){
-			this.aggregator = aggregator;
-			this.featureHandlers = featureHandlers;
+		private WindowProbabilities(RunningNaiveBayesProbabilities probabilities){
+			this.probabilities = probabilities;
 		}
 
+		/**
+		 * Returns a live view of the running total. Readers classify against it without locking while the single writer
+		 * updates only the properties pushed to it.
+		 * @return
+		 */
 		private NaiveBayesProbabilities getProbabilities(){
 			return probabilities;
 		}
@@ -210,31 +199,23 @@ public class WindowManager implements NaiveBayesProbabilitiesProvider{
 
 			Counts newWindowCounts = newWindow.getCounts();
 			
-			aggregator.add(newWindowCounts.getPosteriors());
-			aggregator.add(newWindowCounts.getPriors());
+			probabilities.add(newWindowCounts.getPosteriors());
+			probabilities.add(newWindowCounts.getPriors());
 			
 			if (oldWindow != null){ // if the buffer has wrapped all the way around and we have all windows full then subtract the first element in cyclic window buffer
 				Counts oldWindowCounts = oldWindow.getCounts();
-				aggregator.subtract(oldWindowCounts.getPosteriors());
-				aggregator.subtract(oldWindowCounts.getPriors());
+				probabilities.subtract(oldWindowCounts.getPosteriors());
+				probabilities.subtract(oldWindowCounts.getPriors());
 			}
-			
-			probabilities = new CountsProviderNaiveBayesProbabilities(aggregator, featureHandlers);
-		}
-	}
-	
-	private static class SubtractableAggregator extends Aggregator{
-
-		public SubtractableAggregator(Map<Classification, Map<Feature, MutableDiscreteNaiveBayesCounts>> discretePosteriorCounts, Map<Classification, MutableDiscreteNaiveBayesCounts> discretePriorCounts, Map<NaiveBayesPosteriorDistributionProperty, MutableNaiveBayesDistributionCounts> distributionPosteriorCounts, Map<Integer, MutableNaiveBayesDistributionCounts> distributionPriorCounts) {
-			super(discretePosteriorCounts, discretePriorCounts, distributionPosteriorCounts, distributionPriorCounts);
-		}
-
-		private void subtract(Iterable<? extends NaiveBayesCounts<?>> counts){
-			aggregate(counts, true);
 		}
 		
-		private void add(Iterable<? extends NaiveBayesCounts<?>> counts){
-			aggregate(counts, false);
+		/**
+		 * Adds counts that have been pushed into the current window to the running total.
+		 * @param newCounts
+		 */
+		private void processUpdate(Counts newCounts){
+			probabilities.add(newCounts.getPosteriors());
+			probabilities.add(newCounts.getPriors());
 		}
 	}
 }
@@ -3,9 +3,19 @@ package com.haines.ml.rce.window;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -13,16 +23,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Iterables;
+import com.haines.ml.rce.accumulator.DistributionProvider;
 import com.haines.ml.rce.accumulator.HandlerRepository;
+import com.haines.ml.rce.accumulator.handlers.ClassificationHandler;
+import com.haines.ml.rce.accumulator.handlers.FeatureHandler;
+import com.haines.ml.rce.accumulator.handlers.SequentialDistributionFeatureHandler;
+import com.haines.ml.rce.model.distribution.DistributionParameters;
 import com.haines.ml.rce.model.system.Clock.StaticClock;
 import com.haines.ml.rce.naivebayes.NaiveBayesCountsProvider;
+import com.haines.ml.rce.naivebayes.NaiveBayesIndexes.NaiveBayesPosteriorDistributionProperty;
 import com.haines.ml.rce.naivebayes.NaiveBayesProbabilities;
 import com.haines.ml.rce.naivebayes.NaiveBayesProbabilitiesProvider;
 import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts;
 import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts.DiscreteNaiveBayesCounts;
+import com.haines.ml.rce.naivebayes.model.NaiveBayesCounts.NaiveBayesDistributionCounts;
 import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPriorProperty;
 import com.haines.ml.rce.naivebayes.model.NaiveBayesProperty.DiscreteNaiveBayesPosteriorProperty;
 import com.haines.ml.rce.test.TestClassification;
+import com.haines.ml.rce.test.TestEvent;
 import com.haines.ml.rce.test.TestFeature;
 
 public class WindowManagerUnitTest {
@@ -114,6 +132,36 @@ public class WindowManagerUnitTest {
 	};
 
 	private static final int TEST_MAX_GLOBAL_INDEX_LIMIT = 1000000;
+	
+	private static final int TEST_NUM_READERS = 2;
+	private static final int TEST_NUM_CONCURRENT_WINDOWS = 50000;
+	
+	private static final int TEST_DISTRIBUTION_FEATURE_TYPE_1 = 2;
+	private static final int TEST_DISTRIBUTION_FEATURE_TYPE_2 = 3;
+	
+	private static final WindowConfig TEST_CONFIG = new WindowConfig(){
+
+		@Override
+		public long getWindowPeriod() {
+			return TEST_WINDOW_PERIOD;
+		}
+
+		@Override
+		public int getNumWindows() {
+			return TEST_NUM_WINDOWS;
+		}
+
+		@Override
+		public int getGlobalIndexLimit() {
+			return TEST_MAX_GLOBAL_INDEX_LIMIT;
+		}
+
+		@Override
+		public boolean getGlobalIndexPerfectHash() {
+			return false;
+		}
+		
+	};
 
 	private WindowManager candidate;
 	private StaticClock testClock;
@@ -126,24 +174,7 @@ public class WindowManagerUnitTest {
 		
 		numUpdatedWindows = new AtomicInteger(0);
 		
-		candidate = new WindowManager(new WindowConfig(){
-
-			@Override
-			public long getWindowPeriod() {
-				return TEST_WINDOW_PERIOD;
-			}
-
-			@Override
-			public int getNumWindows() {
-				return TEST_NUM_WINDOWS;
-			}
-
-			@Override
-			public int getGlobalIndexLimit() {
-				return TEST_MAX_GLOBAL_INDEX_LIMIT;
-			}
-			
-		}, testClock, Arrays.asList(new WindowUpdatedListener() {
+		candidate = new WindowManager(TEST_CONFIG, testClock, Arrays.asList(new WindowUpdatedListener() {
 			
 			@Override
 			public void newWindowCreated(NaiveBayesProbabilitiesProvider window) {
@@ -288,6 +319,38 @@ public class WindowManagerUnitTest {
 		assertThat(numUpdatedWindows.get(), is(equalTo(1)));
 	}
 	
+	@Test
+	public void givenCandidate_whenAddingMultipleEventsInSameWindowPeriodThatThenExpires_thenAllEventsOfWindowRemoved(){
+		candidate.addNewProvider(getTestEvents(TEST_POSTERIOR_EVENTS_1, TEST_PRIOR_EVENTS_1), WindowUpdatedListener.NO_OP_LISTENER);
+		
+		testClock.setCurrentTime(TEST_START_TIME + 1000);
+		
+		candidate.addNewProvider(getTestEvents(TEST_POSTERIOR_EVENTS_2, TEST_PRIOR_EVENTS_2), WindowUpdatedListener.NO_OP_LISTENER);
+		
+		for (int i = 1; i <= TEST_NUM_WINDOWS; i++){
+			testClock.setCurrentTime(TEST_START_TIME + (i * TEST_WINDOW_PERIOD)+1);
+			
+			candidate.addNewProvider(getTestEvents(TEST_POSTERIOR_EVENTS_3, TEST_PRIOR_EVENTS_3), WindowUpdatedListener.NO_OP_LISTENER); // the last should pop both events1 and events2 off the buffer
+		}
+		
+		assertThat(candidate.getProbabilities().getPosteriorProbability(new TestFeature("feature1"), new TestClassification("class1")), is(equalTo(0.06779661016949153)));
+		assertThat(candidate.getProbabilities().getPosteriorProbability(new TestFeature("feature2"), new TestClassification("class1")), is(equalTo(0.9322033898305084)));
+		assertThat(candidate.getProbabilities().getPosteriorProbability(new TestFeature("feature3"), new TestClassification("class1")), is(equalTo(NaiveBayesProbabilities.NOMINAL_PROBABILITY)));
+		assertThat(candidate.getProbabilities().getPosteriorProbability(new TestFeature("feature2"), new TestClassification("class2")), is(equalTo(NaiveBayesProbabilities.NOMINAL_PROBABILITY)));
+		assertThat(candidate.getProbabilities().getPosteriorProbability(new TestFeature("feature1"), new TestClassification("class2")), is(equalTo(NaiveBayesProbabilities.NOMINAL_PROBABILITY)));
+		assertThat(candidate.getProbabilities().getPosteriorProbability(new TestFeature("feature1"), new TestClassification("class4")), is(equalTo(NaiveBayesProbabilities.NOMINAL_PROBABILITY)));
+		assertThat(candidate.getProbabilities().getPosteriorProbability(new TestFeature("feature2"), new TestClassification("class4")), is(equalTo(1.0)));
+		assertThat(candidate.getProbabilities().getPosteriorProbability(new TestFeature("feature2"), new TestClassification("class8")), is(equalTo(NaiveBayesProbabilities.NOMINAL_PROBABILITY)));
+		assertThat(candidate.getProbabilities().getPosteriorProbability(new TestFeature("feature5"), new TestClassification("class3")), is(equalTo(1.0)));
+
+		assertThat(candidate.getProbabilities().getPriorProbability(new TestClassification("class1")), is(equalTo(0.21428571428571427)));
+		assertThat(candidate.getProbabilities().getPriorProbability(new TestClassification("class2")), is(equalTo(NaiveBayesProbabilities.NOMINAL_PROBABILITY)));
+		assertThat(candidate.getProbabilities().getPriorProbability(new TestClassification("class3")), is(equalTo(0.43506493506493504)));
+		assertThat(candidate.getProbabilities().getPriorProbability(new TestClassification("class4")), is(equalTo(0.35064935064935066)));
+		
+		assertThat(numUpdatedWindows.get(), is(equalTo(6)));
+	}
+	
 	@Test
 	public void givenCandidate_whenAddingMultipleEventsInDifferntWindowPeriodsWithinBuffer_thenEventsNotTruncated(){
 		candidate.addNewProvider(getTestEvents(TEST_POSTERIOR_EVENTS_1, TEST_PRIOR_EVENTS_1), WindowUpdatedListener.NO_OP_LISTENER);
@@ -443,6 +506,123 @@ public class WindowManagerUnitTest {
 		assertThat(numUpdatedWindows.get(), is(equalTo(13)));
 	}
 
+	@Test
+	public void givenCandidateWithDistributions_whenAddingEventSetWithinWindowPeriod_thenOnlyDistributionsInEventSetRecalculated(){
+		final AtomicInteger numDistributionsCalculated = new AtomicInteger(0);
+		
+		FeatureHandler<TestEvent> countingHandler = new SequentialDistributionFeatureHandler<TestEvent>(){
+
+			@Override
+			public DistributionProvider getDistributionProvider() {
+				numDistributionsCalculated.incrementAndGet();
+				
+				return super.getDistributionProvider();
+			}
+		};
+		
+		Map<Integer, FeatureHandler<TestEvent>> featureHandlers = new HashMap<Integer, FeatureHandler<TestEvent>>();
+		featureHandlers.put(TEST_DISTRIBUTION_FEATURE_TYPE_1, countingHandler);
+		featureHandlers.put(TEST_DISTRIBUTION_FEATURE_TYPE_2, countingHandler);
+		
+		candidate = new WindowManager(TEST_CONFIG, testClock, Collections.<WindowUpdatedListener>emptyList(), HandlerRepository.create(featureHandlers, Collections.<Integer, ClassificationHandler<TestEvent>>emptyMap()));
+		
+		TestClassification class1 = new TestClassification("class1");
+		TestFeature untouchedFeature = new TestFeature(5.0, TEST_DISTRIBUTION_FEATURE_TYPE_2);
+		TestFeature touchedFeature = new TestFeature(3.0, TEST_DISTRIBUTION_FEATURE_TYPE_1);
+		
+		candidate.addNewProvider(getTestEvents(Iterables.concat(TEST_POSTERIOR_EVENTS_1, Arrays.asList(
+				new NaiveBayesDistributionCounts(new NaiveBayesPosteriorDistributionProperty(TEST_DISTRIBUTION_FEATURE_TYPE_1, class1), new DistributionParameters(10, 2.0, 1.0)),
+				new NaiveBayesDistributionCounts(new NaiveBayesPosteriorDistributionProperty(TEST_DISTRIBUTION_FEATURE_TYPE_2, class1), new DistributionParameters(20, 5.0, 2.0)))), TEST_PRIOR_EVENTS_1), WindowUpdatedListener.NO_OP_LISTENER);
+		
+		NaiveBayesProbabilities probabilities = candidate.getProbabilities();
+		
+		double untouchedProbability = probabilities.getPosteriorProbability(untouchedFeature, class1);
+		double touchedProbability = probabilities.getPosteriorProbability(touchedFeature, class1);
+		
+		assertThat(numDistributionsCalculated.get(), is(equalTo(2)));
+		
+		testClock.setCurrentTime(TEST_START_TIME + 1000);
+		
+		candidate.addNewProvider(getTestEvents(Arrays.asList(
+				new NaiveBayesDistributionCounts(new NaiveBayesPosteriorDistributionProperty(TEST_DISTRIBUTION_FEATURE_TYPE_1, class1), new DistributionParameters(10, 4.0, 1.0))), Collections.<NaiveBayesCounts<?>>emptyList()), WindowUpdatedListener.NO_OP_LISTENER);
+		
+		assertThat(numDistributionsCalculated.get(), is(equalTo(3))); // only the distribution in the new event set is recalculated
+		assertThat(candidate.getProbabilities(), is(sameInstance(probabilities))); // and nothing is rebuilt
+		
+		assertThat(probabilities.getPosteriorProbability(untouchedFeature, class1), is(equalTo(untouchedProbability)));
+		assertThat(probabilities.getPosteriorProbability(touchedFeature, class1), is(not(equalTo(touchedProbability))));
+		assertThat(probabilities.getPosteriorProbability(new TestFeature("feature1"), class1), is(equalTo(0.25)));
+		assertThat(probabilities.getPriorProbability(class1), is(equalTo(0.371900826446281)));
+	}
+	
+	@Test
+	public void givenReadersClassifyingConcurrently_whenWindowsExpire_thenNoProbabilityMoreThenOne() throws InterruptedException{
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicReference<Throwable> readerFailure = new AtomicReference<Throwable>();
+		
+		final List<TestFeature> features = new ArrayList<TestFeature>();
+		for (int i = 1; i <= 8; i++){
+			features.add(new TestFeature("feature"+i));
+		}
+		
+		final List<TestClassification> classifications = new ArrayList<TestClassification>();
+		for (int i = 1; i <= 8; i++){
+			classifications.add(new TestClassification("class"+i));
+		}
+		
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int i = 0; i < TEST_NUM_READERS; i++){
+			Thread reader = new Thread(new Runnable(){
+
+				@Override
+				public void run() {
+					try{
+						while (writing.get()){
+							NaiveBayesProbabilities probabilities = candidate.getProbabilities();
+							
+							for (TestClassification classification: classifications){
+								assertProbability(probabilities.getPriorProbability(classification));
+								
+								for (TestFeature feature: features){
+									assertProbability(probabilities.getPosteriorProbability(feature, classification));
+								}
+							}
+						}
+					} catch (Throwable t){
+						readerFailure.set(t);
+					}
+				}
+			});
+			reader.start();
+			readers.add(reader);
+		}
+		
+		long time = TEST_START_TIME;
+		try{
+			for (int i = 0; i < TEST_NUM_CONCURRENT_WINDOWS && readerFailure.get() == null; i++){ // once the buffer is full every new window expires the oldest
+				candidate.addNewProvider(getTestEvents(ALL_POSTERIOR_EVENTS[i%ALL_POSTERIOR_EVENTS.length], ALL_PRIOR_EVENTS[i%ALL_PRIOR_EVENTS.length]), WindowUpdatedListener.NO_OP_LISTENER);
+				
+				time += TEST_WINDOW_PERIOD + 1;
+				
+				testClock.setCurrentTime(time);
+			}
+		} finally{
+			writing.set(false);
+			
+			for (Thread reader: readers){
+				reader.join();
+			}
+		}
+		
+		assertThat(readerFailure.get(), is(nullValue()));
+	}
+	
+	private static void assertProbability(double probability){
+		if (probability > 1.0 || probability <= 0.0){
+			throw new AssertionError("Invalid probability: "+probability);
+		}
+	}
+	
 	private NaiveBayesCountsProvider getTestEvents(final Iterable<? extends NaiveBayesCounts<?>> posteriorEvents, final Iterable<? extends NaiveBayesCounts<?>> priorEvents) {
 		return new NaiveBayesCountsProvider(){
 